@@ -0,0 +1,192 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Searches bytes for a byte (e.g. LF or ESC) 8 bytes at a time,
+ * testing all bytes of a <code>long</code> at once with arithmetic on the word.
+ * Works on any JVM without vector instructions nor incubator modules,
+ * and falls back to testing byte by byte at the ends of ranges.
+ */
+final class ByteSearch {
+    /**
+     * Set to <code>true</code> to search byte by byte.
+     */
+    static boolean SCALAR = SystemProperties.getBoolean(ByteSearch.class.getName() + ".scalar");
+
+    private static final int WORD = Long.BYTES;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private ByteSearch() {
+    }
+
+    /**
+     * @param word 8 bytes
+     * @param pattern the byte to search for repeated 8 times
+     * @return the highest bit of each byte equal to the byte searched for set, and other bits cleared.
+     */
+    private static long matches(long word, long pattern) {
+        long x = word ^ pattern;
+        // the highest bit is cleared only for bytes of 0, without carries across bytes.
+        return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+    }
+
+    /**
+     * @return the index in the word, in the order of the memory, of the first byte set in <code>matches</code>.
+     */
+    private static int first(long matches, boolean bigEndian) {
+        return (bigEndian ? Long.numberOfLeadingZeros(matches) : Long.numberOfTrailingZeros(matches)) / Byte.SIZE;
+    }
+
+    /**
+     * @return the index in the word, in the order of the memory, of the last byte set in <code>matches</code>.
+     */
+    private static int last(long matches, boolean bigEndian) {
+        return WORD - 1 - (bigEndian ? Long.numberOfTrailingZeros(matches) : Long.numberOfLeadingZeros(matches)) / Byte.SIZE;
+    }
+
+    /**
+     * The position and the limit of <code>buf</code> are not used nor changed.
+     *
+     * @param buf bytes to search
+     * @param b the byte to search for
+     * @param from the index to start searching
+     * @param to the index to stop searching
+     * @return the index of the first <code>b</code> in <code>buf[from, to)</code>. -1 if not found.
+     */
+    static int indexOf(@NonNull ByteBuffer buf, byte b, int from, int to) {
+        int i = from;
+        if (!SCALAR) {
+            boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+            long pattern = (b & 0xFFL) * ONES;
+            for (; i <= to - WORD; i += WORD) {
+                long m = matches(buf.getLong(i), pattern);
+                if (m != 0) {
+                    return i + first(m, bigEndian);
+                }
+            }
+        }
+        for (; i < to; ++i) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The position and the limit of <code>buf</code> are not used nor changed.
+     *
+     * @param buf bytes to search
+     * @param b the byte to search for
+     * @param from the index to stop searching
+     * @param to the index to start searching backwards
+     * @return the index of the last <code>b</code> in <code>buf[from, to)</code>. -1 if not found.
+     */
+    static int lastIndexOf(@NonNull ByteBuffer buf, byte b, int from, int to) {
+        int i = to;
+        if (!SCALAR) {
+            boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+            long pattern = (b & 0xFFL) * ONES;
+            for (; i - WORD >= from; i -= WORD) {
+                long m = matches(buf.getLong(i - WORD), pattern);
+                if (m != 0) {
+                    return i - WORD + last(m, bigEndian);
+                }
+            }
+        }
+        for (--i; i >= from; --i) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The position and the limit of <code>buf</code> are not used nor changed.
+     *
+     * @param buf bytes to search
+     * @param b the byte to count
+     * @param from the index to start counting
+     * @param to the index to stop counting
+     * @return the number of <code>b</code> in <code>buf[from, to)</code>.
+     */
+    static int count(@NonNull ByteBuffer buf, byte b, int from, int to) {
+        int count = 0;
+        int i = from;
+        if (!SCALAR) {
+            long pattern = (b & 0xFFL) * ONES;
+            for (; i <= to - WORD; i += WORD) {
+                count += Long.bitCount(matches(buf.getLong(i), pattern));
+            }
+        }
+        for (; i < to; ++i) {
+            if (buf.get(i) == b) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param a bytes to search
+     * @param b the byte to search for
+     * @param from the index to start searching
+     * @param to the index to stop searching
+     * @return the index of the first <code>b</code> in <code>a[from, to)</code>. -1 if not found.
+     */
+    static int indexOf(@NonNull byte[] a, byte b, int from, int to) {
+        int i = from;
+        if (!SCALAR) {
+            long pattern = (b & 0xFFL) * ONES;
+            for (; i <= to - WORD; i += WORD) {
+                long m = matches((long)LONGS.get(a, i), pattern);
+                if (m != 0) {
+                    return i + first(m, false);
+                }
+            }
+        }
+        for (; i < to; ++i) {
+            if (a[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param a bytes to search
+     * @param b the byte to search for
+     * @param from the index to stop searching
+     * @param to the index to start searching backwards
+     * @return the index of the last <code>b</code> in <code>a[from, to)</code>. -1 if not found.
+     */
+    static int lastIndexOf(@NonNull byte[] a, byte b, int from, int to) {
+        int i = to;
+        if (!SCALAR) {
+            long pattern = (b & 0xFFL) * ONES;
+            for (; i - WORD >= from; i -= WORD) {
+                long m = matches((long)LONGS.get(a, i - WORD), pattern);
+                if (m != 0) {
+                    return i - WORD + last(m, false);
+                }
+            }
+        }
+        for (--i; i >= from; --i) {
+            if (a[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
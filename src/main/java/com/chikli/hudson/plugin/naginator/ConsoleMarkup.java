@@ -0,0 +1,139 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Removes markup embedded in console logs, so that regular expressions see only the text users read:
+ *
+ * <ul>
+ *   <li>Console notes (hyperlinks, timestamps and so on), encoded in base64
+ *       between <code>ESC [8mha:</code> and <code>ESC [0m</code>.</li>
+ *   <li>ANSI escape sequences, e.g. colors.</li>
+ * </ul>
+ *
+ * All markup starts with ESC, so lines without it are used as they are without copying.
+ * Applicable only to charsets compatible with ASCII, where bytes of ASCII characters never appear in other characters.
+ */
+final class ConsoleMarkup {
+    /**
+     * Set to <code>true</code> to match regular expressions against logs including markup.
+     */
+    static boolean DISABLED = SystemProperties.getBoolean(ConsoleMarkup.class.getName() + ".disabled");
+
+    static final char ESC = '\u001B';
+    private static final char BEL = '\u0007';
+
+    private static final String NOTE_PREAMBLE = ESC + "[8mha:";
+    private static final String NOTE_POSTAMBLE = ESC + "[0m";
+
+    private ConsoleMarkup() {
+    }
+
+    /**
+     * @return whether markup is removed before matching.
+     */
+    static boolean isStripped() {
+        return !DISABLED;
+    }
+
+    /**
+     * @param buf bytes of the log
+     * @param from the index to start searching
+     * @param to the index to stop searching
+     * @return the index of the first ESC in <code>buf[from, to)</code>. -1 if not found.
+     */
+    static int indexOfEscape(@NonNull ByteBuffer buf, int from, int to) {
+        return ByteSearch.indexOf(buf, (byte)ESC, from, to);
+    }
+
+    /**
+     * Removes markup from <code>chars[0, length)</code> in place.
+     *
+     * @param chars characters of a line
+     * @param length the number of characters
+     * @return the number of characters left.
+     */
+    static int strip(@NonNull char[] chars, int length) {
+        int in = 0;
+        while (in < length && chars[in] != ESC) {
+            ++in;
+        }
+        int out = in;
+        while (in < length) {
+            char c = chars[in];
+            if (c != ESC) {
+                chars[out++] = c;
+                ++in;
+                continue;
+            }
+            in = skip(chars, in, length);
+        }
+        return out;
+    }
+
+    /**
+     * @param chars characters of a line
+     * @param start the index of ESC
+     * @param length the number of characters
+     * @return the index after the markup starting at <code>start</code>.
+     */
+    private static int skip(@NonNull char[] chars, int start, int length) {
+        if (startsWith(chars, start, length, NOTE_PREAMBLE)) {
+            int end = indexOf(chars, start + NOTE_PREAMBLE.length(), length, NOTE_POSTAMBLE);
+            if (end >= 0) {
+                return end + NOTE_POSTAMBLE.length();
+            }
+            // not terminated in this line: only the escape sequence is removed like the other ones.
+        }
+        int i = start + 1;
+        if (i >= length) {
+            return length;
+        }
+        char c = chars[i++];
+        if (c == '[') {
+            // CSI: parameters, intermediates and a final character.
+            while (i < length && chars[i] >= 0x20 && chars[i] <= 0x3F) {
+                ++i;
+            }
+            return (i < length && chars[i] >= 0x40 && chars[i] <= 0x7E) ? i + 1 : i;
+        }
+        if (c == ']') {
+            // OSC, e.g. hyperlinks: terminated with BEL or ESC \.
+            for (; i < length; ++i) {
+                if (chars[i] == BEL) {
+                    return i + 1;
+                }
+                if (chars[i] == ESC && i + 1 < length && chars[i + 1] == '\\') {
+                    return i + 2;
+                }
+            }
+            return length;
+        }
+        // other sequences of ESC and a character.
+        return (c >= 0x20 && c <= 0x7E) ? i : i - 1;
+    }
+
+    private static boolean startsWith(@NonNull char[] chars, int start, int length, @NonNull String prefix) {
+        if (length - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); ++i) {
+            if (chars[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(@NonNull char[] chars, int from, int length, @NonNull String s) {
+        for (int i = from; i <= length - s.length(); ++i) {
+            if (startsWith(chars, i, length, s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
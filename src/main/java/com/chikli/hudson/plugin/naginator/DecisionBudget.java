@@ -0,0 +1,169 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The time {@link NaginatorListener} can spend deciding whether to reschedule a completed build,
+ * covering counting previous retries, all {@link NaginatorScheduleAction}s, children of matrix builds and log scans.
+ *
+ * The budget is exhausted by the first step finding it over, which is recorded to tell in the log of the build.
+ * Once exhausted, no more reschedules are started for the decision,
+ * and {@link DecisionBudgetPolicy} decides what to do instead.
+ *
+ * Log scans started on the thread deciding find the budget with {@link #current()}.
+ */
+final class DecisionBudget {
+    /**
+     * Never exhausted, and keeps no state.
+     */
+    static final DecisionBudget NONE = new DecisionBudget(0);
+
+    private static final ThreadLocal<DecisionBudget> CURRENT = new ThreadLocal<>();
+
+    private final long budgetMs;
+    private final long deadlineNanos;
+
+    // guarded by this
+    @CheckForNull
+    private String exhaustedBy;
+    private boolean scheduled;
+
+    private DecisionBudget(long budgetMs) {
+        this.budgetMs = Math.max(0, budgetMs);
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.budgetMs);
+    }
+
+    /**
+     * @param budgetMs milliseconds from now. 0 or less for no budget.
+     * @return the budget.
+     */
+    @NonNull
+    static DecisionBudget start(long budgetMs) {
+        return (budgetMs > 0) ? new DecisionBudget(budgetMs) : NONE;
+    }
+
+    /**
+     * @return the budget of the decision running on this thread. {@link #NONE} if none.
+     */
+    @NonNull
+    static DecisionBudget current() {
+        DecisionBudget budget = CURRENT.get();
+        return (budget != null) ? budget : NONE;
+    }
+
+    /**
+     * Runs a step of the decision with this budget as {@link #current()}.
+     *
+     * @param step the step to run
+     * @param <T> the type of the result
+     * @return the result of the step.
+     */
+    <T> T call(@NonNull Supplier<T> step) {
+        DecisionBudget previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return step.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * @return milliseconds of the budget. 0 for no budget.
+     */
+    long getBudgetMs() {
+        return budgetMs;
+    }
+
+    boolean isLimited() {
+        return budgetMs > 0;
+    }
+
+    /**
+     * @return milliseconds left. {@link Long#MAX_VALUE} for no budget.
+     */
+    long getRemainingMs() {
+        if (!isLimited()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * @param timeoutMs a timeout of a step. 0 or less for no timeout.
+     * @return the timeout not exceeding the budget left. 0 or less for no timeout.
+     */
+    long limit(long timeoutMs) {
+        if (!isLimited()) {
+            return timeoutMs;
+        }
+        // at least 1 ms not to be taken for no timeout.
+        long remaining = Math.max(1, getRemainingMs());
+        return (timeoutMs > 0) ? Math.min(timeoutMs, remaining) : remaining;
+    }
+
+    /**
+     * Exhausts the budget if the time is over.
+     *
+     * @param step what the decision is doing, to tell in the log of the build
+     * @return whether the budget is exhausted.
+     */
+    boolean check(@NonNull String step) {
+        if (isLimited() && System.nanoTime() - deadlineNanos >= 0) {
+            exhaust(step);
+        }
+        return isExhausted();
+    }
+
+    /**
+     * @param step what the decision was doing, to tell in the log of the build
+     * @return <code>false</code> if already exhausted.
+     */
+    synchronized boolean exhaust(@NonNull String step) {
+        if (!isLimited() || exhaustedBy != null) {
+            return false;
+        }
+        exhaustedBy = step;
+        return true;
+    }
+
+    synchronized boolean isExhausted() {
+        return exhaustedBy != null;
+    }
+
+    /**
+     * @return what the decision was doing when the budget was exhausted. <code>null</code> if not exhausted.
+     */
+    @CheckForNull
+    synchronized String getExhaustedBy() {
+        return exhaustedBy;
+    }
+
+    /**
+     * Called before rescheduling the build for the decision.
+     *
+     * @return <code>false</code> if the budget is already exhausted and the build shouldn't be rescheduled.
+     */
+    synchronized boolean beginSchedule() {
+        if (exhaustedBy != null) {
+            return false;
+        }
+        scheduled = isLimited();
+        return true;
+    }
+
+    /**
+     * @return whether the build was rescheduled for the decision. Always <code>false</code> for no budget.
+     */
+    synchronized boolean isScheduled() {
+        return scheduled;
+    }
+}
@@ -0,0 +1,39 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jvnet.localizer.Localizable;
+
+/**
+ * What to do when deciding whether to reschedule a build exhausts the decision budget.
+ *
+ * @see NaginatorPublisher.DescriptorImpl#getDecisionBudgetMs()
+ */
+public enum DecisionBudgetPolicy {
+    /**
+     * Reschedules the build as if all conditions passed, within the maximum times to reschedule.
+     */
+    Retry(Messages._DecisionBudgetPolicy_Retry()),
+    /**
+     * Doesn't reschedule the build.
+     */
+    Skip(Messages._DecisionBudgetPolicy_Skip()),
+    /**
+     * Decides again in the background with {@link RetryEvaluator}, without the budget.
+     */
+    Defer(Messages._DecisionBudgetPolicy_Defer()),
+    ;
+    private final Localizable displayName;
+    
+    private DecisionBudgetPolicy(Localizable displayName) {
+        this.displayName = displayName;
+    }
+    
+    public String getDisplayName() {
+        return displayName.toString();
+    }
+    
+    @NonNull
+    public static DecisionBudgetPolicy getDefault() {
+        return Defer;
+    }
+}
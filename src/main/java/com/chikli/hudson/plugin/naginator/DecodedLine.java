@@ -0,0 +1,242 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A line decoded from bytes into a reusable buffer.
+ *
+ * Decoding the next line overwrites the previous one,
+ * so scanning a log doesn't allocate objects for each line.
+ * Lines consisting only of ASCII characters are widened without the decoder.
+ * Console notes and ANSI escape sequences are removed while decoding, see {@link ConsoleMarkup}.
+ *
+ * Applicable only to charsets compatible with ASCII.
+ * See {@link LogScanner#isAsciiCompatible(Charset)}.
+ */
+final class DecodedLine implements CharSequence {
+    private final CharsetDecoder decoder;
+    private final boolean latin1;
+    private final boolean stripMarkup;
+
+    private char[] chars = new char[256];
+    private CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private int length;
+
+    /**
+     * Reads of characters allowed for each line: <code>budgetBase + budgetPerChar * length</code>.
+     * Disabled if <code>budgetBase</code> is 0.
+     */
+    private long budgetBase;
+    private long budgetPerChar;
+    private long remaining;
+
+    @NonNull
+    private ScanDeadline deadline = ScanDeadline.NONE;
+    /**
+     * Reads of characters until the next check of {@link #deadline}.
+     */
+    private int untilCheck = ScanDeadline.CHECK_INTERVAL;
+
+    /**
+     * Reused to decode byte arrays.
+     */
+    private byte[] wrappedArray;
+    private ByteBuffer wrappedBuffer;
+
+    DecodedLine(@NonNull Charset charset) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.latin1 = StandardCharsets.ISO_8859_1.equals(charset);
+        this.stripMarkup = ConsoleMarkup.isStripped();
+    }
+
+    /**
+     * Limits reads of characters by regular expression engines for each line,
+     * to give up lines causing catastrophic backtracking.
+     * {@link #charAt(int)} throws {@link BudgetExceededException} when exceeded.
+     *
+     * @param base reads allowed for each line
+     * @param perChar reads allowed for each character of the line in addition to <code>base</code>
+     */
+    void setStepBudget(long base, long perChar) {
+        this.budgetBase = base;
+        this.budgetPerChar = perChar;
+    }
+
+    /**
+     * {@link #charAt(int)} throws {@link ScanDeadline.ExceededException} when the deadline passed.
+     *
+     * @param deadline when to give up
+     */
+    void setDeadline(@NonNull ScanDeadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Decodes <code>src[from, to)</code>.
+     * The position and the limit of <code>src</code> are preserved.
+     *
+     * @param src bytes to decode
+     * @param from the index of the first byte
+     * @param to the index after the last byte
+     * @return this line
+     */
+    @NonNull
+    DecodedLine decode(@NonNull ByteBuffer src, int from, int to) {
+        int len = to - from;
+        ensureCapacity((int)Math.ceil(len * (double)decoder.maxCharsPerByte()));
+        int i = 0;
+        boolean markup = false;
+        for (; i < len; ++i) {
+            byte b = src.get(from + i);
+            if (b < 0 && !latin1) {
+                break;
+            }
+            markup |= (b == ConsoleMarkup.ESC);
+            chars[i] = (char)(b & 0xFF);
+        }
+        if (i == len) {
+            setLength((markup && stripMarkup) ? ConsoleMarkup.strip(chars, len) : len);
+            return this;
+        }
+
+        // contains non-ASCII characters.
+        int position = src.position();
+        int limit = src.limit();
+        try {
+            src.limit(to).position(from);
+            decodeWithDecoder(src, len);
+            if (stripMarkup) {
+                setLength(ConsoleMarkup.strip(chars, length));
+            }
+        } finally {
+            src.limit(limit).position(position);
+        }
+        return this;
+    }
+
+    /**
+     * Decodes <code>src[from, to)</code>.
+     *
+     * @param src bytes to decode
+     * @param from the index of the first byte
+     * @param to the index after the last byte
+     * @return this line
+     */
+    @NonNull
+    DecodedLine decode(@NonNull byte[] src, int from, int to) {
+        if (wrappedArray != src) {
+            wrappedArray = src;
+            wrappedBuffer = ByteBuffer.wrap(src);
+        }
+        wrappedBuffer.clear();
+        return decode(wrappedBuffer, from, to);
+    }
+
+    /**
+     * Copies a line already decoded, to remove markup from it.
+     * Applicable also to charsets not compatible with ASCII.
+     *
+     * @param line the line
+     * @return this line
+     */
+    @NonNull
+    DecodedLine set(@NonNull CharSequence line) {
+        int len = line.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; ++i) {
+            chars[i] = line.charAt(i);
+        }
+        setLength(stripMarkup ? ConsoleMarkup.strip(chars, len) : len);
+        return this;
+    }
+
+    private void decodeWithDecoder(ByteBuffer in, int len) {
+        while (true) {
+            decoder.reset();
+            charBuffer.clear();
+            CoderResult result = decoder.decode(in, charBuffer, true);
+            if (!result.isOverflow()) {
+                result = decoder.flush(charBuffer);
+            }
+            if (!result.isOverflow()) {
+                break;
+            }
+            // should not happen for ASCII compatible charsets.
+            in.position(in.limit() - len);
+            ensureCapacity(chars.length * 2);
+        }
+        setLength(charBuffer.position());
+    }
+
+    private void setLength(int length) {
+        this.length = length;
+        this.remaining = budgetBase + budgetPerChar * length;
+    }
+
+    private void ensureCapacity(int required) {
+        if (chars.length >= required) {
+            return;
+        }
+        int newSize = chars.length;
+        while (newSize < required) {
+            newSize *= 2;
+        }
+        chars = new char[newSize];
+        charBuffer = CharBuffer.wrap(chars);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--untilCheck < 0) {
+            untilCheck = ScanDeadline.CHECK_INTERVAL;
+            deadline.check();
+        }
+        if (budgetBase > 0 && --remaining < 0) {
+            throw BudgetExceededException.INSTANCE;
+        }
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return chars[index];
+    }
+
+    @NonNull
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Thrown when the regular expression engine read characters of a line more than allowed.
+     * See {@link #setStepBudget(long, long)}.
+     */
+    static final class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final BudgetExceededException INSTANCE = new BudgetExceededException();
+
+        private BudgetExceededException() {
+            super("Too many steps for a line", null, false, false);
+        }
+    }
+}
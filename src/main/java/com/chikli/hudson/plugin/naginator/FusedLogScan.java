@@ -0,0 +1,193 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scans the log of a build once for the regular expressions of all {@link NaginatorPublisherScheduleAction}s of the build,
+ * instead of each action reading the whole log again.
+ *
+ * Created by {@link NaginatorListener} for the actions going to scan the log of the build,
+ * and found by the actions with {@link #current()} while they decide on the same thread.
+ * The log is scanned when the first action needs it,
+ * for that action and all other actions scanning the log the same way,
+ * each as a group of {@link SignatureSet#union(List)}, so that each action gets the result of its own.
+ */
+final class FusedLogScan {
+    private static final Logger LOGGER = Logger.getLogger(FusedLogScan.class.getName());
+
+    /**
+     * Scans nothing, and each action scans the log by itself.
+     */
+    static final FusedLogScan NONE = new FusedLogScan(null, Collections.emptyList());
+
+    private static final ThreadLocal<FusedLogScan> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Scans the log for signatures.
+     */
+    @FunctionalInterface
+    interface LogScan {
+        /**
+         * @param signatures signatures to scan for
+         * @return the result. Not {@link ScanResult#isCompleted() completed} if gave up.
+         * @throws IOException failed to read the log
+         */
+        @NonNull
+        ScanResult scan(@NonNull SignatureSet signatures) throws IOException;
+    }
+
+    @CheckForNull
+    private final Run<?, ?> run;
+    private final List<NaginatorPublisherScheduleAction> actions;
+
+    /**
+     * Results of actions scanned together, keyed by the action.
+     * Guarded by <code>this</code>.
+     */
+    private final Map<NaginatorPublisherScheduleAction, ScanResult> results = new IdentityHashMap<>();
+
+    private FusedLogScan(@CheckForNull Run<?, ?> run, @NonNull List<NaginatorPublisherScheduleAction> actions) {
+        this.run = run;
+        this.actions = actions;
+    }
+
+    /**
+     * Gathers actions going to scan the log of the build.
+     * Actions not rescheduling the build for its result or the retry count are left out,
+     * without running {@link RetryPredicate}s the actions run again when deciding.
+     * Actions left out by other predicates only add signatures to the scan.
+     *
+     * @param run the build to decide
+     * @param actions actions of the build
+     * @param retryCount the count the build is rescheduled
+     * @return the scan for the actions. {@link #NONE} if less than two actions scan the log.
+     */
+    @NonNull
+    static FusedLogScan of(
+            @NonNull Run<?, ?> run,
+            @NonNull List<? extends NaginatorScheduleAction> actions,
+            int retryCount
+    ) {
+        List<NaginatorPublisherScheduleAction> scanning = new ArrayList<>();
+        for (NaginatorScheduleAction action : actions) {
+            if (action instanceof NaginatorPublisherScheduleAction a
+                    && a.scansLogOf(run)
+                    && a.checkCommonScheduleThreshold(run)
+                    && (a.getMaxSchedule() <= 0 || retryCount < a.getMaxSchedule())) {
+                scanning.add(a);
+            }
+        }
+        if (scanning.size() < 2) {
+            return NONE;
+        }
+        return new FusedLogScan(run, scanning);
+    }
+
+    /**
+     * @return the scan for the build deciding on this thread. {@link #NONE} if none.
+     */
+    @NonNull
+    static FusedLogScan current() {
+        FusedLogScan scan = CURRENT.get();
+        return (scan != null) ? scan : NONE;
+    }
+
+    /**
+     * Runs a step of the decision with this scan as {@link #current()}.
+     *
+     * @param step the step to run
+     * @param <T> the type of the result
+     * @return the result of the step.
+     */
+    <T> T call(@NonNull Supplier<T> step) {
+        if (this == NONE) {
+            return step.get();
+        }
+        FusedLogScan previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return step.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Scans the log for the action and other actions not scanned yet, if not scanned yet.
+     * Only results completed are kept for other actions,
+     * and the actions scan the log by themselves if the scan gave up.
+     *
+     * @param action the action to test the log for
+     * @param run the build to test. Can be a child of the build.
+     * @param signatures the signatures of the action
+     * @param scan scans the log as the action does
+     * @return the result for the action. <code>null</code> if the action should scan the log by itself.
+     * @throws IOException failed to read the log
+     */
+    @CheckForNull
+    synchronized ScanResult scan(
+            @NonNull NaginatorPublisherScheduleAction action,
+            @NonNull Run<?, ?> run,
+            @NonNull SignatureSet signatures,
+            @NonNull LogScan scan
+    ) throws IOException {
+        if (run != this.run || !contains(action)) {
+            return null;
+        }
+        ScanResult result = results.get(action);
+        if (result != null) {
+            return result;
+        }
+        List<NaginatorPublisherScheduleAction> members = new ArrayList<>();
+        List<SignatureSet> sets = new ArrayList<>();
+        members.add(action);
+        sets.add(signatures);
+        for (NaginatorPublisherScheduleAction a : actions) {
+            if (a == action || results.containsKey(a) || !a.isScannedLike(action)) {
+                continue;
+            }
+            SignatureSet s = a.compileSignatures();
+            if (s == null || s.isEmpty()) {
+                continue;
+            }
+            members.add(a);
+            sets.add(s);
+        }
+        if (members.size() < 2) {
+            return null;
+        }
+        LOGGER.log(Level.FINE, "Scanning the log of {0} once for {1} actions", new Object[]{run, members.size()});
+        ScanResult fused = scan.scan(SignatureSet.union(sets));
+        for (int i = 1; i < members.size(); ++i) {
+            if (fused.getGroup(i).isCompleted()) {
+                results.put(members.get(i), fused.getGroup(i));
+            }
+        }
+        return fused.getGroup(0);
+    }
+
+    private boolean contains(@NonNull NaginatorPublisherScheduleAction action) {
+        for (NaginatorPublisherScheduleAction a : actions) {
+            if (a == action) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
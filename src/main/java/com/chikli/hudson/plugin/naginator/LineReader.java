@@ -0,0 +1,116 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads lines like {@link java.io.BufferedReader#readLine()},
+ * but never keeps more than <code>maxLength</code> characters of a line.
+ *
+ * A longer line is returned in segments of <code>maxLength</code> characters,
+ * each starting with the last <code>overlap</code> characters of the previous one,
+ * so that matches shorter than <code>overlap</code> are found even across segments.
+ * Lines are terminated with LF, CR or CRLF.
+ */
+final class LineReader implements Closeable {
+    private final Reader in;
+    private final int maxLength;
+    private final int overlap;
+
+    private final char[] buf = new char[8192];
+    private int bufPos;
+    private int bufLimit;
+
+    private char[] line = new char[256];
+    private int length;
+
+    /**
+     * Whether the last line returned was cut at {@link #maxLength}.
+     */
+    private boolean cut;
+    private boolean continued;
+    private boolean skipLF;
+
+    /**
+     * @param in the reader to read from
+     * @param maxLength characters of a line to return at most
+     * @param overlap characters segments of a long line overlap by. Less than <code>maxLength</code>.
+     */
+    LineReader(@NonNull Reader in, int maxLength, int overlap) {
+        if (maxLength <= 0 || overlap < 0 || overlap >= maxLength) {
+            throw new IllegalArgumentException(String.format("Invalid segments: %d overlapping by %d", maxLength, overlap));
+        }
+        this.in = in;
+        this.maxLength = maxLength;
+        this.overlap = overlap;
+    }
+
+    /**
+     * @return the next line or the next segment of a long line without the terminator.
+     *     <code>null</code> at the end.
+     * @throws IOException failed to read
+     */
+    @CheckForNull
+    String readLine() throws IOException {
+        continued = cut;
+        cut = false;
+        if (continued) {
+            System.arraycopy(line, length - overlap, line, 0, overlap);
+            length = overlap;
+        } else {
+            length = 0;
+        }
+        boolean read = false;
+        while (true) {
+            if (bufPos >= bufLimit) {
+                bufLimit = in.read(buf, 0, buf.length);
+                bufPos = 0;
+                if (bufLimit <= 0) {
+                    bufLimit = 0;
+                    return read ? new String(line, 0, length) : null;
+                }
+            }
+            char c = buf[bufPos++];
+            if (skipLF) {
+                skipLF = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            read = true;
+            if (c == '\n') {
+                return new String(line, 0, length);
+            }
+            if (c == '\r') {
+                skipLF = true;
+                return new String(line, 0, length);
+            }
+            if (length == line.length) {
+                char[] newLine = new char[Math.min(line.length * 2, maxLength)];
+                System.arraycopy(line, 0, newLine, 0, length);
+                line = newLine;
+            }
+            line[length++] = c;
+            if (length >= maxLength) {
+                cut = true;
+                return new String(line, 0, length);
+            }
+        }
+    }
+
+    /**
+     * @return whether the last line returned continues the previous one, cut as it was too long.
+     */
+    boolean isContinued() {
+        return continued;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,251 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+/**
+ * The last lines of a log joined with LF, to match regular expressions across lines.
+ *
+ * Characters are kept in a reusable ring buffer and lines are dropped from the front as new ones come,
+ * so the memory used depends only on the size of the window, not on the size of the log.
+ * The window holds at most the given number of lines and {@link #MAX_CHARS} characters,
+ * but always the whole last line.
+ * The last line is not terminated with LF.
+ */
+final class LineWindow implements CharSequence {
+    /**
+     * Characters to keep at most, except for the last line.
+     */
+    static int MAX_CHARS = SystemProperties.getInteger(LineWindow.class.getName() + ".maxChars", 64 * 1024);
+
+    private final int maxLines;
+    private final int maxChars;
+
+    /**
+     * Characters are addressed with positions counted from the beginning of the log,
+     * and stored at <code>ring[position &amp; mask]</code>.
+     */
+    private char[] ring = new char[1024];
+    private int mask = ring.length - 1;
+    /**
+     * The position of the first character of the window.
+     */
+    private long start;
+    /**
+     * The position after the last character of the window.
+     */
+    private long end;
+
+    /**
+     * The positions of the first characters of lines, in a ring of {@link #maxLines} entries.
+     */
+    private final long[] lineStarts;
+    /**
+     * The offsets in bytes of lines in the log.
+     */
+    private final long[] lineOffsets;
+    private int firstLine;
+    private int lines;
+    private long appended;
+
+    private final LastLine lastLine = new LastLine();
+
+    @NonNull
+    private ScanDeadline deadline = ScanDeadline.NONE;
+    private int untilCheck = ScanDeadline.CHECK_INTERVAL;
+
+    /**
+     * @param maxLines lines to keep at most.
+     */
+    LineWindow(int maxLines) {
+        this(maxLines, MAX_CHARS);
+    }
+
+    /**
+     * @param maxLines lines to keep at most.
+     * @param maxChars characters to keep at most, except for the last line.
+     */
+    LineWindow(int maxLines, int maxChars) {
+        this.maxLines = Math.max(1, maxLines);
+        this.maxChars = Math.max(1, maxChars);
+        this.lineStarts = new long[this.maxLines];
+        this.lineOffsets = new long[this.maxLines];
+    }
+
+    /**
+     * {@link #charAt(int)} throws {@link ScanDeadline.ExceededException} when the deadline passed.
+     *
+     * @param deadline when to give up
+     */
+    void setDeadline(@NonNull ScanDeadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Appends a line, dropping the oldest lines exceeding the limits.
+     *
+     * @param line the line without the line terminator
+     * @param offset the offset in bytes of the line in the log. -1 if unknown.
+     */
+    void append(@NonNull CharSequence line, long offset) {
+        int len = line.length();
+        while (lines > 0 && (lines >= maxLines || (end - lineStarts[firstLine]) + 1 + len > maxChars)) {
+            dropFirstLine();
+        }
+        long lineStart = (lines > 0) ? end + 1 : end;
+        ensureCapacity((int)(lineStart - start) + len);
+        if (lines > 0) {
+            ring[(int)(end & mask)] = '\n';
+        }
+        for (int i = 0; i < len; ++i) {
+            ring[(int)((lineStart + i) & mask)] = line.charAt(i);
+        }
+        if (lines == 0) {
+            start = lineStart;
+        }
+        end = lineStart + len;
+        int index = (firstLine + lines) % maxLines;
+        lineStarts[index] = lineStart;
+        lineOffsets[index] = offset;
+        ++lines;
+        ++appended;
+    }
+
+    private void dropFirstLine() {
+        firstLine = (firstLine + 1) % maxLines;
+        --lines;
+        start = (lines > 0) ? lineStarts[firstLine] : end;
+    }
+
+    private void ensureCapacity(int required) {
+        if (ring.length >= required) {
+            return;
+        }
+        int newSize = ring.length;
+        while (newSize < required) {
+            newSize *= 2;
+        }
+        char[] newRing = new char[newSize];
+        int newMask = newSize - 1;
+        for (long p = start; p < end; ++p) {
+            newRing[(int)(p & newMask)] = ring[(int)(p & mask)];
+        }
+        ring = newRing;
+        mask = newMask;
+    }
+
+    /**
+     * Forgets all lines.
+     */
+    void clear() {
+        lines = 0;
+        start = end;
+    }
+
+    /**
+     * @return the number of lines in the window.
+     */
+    int getLines() {
+        return lines;
+    }
+
+    /**
+     * @return the number of lines appended so far, including ones already dropped.
+     */
+    long getAppended() {
+        return appended;
+    }
+
+    /**
+     * @return the last line appended. Valid until the next line is appended.
+     */
+    @NonNull
+    CharSequence getLastLine() {
+        return lastLine;
+    }
+
+    /**
+     * @return the offset in bytes of the last line in the log. -1 if unknown or empty.
+     */
+    long getLastLineOffset() {
+        return (lines > 0) ? lineOffsets[(firstLine + lines - 1) % maxLines] : -1;
+    }
+
+    @Override
+    public int length() {
+        return (int)(end - start);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return get(start + index);
+    }
+
+    private char get(long position) {
+        if (--untilCheck < 0) {
+            untilCheck = ScanDeadline.CHECK_INTERVAL;
+            deadline.check();
+        }
+        return ring[(int)(position & mask)];
+    }
+
+    @NonNull
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return copy(start + from, start + to);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return copy(start, end);
+    }
+
+    @NonNull
+    private String copy(long from, long to) {
+        StringBuilder sb = new StringBuilder((int)(to - from));
+        for (long p = from; p < to; ++p) {
+            sb.append(ring[(int)(p & mask)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A view of the last line in the ring buffer.
+     */
+    private final class LastLine implements CharSequence {
+        private long lineStart() {
+            return (lines > 0) ? lineStarts[(firstLine + lines - 1) % maxLines] : end;
+        }
+
+        @Override
+        public int length() {
+            return (int)(end - lineStart());
+        }
+
+        @Override
+        public char charAt(int index) {
+            long lineStart = lineStart();
+            if (index < 0 || index >= end - lineStart) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return get(lineStart + index);
+        }
+
+        @NonNull
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            long lineStart = lineStart();
+            return copy(lineStart + from, lineStart + to);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return copy(lineStart(), end);
+        }
+    }
+}
@@ -0,0 +1,1044 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A regular expression matched in time linear to the length of the input,
+ * by simulating a nondeterministic automaton rather than backtracking like {@link java.util.regex}.
+ *
+ * Supports the subset of the syntax of {@link Pattern} common in signatures of failures:
+ * literals, character classes, <code>.</code>, groups, alternatives, quantifiers,
+ * <code>^</code>, <code>$</code>, <code>\b</code>,
+ * and flags <code>i</code> (for ASCII), <code>m</code> and <code>s</code>.
+ * Only tells whether the input contains a match, as {@link java.util.regex.Matcher#find()} does.
+ * {@link #compile(String, int)} gives up for anything else,
+ * e.g. back references, look-arounds, possessive quantifiers and Unicode properties,
+ * and such regular expressions should be matched with {@link java.util.regex}.
+ *
+ * Repeated groups that can match the empty string may find matches {@link java.util.regex} doesn't,
+ * e.g. <code>(\b|x){2}y</code> in <code>xy</code>,
+ * as {@link java.util.regex} gives up some paths through iterations matching empty.
+ */
+final class LinearRegexp {
+    /**
+     * Gives up regular expressions compiled to more instructions than this,
+     * e.g. with large counts of repetitions.
+     * Time to match is proportional to this for each character.
+     */
+    static final int MAX_PROGRAM_SIZE = 10000;
+
+    /**
+     * Whether {@link java.util.regex} treats non-ASCII letters as word characters for <code>\b</code>,
+     * which depends on the version of Java.
+     */
+    private static final boolean UNICODE_WORD_BOUNDARY = Pattern.compile("\\b").matcher("\u00E9").find();
+
+    // instructions
+    private static final int CHAR = 0;
+    private static final int CHAR_IGNORE_CASE = 1;
+    private static final int ANY = 2;
+    private static final int ANY_BUT_LINE_TERMINATOR = 3;
+    private static final int CLASS = 4;
+    private static final int SPLIT = 5;
+    private static final int JUMP = 6;
+    private static final int ASSERT = 7;
+    private static final int MATCH = 8;
+
+    // assertions
+    private static final int BEGIN = 0;
+    private static final int BEGIN_LINE = 1;
+    private static final int END = 2;
+    private static final int END_LINE = 3;
+    private static final int END_INPUT = 4;
+    private static final int WORD_BOUNDARY = 5;
+    private static final int NOT_WORD_BOUNDARY = 6;
+
+    private final String regexp;
+    private final int[] ops;
+    private final int[] args;
+    private final int[] args2;
+    private final CharClass[] classes;
+    /**
+     * Whether matches can start only at the beginning of the input.
+     */
+    private final boolean anchored;
+
+    private LinearRegexp(String regexp, int[] ops, int[] args, int[] args2, CharClass[] classes) {
+        this.regexp = regexp;
+        this.ops = ops;
+        this.args = args;
+        this.args2 = args2;
+        this.classes = classes;
+        this.anchored = ops[0] == ASSERT && args[0] == BEGIN;
+    }
+
+    /**
+     * Takes the flags rather than a {@link Pattern},
+     * as {@link Pattern#flags()} may include flags set inside the regular expression like <code>(?i)</code>.
+     *
+     * @param regexp a regular expression. Must be valid for {@link Pattern}.
+     * @param flags flags of {@link Pattern}
+     * @return the regular expression to match in linear time.
+     *     <code>null</code> if it uses features not supported.
+     */
+    @CheckForNull
+    static LinearRegexp compile(@NonNull String regexp, int flags) {
+        int unsupported = Pattern.COMMENTS | Pattern.UNICODE_CASE | Pattern.UNICODE_CHARACTER_CLASS
+                | Pattern.CANON_EQ | Pattern.UNIX_LINES;
+        if ((flags & unsupported) != 0) {
+            return null;
+        }
+        try {
+            Node node;
+            if ((flags & Pattern.LITERAL) != 0) {
+                node = Parser.literal(regexp, (flags & Pattern.CASE_INSENSITIVE) != 0);
+            } else {
+                node = new Parser(regexp, flags).parse();
+            }
+            Compiler compiler = new Compiler();
+            compiler.compile(node);
+            compiler.emit(MATCH, 0, 0);
+            return compiler.build(regexp);
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a new matcher. Reuse it for each input.
+     */
+    @NonNull
+    Matcher matcher() {
+        return new Matcher();
+    }
+
+    @Override
+    public String toString() {
+        return regexp;
+    }
+
+    /**
+     * Runs all possible paths through the program in lockstep, one character at a time.
+     * Reads each character of the input only once, through {@link CharSequence#charAt(int)}
+     * so that {@link DecodedLine} can still check the deadline of the scan.
+     *
+     * Not thread safe.
+     */
+    final class Matcher {
+        private final SparseSet current = new SparseSet(ops.length);
+        private final SparseSet next = new SparseSet(ops.length);
+        private final int[] stack = new int[ops.length];
+        private CharSequence input;
+
+        private Matcher() {
+        }
+
+        /**
+         * @param input text to search
+         * @return whether the text contains a match.
+         */
+        boolean find(@NonNull CharSequence input) {
+            this.input = input;
+            try {
+                return run();
+            } finally {
+                this.input = null;
+            }
+        }
+
+        private boolean run() {
+            SparseSet clist = current;
+            SparseSet nlist = next;
+            clist.clear();
+            int length = input.length();
+            int pos = 0;
+            while (true) {
+                if ((!anchored || pos == 0) && follow(clist, 0, pos)) {
+                    return true;
+                }
+                if (pos >= length || (anchored && clist.size == 0)) {
+                    return false;
+                }
+                int c = Character.codePointAt(input, pos);
+                int nextPos = pos + Character.charCount(c);
+                nlist.clear();
+                for (int i = 0; i < clist.size; ++i) {
+                    int pc = clist.dense[i];
+                    if (accepts(pc, c) && follow(nlist, pc + 1, nextPos)) {
+                        return true;
+                    }
+                }
+                SparseSet tmp = clist;
+                clist = nlist;
+                nlist = tmp;
+                pos = nextPos;
+            }
+        }
+
+        private boolean accepts(int pc, int c) {
+            switch (ops[pc]) {
+            case CHAR:
+                return c == args[pc];
+            case CHAR_IGNORE_CASE:
+                return c == args[pc] || toLowerAscii(c) == args[pc];
+            case ANY:
+                return true;
+            case ANY_BUT_LINE_TERMINATOR:
+                return !isLineTerminator(c);
+            case CLASS:
+                return classes[args[pc]].matches(c);
+            default:
+                // not consuming characters.
+                return false;
+            }
+        }
+
+        /**
+         * Adds the instructions reachable from <code>pc</code> without reading characters.
+         *
+         * @return whether a match is reached.
+         */
+        private boolean follow(SparseSet list, int pc, int pos) {
+            if (list.contains(pc)) {
+                return false;
+            }
+            int sp = 0;
+            list.add(pc);
+            stack[sp++] = pc;
+            while (sp > 0) {
+                pc = stack[--sp];
+                int target;
+                switch (ops[pc]) {
+                case MATCH:
+                    return true;
+                case JUMP:
+                    target = args[pc];
+                    break;
+                case SPLIT:
+                    if (!list.contains(args2[pc])) {
+                        list.add(args2[pc]);
+                        stack[sp++] = args2[pc];
+                    }
+                    target = args[pc];
+                    break;
+                case ASSERT:
+                    if (!check(args[pc], pos)) {
+                        continue;
+                    }
+                    target = pc + 1;
+                    break;
+                default:
+                    continue;
+                }
+                if (!list.contains(target)) {
+                    list.add(target);
+                    stack[sp++] = target;
+                }
+            }
+            return false;
+        }
+
+        private boolean check(int assertion, int pos) {
+            int length = input.length();
+            switch (assertion) {
+            case BEGIN:
+                return pos == 0;
+            case BEGIN_LINE: {
+                if (pos == length) {
+                    // not at the end even after a line terminator.
+                    return false;
+                }
+                if (pos == 0) {
+                    return true;
+                }
+                char prev = input.charAt(pos - 1);
+                if (!isLineTerminator(prev)) {
+                    return false;
+                }
+                // not between \r\n
+                return !(prev == '\r' && input.charAt(pos) == '\n');
+            }
+            case END:
+                if (pos == length) {
+                    return true;
+                }
+                if (pos == length - 2) {
+                    return input.charAt(pos) == '\r' && input.charAt(pos + 1) == '\n';
+                }
+                return pos == length - 1 && isLineTerminatorAt(pos);
+            case END_LINE:
+                return pos == length || isLineTerminatorAt(pos);
+            case END_INPUT:
+                return pos == length;
+            case WORD_BOUNDARY:
+                return isWordBefore(pos) != isWordAt(pos);
+            case NOT_WORD_BOUNDARY:
+                return isWordBefore(pos) == isWordAt(pos);
+            default:
+                throw new IllegalStateException("unknown assertion: " + assertion);
+            }
+        }
+
+        private boolean isLineTerminatorAt(int pos) {
+            char c = input.charAt(pos);
+            if (c == '\n') {
+                // not between \r\n
+                return pos == 0 || input.charAt(pos - 1) != '\r';
+            }
+            return isLineTerminator(c);
+        }
+
+        private boolean isWordBefore(int pos) {
+            if (pos == 0) {
+                return false;
+            }
+            int c = Character.codePointBefore(input, pos);
+            return isWord(c) || (Character.getType(c) == Character.NON_SPACING_MARK && hasBaseCharacter(pos - 1));
+        }
+
+        private boolean isWordAt(int pos) {
+            if (pos >= input.length()) {
+                return false;
+            }
+            int c = Character.codePointAt(input, pos);
+            return isWord(c) || (Character.getType(c) == Character.NON_SPACING_MARK && hasBaseCharacter(pos));
+        }
+
+        /**
+         * @return whether the combining marks at <code>pos</code> follow a letter or a digit.
+         */
+        private boolean hasBaseCharacter(int pos) {
+            for (int i = pos; i >= 0; --i) {
+                int c = Character.codePointAt(input, i);
+                if (Character.isLetterOrDigit(c)) {
+                    return true;
+                }
+                if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isWord(int c) {
+        if (UNICODE_WORD_BOUNDARY) {
+            return c == '_' || Character.isLetterOrDigit(c);
+        }
+        return c == '_' || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int toLowerAscii(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+    }
+
+    private static int toUpperAscii(int c) {
+        return (c >= 'a' && c <= 'z') ? c - ('a' - 'A') : c;
+    }
+
+    /**
+     * Sets of instructions allowing to clear in constant time.
+     */
+    private static final class SparseSet {
+        private final int[] dense;
+        private final int[] sparse;
+        private int size;
+
+        SparseSet(int capacity) {
+            dense = new int[capacity];
+            sparse = new int[capacity];
+        }
+
+        boolean contains(int value) {
+            int i = sparse[value];
+            return i < size && dense[i] == value;
+        }
+
+        void add(int value) {
+            sparse[value] = size;
+            dense[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * A set of characters, as sorted ranges of code points.
+     */
+    private static final class CharClass {
+        private final int[] ranges;
+        private final boolean negated;
+        private final boolean ignoreCase;
+
+        CharClass(int[] ranges, boolean negated, boolean ignoreCase) {
+            this.ranges = ranges;
+            this.negated = negated;
+            this.ignoreCase = ignoreCase;
+        }
+
+        boolean matches(int c) {
+            boolean in = contains(c);
+            if (!in && ignoreCase && c < 0x80) {
+                in = contains(toLowerAscii(c)) || contains(toUpperAscii(c));
+            }
+            return in != negated;
+        }
+
+        private boolean contains(int c) {
+            int lo = 0;
+            int hi = ranges.length / 2 - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (c < ranges[mid * 2]) {
+                    hi = mid - 1;
+                } else if (c > ranges[mid * 2 + 1]) {
+                    lo = mid + 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Builds sorted and merged ranges of code points.
+     */
+    private static final class RangeSet {
+        private final List<int[]> ranges = new ArrayList<>();
+
+        RangeSet add(int from, int to) {
+            ranges.add(new int[] {from, to});
+            return this;
+        }
+
+        RangeSet addAll(int[] other) {
+            for (int i = 0; i < other.length; i += 2) {
+                add(other[i], other[i + 1]);
+            }
+            return this;
+        }
+
+        int[] toArray() {
+            ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int[] ret = new int[ranges.size() * 2];
+            int n = 0;
+            for (int[] r : ranges) {
+                if (n > 0 && r[0] <= ret[n - 1] + 1) {
+                    ret[n - 1] = Math.max(ret[n - 1], r[1]);
+                } else {
+                    ret[n++] = r[0];
+                    ret[n++] = r[1];
+                }
+            }
+            return Arrays.copyOf(ret, n);
+        }
+
+        static int[] complement(int[] ranges) {
+            int[] ret = new int[ranges.length + 2];
+            int n = 0;
+            int from = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > from) {
+                    ret[n++] = from;
+                    ret[n++] = ranges[i] - 1;
+                }
+                from = ranges[i + 1] + 1;
+            }
+            if (from <= Character.MAX_CODE_POINT) {
+                ret[n++] = from;
+                ret[n++] = Character.MAX_CODE_POINT;
+            }
+            return Arrays.copyOf(ret, n);
+        }
+    }
+
+    private static final int[] DIGIT = {'0', '9'};
+    private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+    private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] HORIZONTAL_SPACE = new RangeSet()
+            .add('\t', '\t').add(' ', ' ').add('\u00A0', '\u00A0').add('\u1680', '\u1680').add('\u180E', '\u180E')
+            .add('\u2000', '\u200A').add('\u202F', '\u202F').add('\u205F', '\u205F').add('\u3000', '\u3000')
+            .toArray();
+    private static final int[] VERTICAL_SPACE = new RangeSet()
+            .add('\n', '\r').add('\u0085', '\u0085').add('\u2028', '\u2029')
+            .toArray();
+
+    /**
+     * Nodes of the syntax tree.
+     */
+    private sealed interface Node {
+    }
+
+    private record CharNode(int c, boolean ignoreCase) implements Node {
+    }
+
+    private record ClassNode(int[] ranges, boolean negated, boolean ignoreCase) implements Node {
+    }
+
+    private record DotNode(boolean dotAll) implements Node {
+    }
+
+    private record AssertNode(int assertion) implements Node {
+    }
+
+    private record ConcatNode(List<Node> nodes) implements Node {
+    }
+
+    private record AlternationNode(List<Node> nodes) implements Node {
+    }
+
+    /**
+     * @param max -1 for no limit.
+     */
+    private record RepeatNode(Node node, int min, int max) implements Node {
+    }
+
+    /**
+     * Thrown for constructs not supported, and {@link #compile(String, int)} gives up.
+     */
+    private static final class Unsupported extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            // thrown for control flow.
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Parses the syntax of {@link Pattern}.
+     * Throws {@link Unsupported} for constructs not supported.
+     */
+    private static final class Parser {
+        private final String regexp;
+        private int pos;
+        private boolean ignoreCase;
+        private boolean multiline;
+        private boolean dotAll;
+
+        Parser(String regexp, int flags) {
+            this.regexp = regexp;
+            this.ignoreCase = (flags & Pattern.CASE_INSENSITIVE) != 0;
+            this.multiline = (flags & Pattern.MULTILINE) != 0;
+            this.dotAll = (flags & Pattern.DOTALL) != 0;
+        }
+
+        static Node literal(String text, boolean ignoreCase) {
+            List<Node> nodes = new ArrayList<>();
+            text.codePoints().forEach(c -> nodes.add(charNode(c, ignoreCase)));
+            return new ConcatNode(nodes);
+        }
+
+        private static Node charNode(int c, boolean ignoreCase) {
+            return new CharNode(ignoreCase ? toLowerAscii(c) : c, ignoreCase && toLowerAscii(c) != toUpperAscii(c));
+        }
+
+        Node parse() throws Unsupported {
+            Node node = alternation();
+            if (pos < regexp.length()) {
+                // unbalanced parenthesis.
+                throw new Unsupported();
+            }
+            return node;
+        }
+
+        private Node alternation() throws Unsupported {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(concatenation());
+            while (pos < regexp.length() && regexp.charAt(pos) == '|') {
+                ++pos;
+                alternatives.add(concatenation());
+            }
+            return (alternatives.size() == 1) ? alternatives.get(0) : new AlternationNode(alternatives);
+        }
+
+        private Node concatenation() throws Unsupported {
+            List<Node> nodes = new ArrayList<>();
+            while (pos < regexp.length() && regexp.charAt(pos) != '|' && regexp.charAt(pos) != ')') {
+                Node atom = atom();
+                if (atom != null) {
+                    nodes.add(quantified(atom));
+                }
+            }
+            return (nodes.size() == 1) ? nodes.get(0) : new ConcatNode(nodes);
+        }
+
+        /**
+         * @return the atom. <code>null</code> for constructs not matching anything, e.g. flags.
+         */
+        @CheckForNull
+        private Node atom() throws Unsupported {
+            int c = regexp.codePointAt(pos);
+            pos += Character.charCount(c);
+            switch (c) {
+            case '(':
+                return group();
+            case '[':
+                return charClass();
+            case '.':
+                return new DotNode(dotAll);
+            case '^':
+                return new AssertNode(multiline ? BEGIN_LINE : BEGIN);
+            case '$':
+                return new AssertNode(multiline ? END_LINE : END);
+            case '\\':
+                return escape();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new Unsupported();
+            default:
+                return charNode(c, ignoreCase);
+            }
+        }
+
+        @CheckForNull
+        private Node group() throws Unsupported {
+            boolean savedIgnoreCase = ignoreCase;
+            boolean savedMultiline = multiline;
+            boolean savedDotAll = dotAll;
+            if (regexp.charAt(pos) == '?') {
+                ++pos;
+                char c = regexp.charAt(pos);
+                if (c == ':') {
+                    ++pos;
+                } else if (c == '<' && Character.isLetter(regexp.charAt(pos + 1))) {
+                    // named group.
+                    int end = regexp.indexOf('>', pos);
+                    if (end < 0) {
+                        throw new Unsupported();
+                    }
+                    pos = end + 1;
+                } else if (!flags()) {
+                    // (?i) applies to the rest of the enclosing group.
+                    return null;
+                }
+            }
+            Node node = alternation();
+            if (regexp.charAt(pos) != ')') {
+                throw new Unsupported();
+            }
+            ++pos;
+            ignoreCase = savedIgnoreCase;
+            multiline = savedMultiline;
+            dotAll = savedDotAll;
+            return node;
+        }
+
+        /**
+         * Reads flags like <code>i-s)</code> or <code>i-s:</code>.
+         *
+         * @return <code>true</code> if followed by a group they apply to.
+         */
+        private boolean flags() throws Unsupported {
+            boolean on = true;
+            while (true) {
+                char c = regexp.charAt(pos++);
+                switch (c) {
+                case 'i':
+                    ignoreCase = on;
+                    break;
+                case 'm':
+                    multiline = on;
+                    break;
+                case 's':
+                    dotAll = on;
+                    break;
+                case '-':
+                    on = false;
+                    break;
+                case ')':
+                    return false;
+                case ':':
+                    return true;
+                default:
+                    // look-arounds, atomic groups, and other flags.
+                    throw new Unsupported();
+                }
+            }
+        }
+
+        private Node quantified(Node atom) throws Unsupported {
+            if (pos >= regexp.length()) {
+                return atom;
+            }
+            int min;
+            int max;
+            switch (regexp.charAt(pos)) {
+            case '?':
+                min = 0;
+                max = 1;
+                ++pos;
+                break;
+            case '*':
+                min = 0;
+                max = -1;
+                ++pos;
+                break;
+            case '+':
+                min = 1;
+                max = -1;
+                ++pos;
+                break;
+            case '{': {
+                int end = regexp.indexOf('}', pos);
+                if (end < 0) {
+                    throw new Unsupported();
+                }
+                String[] bounds = regexp.substring(pos + 1, end).split(",", -1);
+                try {
+                    min = Integer.parseInt(bounds[0]);
+                    if (bounds.length == 1) {
+                        max = min;
+                    } else if (bounds.length == 2) {
+                        max = bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+                    } else {
+                        throw new Unsupported();
+                    }
+                } catch (NumberFormatException e) {
+                    throw new Unsupported();
+                }
+                pos = end + 1;
+                break;
+            }
+            default:
+                return atom;
+            }
+            if (pos < regexp.length()) {
+                char c = regexp.charAt(pos);
+                if (c == '?') {
+                    // reluctant quantifiers find the same lines.
+                    ++pos;
+                } else if (c == '+') {
+                    // possessive quantifiers don't backtrack and may not match.
+                    throw new Unsupported();
+                }
+            }
+            if (min > MAX_PROGRAM_SIZE || max > MAX_PROGRAM_SIZE || (max >= 0 && max < min)) {
+                throw new Unsupported();
+            }
+            return new RepeatNode(atom, min, max);
+        }
+
+        @CheckForNull
+        private Node escape() throws Unsupported {
+            char c = regexp.charAt(pos++);
+            switch (c) {
+            case 'd':
+                return new ClassNode(DIGIT, false, false);
+            case 'D':
+                return new ClassNode(DIGIT, true, false);
+            case 's':
+                return new ClassNode(SPACE, false, false);
+            case 'S':
+                return new ClassNode(SPACE, true, false);
+            case 'w':
+                return new ClassNode(WORD, false, false);
+            case 'W':
+                return new ClassNode(WORD, true, false);
+            case 'h':
+                return new ClassNode(HORIZONTAL_SPACE, false, false);
+            case 'H':
+                return new ClassNode(HORIZONTAL_SPACE, true, false);
+            case 'v':
+                return new ClassNode(VERTICAL_SPACE, false, false);
+            case 'V':
+                return new ClassNode(VERTICAL_SPACE, true, false);
+            case 'b':
+                if (regexp.startsWith("{g}", pos)) {
+                    // grapheme cluster boundaries.
+                    throw new Unsupported();
+                }
+                return new AssertNode(WORD_BOUNDARY);
+            case 'B':
+                return new AssertNode(NOT_WORD_BOUNDARY);
+            case 'A':
+                return new AssertNode(BEGIN);
+            case 'Z':
+                return new AssertNode(END);
+            case 'z':
+                return new AssertNode(END_INPUT);
+            case 'Q': {
+                int end = regexp.indexOf("\\E", pos);
+                if (end < 0) {
+                    end = regexp.length();
+                }
+                String quoted = regexp.substring(pos, end);
+                pos = Math.min(end + 2, regexp.length());
+                if (quoted.isEmpty()) {
+                    return null;
+                }
+                int last = quoted.offsetByCodePoints(quoted.length(), -1);
+                if (last == 0) {
+                    return charNode(quoted.codePointAt(0), ignoreCase);
+                }
+                // a following quantifier applies only to the last character.
+                List<Node> nodes = new ArrayList<>();
+                nodes.add(literal(quoted.substring(0, last), ignoreCase));
+                nodes.add(quantified(charNode(quoted.codePointAt(last), ignoreCase)));
+                return new ConcatNode(nodes);
+            }
+            default:
+                --pos;
+                return charNode(escapedChar(), ignoreCase);
+            }
+        }
+
+        /**
+         * Reads an escaped character after <code>\</code>.
+         */
+        private int escapedChar() throws Unsupported {
+            int c = regexp.codePointAt(pos);
+            pos += Character.charCount(c);
+            switch (c) {
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case 'a':
+                return '\u0007';
+            case 'e':
+                return '\u001B';
+            case '0': {
+                int value = 0;
+                int digits = 0;
+                while (digits < 3 && pos < regexp.length()
+                        && regexp.charAt(pos) >= '0' && regexp.charAt(pos) <= '7'
+                        && value * 8 + (regexp.charAt(pos) - '0') <= 0377) {
+                    value = value * 8 + (regexp.charAt(pos++) - '0');
+                    ++digits;
+                }
+                if (digits == 0) {
+                    throw new Unsupported();
+                }
+                return value;
+            }
+            case 'x':
+                if (regexp.charAt(pos) == '{') {
+                    int end = regexp.indexOf('}', pos);
+                    int value = hex(pos + 1, end);
+                    pos = end + 1;
+                    return value;
+                }
+                pos += 2;
+                return hex(pos - 2, pos);
+            case 'u': {
+                pos += 4;
+                int value = hex(pos - 4, pos);
+                if (Character.isHighSurrogate((char) value) && regexp.startsWith("\\u", pos)) {
+                    int low = hex(pos + 2, pos + 6);
+                    if (Character.isLowSurrogate((char) low)) {
+                        pos += 6;
+                        return Character.toCodePoint((char) value, (char) low);
+                    }
+                }
+                return value;
+            }
+            case 'c':
+                return regexp.charAt(pos++) ^ 64;
+            default:
+                if (c < 0x80 && Character.isLetterOrDigit(c)) {
+                    // back references, Unicode properties, and others.
+                    throw new Unsupported();
+                }
+                return c;
+            }
+        }
+
+        private int hex(int from, int to) throws Unsupported {
+            if (to <= from || to > regexp.length()) {
+                throw new Unsupported();
+            }
+            try {
+                return Integer.parseInt(regexp.substring(from, to), 16);
+            } catch (NumberFormatException e) {
+                throw new Unsupported();
+            }
+        }
+
+        /**
+         * Reads a character class after <code>[</code>.
+         * Nested classes, unions and intersections are not supported.
+         */
+        private Node charClass() throws Unsupported {
+            boolean negated = false;
+            if (regexp.charAt(pos) == '^') {
+                negated = true;
+                ++pos;
+            }
+            RangeSet ranges = new RangeSet();
+            boolean first = true;
+            while (true) {
+                int c = regexp.codePointAt(pos);
+                if (c == ']' && !first) {
+                    ++pos;
+                    break;
+                }
+                first = false;
+                if (c == '[' || regexp.startsWith("&&", pos)) {
+                    throw new Unsupported();
+                }
+                int[] predefined = predefinedInClass();
+                if (predefined != null) {
+                    ranges.addAll(predefined);
+                    continue;
+                }
+                int from = classChar();
+                if (regexp.charAt(pos) == '-' && regexp.charAt(pos + 1) != ']') {
+                    ++pos;
+                    if (regexp.charAt(pos) == '[' || predefinedInClass() != null) {
+                        throw new Unsupported();
+                    }
+                    int to = classChar();
+                    if (to < from) {
+                        throw new Unsupported();
+                    }
+                    ranges.add(from, to);
+                } else {
+                    ranges.add(from, from);
+                }
+            }
+            return new ClassNode(ranges.toArray(), negated, ignoreCase);
+        }
+
+        /**
+         * Reads an escape of a predefined class like <code>\d</code> if any.
+         */
+        @CheckForNull
+        private int[] predefinedInClass() {
+            if (regexp.charAt(pos) != '\\') {
+                return null;
+            }
+            int[] ranges;
+            switch (regexp.charAt(pos + 1)) {
+            case 'd': ranges = DIGIT; break;
+            case 'D': ranges = RangeSet.complement(DIGIT); break;
+            case 's': ranges = SPACE; break;
+            case 'S': ranges = RangeSet.complement(SPACE); break;
+            case 'w': ranges = WORD; break;
+            case 'W': ranges = RangeSet.complement(WORD); break;
+            case 'h': ranges = HORIZONTAL_SPACE; break;
+            case 'H': ranges = RangeSet.complement(HORIZONTAL_SPACE); break;
+            case 'v': ranges = VERTICAL_SPACE; break;
+            case 'V': ranges = RangeSet.complement(VERTICAL_SPACE); break;
+            default: return null;
+            }
+            pos += 2;
+            return ranges;
+        }
+
+        private int classChar() throws Unsupported {
+            int c = regexp.codePointAt(pos);
+            pos += Character.charCount(c);
+            if (c != '\\') {
+                return c;
+            }
+            if (regexp.charAt(pos) == 'Q') {
+                throw new Unsupported();
+            }
+            return escapedChar();
+        }
+    }
+
+    /**
+     * Compiles the syntax tree to instructions.
+     */
+    private static final class Compiler {
+        private int[] ops = new int[64];
+        private int[] args = new int[64];
+        private int[] args2 = new int[64];
+        private int size;
+        private final List<CharClass> classes = new ArrayList<>();
+
+        int emit(int op, int arg, int arg2) throws Unsupported {
+            if (size >= MAX_PROGRAM_SIZE) {
+                throw new Unsupported();
+            }
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+                args = Arrays.copyOf(args, size * 2);
+                args2 = Arrays.copyOf(args2, size * 2);
+            }
+            ops[size] = op;
+            args[size] = arg;
+            args2[size] = arg2;
+            return size++;
+        }
+
+        void compile(Node node) throws Unsupported {
+            if (node instanceof CharNode n) {
+                emit(n.ignoreCase() ? CHAR_IGNORE_CASE : CHAR, n.c(), 0);
+            } else if (node instanceof ClassNode n) {
+                classes.add(new CharClass(n.ranges(), n.negated(), n.ignoreCase()));
+                emit(CLASS, classes.size() - 1, 0);
+            } else if (node instanceof DotNode n) {
+                emit(n.dotAll() ? ANY : ANY_BUT_LINE_TERMINATOR, 0, 0);
+            } else if (node instanceof AssertNode n) {
+                emit(ASSERT, n.assertion(), 0);
+            } else if (node instanceof ConcatNode n) {
+                for (Node child : n.nodes()) {
+                    compile(child);
+                }
+            } else if (node instanceof AlternationNode n) {
+                List<Integer> jumps = new ArrayList<>();
+                for (int i = 0; i < n.nodes().size() - 1; ++i) {
+                    int split = emit(SPLIT, size + 1, 0);
+                    compile(n.nodes().get(i));
+                    jumps.add(emit(JUMP, 0, 0));
+                    args2[split] = size;
+                }
+                compile(n.nodes().get(n.nodes().size() - 1));
+                for (int jump : jumps) {
+                    args[jump] = size;
+                }
+            } else if (node instanceof RepeatNode n) {
+                for (int i = 0; i < n.min(); ++i) {
+                    compile(n.node());
+                }
+                if (n.max() < 0) {
+                    int split = emit(SPLIT, size + 1, 0);
+                    compile(n.node());
+                    emit(JUMP, split, 0);
+                    args2[split] = size;
+                } else {
+                    List<Integer> splits = new ArrayList<>();
+                    for (int i = n.min(); i < n.max(); ++i) {
+                        splits.add(emit(SPLIT, size + 1, 0));
+                        compile(n.node());
+                    }
+                    for (int split : splits) {
+                        args2[split] = size;
+                    }
+                }
+            }
+        }
+
+        LinearRegexp build(String regexp) {
+            return new LinearRegexp(
+                    regexp,
+                    Arrays.copyOf(ops, size),
+                    Arrays.copyOf(args, size),
+                    Arrays.copyOf(args2, size),
+                    classes.toArray(new CharClass[0])
+            );
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Searches bytes for a literal with the Boyer-Moore-Horspool algorithm.
+ *
+ * Skips up to the length of the literal at once,
+ * so long literals make the search faster than reading every byte.
+ * Literals shorter than {@link #SHORT_LENGTH} skip too little,
+ * and are searched for their first byte with {@link ByteSearch} instead.
+ */
+final class LiteralSearch {
+    /**
+     * Literals at least this long are searched with Boyer-Moore-Horspool.
+     */
+    static final int SHORT_LENGTH = 4;
+
+    private final byte[] needle;
+    private final int[] shift = new int[256];
+
+    LiteralSearch(@NonNull byte[] needle) {
+        if (needle.length == 0) {
+            throw new IllegalArgumentException("empty literal");
+        }
+        this.needle = needle.clone();
+        int last = needle.length - 1;
+        for (int i = 0; i < shift.length; ++i) {
+            shift[i] = needle.length;
+        }
+        for (int i = 0; i < last; ++i) {
+            shift[needle[i] & 0xFF] = last - i;
+        }
+    }
+
+    /**
+     * @return the length of the literal in bytes.
+     */
+    int length() {
+        return needle.length;
+    }
+
+    /**
+     * Finds the literal in <code>hay[from, to)</code>.
+     * The position and the limit of <code>hay</code> are not used nor changed.
+     *
+     * @param hay bytes to search
+     * @param from the index to start searching
+     * @param to the index to stop searching
+     * @return the index of the first occurrence. -1 if not found.
+     */
+    int indexOf(@NonNull ByteBuffer hay, int from, int to) {
+        if (hay.hasArray()) {
+            int offset = hay.arrayOffset();
+            int found = indexOf(hay.array(), from + offset, to + offset);
+            return (found < 0) ? -1 : found - offset;
+        }
+        if (needle.length < SHORT_LENGTH) {
+            return indexOfShort(hay, from, to);
+        }
+        int last = needle.length - 1;
+        byte tail = needle[last];
+        int i = from;
+        while (i <= to - needle.length) {
+            byte b = hay.get(i + last);
+            if (b == tail) {
+                int j = last - 1;
+                while (j >= 0 && hay.get(i + j) == needle[j]) {
+                    --j;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shift[b & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the literal in <code>hay[from, to)</code>.
+     *
+     * @param hay bytes to search
+     * @param from the index to start searching
+     * @param to the index to stop searching
+     * @return the index of the first occurrence. -1 if not found.
+     */
+    int indexOf(@NonNull byte[] hay, int from, int to) {
+        if (needle.length < SHORT_LENGTH) {
+            return indexOfShort(hay, from, to);
+        }
+        int last = needle.length - 1;
+        byte tail = needle[last];
+        int i = from;
+        while (i <= to - needle.length) {
+            byte b = hay[i + last];
+            if (b == tail) {
+                int j = last - 1;
+                while (j >= 0 && hay[i + j] == needle[j]) {
+                    --j;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shift[b & 0xFF];
+        }
+        return -1;
+    }
+
+    private int indexOfShort(@NonNull ByteBuffer hay, int from, int to) {
+        int end = to - needle.length + 1;
+        for (int i = ByteSearch.indexOf(hay, needle[0], from, end); i >= 0; i = ByteSearch.indexOf(hay, needle[0], i + 1, end)) {
+            int j = 1;
+            while (j < needle.length && hay.get(i + j) == needle[j]) {
+                ++j;
+            }
+            if (j == needle.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfShort(@NonNull byte[] hay, int from, int to) {
+        int end = to - needle.length + 1;
+        for (int i = ByteSearch.indexOf(hay, needle[0], from, end); i >= 0; i = ByteSearch.indexOf(hay, needle[0], i + 1, end)) {
+            int j = 1;
+            while (j < needle.length && hay[i + j] == needle[j]) {
+                ++j;
+            }
+            if (j == needle.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,271 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs log scans for regular expressions on a bounded pool shared by all builds.
+ *
+ * Failures of many builds at once (e.g. a pool of agents gets lost)
+ * no longer result in as many threads reading logs at the same time.
+ * Scans exceeding the queue limit are rejected.
+ *
+ * The pool can be tuned with system properties:
+ * <dl>
+ *   <dt><code>com.chikli.hudson.plugin.naginator.LogScanExecutor.poolSize</code></dt>
+ *     <dd>the maximum number of scans running at the same time.</dd>
+ *   <dt><code>com.chikli.hudson.plugin.naginator.LogScanExecutor.queueSize</code></dt>
+ *     <dd>the maximum number of scans waiting for a thread.</dd>
+ *   <dt><code>com.chikli.hudson.plugin.naginator.LogScanExecutor.virtualThreads</code></dt>
+ *     <dd>run scans on virtual threads when the JVM supports them.</dd>
+ *   <dt><code>com.chikli.hudson.plugin.naginator.LogScanExecutor.parallelism</code></dt>
+ *     <dd>the maximum number of threads scanning chunks of large logs in parallel.</dd>
+ *   <dt><code>com.chikli.hudson.plugin.naginator.LogScanExecutor.childParallelism</code></dt>
+ *     <dd>the maximum number of children of matrix builds tested in parallel.</dd>
+ * </dl>
+ */
+public final class LogScanExecutor {
+    private static final Logger LOGGER = Logger.getLogger(LogScanExecutor.class.getName());
+
+    static final int POOL_SIZE = SystemProperties.getInteger(
+            LogScanExecutor.class.getName() + ".poolSize",
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2)
+    );
+    static final int QUEUE_SIZE = SystemProperties.getInteger(
+            LogScanExecutor.class.getName() + ".queueSize",
+            500
+    );
+    static final boolean VIRTUAL_THREADS = SystemProperties.getBoolean(
+            LogScanExecutor.class.getName() + ".virtualThreads"
+    );
+
+    static final int PARALLELISM = SystemProperties.getInteger(
+            LogScanExecutor.class.getName() + ".parallelism",
+            Runtime.getRuntime().availableProcessors()
+    );
+
+    static final int CHILD_PARALLELISM = SystemProperties.getInteger(
+            LogScanExecutor.class.getName() + ".childParallelism",
+            POOL_SIZE
+    );
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 10 * 1000;
+
+    private static LogScanExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final ForkJoinPool chunkPool;
+    private final ThreadPoolExecutor childPool;
+    private volatile boolean aborting;
+
+    LogScanExecutor(int poolSize, int queueSize, boolean virtualThreads) {
+        ThreadFactory threadFactory = virtualThreads ? createVirtualThreadFactory("Naginator log scan") : null;
+        if (threadFactory == null) {
+            threadFactory = new NamingThreadFactory(new DaemonThreadFactory(), "Naginator log scan");
+        }
+        this.executor = new ThreadPoolExecutor(
+                Math.max(1, poolSize),
+                Math.max(1, poolSize),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                threadFactory
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+        this.chunkPool = new ForkJoinPool(
+                Math.max(1, PARALLELISM),
+                pool -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    t.setName("Naginator parallel log scan-" + t.getPoolIndex());
+                    return t;
+                },
+                null,
+                false
+        );
+        ThreadFactory childThreadFactory = virtualThreads ? createVirtualThreadFactory("Naginator matrix child test") : null;
+        if (childThreadFactory == null) {
+            childThreadFactory = new NamingThreadFactory(new DaemonThreadFactory(), "Naginator matrix child test");
+        }
+        // no queue: children not getting a thread are tested by the caller.
+        this.childPool = new ThreadPoolExecutor(
+                Math.max(1, CHILD_PARALLELISM),
+                Math.max(1, CHILD_PARALLELISM),
+                60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                childThreadFactory
+        );
+        this.childPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Once Jenkins terminated, returns the shut down executor
+     * rejecting scans rather than starting threads nothing shuts down.
+     *
+     * @return the executor shared in this Jenkins instance.
+     */
+    @NonNull
+    public static synchronized LogScanExecutor get() {
+        if (instance == null || (instance.isShutdown() && isJenkinsRunning())) {
+            instance = new LogScanExecutor(POOL_SIZE, QUEUE_SIZE, VIRTUAL_THREADS);
+        }
+        return instance;
+    }
+
+    /**
+     * @return whether a Jenkins instance is running and not terminating,
+     *      e.g. started again in the same JVM after an earlier one terminated.
+     */
+    static boolean isJenkinsRunning() {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        return j != null && !j.isTerminating();
+    }
+
+    /**
+     * Drops the shared executor so that {@link #get()} creates a new one.
+     * For tests.
+     */
+    static synchronized void reset() {
+        instance = null;
+    }
+
+    /**
+     * Uses <code>Thread.ofVirtual()</code> reflectively
+     * as it's available only in Java 21 and later.
+     *
+     * @param name the prefix of names of threads.
+     * @return the factory of virtual threads. <code>null</code> if not supported.
+     */
+    @CheckForNull
+    private static ThreadFactory createVirtualThreadFactory(@NonNull String name) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, name + "-", 0L);
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOGGER.log(Level.WARNING, "Virtual threads are not available. Falls back to platform threads.", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param task the scan to run.
+     * @param <T> the type of the result.
+     * @return the future to retrieve the result.
+     * @throws RejectedExecutionException too many scans are queued, or the executor is shut down.
+     */
+    @NonNull
+    public <T> Future<T> submit(@NonNull Callable<T> task) throws RejectedExecutionException {
+        return executor.submit(task);
+    }
+
+    /**
+     * @return the number of scans running now.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of scans waiting for a thread.
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Chunks of large logs are scanned on this pool by the thread running the scan.
+     * Shared by all scans so that several large logs scanned at once don't use more threads.
+     *
+     * @return the pool to scan chunks of large logs in parallel.
+     * @see LogScanner#scanForward(LogSource, java.nio.charset.Charset, SignatureSet, ScanDeadline)
+     */
+    @NonNull
+    ForkJoinPool getChunkPool() {
+        return chunkPool;
+    }
+
+    /**
+     * Children of matrix builds are tested on this pool, each waiting for the scan of its log.
+     * Separate from the pool running scans so that waiting children never hold threads scans need.
+     * Rejects tasks when all threads are busy.
+     *
+     * @return the pool to test children of matrix builds in parallel.
+     * @see MatrixChildEvaluator
+     */
+    @NonNull
+    ExecutorService getChildPool() {
+        return childPool;
+    }
+
+    /**
+     * @return whether running scans should give up as they are not finished in the timeout for shutdown.
+     * @see ScanDeadline
+     */
+    boolean isAborting() {
+        return aborting;
+    }
+
+    boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Stops accepting new scans, waits for running ones, and aborts them after the timeout.
+     *
+     * @param timeoutMs milliseconds to wait running scans.
+     * @throws InterruptedException interrupted while waiting.
+     */
+    void shutdown(long timeoutMs) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+            LOGGER.log(Level.WARNING, "Aborting {0} log scans not finished in {1} ms", new Object[]{
+                    executor.getActiveCount(),
+                    timeoutMs,
+            });
+            // scans give up at the next check, and threads blocked elsewhere are interrupted.
+            aborting = true;
+            executor.shutdownNow();
+        }
+        // running chunks are cancelled by scans already finished.
+        chunkPool.shutdown();
+        // children waiting for scans get results aborted for shutdown.
+        childPool.shutdown();
+    }
+
+    /**
+     * Shuts down the executor when Jenkins terminates.
+     *
+     * @throws InterruptedException interrupted while waiting running scans.
+     */
+    @Terminator
+    public static void shutdownOnTermination() throws InterruptedException {
+        LogScanExecutor target;
+        synchronized (LogScanExecutor.class) {
+            // kept to reject scans arriving later.
+            target = instance;
+        }
+        if (target != null) {
+            target.shutdown(SHUTDOWN_TIMEOUT_MS);
+        }
+    }
+}
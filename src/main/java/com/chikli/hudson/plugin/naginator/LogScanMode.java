@@ -0,0 +1,34 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jvnet.localizer.Localizable;
+
+/**
+ * How to read the log when testing the regular expression.
+ */
+public enum LogScanMode {
+    /**
+     * Reads the whole log from the beginning.
+     */
+    Forward(Messages._LogScanMode_Forward()),
+    /**
+     * Reads the log backwards from the end,
+     * and stops at the first line matching the regular expression.
+     */
+    TailFirst(Messages._LogScanMode_TailFirst()),
+    ;
+    private final Localizable displayName;
+    
+    private LogScanMode(Localizable displayName) {
+        this.displayName = displayName;
+    }
+    
+    public String getDisplayName() {
+        return displayName.toString();
+    }
+    
+    @NonNull
+    public static LogScanMode getDefault() {
+        return Forward;
+    }
+}
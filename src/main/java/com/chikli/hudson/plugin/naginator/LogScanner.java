@@ -0,0 +1,1168 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Scans build logs for regular expressions line by line.
+ */
+final class LogScanner {
+    /**
+     * Bytes to read at once.
+     */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Logs of this size or larger are scanned forward in chunks in parallel.
+     * 0 or less to always scan on the calling thread.
+     */
+    static long PARALLEL_THRESHOLD = SystemProperties.getLong(
+            LogScanner.class.getName() + ".parallelThreshold",
+            64L * 1024 * 1024
+    );
+
+    /**
+     * The minimum size of chunks scanned in parallel.
+     */
+    static long MIN_CHUNK_SIZE = SystemProperties.getLong(
+            LogScanner.class.getName() + ".minChunkSize",
+            8L * 1024 * 1024
+    );
+
+    /**
+     * Lines longer than this are tested in segments of this length
+     * overlapping by {@link #SEGMENT_OVERLAP}, so that memory for a scan stays bounded
+     * however long lines are (e.g. progress output or minified JSON printed in a single line).
+     * In bytes, or in characters for charsets not compatible with ASCII.
+     * Never shorter than {@link #BLOCK_SIZE}.
+     */
+    static int MAX_LINE_LENGTH = SystemProperties.getInteger(
+            LogScanner.class.getName() + ".maxLineLength",
+            4 * 1024 * 1024
+    );
+
+    /**
+     * The length segments of a long line overlap by, in bytes or in characters.
+     * Matches shorter than this are found even across segments.
+     * At most the half of {@link #MAX_LINE_LENGTH}.
+     */
+    static int SEGMENT_OVERLAP = SystemProperties.getInteger(
+            LogScanner.class.getName() + ".segmentOverlap",
+            4096
+    );
+
+    /**
+     * Chunks per thread scanning in parallel.
+     * Smaller chunks let a match found early cancel more of the rest.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private LogScanner() {
+    }
+
+    /**
+     * @return the length of segments to test long lines in.
+     */
+    static int getMaxLineLength() {
+        return Math.max(MAX_LINE_LENGTH, BLOCK_SIZE);
+    }
+
+    /**
+     * @return the length segments of long lines overlap by.
+     */
+    static int getSegmentOverlap() {
+        return Math.max(0, Math.min(SEGMENT_OVERLAP, getMaxLineLength() / 2));
+    }
+
+    /**
+     * Reads the whole log from the beginning.
+     *
+     * Logs in charsets compatible with ASCII are read into a direct buffer and split into lines on bytes,
+     * searching for LF 8 bytes at a time with {@link ByteSearch}.
+     * Each line is decoded into a reusable buffer and tested with reused matchers,
+     * so no objects are allocated for each line.
+     * When every regular expression has a {@link RequiredLiteral}, lines without any of the literals
+     * are skipped with a byte search without even being split.
+     * Lines are split with LF, and a trailing CR is removed.
+     * Lines longer than {@link #getMaxLineLength()} are tested in overlapping segments,
+     * where the offset of a match is the one of the segment and <code>^</code> and <code>$</code> match at the ends of segments.
+     *
+     * Logs larger than {@link #PARALLEL_THRESHOLD} are split into chunks
+     * scanned in parallel on {@link LogScanExecutor#getChunkPool()}.
+     * See {@link ParallelScan} for how the result is kept the same as scanning on a single thread.
+     *
+     * Logs compressed with gzip (e.g. by the Compress Build Log plugin)
+     * are inflated as a stream into the same buffer, and never written to disk.
+     *
+     * @param source the log
+     * @param charset the charset of the log
+     * @param signatures the regular expressions to search for
+     * @param deadline when to give up
+     * @return the result. Not {@link ScanResult#isCompleted() completed} if gave up.
+     * @throws IOException failed to read the log
+     */
+    @NonNull
+    static ScanResult scanForward(@NonNull LogSource source, @NonNull Charset charset, @NonNull SignatureSet signatures, @NonNull ScanDeadline deadline) throws IOException {
+        try {
+            if (!isAsciiCompatible(charset)) {
+                return scanForwardWithReader(source, charset, signatures, deadline);
+            }
+            if (source.isGzip()) {
+                try (ReadableByteChannel channel = Channels.newChannel(openGzip(source, deadline))) {
+                    return new ForwardScan(channel, charset, signatures, deadline, null).scan(0, Long.MAX_VALUE);
+                }
+            }
+            long size = source.length();
+            if (PARALLEL_THRESHOLD > 0 && size >= PARALLEL_THRESHOLD) {
+                return new ParallelScan(source, charset, signatures, deadline)
+                        .scan(LogScanExecutor.get().getChunkPool(), size);
+            }
+            return new ForwardScan(source, charset, signatures, deadline, null).scan(0, Long.MAX_VALUE);
+        } catch (ScanDeadline.ExceededException e) {
+            return ScanResult.aborted(e.getStatus());
+        } catch (InterruptedIOException | ClosedByInterruptException e) {
+            return aborted(deadline);
+        }
+    }
+
+    /**
+     * Reads the whole log from the beginning, and tests the last lines in a {@link LineWindow}
+     * each time a line is read, so that regular expressions can match across lines.
+     *
+     * Only the window is kept in memory however large the log is.
+     * Lines are never skipped with {@link RequiredLiteral}s,
+     * and the log is always scanned on the calling thread.
+     *
+     * @param source the log
+     * @param charset the charset of the log
+     * @param signatures the regular expressions to search for,
+     *     compiled with {@link SignatureSet#compile(String, String, String, RegexpEngine, boolean)} for multiline.
+     * @param windowLines lines to match at once
+     * @param deadline when to give up
+     * @return the result, with the offset of the line a match ends in.
+     *     Not {@link ScanResult#isCompleted() completed} if gave up.
+     * @throws IOException failed to read the log
+     */
+    @NonNull
+    static ScanResult scanMultiline(@NonNull LogSource source, @NonNull Charset charset, @NonNull SignatureSet signatures, int windowLines, @NonNull ScanDeadline deadline) throws IOException {
+        LineWindow window = new LineWindow(windowLines);
+        window.setDeadline(deadline);
+        try {
+            if (!isAsciiCompatible(charset)) {
+                SignatureSet.Scan scan = signatures.newScan();
+                DecodedLine plain = new DecodedLine(charset);
+                try (LineReader reader = newLineReader(source, charset, deadline)) {
+                    String line;
+                    long lineNumber = 0;
+                    while ((line = reader.readLine()) != null) {
+                        window.append(hasMarkup(line) ? plain.set(line) : line, -1);
+                        if (!reader.isContinued()) {
+                            ++lineNumber;
+                        }
+                        scan.setLineNumber(lineNumber);
+                        if (scan.test(window)) {
+                            break;
+                        }
+                    }
+                    return scan.getResult();
+                }
+            }
+            if (source.isGzip()) {
+                try (ReadableByteChannel channel = Channels.newChannel(openGzip(source, deadline))) {
+                    return new MultilineScan(channel, charset, signatures, deadline, window).scan(0, Long.MAX_VALUE);
+                }
+            }
+            return new MultilineScan(source, charset, signatures, deadline, window).scan(0, Long.MAX_VALUE);
+        } catch (ScanDeadline.ExceededException e) {
+            return ScanResult.aborted(e.getStatus());
+        } catch (InterruptedIOException | ClosedByInterruptException e) {
+            return aborted(deadline);
+        }
+    }
+
+    @NonNull
+    private static ScanResult scanForwardWithReader(@NonNull LogSource source, @NonNull Charset charset, @NonNull SignatureSet signatures, @NonNull ScanDeadline deadline) throws IOException {
+        SignatureSet.Scan scan = signatures.newScan();
+        DecodedLine plain = new DecodedLine(charset);
+        plain.setDeadline(deadline);
+        try (LineReader reader = newLineReader(source, charset, deadline)) {
+            CheckedCharSequence checked = new CheckedCharSequence(deadline);
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                if (!reader.isContinued()) {
+                    ++lineNumber;
+                }
+                scan.setLineNumber(lineNumber);
+                if (scan.test(hasMarkup(line) ? plain.set(line) : checked.wrap(line))) {
+                    break;
+                }
+            }
+            return scan.getResult();
+        }
+    }
+
+    @NonNull
+    private static LineReader newLineReader(@NonNull LogSource source, @NonNull Charset charset, @NonNull ScanDeadline deadline) throws IOException {
+        return new LineReader(new InputStreamReader(openStream(source, deadline), charset), getMaxLineLength(), getSegmentOverlap());
+    }
+
+    /**
+     * @param line a line decoded
+     * @return whether {@link ConsoleMarkup} is to be removed from the line.
+     */
+    private static boolean hasMarkup(@NonNull String line) {
+        return ConsoleMarkup.isStripped() && line.indexOf(ConsoleMarkup.ESC) >= 0;
+    }
+
+    /**
+     * @return the result for the scan interrupted.
+     */
+    @NonNull
+    private static ScanResult aborted(@NonNull ScanDeadline deadline) {
+        try {
+            // tells whether it's for the timeout or the shutdown.
+            deadline.check();
+        } catch (ScanDeadline.ExceededException e) {
+            return ScanResult.aborted(e.getStatus());
+        }
+        return ScanResult.aborted(ScanResult.Status.Interrupted);
+    }
+
+    /**
+     * Reads the log backwards from the end block by block,
+     * and stops at the first line (from the end) deciding the result.
+     *
+     * Lines are split with LF, and a trailing CR is removed.
+     * When <code>maxBytes</code> is specified, only the last <code>maxBytes</code> bytes are read
+     * and a line crossing the beginning of that range is skipped.
+     *
+     * Falls back to {@link #scanForward(LogSource, Charset, SignatureSet, ScanDeadline)} for charsets not compatible with ASCII
+     * (e.g. UTF-16) as lines cannot be split on bytes.
+     *
+     * Logs compressed with gzip cannot be read backwards.
+     * The whole log is inflated as a stream to find the last lines matching in the last <code>maxBytes</code> bytes.
+     * Without <code>maxBytes</code>, they are scanned with {@link #scanForward(LogSource, Charset, SignatureSet, ScanDeadline)}
+     * to stop at the first line deciding the result.
+     * The result is the same except that the first signature to rerun can be reported instead of the last one.
+     *
+     * @param source the log
+     * @param charset the charset of the log
+     * @param signatures the regular expressions to search for
+     * @param maxBytes bytes to read from the end. 0 or less to read the whole log.
+     * @param deadline when to give up
+     * @return the result. Not {@link ScanResult#isCompleted() completed} if gave up.
+     * @throws IOException failed to read the log
+     */
+    @NonNull
+    static ScanResult scanTailFirst(@NonNull LogSource source, @NonNull Charset charset, @NonNull SignatureSet signatures, long maxBytes, @NonNull ScanDeadline deadline) throws IOException {
+        if (source.isGzip() && maxBytes <= 0) {
+            return scanForward(source, charset, signatures, deadline);
+        }
+        try {
+            if (!isAsciiCompatible(charset)) {
+                return scanForwardWithReader(source, charset, signatures, deadline);
+            }
+            if (source.isGzip()) {
+                try (ReadableByteChannel channel = Channels.newChannel(openGzip(source, deadline))) {
+                    return new SequentialTailScan(channel, charset, signatures, deadline, maxBytes).scan();
+                }
+            }
+            return new TailScan(source, charset, signatures, deadline).scan(maxBytes);
+        } catch (ScanDeadline.ExceededException e) {
+            return ScanResult.aborted(e.getStatus());
+        } catch (InterruptedIOException | ClosedByInterruptException e) {
+            return aborted(deadline);
+        }
+    }
+
+    /**
+     * @return the stream reading the whole log uncompressed.
+     */
+    @NonNull
+    private static InputStream openStream(@NonNull LogSource source, @NonNull ScanDeadline deadline) throws IOException {
+        return source.isGzip() ? openGzip(source, deadline) : openThrottled(source, deadline);
+    }
+
+    /**
+     * Inflates with buffers of {@link #BLOCK_SIZE}, and never loads the whole log into memory.
+     */
+    @NonNull
+    private static InputStream openGzip(@NonNull LogSource source, @NonNull ScanDeadline deadline) throws IOException {
+        InputStream in = openThrottled(source, deadline);
+        try {
+            return new GZIPInputStream(in, BLOCK_SIZE);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the log keeping reads of all scans under {@link ScanAdmission#getMaxBytesPerSecond()}.
+     * Compressed bytes are counted for logs compressed with gzip, as they are what is read from the disk.
+     */
+    @NonNull
+    private static InputStream openThrottled(@NonNull LogSource source, @NonNull ScanDeadline deadline) throws IOException {
+        return new FilterInputStream(source.open()) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    ScanAdmission.get().throttle(1, deadline);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                ScanAdmission.get().throttle(read, deadline);
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Tests whether lines can be split and ASCII characters can be read on bytes.
+     * That is, LF and other ASCII characters are always single bytes in the charset
+     * and never appear as a part of other characters.
+     * UTF-8, ISO-8859-1 and most of legacy multibyte charsets (e.g. Shift_JIS, EUC-JP) are compatible,
+     * but UTF-16 and ISO-2022-JP are not.
+     *
+     * @param charset the charset to test
+     * @return whether the charset is compatible with ASCII.
+     */
+    static boolean isAsciiCompatible(@NonNull Charset charset) {
+        if (!Arrays.equals(new byte[]{'\n'}, "\n".getBytes(charset))
+                || !Arrays.equals(new byte[]{'a'}, "a".getBytes(charset))) {
+            return false;
+        }
+        // multibyte characters should start with a non-ASCII byte.
+        if (charset.canEncode() && charset.newEncoder().canEncode(NON_ASCII_PROBE)) {
+            for (byte b : NON_ASCII_PROBE.getBytes(charset)) {
+                if (b >= 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static final String NON_ASCII_PROBE = "\u3042";
+
+    /**
+     * Scans a large log in chunks in parallel with {@link ForwardScan}s.
+     *
+     * A chunk owns the lines starting in it,
+     * and reads beyond its end to finish its last line.
+     * A chunk deciding the result cancels the chunks after it,
+     * and the results are merged in order,
+     * so the result is the same as the one of scanning the whole log at once.
+     */
+    private static class ParallelScan {
+        private final LogSource source;
+        private final Charset charset;
+        private final SignatureSet signatures;
+        private final ScanDeadline deadline;
+
+        /**
+         * The first chunk deciding the result.
+         * Chunks after it are cancelled.
+         */
+        private final AtomicInteger decidedChunk = new AtomicInteger(Integer.MAX_VALUE);
+
+        ParallelScan(LogSource source, Charset charset, SignatureSet signatures, ScanDeadline deadline) {
+            this.source = source;
+            this.charset = charset;
+            this.signatures = signatures;
+            this.deadline = deadline;
+        }
+
+        ScanResult scan(ForkJoinPool pool, long size) throws IOException {
+            long chunks = Math.max(1, (long)pool.getParallelism() * CHUNKS_PER_THREAD);
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, (size + chunks - 1) / chunks);
+
+            List<ForkJoinTask<ScanResult>> tasks = new ArrayList<>();
+            try {
+                for (long from = 0; from < size; from += chunkSize) {
+                    tasks.add(pool.submit(scanChunk(tasks.size(), from, Math.min(size, from + chunkSize))));
+                }
+                return merge(tasks);
+            } finally {
+                // the source is closed after all chunks stop.
+                decidedChunk.set(-1);
+                for (ForkJoinTask<ScanResult> task : tasks) {
+                    task.quietlyJoin();
+                }
+            }
+        }
+
+        private Callable<ScanResult> scanChunk(int index, long from, long to) {
+            return () -> {
+                SignatureSet.Scan scan = signatures.newScan(charset);
+                BooleanSupplier cancelled = () -> index > decidedChunk.get();
+                ScanResult result = new ForwardScan(source, null, scan, charset, deadline, cancelled).scan(from, to);
+                if (scan.isDecided()) {
+                    decidedChunk.accumulateAndGet(index, Math::min);
+                }
+                return result;
+            };
+        }
+
+        /**
+         * Merges results of chunks in order for each group:
+         * the first signature never to rerun, or the first signature to rerun.
+         */
+        private ScanResult merge(List<ForkJoinTask<ScanResult>> tasks) throws IOException {
+            ScanResult[] merged = new ScanResult[signatures.getGroupCount()];
+            Arrays.fill(merged, ScanResult.NOT_MATCHED);
+            int undecided = merged.length;
+            for (int i = 0; i < tasks.size() && undecided > 0; ++i) {
+                if (i > decidedChunk.get()) {
+                    // cancelled.
+                    break;
+                }
+                ScanResult result = get(tasks.get(i));
+                for (int g = 0; g < merged.length; ++g) {
+                    SignatureSet.Signature matched = result.getGroup(g).getMatched();
+                    if (matched == null || (merged[g].isMatched() && merged[g].getMatched().negative())) {
+                        continue;
+                    }
+                    if (matched.negative()) {
+                        merged[g] = result.getGroup(g);
+                        --undecided;
+                    } else if (!merged[g].isMatched()) {
+                        merged[g] = result.getGroup(g);
+                    }
+                }
+            }
+            return ScanResult.ofGroups(Arrays.asList(merged));
+        }
+
+        private static ScanResult get(ForkJoinTask<ScanResult> task) throws IOException {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                InterruptedIOException ioe = new InterruptedIOException("Interrupted while scanning in parallel");
+                ioe.initCause(e);
+                throw ioe;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException ioe) {
+                    throw ioe;
+                }
+                if (cause instanceof RuntimeException re) {
+                    throw re;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private static class ForwardScan {
+        /**
+         * Read at positions. <code>null</code> if reading {@link #channel}.
+         */
+        @CheckForNull
+        private final LogSource source;
+        /**
+         * Read sequentially, e.g. inflating logs compressed with gzip. <code>null</code> if reading {@link #source}.
+         */
+        @CheckForNull
+        private final ReadableByteChannel channel;
+        protected final SignatureSet.Scan scan;
+        private final DecodedLine line;
+        private final ScanDeadline deadline;
+        @CheckForNull
+        private final BooleanSupplier cancelled;
+
+        private ByteBuffer buf = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+        /**
+         * The position of <code>buf[0]</code> in the log.
+         */
+        private long bufStart;
+        /**
+         * The number of the line tested last.
+         * -1 if unknown as the scan started in the middle of the log.
+         */
+        private long lineNumber = -1;
+        /**
+         * LFs before <code>buf[counted]</code> in the log,
+         * counted a word at a time with {@link ByteSearch} when lines are skipped without splitting them.
+         */
+        private long newlines;
+        private int counted;
+        /**
+         * Whether the line to test next continues a segment of a long line already tested.
+         */
+        private boolean continued;
+
+        ForwardScan(LogSource source, Charset charset, SignatureSet signatures, ScanDeadline deadline, @CheckForNull BooleanSupplier cancelled) {
+            this(source, null, signatures.newScan(charset), charset, deadline, cancelled);
+        }
+
+        ForwardScan(ReadableByteChannel channel, Charset charset, SignatureSet signatures, ScanDeadline deadline, @CheckForNull BooleanSupplier cancelled) {
+            this(null, channel, signatures.newScan(charset), charset, deadline, cancelled);
+        }
+
+        ForwardScan(@CheckForNull LogSource source, @CheckForNull ReadableByteChannel channel, SignatureSet.Scan scan, Charset charset, ScanDeadline deadline, @CheckForNull BooleanSupplier cancelled) {
+            this.source = source;
+            this.channel = channel;
+            this.scan = scan;
+            this.line = new DecodedLine(charset);
+            this.line.setDeadline(deadline);
+            this.deadline = deadline;
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * Tests lines starting in <code>[from, to)</code> of the log.
+         * The last line is read to its end even beyond <code>to</code>.
+         * A line starting before <code>from</code> is skipped.
+         * <code>from</code> must be 0 when reading a channel.
+         *
+         * @param from the position to start
+         * @param to the position to stop. {@link Long#MAX_VALUE} to read to the end of the log.
+         * @return the result. Can be partial if cancelled.
+         */
+        ScanResult scan(long from, long to) throws IOException {
+            lineNumber = (from == 0) ? 0 : -1;
+            long position = from;
+            if (from > 0 && readByte(from - 1) != '\n') {
+                position = skipLine(from, to);
+                if (position < 0) {
+                    // no lines start in this range.
+                    return ScanResult.NOT_MATCHED;
+                }
+            }
+            bufStart = position;
+            newlines = 0;
+            counted = 0;
+            // buf[0, lineStart) is already tested
+            // buf[lineStart, position) is the current line.
+            int lineStart = 0;
+            while (position < to) {
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    return scan.getResult();
+                }
+                // also for inflating streams, which cannot be interrupted.
+                deadline.check();
+                int searchFrom = buf.position();
+                if (to - position < buf.remaining()) {
+                    buf.limit(buf.position() + (int)(to - position));
+                }
+                int read = read(buf, position);
+                buf.limit(buf.capacity());
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                int filled = buf.position();
+                lineStart = isSkippable()
+                        ? testCandidateLines(lineStart, filled)
+                        : testLines(lineStart, searchFrom, filled);
+                if (lineStart < 0) {
+                    return scan.getResult();
+                }
+                if (!buf.hasRemaining()) {
+                    lineStart = compact(lineStart);
+                    if (lineStart < 0) {
+                        return scan.getResult();
+                    }
+                }
+            }
+            if (buf.position() > lineStart) {
+                // the last line, which may continue beyond the range or not be terminated with LF.
+                readRestOfLine(lineStart, position);
+            }
+            return scan.getResult();
+        }
+
+        /**
+         * Reads the current line <code>buf[lineStart, position)</code> to its end and tests it.
+         *
+         * @param position the position in the log to continue reading
+         */
+        private void readRestOfLine(int lineStart, long position) throws IOException {
+            while (true) {
+                deadline.check();
+                if (!buf.hasRemaining()) {
+                    lineStart = compact(lineStart);
+                    if (lineStart < 0) {
+                        return;
+                    }
+                }
+                int searchFrom = buf.position();
+                int read = read(buf, position);
+                if (read < 0) {
+                    testLine(lineStart, buf.position());
+                    return;
+                }
+                position += read;
+                int end = indexOfNewline(searchFrom, buf.position());
+                if (end >= 0) {
+                    testLine(lineStart, end);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Skips the line crossing <code>from</code>, which belongs to the previous range.
+         *
+         * @return the start of the next line. -1 if it's not in <code>[from, to)</code>.
+         */
+        private long skipLine(long from, long to) throws IOException {
+            long position = from;
+            while (position < to) {
+                buf.clear();
+                int read = read(buf, position);
+                if (read < 0) {
+                    break;
+                }
+                int end = indexOfNewline(0, buf.position());
+                if (end >= 0) {
+                    buf.clear();
+                    long next = position + end + 1;
+                    return (next < to) ? next : -1;
+                }
+                position += read;
+            }
+            buf.clear();
+            return -1;
+        }
+
+        private byte readByte(long position) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            if (read(b, position) <= 0) {
+                throw new EOFException("Unexpected end of the log at " + position);
+            }
+            return b.get(0);
+        }
+
+        /**
+         * Tests every line terminated in <code>buf[lineStart, filled)</code>.
+         *
+         * @return the start of the line not terminated yet. -1 if the result is decided.
+         */
+        private int testLines(int lineStart, int searchFrom, int filled) {
+            for (int i = indexOfNewline(searchFrom, filled); i >= 0; i = indexOfNewline(i + 1, filled)) {
+                if (testLine(lineStart, i)) {
+                    return -1;
+                }
+                lineStart = i + 1;
+            }
+            return lineStart;
+        }
+
+        /**
+         * Tests only lines containing any of the required literals in <code>buf[lineStart, filled)</code>.
+         * Skips other lines without splitting them.
+         *
+         * @return the start of the line not terminated yet. -1 if the result is decided.
+         */
+        private int testCandidateLines(int lineStart, int filled) {
+            while (true) {
+                int hit = scan.nextCandidate(buf, lineStart, filled);
+                if (hit < 0) {
+                    // the last line may contain a literal continuing in the next block.
+                    return lastIndexOfNewline(lineStart, filled) + 1;
+                }
+                int start = lastIndexOfNewline(lineStart, hit) + 1;
+                int end = indexOfNewline(hit, filled);
+                if (end < 0) {
+                    // wait for the rest of the line.
+                    return start;
+                }
+                if (testLine(start, end)) {
+                    return -1;
+                }
+                lineStart = end + 1;
+            }
+        }
+
+        private int indexOfNewline(int from, int to) {
+            return ByteSearch.indexOf(buf, (byte)'\n', from, to);
+        }
+
+        /**
+         * @return the index of the last LF in <code>buf[from, to)</code>. <code>from - 1</code> if not found.
+         */
+        private int lastIndexOfNewline(int from, int to) {
+            int i = ByteSearch.lastIndexOf(buf, (byte)'\n', from, to);
+            return (i >= 0) ? i : from - 1;
+        }
+
+        /**
+         * Moves the current line to the beginning of the buffer,
+         * and extends the buffer if the line occupies the whole buffer.
+         * When the buffer is already {@link #getMaxLineLength()},
+         * tests the line read so far as a segment and keeps only its last {@link #getSegmentOverlap()} bytes.
+         *
+         * @return the new start of the current line (always 0). -1 if the result is decided.
+         */
+        private int compact(int lineStart) {
+            int filled = buf.position();
+            if (lineStart == 0) {
+                if (buf.capacity() >= getMaxLineLength()) {
+                    return testSegment(filled) ? -1 : 0;
+                }
+                ByteBuffer newBuf = ByteBuffer.allocateDirect(Math.min(buf.capacity() * 2, getMaxLineLength()));
+                buf.flip();
+                newBuf.put(buf);
+                buf = newBuf;
+                scan.resetCandidates();
+                return 0;
+            }
+            discard(lineStart);
+            buf.limit(filled).position(lineStart);
+            buf.compact();
+            bufStart += lineStart;
+            scan.resetCandidates();
+            return 0;
+        }
+
+        /**
+         * Tests <code>buf[0, filled)</code>, a part of a line too long to keep,
+         * and moves the overlap to the beginning of the buffer to continue the line.
+         *
+         * @return whether the result is decided.
+         */
+        private boolean testSegment(int filled) {
+            // lines without required literals are skipped as usual.
+            if (!isSkippable() || scan.nextCandidate(buf, 0, filled) >= 0) {
+                if (testLine(0, filled)) {
+                    return true;
+                }
+            }
+            continued = true;
+            int keep = Math.min(getSegmentOverlap(), filled);
+            discard(filled - keep);
+            buf.limit(filled).position(filled - keep);
+            buf.compact();
+            bufStart += filled - keep;
+            scan.resetCandidates();
+            return false;
+        }
+
+        private int read(ByteBuffer dst, long position) throws IOException {
+            if (source != null) {
+                int read = source.read(dst, position);
+                ScanAdmission.get().throttle(read, deadline);
+                return read;
+            }
+            // reads of logs compressed with gzip are throttled in the stream under the channel.
+            return channel.read(dst);
+        }
+
+        /**
+         * @return whether lines without required literals can be skipped.
+         */
+        protected boolean isSkippable() {
+            return scan.isSkippable();
+        }
+
+        /**
+         * Decodes <code>buf[from, to)</code> without a trailing CR.
+         *
+         * @return the line. Valid until the next line is decoded.
+         */
+        protected CharSequence decodeLine(int from, int to) {
+            if (to > from && buf.get(to - 1) == '\r') {
+                --to;
+            }
+            return line.decode(buf, from, to);
+        }
+
+        /**
+         * @return the bytes read from the beginning of the log.
+         */
+        protected long getLength() {
+            return bufStart + buf.position();
+        }
+
+        /**
+         * @return the position in the log of <code>buf[index]</code>.
+         */
+        protected long positionOf(int index) {
+            return bufStart + index;
+        }
+
+        /**
+         * @return whether the result is decided.
+         */
+        protected boolean testLine(int from, int to) {
+            if (to > from && buf.get(to - 1) == '\r') {
+                --to;
+            }
+            startLine(from);
+            return scan.test(buf, from, to, line);
+        }
+
+        /**
+         * Tells the scan the position and the number of the line to test next.
+         */
+        protected void startLine(int from) {
+            scan.setLineOffset(positionOf(from));
+            if (lineNumber >= 0) {
+                if (isSkippable()) {
+                    countNewlines(from);
+                    lineNumber = newlines + 1;
+                } else if (!continued) {
+                    ++lineNumber;
+                }
+                scan.setLineNumber(lineNumber);
+            }
+            continued = false;
+        }
+
+        /**
+         * Counts LFs in lines skipped up to <code>buf[to]</code>.
+         */
+        private void countNewlines(int to) {
+            if (to > counted) {
+                newlines += ByteSearch.count(buf, (byte)'\n', counted, to);
+                counted = to;
+            }
+        }
+
+        /**
+         * Counts LFs in <code>buf[0, n)</code> before they are dropped from the buffer.
+         */
+        private void discard(int n) {
+            if (lineNumber >= 0 && isSkippable()) {
+                countNewlines(n);
+                counted -= n;
+            }
+        }
+    }
+
+    /**
+     * Finds the last lines matching signatures in the last bytes of a log that can be read only forward,
+     * with the same result as {@link TailScan}.
+     *
+     * Reads the whole log as the length of the log is not known until the end.
+     */
+    private static class SequentialTailScan extends ForwardScan {
+        private final long maxBytes;
+
+        /**
+         * The last match of each group.
+         */
+        private final ScanResult[] lastPositives;
+        private final ScanResult[] lastNegatives;
+
+        SequentialTailScan(ReadableByteChannel channel, Charset charset, SignatureSet signatures, ScanDeadline deadline, long maxBytes) {
+            super(channel, charset, signatures, deadline, null);
+            this.maxBytes = maxBytes;
+            this.lastPositives = new ScanResult[signatures.getGroupCount()];
+            this.lastNegatives = new ScanResult[signatures.getGroupCount()];
+            Arrays.fill(lastPositives, ScanResult.NOT_MATCHED);
+            Arrays.fill(lastNegatives, ScanResult.NOT_MATCHED);
+        }
+
+        ScanResult scan() throws IOException {
+            scan(0, Long.MAX_VALUE);
+            long start = Math.max(0, getLength() - maxBytes);
+            List<ScanResult> results = new ArrayList<>(lastPositives.length);
+            for (int g = 0; g < lastPositives.length; ++g) {
+                if (lastNegatives[g].getMatchOffset() >= start) {
+                    results.add(lastNegatives[g]);
+                } else if (lastPositives[g].getMatchOffset() >= start) {
+                    results.add(lastPositives[g]);
+                } else {
+                    results.add(ScanResult.NOT_MATCHED);
+                }
+            }
+            return ScanResult.ofGroups(results);
+        }
+
+        @Override
+        protected boolean testLine(int from, int to) {
+            super.testLine(from, to);
+            boolean matched = false;
+            for (int g = 0; g < lastPositives.length; ++g) {
+                SignatureSet.Signature s = scan.getMatched(g);
+                if (s == null) {
+                    continue;
+                }
+                if (s.negative()) {
+                    lastNegatives[g] = scan.getResult(g);
+                } else {
+                    lastPositives[g] = scan.getResult(g);
+                }
+                matched = true;
+            }
+            if (matched) {
+                scan.clearMatched();
+            }
+            // never decided until the end.
+            return false;
+        }
+    }
+
+    /**
+     * Appends each line to a {@link LineWindow} and tests the window.
+     */
+    private static class MultilineScan extends ForwardScan {
+        private final LineWindow window;
+
+        MultilineScan(LogSource source, Charset charset, SignatureSet signatures, ScanDeadline deadline, LineWindow window) {
+            super(source, charset, signatures, deadline, null);
+            this.window = window;
+        }
+
+        MultilineScan(ReadableByteChannel channel, Charset charset, SignatureSet signatures, ScanDeadline deadline, LineWindow window) {
+            super(channel, charset, signatures, deadline, null);
+            this.window = window;
+        }
+
+        @Override
+        protected boolean isSkippable() {
+            // every line is a part of the window.
+            return false;
+        }
+
+        @Override
+        protected boolean testLine(int from, int to) {
+            window.append(decodeLine(from, to), positionOf(from));
+            startLine(from);
+            return scan.test(window);
+        }
+    }
+
+    private static class TailScan {
+        private final LogSource source;
+        private final SignatureSet.Scan scan;
+        private final DecodedLine line;
+        private final ScanDeadline deadline;
+
+        /**
+         * The known suffix of the current line,
+         * stored at the end of the array: <code>carry[carryStart, carry.length)</code>.
+         * {@link #getMaxLineLength()} at most.
+         */
+        private byte[] carry = new byte[256];
+        private int carryStart = carry.length;
+        /**
+         * The offset of <code>carry[carryStart]</code> in the log.
+         */
+        private long carryOffset;
+
+        TailScan(LogSource source, Charset charset, SignatureSet signatures, ScanDeadline deadline) {
+            this.source = source;
+            this.scan = signatures.newScan(charset);
+            this.line = new DecodedLine(charset);
+            this.line.setDeadline(deadline);
+            this.deadline = deadline;
+        }
+
+        ScanResult scan(long maxBytes) throws IOException {
+            long end = source.length();
+            long start = (maxBytes > 0) ? Math.max(0, end - maxBytes) : 0;
+            boolean firstLineComplete = (start == 0) || readByte(start - 1) == '\n';
+
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE);
+            byte[] block = buf.array();
+            long pos = end;
+            while (pos > start) {
+                int len = (int)Math.min(BLOCK_SIZE, pos - start);
+                pos -= len;
+                deadline.check();
+                buf.clear().limit(len);
+                readFully(buf, pos);
+
+                int lineEnd = len;
+                for (int i = ByteSearch.lastIndexOf(block, (byte)'\n', 0, len); i >= 0; i = ByteSearch.lastIndexOf(block, (byte)'\n', 0, i)) {
+                    if (pos + i == end - 1) {
+                        // the newline terminating the last line.
+                        lineEnd = i;
+                        continue;
+                    }
+                    if (testLine(block, i + 1, lineEnd, pos + i + 1)) {
+                        return scan.getResult();
+                    }
+                    carryStart = carry.length;
+                    lineEnd = i;
+                }
+                if (prependCarry(block, 0, lineEnd, pos)) {
+                    return scan.getResult();
+                }
+            }
+
+            // the first line in the range (can be empty).
+            if (firstLineComplete && end > start) {
+                testLine(carry, carryStart, carry.length, start);
+            }
+            return scan.getResult();
+        }
+
+        /**
+         * Tests <code>b[from, to)</code> followed by the carried suffix.
+         *
+         * @param offset the offset of the line in the log
+         * @return whether the result is decided.
+         */
+        private boolean testLine(byte[] b, int from, int to, long offset) {
+            byte[] lineBytes = b;
+            int lineFrom = from;
+            int lineTo = to;
+            if (b != carry && carryStart < carry.length) {
+                if (prependCarry(b, from, to, offset)) {
+                    return true;
+                }
+                offset = carryOffset;
+                lineBytes = carry;
+                lineFrom = carryStart;
+                lineTo = carry.length;
+            }
+            if (lineTo > lineFrom && lineBytes[lineTo - 1] == '\r') {
+                --lineTo;
+            }
+            scan.setLineOffset(offset);
+            return scan.test(lineBytes, lineFrom, lineTo, line);
+        }
+
+        /**
+         * Prepends <code>b[from, to)</code> to the carried suffix.
+         * When the suffix would get longer than {@link #getMaxLineLength()},
+         * tests it as a segment of the line and keeps only its first {@link #getSegmentOverlap()} bytes.
+         *
+         * @param offset the offset of <code>b[from]</code> in the log
+         * @return whether the result is decided.
+         */
+        private boolean prependCarry(byte[] b, int from, int to, long offset) {
+            int max = getMaxLineLength();
+            while (to > from) {
+                int carryLen = carry.length - carryStart;
+                if (carryLen >= max) {
+                    // a segment of a long line, tested from the end like lines.
+                    scan.setLineOffset(carryOffset);
+                    if (scan.test(carry, carryStart, carry.length, line)) {
+                        return true;
+                    }
+                    int keep = getSegmentOverlap();
+                    System.arraycopy(carry, carryStart, carry, carry.length - keep, keep);
+                    carryStart = carry.length - keep;
+                    continue;
+                }
+                int len = Math.min(to - from, max - carryLen);
+                if (carryStart < len) {
+                    int newSize = carry.length;
+                    while (newSize - carryLen < len) {
+                        newSize = Math.min(newSize * 2, max);
+                    }
+                    byte[] newCarry = new byte[newSize];
+                    System.arraycopy(carry, carryStart, newCarry, newSize - carryLen, carryLen);
+                    carry = newCarry;
+                    carryStart = newSize - carryLen;
+                }
+                carryStart -= len;
+                to -= len;
+                System.arraycopy(b, to, carry, carryStart, len);
+                carryOffset = offset + (to - from);
+            }
+            return false;
+        }
+
+        private byte readByte(long position) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            readFully(b, position);
+            return b.get(0);
+        }
+
+        private void readFully(ByteBuffer buf, long position) throws IOException {
+            while (buf.hasRemaining()) {
+                int read = source.read(buf, position + buf.position());
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of the log at " + (position + buf.position()));
+                }
+                ScanAdmission.get().throttle(read, deadline);
+            }
+        }
+    }
+
+    /**
+     * Lets the regular expression engine abort when the deadline passed,
+     * checking it every {@link ScanDeadline#CHECK_INTERVAL} characters read.
+     * Reused for lines to count characters across lines.
+     */
+    static class CheckedCharSequence implements CharSequence {
+        private final ScanDeadline deadline;
+        private CharSequence wrapped = "";
+        private int untilCheck = ScanDeadline.CHECK_INTERVAL;
+
+        CheckedCharSequence(@NonNull ScanDeadline deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Also counts the characters of the line, which are read at least once.
+         *
+         * @param line the line to wrap
+         * @return this
+         */
+        @NonNull
+        CheckedCharSequence wrap(@NonNull CharSequence line) {
+            this.wrapped = line;
+            untilCheck -= line.length();
+            if (untilCheck < 0) {
+                untilCheck = ScanDeadline.CHECK_INTERVAL;
+                deadline.check();
+            }
+            return this;
+        }
+
+        public int length() {
+            return wrapped.length();
+        }
+
+        public char charAt(int index) {
+            if (--untilCheck < 0) {
+                untilCheck = ScanDeadline.CHECK_INTERVAL;
+                deadline.check();
+            }
+            return wrapped.charAt(index);
+        }
+
+        @NonNull
+        public CharSequence subSequence(int start, int end) {
+            return wrapped.subSequence(start, end);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return wrapped.toString();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.AnnotatedLargeText;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Where {@link LogScanner} reads a log from.
+ *
+ * Scans read blocks at positions with {@link #read(ByteBuffer, long)},
+ * so that scanning the tail or stopping at an early match reads only the bytes needed.
+ * Logs in charsets not compatible with ASCII and logs compressed with gzip are read with {@link #open()} instead.
+ *
+ * <ul>
+ *   <li>{@link #of(File)} reads a local file.</li>
+ *   <li>{@link #of(Run)} reads the log of a build through {@link Run#getLogText()}
+ *       when the build can store the log elsewhere than the local disk (e.g. Pipeline with an external log storage),
+ *       so that the log is never copied into a temporary file to be scanned.</li>
+ * </ul>
+ *
+ * Sources open files lazily, and {@link #close()} closes them.
+ */
+abstract class LogSource implements Closeable {
+    /**
+     * @param logFile the log file
+     * @return the source reading the file.
+     */
+    @NonNull
+    static LogSource of(@NonNull File logFile) {
+        return new FileSource(logFile);
+    }
+
+    /**
+     * {@link AbstractBuild}s always write the log to {@link Run#getLogFile()},
+     * which is read directly.
+     * Other builds are read with ranged reads of {@link Run#getLogText()},
+     * as {@link Run#getLogFile()} can copy the whole log from the storage.
+     *
+     * @param run the build
+     * @return the source reading the log of the build.
+     */
+    @NonNull
+    static LogSource of(@NonNull Run<?, ?> run) {
+        if (run instanceof AbstractBuild) {
+            return of(run.getLogFile());
+        }
+        return new TextSource(run);
+    }
+
+    /**
+     * @return the length of the log in bytes, as stored (compressed if {@link #isGzip()}).
+     * @throws IOException failed to access the log
+     */
+    abstract long length() throws IOException;
+
+    /**
+     * @return whether the log is stored compressed with gzip, and can be read only with {@link #open()}.
+     * @throws IOException failed to read the log
+     */
+    abstract boolean isGzip() throws IOException;
+
+    /**
+     * Reads bytes of the log at a position.
+     * Can be called from multiple threads at once.
+     *
+     * @param dst the buffer to read into
+     * @param position the position in the log to read from
+     * @return bytes read. -1 at the end of the log.
+     * @throws IOException failed to read the log
+     */
+    abstract int read(@NonNull ByteBuffer dst, long position) throws IOException;
+
+    /**
+     * @return the stream reading the whole log as stored from the beginning.
+     * @throws IOException failed to read the log
+     */
+    @NonNull
+    abstract InputStream open() throws IOException;
+
+    /**
+     * @return the state of the log to tell whether a cached result is still valid.
+     * @throws IOException failed to access the log
+     */
+    @NonNull
+    abstract ScanCache.Stamp getStamp() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Reads a local file with a {@link FileChannel}.
+     */
+    private static final class FileSource extends LogSource {
+        private final File logFile;
+        @CheckForNull
+        private FileChannel channel;
+        @CheckForNull
+        private Boolean gzip;
+
+        FileSource(@NonNull File logFile) {
+            this.logFile = logFile;
+        }
+
+        @NonNull
+        private synchronized FileChannel getChannel() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ);
+            }
+            return channel;
+        }
+
+        @Override
+        long length() throws IOException {
+            return getChannel().size();
+        }
+
+        /**
+         * Tests the magic number of gzip rather than the file name,
+         * as <code>log.gz</code> can be passed for <code>log</code>.
+         */
+        @Override
+        synchronized boolean isGzip() throws IOException {
+            if (gzip == null) {
+                try (InputStream in = new FileInputStream(logFile)) {
+                    gzip = in.read() == 0x1F && in.read() == 0x8B;
+                }
+            }
+            return gzip;
+        }
+
+        @Override
+        int read(@NonNull ByteBuffer dst, long position) throws IOException {
+            return getChannel().read(dst, position);
+        }
+
+        @NonNull
+        @Override
+        InputStream open() throws IOException {
+            return new FileInputStream(logFile);
+        }
+
+        @NonNull
+        @Override
+        ScanCache.Stamp getStamp() {
+            return ScanCache.Stamp.of(logFile);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Reads a log from a storage writing bytes from a position to a stream,
+     * and stops the storage when enough bytes are written.
+     * A storage writing lazily (e.g. fetching in pages) fetches only the bytes read.
+     *
+     * Logs are always read uncompressed.
+     */
+    abstract static class RangedSource extends LogSource {
+        /**
+         * @return the length of the log in bytes.
+         * @throws IOException failed to access the log
+         */
+        @Override
+        abstract long length() throws IOException;
+
+        /**
+         * Writes the log from a position to the end.
+         * Stops with the exception the stream throws.
+         *
+         * @param start the position to start writing
+         * @param out the stream to write to
+         * @throws IOException failed to read the log, or thrown by <code>out</code>
+         */
+        protected abstract void writeTo(long start, @NonNull OutputStream out) throws IOException;
+
+        @Override
+        boolean isGzip() {
+            return false;
+        }
+
+        @Override
+        int read(@NonNull ByteBuffer dst, long position) throws IOException {
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+            int start = dst.position();
+            try {
+                writeTo(position, new BufferFiller(dst));
+            } catch (BufferFilledException e) {
+                // read enough.
+            }
+            int read = dst.position() - start;
+            // nothing is written beyond the end.
+            return (read > 0) ? read : -1;
+        }
+
+        @NonNull
+        @Override
+        InputStream open() throws IOException {
+            return new InputStream() {
+                private long position;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return (read(b, 0, 1) > 0) ? (b[0] & 0xFF) : -1;
+                }
+
+                @Override
+                public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    int read = RangedSource.this.read(ByteBuffer.wrap(b, off, len), position);
+                    if (read > 0) {
+                        position += read;
+                    }
+                    return read;
+                }
+            };
+        }
+
+        @NonNull
+        @Override
+        ScanCache.Stamp getStamp() throws IOException {
+            // scanned after the build completed, when the log no longer changes.
+            return new ScanCache.Stamp(length(), 0);
+        }
+    }
+
+    /**
+     * Reads the log of a build with {@link AnnotatedLargeText#writeRawLogTo(long, OutputStream)},
+     * which external log storages implement with ranged reads.
+     */
+    private static final class TextSource extends RangedSource {
+        private final Run<?, ?> run;
+        @CheckForNull
+        private AnnotatedLargeText<?> text;
+
+        TextSource(@NonNull Run<?, ?> run) {
+            this.run = run;
+        }
+
+        @NonNull
+        private synchronized AnnotatedLargeText<?> getText() {
+            if (text == null) {
+                text = run.getLogText();
+            }
+            return text;
+        }
+
+        @Override
+        long length() {
+            return getText().length();
+        }
+
+        @Override
+        protected void writeTo(long start, @NonNull OutputStream out) throws IOException {
+            getText().writeRawLogTo(start, out);
+        }
+
+        /**
+         * Streams the whole log, which the storage can do more efficiently than ranged reads.
+         */
+        @NonNull
+        @Override
+        InputStream open() throws IOException {
+            return run.getLogInputStream();
+        }
+    }
+
+    /**
+     * Copies bytes into a buffer, and throws {@link BufferFilledException} when the buffer is full.
+     */
+    private static final class BufferFiller extends OutputStream {
+        private final ByteBuffer dst;
+
+        BufferFiller(@NonNull ByteBuffer dst) {
+            this.dst = dst;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!dst.hasRemaining()) {
+                throw BufferFilledException.INSTANCE;
+            }
+            dst.put((byte)b);
+            if (!dst.hasRemaining()) {
+                throw BufferFilledException.INSTANCE;
+            }
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            if (!dst.hasRemaining()) {
+                throw BufferFilledException.INSTANCE;
+            }
+            dst.put(b, off, Math.min(len, dst.remaining()));
+            if (!dst.hasRemaining()) {
+                throw BufferFilledException.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Stops the storage writing the log, without a stack trace as it isn't an error.
+     */
+    private static final class BufferFilledException extends IOException {
+        private static final long serialVersionUID = 1L;
+        static final BufferFilledException INSTANCE = new BufferFilledException();
+
+        private BufferFilledException() {
+            super("Read enough", null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
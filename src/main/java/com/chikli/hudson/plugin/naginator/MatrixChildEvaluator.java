@@ -0,0 +1,177 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tests children of a matrix build in parallel on a bounded pool.
+ *
+ * Children not getting a thread from the pool are tested by the calling thread,
+ * which keeps the number of threads bounded however many matrix builds complete at once.
+ *
+ * @param <T> the type of children.
+ */
+final class MatrixChildEvaluator<T> {
+    /**
+     * A test for a child.
+     *
+     * @param <T> the type of children.
+     */
+    @FunctionalInterface
+    interface ChildTest<T> {
+        /**
+         * @param child the child to test.
+         * @param cancelled returns <code>true</code> when the result is no longer needed.
+         *     Long running tests should give up then.
+         * @return whether the child matched.
+         */
+        boolean test(@NonNull T child, @NonNull BooleanSupplier cancelled);
+    }
+
+    private final ExecutorService pool;
+    private final ChildTest<T> test;
+
+    /**
+     * @param pool the pool to test children on. It should reject tasks rather than queuing them when all threads are busy.
+     * @param test the test for each child.
+     */
+    MatrixChildEvaluator(@NonNull ExecutorService pool, @NonNull ChildTest<T> test) {
+        this.pool = pool;
+        this.test = test;
+    }
+
+    /**
+     * Tests all children.
+     *
+     * @param children children to test.
+     * @return children matched, in the order of <code>children</code>.
+     */
+    @NonNull
+    List<T> matchAll(@NonNull List<T> children) {
+        boolean[] matched = evaluate(children, false);
+        List<T> result = new ArrayList<>();
+        for (int i = 0; i < children.size(); ++i) {
+            if (matched[i]) {
+                result.add(children.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tests children until one matches, and cancels tests for the rest.
+     *
+     * @param children children to test.
+     * @return whether any child matched.
+     */
+    boolean matchAny(@NonNull List<T> children) {
+        boolean[] matched = evaluate(children, true);
+        for (boolean m : matched) {
+            if (m) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    private boolean[] evaluate(@NonNull List<T> children, boolean stopAtFirstMatch) {
+        boolean[] matched = new boolean[children.size()];
+        AtomicBoolean cancelled = new AtomicBoolean();
+        if (children.size() == 1) {
+            // not worth handing over to another thread.
+            matched[0] = test.test(children.get(0), cancelled::get);
+            return matched;
+        }
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(pool, new LinkedBlockingQueue<>());
+        List<Future<Integer>> futures = new ArrayList<>(children.size());
+        int pending = 0;
+        try {
+            for (int i = 0; i < children.size() && !cancelled.get(); ++i) {
+                final int index = i;
+                final T child = children.get(i);
+                try {
+                    futures.add(completion.submit(() -> {
+                        if (cancelled.get()) {
+                            return -1;
+                        }
+                        if (!test.test(child, cancelled::get)) {
+                            return -1;
+                        }
+                        if (stopAtFirstMatch) {
+                            // others, including the one the caller may be running, give up without waiting for this to be collected.
+                            cancelled.set(true);
+                        }
+                        return index;
+                    }));
+                    ++pending;
+                } catch (RejectedExecutionException e) {
+                    // all threads are busy, or the pool is shut down.
+                    matched[index] = test.test(child, cancelled::get);
+                    if (matched[index] && stopAtFirstMatch) {
+                        cancelled.set(true);
+                    }
+                }
+                for (Future<Integer> f = completion.poll(); f != null; f = completion.poll()) {
+                    collect(f, matched, stopAtFirstMatch, cancelled);
+                    --pending;
+                }
+            }
+            for (; pending > 0 && !cancelled.get(); --pending) {
+                collect(completion.take(), matched, stopAtFirstMatch, cancelled);
+            }
+        } catch (InterruptedException e) {
+            // children not tested yet are treated as not matched, as they are when scans are interrupted.
+            Thread.currentThread().interrupt();
+        } finally {
+            // tests still running give up at the next check without being waited for.
+            cancelled.set(true);
+            for (Future<Integer> f : futures) {
+                f.cancel(false);
+            }
+        }
+        return matched;
+    }
+
+    private void collect(@NonNull Future<Integer> future, @NonNull boolean[] matched, boolean stopAtFirstMatch, @NonNull AtomicBoolean cancelled) {
+        if (future.isCancelled()) {
+            return;
+        }
+        int index = get(future);
+        if (index >= 0) {
+            matched[index] = true;
+            if (stopAtFirstMatch) {
+                cancelled.set(true);
+            }
+        }
+    }
+
+    private static <V> V get(@NonNull Future<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while getting a completed result", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
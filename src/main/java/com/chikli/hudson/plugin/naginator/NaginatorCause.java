@@ -6,6 +6,7 @@ import hudson.model.AbstractBuild;
 import hudson.model.Cause;
 import hudson.model.Job;
 import hudson.model.Run;
+import org.kohsuke.stapler.export.Exported;
 
 /**
  * {@link Cause} for builds triggered by this plugin.
@@ -15,11 +16,21 @@ public class NaginatorCause extends Cause {
 
     private final String summary;
     private final Integer sourceBuildNumber;
+    private final NaginatorMatch match;
     private transient Job project;
 
     public NaginatorCause(AbstractBuild<?, ?> build) {
+        this(build, null);
+    }
+
+    /**
+     * @param build the build to retry
+     * @param match the line of the log which made the build rescheduled. <code>null</code> if not by regular expressions.
+     */
+    public NaginatorCause(AbstractBuild<?, ?> build, @CheckForNull NaginatorMatch match) {
         this.summary = build.getDisplayName();
         this.sourceBuildNumber = build.getNumber();
+        this.match = match;
     }
 
     @Override
@@ -58,4 +69,14 @@ public class NaginatorCause extends Cause {
         }
         return getProject().getBuildByNumber(getSourceBuildNumber());
     }
+
+    /**
+     * @return the line of the log which made the build rescheduled.
+     *     <code>null</code> if not rescheduled by regular expressions, or by older versions.
+     */
+    @Exported
+    @CheckForNull
+    public NaginatorMatch getMatch() {
+        return match;
+    }
 }
@@ -0,0 +1,244 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.console.ConsoleLogFilter;
+import hudson.model.AbstractProject;
+import hudson.model.Run;
+import jenkins.util.SystemProperties;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Tests the regular expressions of {@link NaginatorPublisher} against the output of builds
+ * while it is written, so that the log doesn't have to be read again when the build completes.
+ *
+ * The result is recorded with {@link NaginatorLogScanAction}.
+ * Not applied when only the tail of the log is scanned, as the result would differ,
+ * nor for charsets not compatible with ASCII.
+ */
+@Extension
+public class NaginatorConsoleLogFilter extends ConsoleLogFilter {
+    private static final Logger LOGGER = Logger.getLogger(NaginatorConsoleLogFilter.class.getName());
+
+    /**
+     * Set to <code>true</code> to always scan logs after builds complete.
+     */
+    static boolean DISABLED = SystemProperties.getBoolean(NaginatorConsoleLogFilter.class.getName() + ".disabled");
+
+    /**
+     * Lines longer than this are not tested while the build is running.
+     */
+    static int MAX_LINE_LENGTH = SystemProperties.getInteger(
+            NaginatorConsoleLogFilter.class.getName() + ".maxLineLength",
+            1024 * 1024
+    );
+
+    @Override
+    public OutputStream decorateLogger(Run build, OutputStream logger) throws IOException, InterruptedException {
+        if (DISABLED || !(build.getParent() instanceof AbstractProject)) {
+            return logger;
+        }
+        NaginatorPublisher publisher = ((AbstractProject<?, ?>)build.getParent()).getPublishersList().get(NaginatorPublisher.class);
+        if (publisher == null || !publisher.isCheckRegexp()) {
+            return logger;
+        }
+        if (publisher.getLogScanMode() == LogScanMode.TailFirst && publisher.getTailScanBytes() > 0) {
+            return logger;
+        }
+        if (publisher.getMultilineWindowLines() > 0) {
+            // tests lines one by one.
+            return logger;
+        }
+        Charset charset = build.getCharset();
+        if (!LogScanner.isAsciiCompatible(charset)) {
+            // lines cannot be split on bytes.
+            return logger;
+        }
+        SignatureSet signatures;
+        try {
+            signatures = SignatureSet.compile(
+                    publisher.getRegexpForRerun(),
+                    publisher.getAdditionalRegexpsForRerun(),
+                    publisher.getRegexpsForNoRerun(),
+                    publisher.getEffectiveRegexpEngine()
+            );
+        } catch (PatternSyntaxException e) {
+            LOGGER.log(Level.FINE, "Not watching the output for an invalid regexp", e);
+            return logger;
+        }
+        if (signatures.isEmpty()) {
+            return logger;
+        }
+        NaginatorLogScanAction action = new NaginatorLogScanAction(signatures);
+        MatchingOutputStream stream = new MatchingOutputStream(logger, signatures, charset, action);
+        action.setStream(stream);
+        build.replaceAction(action);
+        return stream;
+    }
+
+    /**
+     * Passes the output through and tests each line with the regular expressions.
+     *
+     * Stops testing when the result is decided.
+     * Gives up when a line is too long or the regular expressions take too many steps for a line
+     * (e.g. catastrophic backtracking), as it runs in the thread of the build.
+     */
+    static final class MatchingOutputStream extends FilterOutputStream {
+        /**
+         * Characters the regular expression engine can read for each line and each pattern,
+         * in addition to those for each character.
+         * Runs in the thread of the build, where the scan cannot be interrupted with a timeout.
+         */
+        private static final long MIN_BUDGET = 100000;
+        /**
+         * Characters the regular expression engine can read for each character of a line and each pattern.
+         */
+        private static final long BUDGET_PER_CHAR = 200;
+
+        private final SignatureSet.Scan scan;
+        private final DecodedLine decodedLine;
+        private final NaginatorLogScanAction action;
+        private final byte[] oneByte = new byte[1];
+
+        private byte[] line = new byte[256];
+        private int lineLength;
+        private long lineOffset;
+        private long lineNumber = 1;
+        private boolean decided;
+        private boolean givenUp;
+
+        MatchingOutputStream(@NonNull OutputStream out, @NonNull SignatureSet signatures, @NonNull Charset charset, @NonNull NaginatorLogScanAction action) {
+            super(out);
+            this.scan = signatures.newScan(charset);
+            this.decodedLine = new DecodedLine(charset);
+            int patterns = signatures.getSignatures().size();
+            this.decodedLine.setStepBudget(MIN_BUDGET * patterns, BUDGET_PER_CHAR * patterns);
+            this.action = action;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            out.write(b);
+            oneByte[0] = (byte)b;
+            feed(oneByte, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            feed(b, off, len);
+        }
+
+        private synchronized void feed(byte[] b, int off, int len) {
+            if (decided || givenUp) {
+                return;
+            }
+            int end = off + len;
+            int from = off;
+            for (int i = ByteSearch.indexOf(b, (byte)'\n', off, end); i >= 0; i = ByteSearch.indexOf(b, (byte)'\n', i + 1, end)) {
+                boolean found;
+                long length;
+                if (lineLength == 0) {
+                    // the whole line is in the written bytes.
+                    found = testLine(b, from, i);
+                    length = i - from;
+                } else {
+                    append(b, from, i);
+                    found = !givenUp && testLine(line, 0, lineLength);
+                    length = lineLength;
+                }
+                if (found || givenUp) {
+                    return;
+                }
+                lineOffset += length + 1;
+                lineLength = 0;
+                ++lineNumber;
+                from = i + 1;
+            }
+            append(b, from, end);
+        }
+
+        private void append(byte[] b, int from, int to) {
+            int len = to - from;
+            if (len <= 0) {
+                return;
+            }
+            if (lineLength + len > MAX_LINE_LENGTH) {
+                giveUp("line " + lineNumber + " is too long");
+                return;
+            }
+            if (lineLength + len > line.length) {
+                int newSize = line.length;
+                while (newSize < lineLength + len) {
+                    newSize *= 2;
+                }
+                byte[] newLine = new byte[newSize];
+                System.arraycopy(line, 0, newLine, 0, lineLength);
+                line = newLine;
+            }
+            System.arraycopy(b, from, line, lineLength, len);
+            lineLength += len;
+        }
+
+        private boolean testLine(byte[] b, int from, int to) {
+            if (to > from && b[to - 1] == '\r') {
+                --to;
+            }
+            SignatureSet.Signature before = scan.getMatched();
+            scan.setLineOffset(lineOffset);
+            scan.setLineNumber(lineNumber);
+            try {
+                decided = scan.test(b, from, to, decodedLine);
+            } catch (DecodedLine.BudgetExceededException e) {
+                giveUp("the regexp took too many steps for line " + lineNumber);
+                return false;
+            } catch (RuntimeException | StackOverflowError e) {
+                // e.g. interrupted, or too deep recursion of the engine.
+                LOGGER.log(Level.FINE, "Failed to test line " + lineNumber, e);
+                giveUp("failed to test line " + lineNumber);
+                return false;
+            }
+            SignatureSet.Signature matched = scan.getMatched();
+            if (matched != null && matched != before) {
+                action.recordMatch(matched, lineOffset, lineNumber, scan.getResult().getExcerpt());
+            }
+            return decided;
+        }
+
+        private void giveUp(String reason) {
+            LOGGER.log(Level.FINE, "Stopped watching the output as {0}. The log will be scanned after the build.", reason);
+            givenUp = true;
+            line = null;
+        }
+
+        /**
+         * Called when the build completed.
+         *
+         * @return the result of lines written so far.
+         *     <code>null</code> if testing was given up.
+         */
+        @CheckForNull
+        synchronized ScanResult getResult() {
+            if (givenUp) {
+                return null;
+            }
+            if (!decided && lineLength > 0) {
+                // the last line not terminated.
+                // Kept in the buffer, as it may continue later.
+                testLine(line, 0, lineLength);
+                if (givenUp) {
+                    return null;
+                }
+            }
+            return scan.getResult();
+        }
+    }
+}
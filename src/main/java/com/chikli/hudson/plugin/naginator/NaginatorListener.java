@@ -1,5 +1,6 @@
 package com.chikli.hudson.plugin.naginator;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.Launcher;
@@ -17,6 +18,14 @@ import java.util.logging.Logger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import jenkins.model.Jenkins;
 
 /**
  * @author <a href="mailto:nicolas.deloof@cloudbees.com">Nicolas De loof</a>
@@ -32,56 +41,233 @@ public class NaginatorListener extends RunListener<AbstractBuild<?,?>> {
             return;
         }
         
-        int retryCount = calculateRetryCount(build);
-        
-        List<NaginatorScheduleAction> actions = build.getActions(NaginatorScheduleAction.class);
-        for (NaginatorScheduleAction action : actions) {
-            if (action.shouldSchedule(build, listener, retryCount)) {
-                int n = action.getDelay().computeScheduleDelay(build);
-                LOGGER.log(Level.FINE, "about to try to schedule a build #{0} in {1} seconds for {2}",
-                        new Object[]{build.getNumber(), n, build.getProject().getName()} );
-                
-                List<Combination> combsToRerun = new ArrayList<Combination>();
-
-                if (action.isRerunMatrixPart()) {
-                    if (build instanceof MatrixBuild) {
-                        MatrixBuild mb = (MatrixBuild) build;
-                        List<MatrixRun> matrixRuns = mb.getRuns();
-
-                        for (MatrixRun r : matrixRuns) {
-                            if (r.getNumber() == build.getNumber()) {
-                                if (!action.shouldScheduleForMatrixRun(r, listener)) {
-                                    continue;
-                                }
-                                
-                                LOGGER.log(Level.FINE, "add combination to matrix rerun ({0})", r.getParent().getCombination().toString());
-                                combsToRerun.add(r.getParent().getCombination());    
-                            }
-                        }
+        if (build.getActions(NaginatorScheduleAction.class).isEmpty()) {
+            return;
+        }
+        NaginatorPublisher.DescriptorImpl d = getDescriptor();
+        DecisionBudget budget = DecisionBudget.start((d != null) ? d.getDecisionBudgetMs() : 0);
+        int retryCount = calculateRetryCount(build, budget);
+        if (budget.isExhausted()) {
+            onBudgetExhausted(build, listener, retryCount, budget, d);
+            return;
+        }
+        if (RetryEvaluator.isAsync()) {
+            RetryEvaluator.get().submit(build, retryCount);
+            return;
+        }
+        CompletableFuture<Void> evaluation = budget.call(() -> evaluate(build, listener, retryCount, budget)).toCompletableFuture();
+        try {
+            if (budget.isLimited()) {
+                evaluation.get(budget.getRemainingMs(), TimeUnit.MILLISECONDS);
+            } else {
+                evaluation.join();
+            }
+        } catch (TimeoutException e) {
+            budget.exhaust("waiting for schedule actions to decide");
+        } catch (ExecutionException | CompletionException e) {
+            LOGGER.log(Level.WARNING, "Failed to evaluate whether to reschedule " + build, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            budget.exhaust("interrupted");
+        }
+        if (budget.isExhausted()) {
+            onBudgetExhausted(build, listener, retryCount, budget, d);
+        }
+    }
+
+    @CheckForNull
+    private static NaginatorPublisher.DescriptorImpl getDescriptor() {
+        Jenkins j = Jenkins.getInstanceOrNull();
+        return (j != null) ? (NaginatorPublisher.DescriptorImpl)j.getDescriptor(NaginatorPublisher.class) : null;
+    }
 
+    /**
+     * Tells in the log of the build which budget was exhausted and how the build is handled,
+     * and handles it with {@link DecisionBudgetPolicy}.
+     * Schedule actions still deciding no longer reschedule the build.
+     *
+     * @param retryCount <code>-1</code> if the budget was exhausted while counting previous retries.
+     */
+    private void onBudgetExhausted(@NonNull AbstractBuild<?, ?> build, @NonNull TaskListener listener, int retryCount,
+            @NonNull DecisionBudget budget, @CheckForNull NaginatorPublisher.DescriptorImpl d) {
+        DecisionBudgetPolicy policy = (d != null) ? d.getDecisionBudgetPolicy() : DecisionBudgetPolicy.getDefault();
+        listener.getLogger().println(String.format(
+                "[Naginator] The decision budget of %d ms was exhausted while %s.",
+                budget.getBudgetMs(),
+                budget.getExhaustedBy()
+        ));
+        if (budget.isScheduled()) {
+            listener.getLogger().println("[Naginator] The build was already rescheduled before the budget was exhausted.");
+            return;
+        }
+        switch (policy) {
+        case Retry:
+            if (retryCount < 0) {
+                listener.getLogger().println("[Naginator] Not rescheduled as previous retries were not counted.");
+                break;
+            }
+            retryWithoutDeciding(build, listener, retryCount);
+            break;
+        case Skip:
+            listener.getLogger().println("[Naginator] Not rescheduled.");
+            break;
+        case Defer:
+            listener.getLogger().println("[Naginator] Deciding whether to reschedule the build in the background.");
+            RetryEvaluator.get().submit(build, retryCount);
+            break;
+        }
+    }
+
+    /**
+     * Reschedules the build for {@link DecisionBudgetPolicy#Retry}
+     * with the first action whose conditions testing only results pass.
+     * Only {@link NaginatorPublisherScheduleAction}s can be tested without deciding,
+     * with {@link RetryPredicate.Cost#Result} predicates, and other actions are skipped.
+     * Children of matrix builds are tested only with their results.
+     */
+    private void retryWithoutDeciding(@NonNull AbstractBuild<?, ?> build, @NonNull TaskListener listener, int retryCount) {
+        List<RetryPredicate> predicates = new ArrayList<RetryPredicate>();
+        for (RetryPredicate p : RetryPredicate.all()) {
+            if (p.getCost() == RetryPredicate.Cost.Result) {
+                predicates.add(p);
+            }
+        }
+        for (NaginatorScheduleAction a : build.getActions(NaginatorScheduleAction.class)) {
+            if (!(a instanceof NaginatorPublisherScheduleAction action)
+                    || !RetryPredicate.testAll(predicates, action, build, listener, retryCount)) {
+                continue;
+            }
+            List<Combination> combsToRerun = new ArrayList<Combination>();
+            if (action.isRerunMatrixPart() && build instanceof MatrixBuild) {
+                for (MatrixRun r : ((MatrixBuild) build).getExactRuns()) {
+                    if (action.checkCommonScheduleThreshold(r)) {
+                        combsToRerun.add(r.getParent().getCombination());
                     }
                 }
+                if (combsToRerun.isEmpty() && action.getNoChildStrategy() == NoChildStrategy.DontRun) {
+                    continue;
+                }
+            }
+            listener.getLogger().println("[Naginator] Rescheduling the build without testing the log.");
+            reschedule(build, action.getDelay().computeScheduleDelay(build), retryCount, action, combsToRerun, null);
+            return;
+        }
+        listener.getLogger().println("[Naginator] Not rescheduled as the build cannot be rescheduled without deciding.");
+    }
 
-                if (!combsToRerun.isEmpty()) {
-                    LOGGER.log(Level.FINE, "schedule matrix rebuild");
-                    scheduleMatrixBuild(build, combsToRerun, n, retryCount + 1, action.getMaxSchedule());
-                } else if (build instanceof MatrixBuild && action.isRerunMatrixPart()) {
-                    // No children to rerun
-                    switch (action.getNoChildStrategy()) {
-                    case RerunWhole:
-                        scheduleBuild(build, n, retryCount + 1, action.getMaxSchedule());
-                        break;
-                    case RerunEmpty:
-                        LOGGER.log(Level.FINE, "schedule matrix rebuild");
-                        scheduleMatrixBuild(build, combsToRerun, n, retryCount + 1, action.getMaxSchedule());
-                        break;
-                    case DontRun:
-                        continue;   // confusing, but back to the look for NaginatorScheduleAction
-                    }
-                } else {
-                    scheduleBuild(build, n, retryCount + 1, action.getMaxSchedule());
+    /**
+     * Reschedules the build if any {@link NaginatorScheduleAction} of the build tells to.
+     * Called when the build completes, or later by {@link RetryEvaluator}.
+     * All actions decide at once with {@link NaginatorScheduleAction#shouldScheduleAsync(Run, TaskListener, int)},
+     * and the build is rescheduled for each of them in order as they complete.
+     * Actions testing the log of the build with regular expressions read it once for all with {@link FusedLogScan}.
+     *
+     * @param build the completed build
+     * @param listener where to report the evaluation. Used until the returned stage completes.
+     * @param retryCount how many times the build was rescheduled
+     * @param budget actions not started yet are skipped once exhausted, and no longer reschedule the build.
+     *     Should be {@link DecisionBudget#current()} while calling this, so that log scans give up with it.
+     * @return the stage completed when all actions are evaluated.
+     */
+    @NonNull
+    CompletionStage<Void> evaluate(@NonNull AbstractBuild<?, ?> build, @NonNull TaskListener listener, int retryCount,
+            @NonNull DecisionBudget budget) {
+        List<NaginatorScheduleAction> actions = new ArrayList<NaginatorScheduleAction>();
+        List<CompletionStage<ScheduleDecision>> decisions = new ArrayList<CompletionStage<ScheduleDecision>>();
+        List<NaginatorScheduleAction> all = build.getActions(NaginatorScheduleAction.class);
+        FusedLogScan.of(build, all, retryCount).call(() -> {
+            for (NaginatorScheduleAction action : all) {
+                if (budget.check("starting " + action.getClass().getSimpleName())) {
+                    break;
                 }
+                actions.add(action);
+                decisions.add(action.shouldScheduleAsync(build, listener, retryCount));
             }
+            return null;
+        });
+        CompletionStage<Void> stage = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < actions.size(); ++i) {
+            NaginatorScheduleAction action = actions.get(i);
+            CompletionStage<ScheduleDecision> decision = decisions.get(i).exceptionally(e -> {
+                LOGGER.log(Level.WARNING, "Failed to decide whether to reschedule " + build + " with " + action, e);
+                return ScheduleDecision.skip(null);
+            });
+            stage = stage.thenCombine(decision, (v, d) -> d).thenAccept(d -> schedule(build, listener, retryCount, action, d, budget));
+        }
+        return stage;
+    }
+
+    private void schedule(@NonNull AbstractBuild<?, ?> build, @NonNull TaskListener listener, int retryCount,
+            @NonNull NaginatorScheduleAction action, @NonNull ScheduleDecision decision, @NonNull DecisionBudget budget) {
+        if (!decision.isSchedule()) {
+            if (decision.getReason() != null) {
+                LOGGER.log(Level.FINE, "not to schedule a build #{0} for {1}: {2}",
+                        new Object[]{build.getNumber(), build.getProject().getName(), decision.getReason()});
+            }
+            return;
+        }
+        ScheduleDelay delay = (decision.getDelay() != null) ? decision.getDelay() : action.getDelay();
+        int n = delay.computeScheduleDelay(build);
+        LOGGER.log(Level.FINE, "about to try to schedule a build #{0} in {1} seconds for {2}",
+                new Object[]{build.getNumber(), n, build.getProject().getName()} );
+        if (decision.getReason() != null) {
+            LOGGER.log(Level.FINE, "reason: {0}", decision.getReason());
+        }
+
+        List<Combination> combsToRerun = new ArrayList<Combination>();
+
+        if (action.isRerunMatrixPart()) {
+            if (build instanceof MatrixBuild) {
+                List<Combination> combinations = decision.getCombinations();
+                if (combinations == null) {
+                    combinations = action.getCombinationsToSchedule((MatrixBuild) build, listener);
+                }
+                for (Combination c : combinations) {
+                    LOGGER.log(Level.FINE, "add combination to matrix rerun ({0})", c.toString());
+                    combsToRerun.add(c);
+                }
+            }
+        }
+
+        NaginatorMatch match = (decision.getMatch() != null) ? decision.getMatch() : action.getMatch();
+
+        boolean noChildToRerun = combsToRerun.isEmpty() && build instanceof MatrixBuild && action.isRerunMatrixPart();
+        if (noChildToRerun && action.getNoChildStrategy() == NoChildStrategy.DontRun) {
+            return;
+        }
+        if (!budget.beginSchedule()) {
+            LOGGER.log(Level.FINE, "not to schedule a build #{0} for {1} decided after the budget was exhausted",
+                    new Object[]{build.getNumber(), build.getProject().getName()});
+            return;
+        }
+
+        reschedule(build, n, retryCount, action, combsToRerun, match);
+    }
+
+    /**
+     * @param combsToRerun children of the multi-configuration build to reschedule.
+     *     Empty for other builds, or to follow {@link NaginatorScheduleAction#getNoChildStrategy()}.
+     */
+    private void reschedule(@NonNull AbstractBuild<?, ?> build, int n, int retryCount, @NonNull NaginatorScheduleAction action,
+            @NonNull List<Combination> combsToRerun, @CheckForNull NaginatorMatch match) {
+        if (!combsToRerun.isEmpty()) {
+            LOGGER.log(Level.FINE, "schedule matrix rebuild");
+            scheduleMatrixBuild(build, combsToRerun, n, retryCount + 1, action.getMaxSchedule(), match);
+        } else if (build instanceof MatrixBuild && action.isRerunMatrixPart()) {
+            // No children to rerun
+            switch (action.getNoChildStrategy()) {
+            case RerunWhole:
+                scheduleBuild(build, n, retryCount + 1, action.getMaxSchedule(), match);
+                break;
+            case RerunEmpty:
+                LOGGER.log(Level.FINE, "schedule matrix rebuild");
+                scheduleMatrixBuild(build, combsToRerun, n, retryCount + 1, action.getMaxSchedule(), match);
+                break;
+            case DontRun:
+                break;
+            }
+        } else {
+            scheduleBuild(build, n, retryCount + 1, action.getMaxSchedule(), match);
         }
     }
 
@@ -137,6 +323,14 @@ public class NaginatorListener extends RunListener<AbstractBuild<?,?>> {
     }
 
     public static int calculateRetryCount(@NonNull Run<?, ?> r) {
+        return calculateRetryCount(r, DecisionBudget.NONE);
+    }
+
+    /**
+     * @param budget stops walking previous builds when exhausted.
+     * @return the count. <code>-1</code> if the budget was exhausted before counting all previous builds.
+     */
+    private static int calculateRetryCount(@NonNull Run<?, ?> r, @NonNull DecisionBudget budget) {
         NaginatorAction naginatorAction = r.getAction(NaginatorAction.class);
         if (naginatorAction == null) {
             return 0;
@@ -149,6 +343,9 @@ public class NaginatorListener extends RunListener<AbstractBuild<?,?>> {
         int n = 0;
         
         while (r != null && r.getAction(NaginatorAction.class) != null) {
+            if (budget.check("counting previous retries")) {
+                return -1;
+            }
             r = r.getPreviousBuild();
             n++;
         }
@@ -160,15 +357,15 @@ public class NaginatorListener extends RunListener<AbstractBuild<?,?>> {
      */
     @Deprecated
     public boolean scheduleMatrixBuild(AbstractBuild<?, ?> build, List<Combination> combinations, int n) {
-        return scheduleMatrixBuild(build, combinations, n, NaginatorListener.calculateRetryCount(build), 0);
+        return scheduleMatrixBuild(build, combinations, n, NaginatorListener.calculateRetryCount(build), 0, null);
     }
     
-    private boolean scheduleMatrixBuild(AbstractBuild<?, ?> build, List<Combination> combinations, int delay, int retryCount, int maxRetryCount) {
+    private boolean scheduleMatrixBuild(AbstractBuild<?, ?> build, List<Combination> combinations, int delay, int retryCount, int maxRetryCount, @CheckForNull NaginatorMatch match) {
         NaginatorMatrixAction nma = new NaginatorMatrixAction(build, retryCount, maxRetryCount);
         for (Combination c : combinations) {
             nma.addCombinationToRerun(c);
         }
-        return NaginatorRetryAction.scheduleBuild(build, delay, nma);
+        return NaginatorRetryAction.scheduleBuild(build, delay, nma, match);
     }
 
     /**
@@ -178,11 +375,11 @@ public class NaginatorListener extends RunListener<AbstractBuild<?,?>> {
      */
     @Deprecated
     public boolean scheduleBuild(AbstractBuild<?, ?> build, int n) {
-        return scheduleBuild(build, n, NaginatorListener.calculateRetryCount(build), 0);
+        return scheduleBuild(build, n, NaginatorListener.calculateRetryCount(build), 0, null);
     }
 
-    private boolean scheduleBuild(AbstractBuild<?, ?> build, int n, int retryCount, int maxRetryCount) {
-        return NaginatorRetryAction.scheduleBuild(build, n, retryCount, maxRetryCount);
+    private boolean scheduleBuild(AbstractBuild<?, ?> build, int n, int retryCount, int maxRetryCount, @CheckForNull NaginatorMatch match) {
+        return NaginatorRetryAction.scheduleBuild(build, n, retryCount, maxRetryCount, match);
     }
 
     private static final Logger LOGGER = Logger.getLogger(NaginatorListener.class.getName());
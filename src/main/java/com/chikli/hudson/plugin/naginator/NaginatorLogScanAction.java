@@ -0,0 +1,142 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+/**
+ * Records whether the output of a build matched the regular expressions of {@link NaginatorPublisher}
+ * while the build was running.
+ *
+ * Filled by {@link NaginatorConsoleLogFilter}.
+ * {@link NaginatorPublisherScheduleAction} uses this result instead of reading the log again.
+ */
+public class NaginatorLogScanAction extends InvisibleAction {
+    /**
+     * Identifies the tested regular expressions.
+     * See {@link SignatureSet#getKey()}.
+     */
+    private final String signatures;
+    private final boolean hasNegatives;
+    private String matchedRegexp;
+    private boolean matchedNegative;
+    private long matchOffset = -1;
+    private long matchLine = -1;
+    private String matchExcerpt;
+
+    /**
+     * The stream watching the output in this Jenkins session.
+     * <code>null</code> after Jenkins restarts.
+     */
+    private transient NaginatorConsoleLogFilter.MatchingOutputStream stream;
+
+    NaginatorLogScanAction(@NonNull SignatureSet signatures) {
+        this.signatures = signatures.getKey();
+        this.hasNegatives = signatures.hasNegatives();
+    }
+
+    /**
+     * @return whether a line matched any of the regular expressions.
+     */
+    public synchronized boolean isMatched() {
+        return matchedRegexp != null;
+    }
+
+    /**
+     * @return the regular expression matched. <code>null</code> if not matched.
+     */
+    @CheckForNull
+    public synchronized String getMatchedRegexp() {
+        return matchedRegexp;
+    }
+
+    /**
+     * @return whether the regular expression matched is one never to rerun the build.
+     */
+    public synchronized boolean isMatchedNegative() {
+        return matchedNegative;
+    }
+
+    /**
+     * @return the offset in bytes of the matched line in the output. -1 if not matched.
+     */
+    public synchronized long getMatchOffset() {
+        return matchOffset;
+    }
+
+    /**
+     * @return the line number (starting with 1) of the matched line. -1 if not matched.
+     */
+    public synchronized long getMatchLine() {
+        return matchLine;
+    }
+
+    /**
+     * @return the matched line, truncated to {@link NaginatorMatch#MAX_EXCERPT_LENGTH} characters.
+     *     <code>null</code> if not matched.
+     */
+    @CheckForNull
+    public synchronized String getMatchExcerpt() {
+        return matchExcerpt;
+    }
+
+    void setStream(@NonNull NaginatorConsoleLogFilter.MatchingOutputStream stream) {
+        this.stream = stream;
+    }
+
+    synchronized void recordMatch(@NonNull SignatureSet.Signature signature, long offset, long line, @CheckForNull String excerpt) {
+        if (matchedRegexp != null && (matchedNegative || !signature.negative())) {
+            // keeps the first match, but a signature never to rerun wins.
+            return;
+        }
+        this.matchedRegexp = signature.regexp();
+        this.matchedNegative = signature.negative();
+        this.matchOffset = offset;
+        this.matchLine = line;
+        this.matchExcerpt = excerpt;
+    }
+
+    /**
+     * @param signatures the regular expressions to test
+     * @return the result of the output.
+     *     <code>null</code> if not known, e.g. the regular expressions were changed,
+     *     Jenkins restarted during the build, or the matching was given up.
+     */
+    @CheckForNull
+    ScanResult getResult(@NonNull SignatureSet signatures) {
+        if (!this.signatures.equals(signatures.getKey())) {
+            return null;
+        }
+        NaginatorConsoleLogFilter.MatchingOutputStream stream = this.stream;
+        if (stream != null) {
+            return stream.getResult();
+        }
+        synchronized (this) {
+            if (matchedRegexp != null && (matchedNegative || !hasNegatives)) {
+                // decided before Jenkins restarted.
+                for (SignatureSet.Signature s : signatures.getSignatures()) {
+                    if (s.negative() == matchedNegative && s.regexp().equals(matchedRegexp)) {
+                        return ScanResult.of(s, matchOffset, matchLine, matchExcerpt);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param run the build
+     * @param signatures the regular expressions to test
+     * @return the result of the output of the build.
+     *     <code>null</code> if not known.
+     */
+    @CheckForNull
+    static ScanResult getResult(@NonNull Run<?, ?> run, @NonNull SignatureSet signatures) {
+        NaginatorLogScanAction action = run.getAction(NaginatorLogScanAction.class);
+        if (action == null) {
+            return null;
+        }
+        return action.getResult(signatures);
+    }
+}
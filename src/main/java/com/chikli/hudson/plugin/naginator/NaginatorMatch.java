@@ -0,0 +1,114 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+
+/**
+ * The line of the log which made a build rescheduled,
+ * recorded when the log is scanned so that it can be displayed without reading the log again.
+ *
+ * The excerpt is truncated to {@link #MAX_EXCERPT_LENGTH} characters to keep <code>build.xml</code> small.
+ */
+@ExportedBean
+public final class NaginatorMatch implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Characters of the line to keep at most.
+     */
+    static final int MAX_EXCERPT_LENGTH = 200;
+    private static final String ELLIPSIS = "...";
+
+    private final String regexp;
+    private final long lineNumber;
+    private final long offset;
+    private final String excerpt;
+    private final String run;
+
+    /**
+     * @param regexp the regular expression matched
+     * @param lineNumber the line number (starting with 1) of the matched line. -1 if unknown.
+     * @param offset the offset in bytes of the matched line in the log. -1 if unknown.
+     * @param excerpt the matched line. <code>null</code> if unknown.
+     * @param run the name of the child build whose log matched. <code>null</code> for the build itself.
+     */
+    NaginatorMatch(@NonNull String regexp, long lineNumber, long offset, @CheckForNull CharSequence excerpt, @CheckForNull String run) {
+        this.regexp = regexp;
+        this.run = run;
+        this.lineNumber = (lineNumber > 0) ? lineNumber : -1;
+        this.offset = (offset >= 0) ? offset : -1;
+        this.excerpt = truncate(excerpt);
+    }
+
+    @CheckForNull
+    static String truncate(@CheckForNull CharSequence line) {
+        if (line == null) {
+            return null;
+        }
+        if (line.length() <= MAX_EXCERPT_LENGTH) {
+            return line.toString();
+        }
+        int end = MAX_EXCERPT_LENGTH - ELLIPSIS.length();
+        if (Character.isHighSurrogate(line.charAt(end - 1))) {
+            // not to split a surrogate pair.
+            --end;
+        }
+        return line.subSequence(0, end) + ELLIPSIS;
+    }
+
+    /**
+     * @return the regular expression matched.
+     */
+    @Exported
+    @NonNull
+    public String getRegexp() {
+        return regexp;
+    }
+
+    /**
+     * @return the line number (starting with 1) of the matched line.
+     *     -1 if unknown, e.g. for lines found reading the log from the end.
+     */
+    @Exported
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the offset in bytes of the matched line in the log.
+     *     -1 if unknown, e.g. for logs in charsets not compatible with ASCII.
+     */
+    @Exported
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the matched line, truncated to {@link #MAX_EXCERPT_LENGTH} characters.
+     *     <code>null</code> if unknown.
+     */
+    @Exported
+    @CheckForNull
+    public String getExcerpt() {
+        return excerpt;
+    }
+
+    /**
+     * @return the name of the child of the matrix build whose log matched.
+     *     <code>null</code> if the log of the build itself matched.
+     */
+    @Exported
+    @CheckForNull
+    public String getRun() {
+        return run;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("'%s' at line %d (offset %d) of %s: %s", regexp, lineNumber, offset, (run != null) ? run : "the log", excerpt);
+    }
+}
@@ -1,8 +1,10 @@
 package com.chikli.hudson.plugin.naginator;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.matrix.MatrixRun;
 import hudson.matrix.MatrixBuild;
 import hudson.matrix.MatrixProject;
@@ -24,6 +26,8 @@ import org.kohsuke.stapler.DataBoundConstructor;
 
 import java.io.IOException;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Reschedules a build if the current one fails.
@@ -32,6 +36,7 @@ import java.util.logging.Logger;
  */
 public class NaginatorPublisher extends Notifier {
     public final static long DEFAULT_REGEXP_TIMEOUT_MS = 30000;
+    public final static long DEFAULT_SCAN_ADMISSION_TIMEOUT_MS = 60000;
     
     private final String regexpForRerun;
     private final boolean rerunIfUnstable;
@@ -41,6 +46,12 @@ public class NaginatorPublisher extends Notifier {
     private transient Boolean regexpForMatrixParent;
     private RegexpForMatrixStrategy regexpForMatrixStrategy;    /* almost final */
     private NoChildStrategy noChildStrategy;    /* almost final */
+    private LogScanMode logScanMode;    /* almost final */
+    private long tailScanBytes;    /* almost final */
+    private String additionalRegexpsForRerun;    /* almost final */
+    private String regexpsForNoRerun;    /* almost final */
+    private RegexpEngine regexpEngine;    /* almost final */
+    private int multilineWindowLines;    /* almost final */
 
     private ScheduleDelay delay;
 
@@ -185,6 +196,121 @@ public class NaginatorPublisher extends Notifier {
         return regexpForMatrixStrategy;
     }
 
+    /**
+     * @param logScanMode how to read the log when testing the regular expression
+     */
+    @DataBoundSetter
+    public void setLogScanMode(@NonNull LogScanMode logScanMode) {
+        this.logScanMode = logScanMode;
+    }
+
+    /**
+     * @return how to read the log when testing the regular expression.
+     */
+    @NonNull
+    public LogScanMode getLogScanMode() {
+        return (logScanMode != null)
+                ? logScanMode
+                : LogScanMode.getDefault();
+    }
+
+    /**
+     * @param tailScanBytes bytes to read from the end of the log for {@link LogScanMode#TailFirst}.
+     *     0 for the whole log.
+     */
+    @DataBoundSetter
+    public void setTailScanBytes(long tailScanBytes) {
+        this.tailScanBytes = Math.max(0, tailScanBytes);
+    }
+
+    /**
+     * @return bytes to read from the end of the log for {@link LogScanMode#TailFirst}.
+     *     0 for the whole log.
+     */
+    public long getTailScanBytes() {
+        return tailScanBytes;
+    }
+
+    /**
+     * @param additionalRegexpsForRerun regular expressions to rerun the build in addition to {@link #getRegexpForRerun()},
+     *     one for each line
+     */
+    @DataBoundSetter
+    public void setAdditionalRegexpsForRerun(String additionalRegexpsForRerun) {
+        this.additionalRegexpsForRerun = Util.fixEmpty(additionalRegexpsForRerun);
+    }
+
+    /**
+     * @return regular expressions to rerun the build in addition to {@link #getRegexpForRerun()},
+     *     one for each line.
+     */
+    @CheckForNull
+    public String getAdditionalRegexpsForRerun() {
+        return additionalRegexpsForRerun;
+    }
+
+    /**
+     * Regular expressions never to rerun the build, e.g. compilation errors.
+     * These win over regular expressions to rerun the build.
+     *
+     * @param regexpsForNoRerun regular expressions never to rerun the build, one for each line
+     */
+    @DataBoundSetter
+    public void setRegexpsForNoRerun(String regexpsForNoRerun) {
+        this.regexpsForNoRerun = Util.fixEmpty(regexpsForNoRerun);
+    }
+
+    /**
+     * @return regular expressions never to rerun the build, one for each line.
+     */
+    @CheckForNull
+    public String getRegexpsForNoRerun() {
+        return regexpsForNoRerun;
+    }
+
+    /**
+     * @param regexpEngine the name of the {@link RegexpEngine} to match regular expressions with.
+     *     Empty to use the global setting.
+     */
+    @DataBoundSetter
+    public void setRegexpEngine(String regexpEngine) {
+        this.regexpEngine = RegexpEngine.fromString(regexpEngine);
+    }
+
+    /**
+     * @return the name of the {@link RegexpEngine} to match regular expressions with.
+     *     <code>null</code> to use the global setting.
+     */
+    @CheckForNull
+    public String getRegexpEngine() {
+        return (regexpEngine != null) ? regexpEngine.name() : null;
+    }
+
+    /**
+     * @return the engine to match regular expressions with, resolving the global setting.
+     */
+    @NonNull
+    public RegexpEngine getEffectiveRegexpEngine() {
+        return RegexpEngine.resolve(regexpEngine);
+    }
+
+    /**
+     * @param multilineWindowLines lines to match regular expressions against at once,
+     *     so that they can match across lines. 0 to match each line on its own.
+     */
+    @DataBoundSetter
+    public void setMultilineWindowLines(int multilineWindowLines) {
+        this.multilineWindowLines = Math.max(0, multilineWindowLines);
+    }
+
+    /**
+     * @return lines to match regular expressions against at once,
+     *     so that they can match across lines. 0 to match each line on its own.
+     */
+    public int getMultilineWindowLines() {
+        return multilineWindowLines;
+    }
+
     public ScheduleDelay getDelay() {
         return delay;
     }
@@ -238,11 +364,20 @@ public class NaginatorPublisher extends Notifier {
     @Extension
     public static final class DescriptorImpl extends BuildStepDescriptor<Publisher> {
         private long regexpTimeoutMs;
+        private RegexpEngine regexpEngine;
+        private int maxConcurrentScans;
+        private long maxScanBytesPerSecond;
+        private long scanAdmissionTimeoutMs;
+        private long decisionBudgetMs;
+        private DecisionBudgetPolicy decisionBudgetPolicy;
 
         public DescriptorImpl() {
             // default value
             regexpTimeoutMs = DEFAULT_REGEXP_TIMEOUT_MS;
+            regexpEngine = RegexpEngine.getDefault();
+            scanAdmissionTimeoutMs = DEFAULT_SCAN_ADMISSION_TIMEOUT_MS;
             load();
+            applyScanLimits();
         }
 
         /**
@@ -261,12 +396,124 @@ public class NaginatorPublisher extends Notifier {
             this.regexpTimeoutMs = regexpTimeoutMs;
         }
 
+        /**
+         * @return the engine to match regular expressions with for jobs not specifying one.
+         */
+        @NonNull
+        public RegexpEngine getRegexpEngine() {
+            return (regexpEngine != null) ? regexpEngine : RegexpEngine.getDefault();
+        }
+
+        /**
+         * @param regexpEngine the engine to match regular expressions with for jobs not specifying one.
+         */
+        public void setRegexpEngine(@CheckForNull RegexpEngine regexpEngine) {
+            this.regexpEngine = regexpEngine;
+        }
+
+        /**
+         * @return log scans running at once at most for all builds. 0 for no limit.
+         */
+        public int getMaxConcurrentScans() {
+            return maxConcurrentScans;
+        }
+
+        /**
+         * @param maxConcurrentScans log scans running at once at most for all builds. 0 for no limit.
+         */
+        public void setMaxConcurrentScans(int maxConcurrentScans) {
+            this.maxConcurrentScans = Math.max(0, maxConcurrentScans);
+            applyScanLimits();
+        }
+
+        /**
+         * @return bytes of logs all scans read in a second at most. 0 for no limit.
+         */
+        public long getMaxScanBytesPerSecond() {
+            return maxScanBytesPerSecond;
+        }
+
+        /**
+         * @param maxScanBytesPerSecond bytes of logs all scans read in a second at most. 0 for no limit.
+         */
+        public void setMaxScanBytesPerSecond(long maxScanBytesPerSecond) {
+            this.maxScanBytesPerSecond = Math.max(0, maxScanBytesPerSecond);
+            applyScanLimits();
+        }
+
+        /**
+         * @return milliseconds a log scan waits for admission while {@link #getMaxConcurrentScans()} scans are running.
+         */
+        public long getScanAdmissionTimeoutMs() {
+            return scanAdmissionTimeoutMs;
+        }
+
+        /**
+         * @param scanAdmissionTimeoutMs milliseconds a log scan waits for admission
+         *     while {@link #getMaxConcurrentScans()} scans are running.
+         */
+        public void setScanAdmissionTimeoutMs(long scanAdmissionTimeoutMs) {
+            this.scanAdmissionTimeoutMs = scanAdmissionTimeoutMs;
+            applyScanLimits();
+        }
+
+        /**
+         * @return milliseconds to decide whether to reschedule each completed build,
+         *     including counting previous retries, all schedule actions and log scans.
+         *     0 for no budget.
+         */
+        public long getDecisionBudgetMs() {
+            return decisionBudgetMs;
+        }
+
+        /**
+         * @param decisionBudgetMs milliseconds to decide whether to reschedule each completed build.
+         *     0 for no budget.
+         */
+        public void setDecisionBudgetMs(long decisionBudgetMs) {
+            this.decisionBudgetMs = Math.max(0, decisionBudgetMs);
+        }
+
+        /**
+         * @return what to do when deciding exhausts {@link #getDecisionBudgetMs()}.
+         */
+        @NonNull
+        public DecisionBudgetPolicy getDecisionBudgetPolicy() {
+            return (decisionBudgetPolicy != null) ? decisionBudgetPolicy : DecisionBudgetPolicy.getDefault();
+        }
+
+        /**
+         * @param decisionBudgetPolicy what to do when deciding exhausts {@link #getDecisionBudgetMs()}.
+         */
+        public void setDecisionBudgetPolicy(@CheckForNull DecisionBudgetPolicy decisionBudgetPolicy) {
+            this.decisionBudgetPolicy = decisionBudgetPolicy;
+        }
+
+        private void applyScanLimits() {
+            ScanAdmission.get().setLimits(maxConcurrentScans, maxScanBytesPerSecond, scanAdmissionTimeoutMs);
+        }
+
+        /**
+         * @return the state of log scans to display.
+         */
+        @NonNull
+        public ScanAdmission getScanAdmission() {
+            return ScanAdmission.get();
+        }
+
         /**
          * @see hudson.model.Descriptor#configure(org.kohsuke.stapler.StaplerRequest2, net.sf.json.JSONObject)
          */
         @Override
         public boolean configure(StaplerRequest2 req, JSONObject json) throws hudson.model.Descriptor.FormException {
             setRegexpTimeoutMs(json.getLong("regexpTimeoutMs"));
+            setRegexpEngine(RegexpEngine.fromString(json.optString("regexpEngine")));
+            setMaxConcurrentScans(json.optInt("maxConcurrentScans"));
+            setMaxScanBytesPerSecond(json.optLong("maxScanBytesPerSecond"));
+            setScanAdmissionTimeoutMs(json.optLong("scanAdmissionTimeoutMs", DEFAULT_SCAN_ADMISSION_TIMEOUT_MS));
+            setDecisionBudgetMs(json.optLong("decisionBudgetMs"));
+            String policy = Util.fixEmptyAndTrim(json.optString("decisionBudgetPolicy"));
+            setDecisionBudgetPolicy((policy != null) ? DecisionBudgetPolicy.valueOf(policy) : null);
             boolean result = super.configure(req, json);
             save();
             return result;
@@ -305,6 +552,67 @@ public class NaginatorPublisher extends Notifier {
             return FormValidation.ok();
         }
         
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+        public FormValidation doCheckTailScanBytes(@QueryParameter long value) {
+            if (value < 0) {
+                return FormValidation.error(Messages.NaginatorPublisher_TailScanBytes_Negative());
+            }
+            return FormValidation.ok();
+        }
+        
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+        public FormValidation doCheckMultilineWindowLines(@QueryParameter int value) {
+            if (value < 0) {
+                return FormValidation.error(Messages.NaginatorPublisher_MultilineWindowLines_Negative());
+            }
+            return FormValidation.ok();
+        }
+        
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+        public FormValidation doCheckMaxConcurrentScans(@QueryParameter int value) {
+            if (value < 0) {
+                return FormValidation.error(Messages.NaginatorPublisher_MaxConcurrentScans_Negative());
+            }
+            return FormValidation.ok();
+        }
+        
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+        public FormValidation doCheckMaxScanBytesPerSecond(@QueryParameter long value) {
+            if (value < 0) {
+                return FormValidation.error(Messages.NaginatorPublisher_MaxScanBytesPerSecond_Negative());
+            }
+            return FormValidation.ok();
+        }
+        
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+        public FormValidation doCheckDecisionBudgetMs(@QueryParameter long value) {
+            if (value < 0) {
+                return FormValidation.error(Messages.NaginatorPublisher_DecisionBudgetMs_Negative());
+            }
+            return FormValidation.ok();
+        }
+        
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+        public FormValidation doCheckAdditionalRegexpsForRerun(@QueryParameter String value) {
+            return checkRegexps(value);
+        }
+        
+        @SuppressWarnings("lgtm[jenkins/no-permission-check]")
+        public FormValidation doCheckRegexpsForNoRerun(@QueryParameter String value) {
+            return checkRegexps(value);
+        }
+        
+        private FormValidation checkRegexps(String value) {
+            for (String regexp : SignatureSet.splitLines(value)) {
+                try {
+                    Pattern.compile(regexp);
+                } catch (PatternSyntaxException e) {
+                    return FormValidation.error(Messages.NaginatorPublisher_InvalidRegexp(regexp, e.getDescription()));
+                }
+            }
+            return FormValidation.ok();
+        }
+        
         @SuppressWarnings({"lgtm[jenkins/csrf]", "lgtm[jenkins/no-permission-check]"})
         public ListBoxModel doFillRegexpForMatrixStrategyItems() {
             ListBoxModel ret = new ListBoxModel();
@@ -313,6 +621,16 @@ public class NaginatorPublisher extends Notifier {
             }
             return ret;
         }
+        
+        @SuppressWarnings({"lgtm[jenkins/csrf]", "lgtm[jenkins/no-permission-check]"})
+        public ListBoxModel doFillRegexpEngineItems() {
+            ListBoxModel ret = new ListBoxModel();
+            ret.add(Messages.NaginatorPublisher_RegexpEngine_Global(getRegexpEngine().getDisplayName()), "");
+            for (RegexpEngine engine: RegexpEngine.values()) {
+                ret.add(engine.getDisplayName(), engine.name());
+            }
+            return ret;
+        }
     }
 
     private static final Logger LOGGER = Logger.getLogger(NaginatorPublisher.class.getName());
@@ -8,20 +8,21 @@ import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import jenkins.model.Jenkins;
 
@@ -32,6 +33,12 @@ import jenkins.model.Jenkins;
  */
 public class NaginatorPublisherScheduleAction extends NaginatorScheduleAction {
     private static final Logger LOGGER = Logger.getLogger(NaginatorPublisherScheduleAction.class.getName());
+
+    /**
+     * The scan gives up by itself at the deadline.
+     * Waits for it a little longer before interrupting it.
+     */
+    private static final long INTERRUPT_GRACE_MS = 1000;
     
     private final String regexpForRerun;
     private final boolean rerunIfUnstable;
@@ -39,7 +46,17 @@ public class NaginatorPublisherScheduleAction extends NaginatorScheduleAction {
     private transient Boolean regexpForMatrixParent;        // for backward compatibility
     private /* almost final */ RegexpForMatrixStrategy regexpForMatrixStrategy;
     private final NoChildStrategy noChildStrategy;
-    
+    private final LogScanMode logScanMode;
+    private final long tailScanBytes;
+    private final String additionalRegexpsForRerun;
+    private final String regexpsForNoRerun;
+    private final RegexpEngine regexpEngine;
+    private final int multilineWindowLines;
+    /**
+     * The match of the last test, for {@link #getMatch()}.
+     */
+    private transient volatile NaginatorMatch match;
+
     public NaginatorPublisherScheduleAction(NaginatorPublisher publisher) {
         super(publisher.getMaxSchedule(), publisher.getDelay(), publisher.isRerunMatrixPart());
         this.regexpForRerun = publisher.getRegexpForRerun();
@@ -47,6 +64,12 @@ public class NaginatorPublisherScheduleAction extends NaginatorScheduleAction {
         this.checkRegexp = publisher.isCheckRegexp();
         this.regexpForMatrixStrategy = publisher.getRegexpForMatrixStrategy();
         this.noChildStrategy = publisher.getNoChildStrategy();
+        this.logScanMode = publisher.getLogScanMode();
+        this.tailScanBytes = publisher.getTailScanBytes();
+        this.additionalRegexpsForRerun = publisher.getAdditionalRegexpsForRerun();
+        this.regexpsForNoRerun = publisher.getRegexpsForNoRerun();
+        this.regexpEngine = RegexpEngine.fromString(publisher.getRegexpEngine());
+        this.multilineWindowLines = publisher.getMultilineWindowLines();
     }
     
     public Object readResolve() {
@@ -94,16 +117,78 @@ public class NaginatorPublisherScheduleAction extends NaginatorScheduleAction {
     public RegexpForMatrixStrategy getRegexpForMatrixStrategy() {
         return regexpForMatrixStrategy;
     }
-    
+
+    /**
+     * @return how to read the log when testing the regular expression.
+     */
+    @NonNull
+    public LogScanMode getLogScanMode() {
+        return (logScanMode != null)
+                ? logScanMode
+                : LogScanMode.getDefault();
+    }
+
+    /**
+     * @return bytes to read from the end of the log for {@link LogScanMode#TailFirst}.
+     *     0 for the whole log.
+     */
+    public long getTailScanBytes() {
+        return tailScanBytes;
+    }
+
+    /**
+     * @return regular expressions to rerun the build in addition to {@link #getRegexpForRerun()},
+     *     one for each line.
+     */
+    @CheckForNull
+    public String getAdditionalRegexpsForRerun() {
+        return additionalRegexpsForRerun;
+    }
+
+    /**
+     * @return regular expressions never to rerun the build, one for each line.
+     */
+    @CheckForNull
+    public String getRegexpsForNoRerun() {
+        return regexpsForNoRerun;
+    }
+
+    /**
+     * @return the engine to match regular expressions with.
+     *     <code>null</code> to use the global setting.
+     */
+    @CheckForNull
+    public RegexpEngine getRegexpEngine() {
+        return regexpEngine;
+    }
+
+    /**
+     * @return lines to match regular expressions against at once. 0 to match each line on its own.
+     */
+    public int getMultilineWindowLines() {
+        return multilineWindowLines;
+    }
+
+    /**
+     * Tests {@link RetryPredicate}s, cheapest first.
+     */
     @Override
     public boolean shouldSchedule(@NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
-        if (!checkCommonScheduleThreshold(run)) {
-            return false;
-        }
-        
+        match = null;
+        return RetryPredicate.testAll(RetryPredicate.all(), this, run, listener, retryCount);
+    }
+
+    /**
+     * Tests the log of the build, or of its children, for {@link RetryPredicate.RegexpPredicate}.
+     *
+     * @param run the build to test
+     * @param listener the listener for the build
+     * @return whether the log matches the regular expressions, or the log needn't be tested.
+     */
+    boolean testRegexpToSchedule(@NonNull Run<?, ?> run, @NonNull TaskListener listener) {
         // If we're supposed to check for a regular expression in the build output before
         // scheduling a new build, do so.
-        if (isCheckRegexp() && (!(run instanceof MatrixBuild) || getRegexpForMatrixStrategy() == RegexpForMatrixStrategy.TestParent)) {
+        if (scansLogOf(run)) {
             LOGGER.log(Level.FINEST, "Got checkRegexp == true");
             
             if (!testRegexp(run, listener)) {
@@ -119,21 +204,72 @@ public class NaginatorPublisherScheduleAction extends NaginatorScheduleAction {
                 return false;
             }
         }
-        
-        return super.shouldSchedule(run, listener, retryCount);
+        return true;
+    }
+
+    /**
+     * @param run the build to test
+     * @return whether the log of the build itself is tested, not logs of its children.
+     */
+    boolean scansLogOf(@NonNull Run<?, ?> run) {
+        return isCheckRegexp() && (!(run instanceof MatrixBuild) || getRegexpForMatrixStrategy() == RegexpForMatrixStrategy.TestParent);
+    }
+
+    /**
+     * The regular expression engines aren't compared, as each signature is matched with its own engine,
+     * nor the timeout, which is configured globally and shared by the decision budget.
+     *
+     * @param other another action
+     * @return whether the log is read the same way for both actions,
+     *     and the signatures of both can be tested in the same pass with {@link FusedLogScan}.
+     */
+    boolean isScannedLike(@NonNull NaginatorPublisherScheduleAction other) {
+        if (getMultilineWindowLines() > 0 || other.getMultilineWindowLines() > 0) {
+            return getMultilineWindowLines() == other.getMultilineWindowLines();
+        }
+        if (getLogScanMode() != other.getLogScanMode()) {
+            return false;
+        }
+        return getLogScanMode() != LogScanMode.TailFirst || getTailScanBytes() == other.getTailScanBytes();
     }
 
     private boolean testRegexpForFailedChildren(@NonNull MatrixBuild run, @NonNull TaskListener listener) {
+        List<MatrixRun> failedRuns = new ArrayList<MatrixRun>();
         for (MatrixRun r : ((MatrixBuild)run).getExactRuns()) {
-            if (!checkCommonScheduleThreshold(r)) {
-                continue;
+            if (checkCommonScheduleThreshold(r)) {
+                failedRuns.add(r);
             }
-            if (testRegexp(r, listener)) {
-                return true;
+        }
+        // scans for the rest are cancelled at the first match.
+        return newChildEvaluator(listener).matchAny(failedRuns);
+    }
+
+    @NonNull
+    private MatrixChildEvaluator<MatrixRun> newChildEvaluator(@NonNull final TaskListener listener) {
+        // children are tested on other threads.
+        final DecisionBudget budget = DecisionBudget.current();
+        return new MatrixChildEvaluator<MatrixRun>(
+                LogScanExecutor.get().getChildPool(),
+                (r, cancelled) -> testRegexp(r, listener, cancelled, budget)
+        );
+    }
+
+    /**
+     * Scans logs of child builds in parallel for {@link RegexpForMatrixStrategy#TestChildrenRetriggerMatched}.
+     */
+    @NonNull
+    @Override
+    public List<MatrixRun> getMatrixRunsToSchedule(@NonNull List<MatrixRun> runs, @NonNull TaskListener listener) {
+        if (!isCheckRegexp() || getRegexpForMatrixStrategy() != RegexpForMatrixStrategy.TestChildrenRetriggerMatched) {
+            return super.getMatrixRunsToSchedule(runs, listener);
+        }
+        List<MatrixRun> failedRuns = new ArrayList<MatrixRun>();
+        for (MatrixRun r : runs) {
+            if (checkCommonScheduleThreshold(r)) {
+                failedRuns.add(r);
             }
         }
-        // no children matched.
-        return false;
+        return newChildEvaluator(listener).matchAll(failedRuns);
     }
 
     @Override
@@ -151,7 +287,7 @@ public class NaginatorPublisherScheduleAction extends NaginatorScheduleAction {
         return true;
     }
     
-    private boolean checkCommonScheduleThreshold(@NonNull Run<?, ?> run) {
+    boolean checkCommonScheduleThreshold(@NonNull Run<?, ?> run) {
         if ((run.getResult() == Result.SUCCESS) || (run.getResult() == Result.ABORTED)) {
             return false;
         }
@@ -164,25 +300,153 @@ public class NaginatorPublisherScheduleAction extends NaginatorScheduleAction {
     }
     
     private boolean testRegexp(@NonNull Run<?, ?> run, TaskListener listener) {
-        String regexpForRerun = getRegexpForRerun();
-        if ((regexpForRerun != null) && (!regexpForRerun.equals(""))) {
-            LOGGER.log(Level.FINEST, "regexpForRerun - {0}", regexpForRerun);
-            
+        return testRegexp(run, listener, null, DecisionBudget.current());
+    }
+
+    /**
+     * @return the regular expressions to test. <code>null</code> if any of them is invalid.
+     */
+    @CheckForNull
+    SignatureSet compileSignatures() {
+        try {
+            return SignatureSet.compile(
+                    getRegexpForRerun(),
+                    getAdditionalRegexpsForRerun(),
+                    getRegexpsForNoRerun(),
+                    RegexpEngine.resolve(getRegexpEngine()),
+                    getMultilineWindowLines() > 0
+            );
+        } catch (PatternSyntaxException e) {
+            LOGGER.log(
+                    Level.SEVERE,
+                    String.format("Aborted regexp '%s'", e.getPattern()),
+                    e
+            );
+            return null;
+        }
+    }
+
+    /**
+     * @param cancelled tells the scan to give up as the result is no longer needed.
+     * @param budget the scan gives up when exhausted.
+     */
+    private boolean testRegexp(@NonNull Run<?, ?> run, TaskListener listener, @CheckForNull BooleanSupplier cancelled, @NonNull DecisionBudget budget) {
+        RegexpEngine engine = RegexpEngine.resolve(getRegexpEngine());
+        SignatureSet signatures = compileSignatures();
+        if (signatures == null) {
+            return false;
+        }
+        if (signatures.isEmpty()) {
+            return true;
+        }
+        LOGGER.log(Level.FINEST, "regexpForRerun - {0}", signatures);
+
+        ScanResult result = getStreamedResult(run, signatures);
+        if (result != null) {
+            LOGGER.log(Level.FINEST, "regexp tested while the build was running - {0}", result);
+        } else {
+            LogSource source = LogSource.of(run);
+            Charset charset = run.getCharset();
+            File cacheFile = new File(run.getRootDir(), ScanCache.FILE_NAME);
+            String cacheKey = getScanCacheKey(signatures, charset, engine);
             try {
-                // If parseLog returns false, we didn't find the regular expression,
-                // so return true.
-                if (!parseLog(run.getLogFile(), run.getCharset(), regexpForRerun)) {
-                    LOGGER.log(Level.FINEST, "regexp not in logfile");
-                    return false;
+                ScanCache.Stamp stamp = source.getStamp();
+                result = ScanCache.get(cacheFile, stamp, cacheKey, signatures);
+                if (result != null) {
+                    LOGGER.log(Level.FINEST, "regexp tested in a previous scan - {0}", result);
+                } else {
+                    String step = "scanning the log of " + run.getFullDisplayName();
+                    BooleanSupplier cancelledOrExhausted = (cancelled != null)
+                            ? () -> cancelled.getAsBoolean() || budget.check(step)
+                            : () -> budget.check(step);
+                    long timeout = budget.limit(getRegexpTimeoutMs());
+                    // scanned once with other actions of the build.
+                    result = FusedLogScan.current().scan(this, run, signatures,
+                            s -> parseLog(source, charset, s, cancelledOrExhausted, timeout));
+                    if (result == null) {
+                        result = parseLog(source, charset, signatures, cancelledOrExhausted, timeout);
+                    }
+                    if (budget.check(step)) {
+                        // told in the log by NaginatorListener.
+                        return false;
+                    }
+                    if (result.getStatus() == ScanResult.Status.Cancelled) {
+                        return false;
+                    }
+                    if (!result.isCompleted()) {
+                        listener.getLogger().println(String.format("[Naginator] Not rerun as scanning the log did not complete: %s", result.getStatus()));
+                        return false;
+                    }
+                    ScanCache.put(cacheFile, stamp, cacheKey, result);
                 }
             } catch (IOException e) {
                 e.printStackTrace(listener
                                   .error("error while parsing logs for naginator - forcing rebuild."));
+                return true;
+            }
+        }
+
+        SignatureSet.Signature matched = result.getMatched();
+        if (matched == null) {
+            if (signatures.hasPositives()) {
+                LOGGER.log(Level.FINEST, "regexp not in logfile");
+                return false;
             }
+            return true;
+        }
+        if (matched.negative()) {
+            listener.getLogger().println(String.format("[Naginator] Not rerun as the log matched '%s'", matched.regexp()));
+            return false;
         }
+        LOGGER.log(Level.FINE, "{0} matched ''{1}''", new Object[]{run, matched.regexp()});
+        match = result.toMatch((run instanceof MatrixRun) ? run.getFullDisplayName() : null);
         return true;
     }
+
+    /**
+     * {@inheritDoc}
+     * For matrix builds, one of the children matched.
+     */
+    @CheckForNull
+    @Override
+    public NaginatorMatch getMatch() {
+        return match;
+    }
     
+    /**
+     * @return the result recorded by {@link NaginatorConsoleLogFilter}.
+     *     <code>null</code> if the log should be scanned.
+     */
+    @CheckForNull
+    private ScanResult getStreamedResult(@NonNull Run<?, ?> run, @NonNull SignatureSet signatures) {
+        if (getLogScanMode() == LogScanMode.TailFirst && getTailScanBytes() > 0) {
+            // the streamed result covers the whole output, not only the tail.
+            return null;
+        }
+        if (getMultilineWindowLines() > 0) {
+            // the output is tested line by line.
+            return null;
+        }
+        return NaginatorLogScanAction.getResult(run, signatures);
+    }
+
+    /**
+     * @return identifies the regular expressions and how the log is scanned for {@link ScanCache}.
+     */
+    @NonNull
+    private String getScanCacheKey(@NonNull SignatureSet signatures, @NonNull Charset charset, @NonNull RegexpEngine engine) {
+        return String.format(
+                "%s %d %d %s %s %s%n%s",
+                getLogScanMode(),
+                getTailScanBytes(),
+                getMultilineWindowLines(),
+                charset.name(),
+                engine,
+                ConsoleMarkup.isStripped() ? "plain" : "raw",
+                signatures.getKey()
+        );
+    }
+
     private long getRegexpTimeoutMs() {
         Jenkins j = Jenkins.get();
         NaginatorPublisher.DescriptorImpl d = (NaginatorPublisher.DescriptorImpl)j.getDescriptor(NaginatorPublisher.class);
@@ -192,89 +456,129 @@ public class NaginatorPublisherScheduleAction extends NaginatorScheduleAction {
         return d.getRegexpTimeoutMs();
     }
     
-    private boolean parseLog(final File logFile, final Charset charset, @NonNull final String regexp) throws IOException {
-        // TODO annotate `logFile` with `@Nonnull`
-        // after upgrading the target Jenkins to 1.568 or later.
-        
-        long timeout = getRegexpTimeoutMs();
+    /**
+     * @param timeout milliseconds to give up. 0 or less not to time out.
+     * @return the result. Not {@link ScanResult#isCompleted() completed} if failed to scan the log.
+     */
+    @NonNull
+    private ScanResult parseLog(@NonNull final LogSource source, final Charset charset, @NonNull final SignatureSet signatures, @CheckForNull BooleanSupplier cancelled, long timeout) throws IOException {
         
-        FutureTask<Boolean> task = new FutureTask<>(() -> parseLogImpl(logFile, charset, regexp));
+        final ScanAdmission admission = ScanAdmission.get();
+        try {
+            if (!admission.acquire(cancelled)) {
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    return ScanResult.aborted(ScanResult.Status.Cancelled);
+                }
+                LOGGER.log(
+                        Level.WARNING,
+                        String.format("Skipped regexp '%s' as too many log scans are running.", signatures)
+                );
+                return ScanResult.aborted(ScanResult.Status.NotAdmitted);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ScanResult.aborted(ScanResult.Status.Interrupted);
+        }
+        // whichever of the scan starting and this giving up first releases the admission.
+        final AtomicBoolean claimed = new AtomicBoolean();
         
-        Thread t = new Thread(task);
-        t.start();
+        LogScanExecutor executor = LogScanExecutor.get();
+        // includes the time waiting in the queue.
+        ScanDeadline deadline = (cancelled != null)
+                ? ScanDeadline.after(timeout, executor).cancelledBy(cancelled)
+                : ScanDeadline.after(timeout, executor);
+        Future<ScanResult> future;
+        try {
+            future = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return ScanResult.aborted(ScanResult.Status.Cancelled);
+                }
+                try (source) {
+                    return parseLogImpl(source, charset, signatures, deadline);
+                } finally {
+                    admission.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            LOGGER.log(
+                    Level.WARNING,
+                    String.format("Skipped regexp '%s' as too many log scans are queued.", signatures)
+            );
+            return ScanResult.aborted(ScanResult.Status.Rejected);
+        }
         
+        ScanResult result;
         try {
-            // never null
-            return task.get(timeout, TimeUnit.MILLISECONDS);
+            result = (timeout > 0)
+                    ? future.get(timeout + INTERRUPT_GRACE_MS, TimeUnit.MILLISECONDS)
+                    : future.get();
         } catch (TimeoutException e) {
+            result = ScanResult.aborted(ScanResult.Status.TimedOut);
+        } catch (InterruptedException e) {
             LOGGER.log(
                     Level.WARNING,
-                    String.format("Aborted regexp '%s' for too long execution time ( > %d ms).", regexp, timeout)
+                    String.format("Aborted regexp '%s' as interrupted", signatures)
             );
-        } catch (InterruptedException | ExecutionException e) {
+            // interrupts the scan if still running or waiting in the queue.
+            abandon(future, claimed, admission);
+            Thread.currentThread().interrupt();
+            return ScanResult.aborted(ScanResult.Status.Interrupted);
+        } catch (ExecutionException e) {
             LOGGER.log(
                     Level.SEVERE,
-                    String.format("Aborted regexp '%s'", regexp),
+                    String.format("Aborted regexp '%s'", signatures),
                     e
             );
+            return ScanResult.aborted(ScanResult.Status.Failed);
         }
-        if (t.isAlive()) {
-            t.interrupt();
-        }
-        try {
-            t.join();
-        } catch (InterruptedException e) {
-            // ok
+        switch (result.getStatus()) {
+        case TimedOut:
+            LOGGER.log(
+                    Level.WARNING,
+                    String.format("Aborted regexp '%s' for too long execution time ( > %d ms).", signatures, timeout)
+            );
+            // interrupts the scan if still running or waiting in the queue.
+            abandon(future, claimed, admission);
+            break;
+        case Completed:
+            break;
+        case Cancelled:
+            LOGGER.log(Level.FINEST, "Cancelled regexp ''{0}'' as the result is no longer needed", signatures);
+            break;
+        default:
+            LOGGER.log(
+                    Level.WARNING,
+                    String.format("Aborted regexp '%s' as %s", signatures, result.getStatus())
+            );
+            break;
         }
-        return false;
+        return result;
     }
     
-    private static class InterruptibleCharSequence implements CharSequence {
-        private final CharSequence wrapped;
-        
-        public InterruptibleCharSequence(CharSequence wrapped) {
-            this.wrapped = wrapped;
-        }
-        
-        public int length() {
-            return wrapped.length();
-        }
-        
-        public char charAt(int index) {
-            if (Thread.currentThread().isInterrupted()) {
-                throw new RuntimeException(new InterruptedException());
-            }
-            return wrapped.charAt(index);
-        }
-        
-        @NonNull
-        public CharSequence subSequence(int start, int end) {
-            return wrapped.subSequence(start, end);
+    /**
+     * Interrupts the scan, and releases the admission if the scan never started.
+     */
+    private static void abandon(@NonNull Future<ScanResult> future, @NonNull AtomicBoolean claimed, @NonNull ScanAdmission admission) {
+        future.cancel(true);
+        if (claimed.compareAndSet(false, true)) {
+            admission.release();
         }
     }
     
-    private boolean parseLogImpl(File logFile, Charset charset, @NonNull final String regexp) throws IOException {
-        // TODO annotate `logFile` and 'charset' with `@Nonnull`
+    @NonNull
+    private ScanResult parseLogImpl(@NonNull LogSource source, Charset charset, @NonNull final SignatureSet signatures, @NonNull ScanDeadline deadline) throws IOException {
+        // TODO annotate 'charset' with `@Nonnull`
         // after upgrading the target Jenkins to 1.568 or later.
 
         // Assume default encoding and text files
-        String line;
-        Pattern pattern = Pattern.compile(regexp);
-        BufferedReader reader = null;
-        try {
-            reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), charset));
-            while ((line = reader.readLine()) != null) {
-                Matcher matcher = pattern.matcher(new InterruptibleCharSequence(line));
-                if (matcher.find()) {
-                    return true;
-                }
-            }
-            return false;
-        } finally {
-            if (reader != null) {
-                reader.close();
-            }
+        if (getMultilineWindowLines() > 0) {
+            return LogScanner.scanMultiline(source, charset, signatures, getMultilineWindowLines(), deadline);
+        }
+        if (getLogScanMode() == LogScanMode.TailFirst) {
+            return LogScanner.scanTailFirst(source, charset, signatures, getTailScanBytes(), deadline);
         }
+        return LogScanner.scanForward(source, charset, signatures, deadline);
     }
     
     @NonNull
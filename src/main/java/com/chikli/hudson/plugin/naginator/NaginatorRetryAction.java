@@ -75,16 +75,31 @@ public class NaginatorRetryAction implements Action {
     }
 
     static boolean scheduleBuild(final AbstractBuild<?, ?> build, final int delay, int retryCount, int maxRetryCount) {
-        return scheduleBuild(build, delay, new NaginatorAction(build, retryCount, maxRetryCount));
+        return scheduleBuild(build, delay, retryCount, maxRetryCount, null);
+    }
+
+    static boolean scheduleBuild(final AbstractBuild<?, ?> build, final int delay, int retryCount, int maxRetryCount, @CheckForNull NaginatorMatch match) {
+        return scheduleBuild(build, delay, new NaginatorAction(build, retryCount, maxRetryCount), match);
     }
 
     static boolean scheduleBuild(final AbstractBuild<?, ?> build, final int delay, final NaginatorAction action) {
-        return scheduleBuild2(build, delay, action, false);
+        return scheduleBuild(build, delay, action, null);
+    }
+
+    static boolean scheduleBuild(final AbstractBuild<?, ?> build, final int delay, final NaginatorAction action, @CheckForNull NaginatorMatch match) {
+        return scheduleBuild2(build, delay, action, false, match);
     }
 
     static boolean scheduleBuild2(final AbstractBuild<?, ?> build, final int delay, final NaginatorAction action, boolean replaceUser) {
+        return scheduleBuild2(build, delay, action, replaceUser, null);
+    }
+
+    /**
+     * @param match the line of the log which made the build rescheduled. <code>null</code> if not by regular expressions.
+     */
+    static boolean scheduleBuild2(final AbstractBuild<?, ?> build, final int delay, final NaginatorAction action, boolean replaceUser, @CheckForNull NaginatorMatch match) {
         final List<Action> actions = new ArrayList<>();
-        NaginatorCause cause = new NaginatorCause(build);
+        NaginatorCause cause = new NaginatorCause(build, match);
         actions.add(action);
         action.setCause(cause);
         actions.add(build.getAction(ParametersAction.class));
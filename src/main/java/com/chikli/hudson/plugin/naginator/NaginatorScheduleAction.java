@@ -26,12 +26,19 @@ package com.chikli.hudson.plugin.naginator;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.matrix.Combination;
+import hudson.matrix.MatrixBuild;
 import hudson.matrix.MatrixRun;
 import hudson.model.Action;
 import hudson.model.InvisibleAction;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * {@link Action} to mark a build to be rescheduled by {@link NaginatorListener}.
  * Be aware that you have to add this action to the parent build
@@ -111,6 +118,63 @@ public class NaginatorScheduleAction extends InvisibleAction {
         return getMaxSchedule() <= 0 || retryCount < getMaxSchedule();
     }
     
+    /**
+     * Decides whether and how {@link NaginatorListener} should reschedule the build.
+     * You can override this method to look up something expensive
+     * (e.g. test reports, an external service or other builds)
+     * and complete the returned stage once decided, without blocking the caller.
+     * <code>listener</code> can be used until the stage completes.
+     * 
+     * The default implementation adapts the synchronous methods:
+     * it calls {@link #shouldSchedule(Run, TaskListener, int)},
+     * tests children of multi-configuration builds with {@link #getMatrixRunsToSchedule(List, TaskListener)}
+     * if {@link #isRerunMatrixPart()},
+     * and records {@link #getMatch()}.
+     * 
+     * @param run a build to test. never be a {@link MatrixRun}
+     * @param listener The listener for this build.
+     * @param retryCount the count the build is rescheduled.
+     * @return the stage completed with the decision.
+     */
+    @NonNull
+    public CompletionStage<ScheduleDecision> shouldScheduleAsync(@NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
+        try {
+            if (!shouldSchedule(run, listener, retryCount)) {
+                return CompletableFuture.completedFuture(ScheduleDecision.skip(null));
+            }
+            ScheduleDecision decision = ScheduleDecision.schedule();
+            if (isRerunMatrixPart() && run instanceof MatrixBuild) {
+                decision = decision.withCombinations(getCombinationsToSchedule((MatrixBuild)run, listener));
+            }
+            // set while testing the children above with some strategies.
+            return CompletableFuture.completedFuture(decision.withMatch(getMatch()));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * Tests children of the multi-configuration build with {@link #getMatrixRunsToSchedule(List, TaskListener)}.
+     * 
+     * @param build the multi-configuration build
+     * @param listener The listener for the multi-configuration build.
+     * @return combinations of children to reschedule.
+     */
+    @NonNull
+    List<Combination> getCombinationsToSchedule(@NonNull MatrixBuild build, @NonNull TaskListener listener) {
+        List<MatrixRun> matrixRuns = new ArrayList<MatrixRun>();
+        for (MatrixRun r : build.getRuns()) {
+            if (r.getNumber() == build.getNumber()) {
+                matrixRuns.add(r);
+            }
+        }
+        List<Combination> combinations = new ArrayList<Combination>();
+        for (MatrixRun r : getMatrixRunsToSchedule(matrixRuns, listener)) {
+            combinations.add(r.getParent().getCombination());
+        }
+        return combinations;
+    }
+    
     /**
      * A test for each child builds of multi-configuration builds.
      * You can filter child builds to reschedule.
@@ -122,6 +186,39 @@ public class NaginatorScheduleAction extends InvisibleAction {
         return true;
     }
     
+    /**
+     * Tests child builds of multi-configuration builds
+     * with {@link #shouldScheduleForMatrixRun(MatrixRun, TaskListener)}.
+     * You can override this method to test child builds in parallel.
+     * 
+     * @param runs child builds to test
+     * @param listener The listener for the multi-configuration build.
+     * @return child builds to reschedule, in the order of <code>runs</code>
+     */
+    @NonNull
+    public List<MatrixRun> getMatrixRunsToSchedule(@NonNull List<MatrixRun> runs, @NonNull TaskListener listener) {
+        List<MatrixRun> toSchedule = new ArrayList<MatrixRun>();
+        for (MatrixRun r : runs) {
+            if (shouldScheduleForMatrixRun(r, listener)) {
+                toSchedule.add(r);
+            }
+        }
+        return toSchedule;
+    }
+    
+    /**
+     * The line of the log which made this decide to reschedule the build,
+     * recorded in {@link NaginatorCause} of the build rescheduled.
+     * Called after {@link #shouldSchedule(Run, TaskListener, int)}
+     * and {@link #getMatrixRunsToSchedule(List, TaskListener)}.
+     * 
+     * @return the match. <code>null</code> if not decided with the log.
+     */
+    @CheckForNull
+    public NaginatorMatch getMatch() {
+        return null;
+    }
+    
     /**
      * @return how to do when no children to rerun for a matrix project.
      * 
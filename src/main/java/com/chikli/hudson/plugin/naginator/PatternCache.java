@@ -0,0 +1,75 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Caches compiled regular expressions
+ * so that builds and matrix children using the same regular expression
+ * share one {@link Pattern}.
+ *
+ * The least recently used pattern is evicted when the cache is full.
+ * The size can be configured with the system property
+ * <code>com.chikli.hudson.plugin.naginator.PatternCache.maxSize</code>.
+ */
+final class PatternCache {
+    static final int MAX_SIZE = SystemProperties.getInteger(PatternCache.class.getName() + ".maxSize", 256);
+
+    private static final PatternCache INSTANCE = new PatternCache(MAX_SIZE);
+
+    private final Map<Key, Pattern> cache;
+
+    PatternCache(final int maxSize) {
+        this.cache = new LinkedHashMap<Key, Pattern>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Pattern> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param regexp the regular expression
+     * @param flags the flags for {@link Pattern#compile(String, int)}
+     * @return the compiled pattern shared in this Jenkins instance.
+     * @throws PatternSyntaxException the regular expression is invalid.
+     */
+    @NonNull
+    static Pattern compile(@NonNull String regexp, int flags) {
+        return INSTANCE.get(regexp, flags);
+    }
+
+    @NonNull
+    Pattern get(@NonNull String regexp, int flags) {
+        Key key = new Key(regexp, flags);
+        synchronized (cache) {
+            Pattern pattern = cache.get(key);
+            if (pattern != null) {
+                return pattern;
+            }
+        }
+        // compile outside the lock as it can take a long time.
+        // The same pattern can be compiled twice in parallel, but it doesn't matter.
+        Pattern pattern = Pattern.compile(regexp, flags);
+        synchronized (cache) {
+            Pattern existing = cache.putIfAbsent(key, pattern);
+            return (existing != null) ? existing : pattern;
+        }
+    }
+
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private record Key(@NonNull String regexp, int flags) {
+    }
+}
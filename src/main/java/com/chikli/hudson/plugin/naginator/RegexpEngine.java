@@ -0,0 +1,68 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import jenkins.model.Jenkins;
+import org.jvnet.localizer.Localizable;
+
+/**
+ * How to match regular expressions against lines of the log.
+ */
+public enum RegexpEngine {
+    /**
+     * Matches with {@link java.util.regex}, which backtracks
+     * and can take time exponential to the length of a line for some regular expressions.
+     */
+    JavaUtilRegex(Messages._RegexpEngine_JavaUtilRegex()),
+    /**
+     * Matches in time linear to the length of a line with {@link LinearRegexp}.
+     * Regular expressions it doesn't support are matched with {@link java.util.regex}.
+     */
+    Linear(Messages._RegexpEngine_Linear()),
+    ;
+    private final Localizable displayName;
+
+    private RegexpEngine(Localizable displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName.toString();
+    }
+
+    @NonNull
+    public static RegexpEngine getDefault() {
+        return JavaUtilRegex;
+    }
+
+    /**
+     * @param name the name of the engine. Empty for none.
+     * @return the engine. <code>null</code> for none.
+     * @throws IllegalArgumentException no engine with the name.
+     */
+    @CheckForNull
+    public static RegexpEngine fromString(@CheckForNull String name) {
+        name = Util.fixEmptyAndTrim(name);
+        return (name != null) ? valueOf(name) : null;
+    }
+
+    /**
+     * @param engine the engine configured for the job. <code>null</code> to use the global setting.
+     * @return the engine to use.
+     */
+    @NonNull
+    static RegexpEngine resolve(@CheckForNull RegexpEngine engine) {
+        if (engine != null) {
+            return engine;
+        }
+        Jenkins j = Jenkins.getInstanceOrNull();
+        NaginatorPublisher.DescriptorImpl d = (j != null)
+                ? (NaginatorPublisher.DescriptorImpl)j.getDescriptor(NaginatorPublisher.class)
+                : null;
+        if (d == null) {
+            return getDefault();
+        }
+        return d.getRegexpEngine();
+    }
+}
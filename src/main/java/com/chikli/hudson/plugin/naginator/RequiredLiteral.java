@@ -0,0 +1,422 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * A literal string any match of a regular expression must contain,
+ * e.g. <code>OutOfMemoryError</code> for <code>java\.lang\.OutOfMemoryError: .*heap</code>.
+ *
+ * Lines not containing the literal can be skipped without running the regular expression engine.
+ * Extracted with a conservative parser of the regular expression:
+ * any construct it doesn't understand makes it give up rather than guess.
+ */
+final class RequiredLiteral {
+    /**
+     * Literals shorter than this don't filter enough lines to be worth searching for,
+     * unless the whole regular expression is the literal.
+     */
+    static final int MIN_LENGTH = 2;
+
+    private final String literal;
+    private final boolean pure;
+
+    private RequiredLiteral(@NonNull String literal, boolean pure) {
+        this.literal = literal;
+        this.pure = pure;
+    }
+
+    /**
+     * @return the literal.
+     */
+    @NonNull
+    String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * @return whether the regular expression is just this literal,
+     *     and a line matches if and only if it contains the literal.
+     */
+    boolean isPure() {
+        return pure;
+    }
+
+    /**
+     * @param text text to search
+     * @return whether the text contains the literal.
+     */
+    boolean isFoundIn(@NonNull CharSequence text) {
+        int m = literal.length();
+        char first = literal.charAt(0);
+        for (int i = 0; i <= text.length() - m; ++i) {
+            if (text.charAt(i) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < m && text.charAt(i + j) == literal.charAt(j)) {
+                ++j;
+            }
+            if (j == m) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes the literal to search for it in bytes of a log.
+     *
+     * Only when the bytes of the literal are always found in the bytes of a line containing the literal:
+     * any literals for UTF-8 and ISO-8859-1, and only ASCII literals for other charsets.
+     *
+     * @param charset the charset of the log. Should be compatible with ASCII.
+     * @return the bytes. <code>null</code> if the literal cannot be searched in bytes.
+     */
+    @CheckForNull
+    byte[] encode(@NonNull Charset charset) {
+        boolean ascii = true;
+        for (int i = 0; i < literal.length(); ++i) {
+            char c = literal.charAt(i);
+            if (c >= 0x80) {
+                ascii = false;
+            }
+            if (c == '\uFFFD') {
+                // may be a replacement of malformed bytes.
+                return null;
+            }
+        }
+        if (!ascii && !StandardCharsets.UTF_8.equals(charset) && !StandardCharsets.ISO_8859_1.equals(charset)) {
+            return null;
+        }
+        CharsetEncoder encoder = charset.newEncoder();
+        try {
+            ByteBuffer encoded = encoder.encode(CharBuffer.wrap(literal));
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            return bytes;
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return literal;
+    }
+
+    /**
+     * @param pattern a regular expression
+     * @return the longest literal any match must contain.
+     *     <code>null</code> if not found or the regular expression is too complicated.
+     */
+    @CheckForNull
+    static RequiredLiteral of(@NonNull Pattern pattern) {
+        int flags = pattern.flags();
+        if ((flags & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+            return null;
+        }
+        if ((flags & Pattern.LITERAL) != 0) {
+            return pattern.pattern().isEmpty() ? null : new RequiredLiteral(pattern.pattern(), true);
+        }
+        return new Parser(pattern.pattern()).parse();
+    }
+
+    /**
+     * Reads the top level sequence of a regular expression,
+     * and collects runs of literal characters not made optional by quantifiers.
+     * Groups and character classes are skipped as a whole.
+     */
+    private static class Parser {
+        private final String regexp;
+        private int pos;
+
+        private final StringBuilder run = new StringBuilder();
+        private String longest = "";
+        private boolean pure = true;
+
+        Parser(String regexp) {
+            this.regexp = regexp;
+        }
+
+        @CheckForNull
+        RequiredLiteral parse() {
+            try {
+                while (pos < regexp.length()) {
+                    if (!next()) {
+                        return null;
+                    }
+                }
+            } catch (IndexOutOfBoundsException e) {
+                // malformed. should not happen for compiled patterns.
+                return null;
+            }
+            endRun();
+            if (pure && !longest.isEmpty()) {
+                return new RequiredLiteral(longest, true);
+            }
+            if (longest.length() < MIN_LENGTH) {
+                return null;
+            }
+            return new RequiredLiteral(longest, false);
+        }
+
+        /**
+         * Reads the next element.
+         *
+         * @return <code>false</code> to give up.
+         */
+        private boolean next() {
+            char c = regexp.charAt(pos++);
+            switch (c) {
+            case '|':
+                // alternatives at the top level. Nothing is required.
+                return false;
+            case '(':
+                if (!skipGroup()) {
+                    return false;
+                }
+                breakRun();
+                skipQuantifier();
+                return true;
+            case '[':
+                skipClass();
+                breakRun();
+                skipQuantifier();
+                return true;
+            case '.':
+            case '^':
+            case '$':
+                breakRun();
+                skipQuantifier();
+                return true;
+            case '\\':
+                return escape();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                // should not happen as quantifiers are read with atoms.
+                return false;
+            default:
+                literal(c);
+                return true;
+            }
+        }
+
+        private boolean escape() {
+            char c = regexp.charAt(pos++);
+            switch (c) {
+            case 't':
+                literal('\t');
+                return true;
+            case 'n':
+                literal('\n');
+                return true;
+            case 'r':
+                literal('\r');
+                return true;
+            case 'f':
+                literal('\f');
+                return true;
+            case 'a':
+                literal('\u0007');
+                return true;
+            case 'e':
+                literal('\u001B');
+                return true;
+            case 'Q': {
+                int end = regexp.indexOf("\\E", pos);
+                if (end < 0) {
+                    end = regexp.length();
+                }
+                String quoted = regexp.substring(pos, end);
+                pos = Math.min(end + 2, regexp.length());
+                if (quoted.isEmpty()) {
+                    return true;
+                }
+                run.append(quoted, 0, quoted.length() - 1);
+                literal(quoted.charAt(quoted.length() - 1));
+                return true;
+            }
+            case 'd': case 'D': case 's': case 'S': case 'w': case 'W':
+            case 'h': case 'H': case 'v': case 'V': case 'R': case 'X':
+            case 'b': case 'B': case 'A': case 'G': case 'Z': case 'z':
+                breakRun();
+                skipQuantifier();
+                return true;
+            case 'p':
+            case 'P':
+                if (regexp.charAt(pos) == '{') {
+                    skipPast('}');
+                } else {
+                    ++pos;
+                }
+                breakRun();
+                skipQuantifier();
+                return true;
+            case 'k':
+                skipPast('>');
+                breakRun();
+                skipQuantifier();
+                return true;
+            default:
+                if (c >= '1' && c <= '9') {
+                    // back reference.
+                    while (pos < regexp.length() && Character.isDigit(regexp.charAt(pos))) {
+                        ++pos;
+                    }
+                    breakRun();
+                    skipQuantifier();
+                    return true;
+                }
+                if (!Character.isLetterOrDigit(c)) {
+                    literal(c);
+                    return true;
+                }
+                // e.g. octal, hexadecimal, or control characters.
+                return false;
+            }
+        }
+
+        /**
+         * Skips a group after <code>(</code>.
+         *
+         * @return <code>false</code> for flags changing how literals match.
+         */
+        private boolean skipGroup() {
+            if (regexp.charAt(pos) == '?') {
+                // flags like (?i) or (?i:X)
+                int i = pos + 1;
+                while (Character.isLetter(regexp.charAt(i)) || regexp.charAt(i) == '-') {
+                    char flag = regexp.charAt(i);
+                    if (flag == 'i' || flag == 'x' || flag == 'u' || flag == 'U') {
+                        return false;
+                    }
+                    ++i;
+                }
+            }
+            int depth = 1;
+            while (depth > 0) {
+                char c = regexp.charAt(pos++);
+                if (c == '\\') {
+                    skipEscapeInside();
+                } else if (c == '[') {
+                    skipClass();
+                } else if (c == '(') {
+                    ++depth;
+                } else if (c == ')') {
+                    --depth;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Skips a character class after <code>[</code>.
+         */
+        private void skipClass() {
+            if (regexp.charAt(pos) == '^') {
+                ++pos;
+            }
+            if (regexp.charAt(pos) == ']') {
+                ++pos;
+            }
+            int depth = 1;
+            while (depth > 0) {
+                char c = regexp.charAt(pos++);
+                if (c == '\\') {
+                    skipEscapeInside();
+                } else if (c == '[') {
+                    ++depth;
+                } else if (c == ']') {
+                    --depth;
+                }
+            }
+        }
+
+        private void skipEscapeInside() {
+            if (regexp.charAt(pos) == 'Q') {
+                int end = regexp.indexOf("\\E", pos);
+                pos = (end < 0) ? regexp.length() : end + 2;
+            } else {
+                ++pos;
+            }
+        }
+
+        /**
+         * Appends a literal character, or ends the run if it is made optional or repeated.
+         */
+        private void literal(char c) {
+            if (pos >= regexp.length()) {
+                run.append(c);
+                return;
+            }
+            char q = regexp.charAt(pos);
+            if (q == '?' || q == '*' || (q == '{' && regexp.startsWith("{0", pos))) {
+                // optional.
+                int len = run.length();
+                if (Character.isLowSurrogate(c) && len > 0 && Character.isHighSurrogate(run.charAt(len - 1))) {
+                    // the quantifier applies to the whole code point.
+                    run.setLength(len - 1);
+                }
+                breakRun();
+                skipQuantifier();
+                return;
+            }
+            run.append(c);
+            if (q == '+' || q == '{') {
+                // appears at least once, but not followed by the next character.
+                breakRun();
+                skipQuantifier();
+            }
+        }
+
+        private void skipQuantifier() {
+            if (pos >= regexp.length()) {
+                return;
+            }
+            char q = regexp.charAt(pos);
+            if (q == '{') {
+                skipPast('}');
+            } else if (q == '?' || q == '*' || q == '+') {
+                ++pos;
+            } else {
+                return;
+            }
+            pure = false;
+            // reluctant or possessive.
+            if (pos < regexp.length() && (regexp.charAt(pos) == '?' || regexp.charAt(pos) == '+')) {
+                ++pos;
+            }
+        }
+
+        private void skipPast(char c) {
+            int i = regexp.indexOf(c, pos);
+            if (i < 0) {
+                throw new IndexOutOfBoundsException(regexp.length());
+            }
+            pos = i + 1;
+        }
+
+        private void breakRun() {
+            pure = false;
+            endRun();
+        }
+
+        private void endRun() {
+            if (run.length() > longest.length()) {
+                longest = run.toString();
+            }
+            run.setLength(0);
+        }
+    }
+}
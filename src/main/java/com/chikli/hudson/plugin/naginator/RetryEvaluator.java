@@ -0,0 +1,403 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Evaluates whether completed builds should be rescheduled on a dedicated pool,
+ * so that {@link NaginatorListener#onCompleted} returns without waiting for log scans
+ * and other {@link hudson.model.listeners.RunListener}s aren't delayed.
+ *
+ * <ul>
+ *   <li>The retry count is captured when the build completes,
+ *       and the rest of the decision is taken from the actions saved with the build.</li>
+ *   <li>Actions deciding asynchronously don't hold threads of the pool while deciding.</li>
+ *   <li>Builds waiting for evaluation are limited to the size of the queue.
+ *       When the queue is full, the completing thread evaluates the build itself,
+ *       which holds back builds completing faster than they are evaluated.</li>
+ *   <li>Builds not decided in the decision timeout are given up and not rescheduled,
+ *       with a {@link DecisionBudget} of the timeout stopping log scans and refusing late decisions.</li>
+ *   <li>Builds not evaluated yet are saved in <code>$JENKINS_HOME/com.chikli.hudson.plugin.naginator.RetryEvaluator.xml</code>,
+ *       and are evaluated again after Jenkins restarts.</li>
+ * </ul>
+ *
+ * Disabled by default. Can be configured with system properties:
+ * <dl>
+ *   <dt><code>com.chikli.hudson.plugin.naginator.RetryEvaluator.async</code></dt>
+ *     <dd>evaluate builds asynchronously.</dd>
+ *   <dt><code>com.chikli.hudson.plugin.naginator.RetryEvaluator.poolSize</code></dt>
+ *     <dd>the maximum number of builds evaluated at the same time.</dd>
+ *   <dt><code>com.chikli.hudson.plugin.naginator.RetryEvaluator.queueSize</code></dt>
+ *     <dd>the maximum number of builds waiting for evaluation.</dd>
+ *   <dt><code>com.chikli.hudson.plugin.naginator.RetryEvaluator.decisionTimeoutMs</code></dt>
+ *     <dd>milliseconds to wait for a build to be decided.</dd>
+ * </dl>
+ */
+public final class RetryEvaluator {
+    private static final Logger LOGGER = Logger.getLogger(RetryEvaluator.class.getName());
+
+    static boolean ASYNC = SystemProperties.getBoolean(RetryEvaluator.class.getName() + ".async");
+
+    static final int POOL_SIZE = SystemProperties.getInteger(
+            RetryEvaluator.class.getName() + ".poolSize",
+            2
+    );
+    static final int QUEUE_SIZE = SystemProperties.getInteger(
+            RetryEvaluator.class.getName() + ".queueSize",
+            100
+    );
+
+    static long DECISION_TIMEOUT_MS = SystemProperties.getLong(
+            RetryEvaluator.class.getName() + ".decisionTimeoutMs",
+            10 * 60 * 1000L
+    );
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 10 * 1000;
+
+    private static RetryEvaluator instance;
+
+    /**
+     * Tells whether to reschedule a build and schedules it.
+     */
+    @FunctionalInterface
+    interface Evaluation {
+        /**
+         * @param buildId {@link Run#getExternalizableId()} of the build
+         * @param retryCount how many times the build was rescheduled, captured when it completed.
+         *     <code>-1</code> if not counted yet.
+         * @param budget exhausted when the decision timeout is over. The build must not be rescheduled then.
+         * @return the stage completed when evaluated. Failures aren't evaluated again.
+         * @throws Exception failed to evaluate. The build isn't evaluated again.
+         */
+        @NonNull
+        CompletionStage<?> evaluate(@NonNull String buildId, int retryCount, @NonNull DecisionBudget budget) throws Exception;
+    }
+
+    private final File pendingFile;
+    private final Evaluation evaluation;
+    private final long decisionTimeoutMs;
+    private final ThreadPoolExecutor executor;
+    /**
+     * Limits builds being decided on the pool, including ones not blocking threads of the pool.
+     * Released when decided or given up, in the decision timeout at the latest,
+     * as builds given up no longer scan logs nor are rescheduled.
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * Builds not evaluated yet and their retry counts, oldest first.
+     * Guarded by <code>this</code>.
+     */
+    private final Map<String, Integer> pending = new LinkedHashMap<>();
+
+    RetryEvaluator(@NonNull File pendingFile, int poolSize, int queueSize, long decisionTimeoutMs, @NonNull Evaluation evaluation) {
+        this.pendingFile = pendingFile;
+        this.evaluation = evaluation;
+        this.decisionTimeoutMs = Math.max(1, decisionTimeoutMs);
+        this.executor = new ThreadPoolExecutor(
+                Math.max(1, poolSize),
+                Math.max(1, poolSize),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Naginator retry evaluation")
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+        this.inFlight = new Semaphore(Math.max(1, poolSize) + Math.max(1, queueSize));
+    }
+
+    /**
+     * Once Jenkins terminated, returns the shut down evaluator
+     * leaving completed builds to be evaluated after Jenkins restarts.
+     *
+     * @return the evaluator shared in this Jenkins instance.
+     */
+    @NonNull
+    public static synchronized RetryEvaluator get() {
+        if (instance == null || (instance.executor.isShutdown() && LogScanExecutor.isJenkinsRunning())) {
+            instance = new RetryEvaluator(
+                    new File(Jenkins.get().getRootDir(), RetryEvaluator.class.getName() + ".xml"),
+                    POOL_SIZE,
+                    QUEUE_SIZE,
+                    DECISION_TIMEOUT_MS,
+                    RetryEvaluator::evaluateBuild
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * @return whether builds are evaluated asynchronously.
+     */
+    public static boolean isAsync() {
+        return ASYNC;
+    }
+
+    @NonNull
+    private static CompletionStage<?> evaluateBuild(@NonNull String buildId, int retryCount, @NonNull DecisionBudget budget) {
+        Run<?, ?> run = Run.fromExternalizableId(buildId);
+        if (!(run instanceof AbstractBuild)) {
+            LOGGER.log(Level.FINE, "{0} no longer exists", buildId);
+            return CompletableFuture.completedFuture(null);
+        }
+        int count = (retryCount >= 0) ? retryCount : NaginatorListener.calculateRetryCount(run);
+        return budget.call(() -> ExtensionList.lookupSingleton(NaginatorListener.class).evaluate(
+                (AbstractBuild<?, ?>)run,
+                // the log of the build is already closed.
+                new LogTaskListener(LOGGER, Level.FINE),
+                count,
+                budget
+        ));
+    }
+
+    /**
+     * Saves the build as pending, and evaluates it on the pool.
+     *
+     * @param build the completed build
+     * @param retryCount how many times the build was rescheduled. <code>-1</code> to count when evaluated.
+     */
+    void submit(@NonNull Run<?, ?> build, int retryCount) {
+        submit(build.getExternalizableId(), retryCount);
+    }
+
+    void submit(@NonNull String buildId, int retryCount) {
+        synchronized (this) {
+            if (pending.put(buildId, retryCount) != null) {
+                // recovered and completed again. Evaluated only once.
+                return;
+            }
+            save();
+        }
+        try {
+            executor.execute(() -> run(buildId, retryCount));
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                // evaluated after Jenkins restarts.
+                return;
+            }
+            // the queue is full: the completing thread evaluates the build itself.
+            runOnCaller(buildId, retryCount);
+        }
+    }
+
+    /**
+     * Starts evaluating the build, and releases the thread
+     * while actions decide asynchronously with {@link NaginatorScheduleAction#shouldScheduleAsync}.
+     * Waits while too many builds are being decided.
+     */
+    private void run(@NonNull String buildId, int retryCount) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            // evaluated after Jenkins restarts.
+            Thread.currentThread().interrupt();
+            return;
+        }
+        evaluate(buildId, retryCount).whenComplete((v, e) -> inFlight.release());
+    }
+
+    /**
+     * Evaluates the build on the completing thread, and waits until it is decided.
+     * Doesn't wait for {@link #inFlight}, as builds being decided may be waiting for the completing thread.
+     */
+    private void runOnCaller(@NonNull String buildId, int retryCount) {
+        try {
+            evaluate(buildId, retryCount).join();
+        } catch (CompletionException | CancellationException e) {
+            // already logged.
+        }
+    }
+
+    /**
+     * @return the stage completed when the build is decided, failed, or given up in the decision timeout.
+     */
+    @NonNull
+    private CompletableFuture<?> evaluate(@NonNull String buildId, int retryCount) {
+        DecisionBudget budget = DecisionBudget.start(decisionTimeoutMs);
+        CompletionStage<?> stage;
+        try {
+            stage = evaluation.evaluate(buildId, retryCount, budget);
+        } catch (Exception e) {
+            stage = CompletableFuture.failedFuture(e);
+        }
+        // not to complete the stage of the actions when given up.
+        CompletableFuture<Object> decided = new CompletableFuture<>();
+        stage.whenComplete((v, e) -> {
+            if (e != null) {
+                decided.completeExceptionally(e);
+            } else {
+                decided.complete(v);
+            }
+        });
+        return decided.orTimeout(decisionTimeoutMs, TimeUnit.MILLISECONDS).whenComplete((v, e) -> {
+            if (e instanceof TimeoutException) {
+                // decisions completing later no longer reschedule the build.
+                budget.exhaust("waiting for schedule actions to decide");
+                LOGGER.log(Level.WARNING, "Gave up evaluating whether to reschedule {0} as not decided in {1} ms",
+                        new Object[]{buildId, decisionTimeoutMs});
+            } else if (e != null) {
+                LOGGER.log(Level.WARNING, "Failed to evaluate whether to reschedule " + buildId, e);
+            }
+            synchronized (this) {
+                pending.remove(buildId);
+                save();
+            }
+        });
+    }
+
+    /**
+     * @return the number of builds not evaluated yet, including ones being evaluated.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of builds waiting for a thread.
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Evaluates builds saved as pending before Jenkins stopped.
+     */
+    void recover() {
+        List<PendingBuild> saved = load(pendingFile);
+        if (saved.isEmpty()) {
+            return;
+        }
+        LOGGER.log(Level.INFO, "Evaluating {0} builds not evaluated before Jenkins stopped", saved.size());
+        for (PendingBuild p : saved) {
+            submit(p.buildId, p.retryCount);
+        }
+    }
+
+    // guarded by this
+    private void save() {
+        List<PendingBuild> list = new ArrayList<>(pending.size());
+        for (Map.Entry<String, Integer> e : pending.entrySet()) {
+            list.add(new PendingBuild(e.getKey(), e.getValue()));
+        }
+        try {
+            if (list.isEmpty()) {
+                if (pendingFile.exists() && !pendingFile.delete()) {
+                    throw new IOException("Failed to delete " + pendingFile);
+                }
+                return;
+            }
+            new XmlFile(pendingFile).write(new PendingList(list));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save builds to evaluate to " + pendingFile, e);
+        }
+    }
+
+    @NonNull
+    private static List<PendingBuild> load(@NonNull File pendingFile) {
+        XmlFile file = new XmlFile(pendingFile);
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        try {
+            Object o = file.read();
+            if (o instanceof PendingList list && list.builds != null) {
+                return list.builds;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load builds to evaluate from " + pendingFile, e);
+        }
+        return new ArrayList<>();
+    }
+
+    private static final class PendingList {
+        private final List<PendingBuild> builds;
+
+        PendingList(@NonNull List<PendingBuild> builds) {
+            this.builds = builds;
+        }
+    }
+
+    private static final class PendingBuild {
+        private final String buildId;
+        private final int retryCount;
+
+        PendingBuild(@NonNull String buildId, int retryCount) {
+            this.buildId = buildId;
+            this.retryCount = retryCount;
+        }
+    }
+
+    /**
+     * Stops accepting builds and waits for running evaluations.
+     * Builds not evaluated stay saved.
+     *
+     * @param timeoutMs milliseconds to wait running evaluations.
+     * @throws InterruptedException interrupted while waiting.
+     */
+    void shutdown(long timeoutMs) throws InterruptedException {
+        // queued builds are not evaluated until Jenkins restarts.
+        executor.getQueue().clear();
+        executor.shutdown();
+        if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+            LOGGER.log(Level.WARNING, "{0} builds are still being evaluated", executor.getActiveCount());
+        }
+    }
+
+    /**
+     * Evaluates builds left pending when Jenkins stopped, once jobs are loaded.
+     * Builds are recovered even if {@link #isAsync()} is disabled since.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void recoverOnStartup() {
+        File file = new File(Jenkins.get().getRootDir(), RetryEvaluator.class.getName() + ".xml");
+        if (file.exists()) {
+            get().recover();
+        }
+    }
+
+    /**
+     * Shuts down the pool when Jenkins terminates.
+     *
+     * @throws InterruptedException interrupted while waiting running evaluations.
+     */
+    @Terminator
+    public static void shutdownOnTermination() throws InterruptedException {
+        RetryEvaluator target;
+        synchronized (RetryEvaluator.class) {
+            // kept to reject builds completing later.
+            target = instance;
+        }
+        if (target != null) {
+            target.shutdown(SHUTDOWN_TIMEOUT_MS);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A condition for {@link NaginatorPublisherScheduleAction} to reschedule a build.
+ * The build is rescheduled only if all predicates pass.
+ *
+ * Predicates are tested in the order of {@link #getCost()},
+ * and the rest are skipped once one fails,
+ * so that builds not to reschedule for cheaper reasons (e.g. the result) never have the log scanned.
+ * Predicates of the same cost are tested in the order of {@link Extension#ordinal()}.
+ */
+public abstract class RetryPredicate implements ExtensionPoint {
+    private static final Logger LOGGER = Logger.getLogger(RetryPredicate.class.getName());
+
+    /**
+     * How expensive a predicate is to test, cheapest first.
+     */
+    public enum Cost {
+        /**
+         * Tests only the build in memory, e.g. the result or the retry count.
+         */
+        Result,
+        /**
+         * Reads small data of the build or other builds, e.g. actions or test results.
+         */
+        Metadata,
+        /**
+         * Reads the log of the build, or asks an external service.
+         */
+        LogScan,
+    }
+
+    /**
+     * @return how expensive this is to test.
+     */
+    @NonNull
+    public abstract Cost getCost();
+
+    /**
+     * @param action the action of {@link NaginatorPublisher} for the build
+     * @param run the build to test. never be a {@link hudson.matrix.MatrixRun}
+     * @param listener the listener for the build
+     * @param retryCount the count the build is rescheduled
+     * @return whether the build can be rescheduled.
+     */
+    public abstract boolean test(
+            @NonNull NaginatorPublisherScheduleAction action,
+            @NonNull Run<?, ?> run,
+            @NonNull TaskListener listener,
+            int retryCount
+    );
+
+    /**
+     * @return all predicates registered, in the order to test.
+     */
+    @NonNull
+    public static List<RetryPredicate> all() {
+        return sort(ExtensionList.lookup(RetryPredicate.class));
+    }
+
+    /**
+     * @param predicates predicates in the order of {@link Extension#ordinal()}
+     * @return predicates in the order to test.
+     */
+    @NonNull
+    static List<RetryPredicate> sort(@NonNull List<? extends RetryPredicate> predicates) {
+        List<RetryPredicate> sorted = new ArrayList<RetryPredicate>(predicates);
+        // stable: the order of the extensions is kept for the same cost.
+        sorted.sort(Comparator.comparing(RetryPredicate::getCost));
+        return sorted;
+    }
+
+    /**
+     * @param predicates predicates in the order to test
+     * @param action the action of {@link NaginatorPublisher} for the build
+     * @param run the build to test
+     * @param listener the listener for the build
+     * @param retryCount the count the build is rescheduled
+     * @return whether all predicates pass. Stops at the first failing.
+     */
+    static boolean testAll(
+            @NonNull List<RetryPredicate> predicates,
+            @NonNull NaginatorPublisherScheduleAction action,
+            @NonNull Run<?, ?> run,
+            @NonNull TaskListener listener,
+            int retryCount
+    ) {
+        for (RetryPredicate p : predicates) {
+            if (!p.test(action, run, listener, retryCount)) {
+                LOGGER.log(Level.FINE, "{0} is not rescheduled by {1}", new Object[]{run, p});
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "[" + getCost() + "]";
+    }
+
+    /**
+     * Not to reschedule builds succeeded, aborted, or unstable unless configured.
+     */
+    @Extension(ordinal = 100)
+    public static final class ResultPredicate extends RetryPredicate {
+        @NonNull
+        @Override
+        public Cost getCost() {
+            return Cost.Result;
+        }
+
+        @Override
+        public boolean test(@NonNull NaginatorPublisherScheduleAction action, @NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
+            return action.checkCommonScheduleThreshold(run);
+        }
+    }
+
+    /**
+     * Not to reschedule builds more than {@link NaginatorScheduleAction#getMaxSchedule()} times.
+     */
+    @Extension(ordinal = 90)
+    public static final class RetryCountPredicate extends RetryPredicate {
+        @NonNull
+        @Override
+        public Cost getCost() {
+            return Cost.Result;
+        }
+
+        @Override
+        public boolean test(@NonNull NaginatorPublisherScheduleAction action, @NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
+            return action.getMaxSchedule() <= 0 || retryCount < action.getMaxSchedule();
+        }
+    }
+
+    /**
+     * Reschedules builds only if the log matches the regular expressions when configured.
+     */
+    @Extension
+    public static final class RegexpPredicate extends RetryPredicate {
+        @NonNull
+        @Override
+        public Cost getCost() {
+            return Cost.LogScan;
+        }
+
+        @Override
+        public boolean test(@NonNull NaginatorPublisherScheduleAction action, @NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
+            return action.testRegexpToSchedule(run, listener);
+        }
+    }
+}
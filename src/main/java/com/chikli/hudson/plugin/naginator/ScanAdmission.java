@@ -0,0 +1,304 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits log scans of all builds together,
+ * so that many builds failing at once (e.g. a pool of agents gets lost)
+ * don't saturate the disk of the controller.
+ *
+ * <ul>
+ *   <li>Scans wait for admission while {@link #getMaxConcurrentScans()} scans are running,
+ *       and give up when not admitted in {@link #getAdmissionTimeoutMs()}.
+ *       Scans already waiting are admitted before new ones.</li>
+ *   <li>Scans sleep after reading blocks of logs
+ *       so that all scans read {@link #getMaxBytesPerSecond()} bytes per second at most.</li>
+ * </ul>
+ *
+ * Limits are configured in {@link NaginatorPublisher.DescriptorImpl}, and 0 disables each of them.
+ * Counters are kept to tell how scans are held back.
+ */
+public final class ScanAdmission {
+    private static final Logger LOGGER = Logger.getLogger(ScanAdmission.class.getName());
+
+    private static final ScanAdmission INSTANCE = new ScanAdmission();
+
+    /**
+     * How often scans waiting for admission or sleeping for the throttle check whether to give up.
+     */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition released = lock.newCondition();
+
+    // guarded by lock
+    private int maxConcurrentScans;
+    private long admissionTimeoutMs;
+    private int running;
+    private int waiting;
+
+    private volatile long maxBytesPerSecond;
+    /**
+     * When the next block can be read without exceeding {@link #maxBytesPerSecond}, in {@link System#nanoTime()}.
+     */
+    private long nextReadNanos;
+    private final Object throttleLock = new Object();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong admissionWaitNanos = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    ScanAdmission() {
+    }
+
+    /**
+     * @return the admission shared in this Jenkins instance.
+     */
+    @NonNull
+    public static ScanAdmission get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param maxConcurrentScans scans running at once at most. 0 for no limit.
+     * @param maxBytesPerSecond bytes all scans read in a second at most. 0 for no limit.
+     * @param admissionTimeoutMs milliseconds to wait for admission. 0 or less not to wait.
+     */
+    void setLimits(int maxConcurrentScans, long maxBytesPerSecond, long admissionTimeoutMs) {
+        lock.lock();
+        try {
+            this.maxConcurrentScans = Math.max(0, maxConcurrentScans);
+            this.admissionTimeoutMs = admissionTimeoutMs;
+            // the limit may be raised.
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        this.maxBytesPerSecond = Math.max(0, maxBytesPerSecond);
+    }
+
+    /**
+     * Waits until the scan can start.
+     * Call {@link #release()} when the scan finishes if admitted.
+     *
+     * @param cancelled tells to stop waiting as the result is no longer needed. <code>null</code> if never.
+     * @return whether admitted. <code>false</code> if timed out or cancelled.
+     * @throws InterruptedException interrupted while waiting.
+     */
+    boolean acquire(@CheckForNull BooleanSupplier cancelled) throws InterruptedException {
+        long start = System.nanoTime();
+        lock.lockInterruptibly();
+        try {
+            if (waiting == 0 && isAvailable()) {
+                ++running;
+                admitted.incrementAndGet();
+                return true;
+            }
+            ++waiting;
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(Math.max(0, admissionTimeoutMs));
+                while (!isAvailable()) {
+                    if (cancelled != null && cancelled.getAsBoolean()) {
+                        return false;
+                    }
+                    if (remaining <= 0) {
+                        timedOut.incrementAndGet();
+                        LOGGER.log(Level.WARNING, "Gave up a log scan not admitted in {0} ms as {1} scans are running", new Object[]{
+                                admissionTimeoutMs,
+                                running,
+                        });
+                        return false;
+                    }
+                    long wait = Math.min(remaining, POLL_NANOS);
+                    remaining -= wait - released.awaitNanos(wait);
+                }
+                ++running;
+                admitted.incrementAndGet();
+                return true;
+            } finally {
+                --waiting;
+                long waited = System.nanoTime() - start;
+                admissionWaitNanos.addAndGet(waited);
+                LOGGER.log(Level.FINE, "Waited {0} ms for admission of a log scan", TimeUnit.NANOSECONDS.toMillis(waited));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isAvailable() {
+        return maxConcurrentScans <= 0 || running < maxConcurrentScans;
+    }
+
+    /**
+     * Lets the next scan waiting start.
+     */
+    void release() {
+        lock.lock();
+        try {
+            --running;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called after reading a block of a log,
+     * and sleeps if scans read more than {@link #getMaxBytesPerSecond()}.
+     *
+     * @param bytes bytes read
+     * @param deadline when to give up sleeping
+     * @throws ScanDeadline.ExceededException the deadline passed or interrupted while sleeping.
+     */
+    void throttle(long bytes, @NonNull ScanDeadline deadline) throws ScanDeadline.ExceededException {
+        if (bytes <= 0) {
+            return;
+        }
+        bytesRead.addAndGet(bytes);
+        long rate = maxBytesPerSecond;
+        if (rate <= 0) {
+            return;
+        }
+        long sleepUntil;
+        long now = System.nanoTime();
+        synchronized (throttleLock) {
+            if (nextReadNanos - now < 0) {
+                // no credit for the time nothing was read.
+                nextReadNanos = now;
+            }
+            sleepUntil = nextReadNanos;
+            nextReadNanos += (long)(bytes * (double)TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+        if (sleepUntil - now <= 0) {
+            return;
+        }
+        throttledNanos.addAndGet(sleepUntil - now);
+        try {
+            for (long remaining = sleepUntil - now; remaining > 0; remaining = sleepUntil - System.nanoTime()) {
+                deadline.check();
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, POLL_NANOS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScanDeadline.ExceededException(ScanResult.Status.Interrupted);
+        }
+    }
+
+    /**
+     * @return scans running at once at most. 0 for no limit.
+     */
+    public int getMaxConcurrentScans() {
+        lock.lock();
+        try {
+            return maxConcurrentScans;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return bytes all scans read in a second at most. 0 for no limit.
+     */
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    /**
+     * @return milliseconds to wait for admission.
+     */
+    public long getAdmissionTimeoutMs() {
+        lock.lock();
+        try {
+            return admissionTimeoutMs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return scans admitted and not finished yet.
+     */
+    public int getRunningCount() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return scans waiting for admission now.
+     */
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return scans admitted since Jenkins started.
+     */
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    /**
+     * @return scans given up as not admitted in time since Jenkins started.
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return milliseconds scans waited for admission in total.
+     */
+    public long getAdmissionWaitMs() {
+        return TimeUnit.NANOSECONDS.toMillis(admissionWaitNanos.get());
+    }
+
+    /**
+     * @return milliseconds scans slept to keep reads under {@link #getMaxBytesPerSecond()} in total.
+     */
+    public long getThrottledMs() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+    }
+
+    /**
+     * @return bytes of logs scans read in total.
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return the current state and the counters to display.
+     */
+    @NonNull
+    public String getStatus() {
+        return Messages.ScanAdmission_Status(
+                getRunningCount(),
+                getWaitingCount(),
+                getAdmittedCount(),
+                getTimedOutCount(),
+                getAdmissionWaitMs(),
+                getThrottledMs(),
+                getBytesRead()
+        );
+    }
+}
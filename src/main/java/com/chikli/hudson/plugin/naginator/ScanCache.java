@@ -0,0 +1,167 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.XmlFile;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Results of scanning the log of a build, saved next to the build.
+ *
+ * The same log is scanned again by each {@link NaginatorPublisherScheduleAction} of the build,
+ * for each child of a matrix build, and after Jenkins restarts.
+ * Results are looked up by the regular expressions and how the log was scanned,
+ * and are used only while the length and the modification time of the log are unchanged.
+ * Only completed scans are saved.
+ */
+final class ScanCache {
+    private static final Logger LOGGER = Logger.getLogger(ScanCache.class.getName());
+
+    /**
+     * The name of the file in the directory of the build.
+     */
+    static final String FILE_NAME = "naginator-scans.xml";
+
+    /**
+     * Results to keep for each build. 0 to disable caching.
+     */
+    static int MAX_ENTRIES = SystemProperties.getInteger(ScanCache.class.getName() + ".maxEntries", 16);
+
+    /**
+     * Oldest first.
+     */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * The length and the modification time of a log,
+     * taken before scanning it so that a log modified during the scan isn't cached.
+     *
+     * @param length the length of the log
+     * @param lastModified the modification time of the log
+     */
+    record Stamp(long length, long lastModified) {
+        @NonNull
+        static Stamp of(@NonNull File logFile) {
+            return new Stamp(logFile.length(), logFile.lastModified());
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final long logLength;
+        private final long logLastModified;
+        private final String matchedRegexp;
+        private final boolean matchedNegative;
+        private final long matchOffset;
+        private final long matchLine;
+        private final String matchExcerpt;
+
+        Entry(@NonNull String key, @NonNull Stamp stamp, @NonNull ScanResult result) {
+            this.key = key;
+            this.logLength = stamp.length();
+            this.logLastModified = stamp.lastModified();
+            SignatureSet.Signature matched = result.getMatched();
+            this.matchedRegexp = (matched != null) ? matched.regexp() : null;
+            this.matchedNegative = matched != null && matched.negative();
+            this.matchOffset = result.getMatchOffset();
+            this.matchLine = result.getMatchLine();
+            this.matchExcerpt = result.getExcerpt();
+        }
+
+        boolean isFor(@NonNull Stamp stamp) {
+            return logLength == stamp.length() && logLastModified == stamp.lastModified();
+        }
+
+        @CheckForNull
+        ScanResult toResult(@NonNull SignatureSet signatures) {
+            if (matchedRegexp == null) {
+                return ScanResult.NOT_MATCHED;
+            }
+            for (SignatureSet.Signature s : signatures.getSignatures()) {
+                if (s.negative() == matchedNegative && s.regexp().equals(matchedRegexp)) {
+                    return ScanResult.of(s, matchOffset, matchLine, matchExcerpt);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param cacheFile the file to read
+     * @param stamp the current state of the log
+     * @param key identifies the regular expressions and how the log is scanned
+     * @param signatures the regular expressions
+     * @return the saved result. <code>null</code> if the log wasn't scanned in the same way, or was modified since.
+     */
+    @CheckForNull
+    static ScanResult get(@NonNull File cacheFile, @NonNull Stamp stamp, @NonNull String key, @NonNull SignatureSet signatures) {
+        if (MAX_ENTRIES <= 0) {
+            return null;
+        }
+        ScanCache cache = load(cacheFile);
+        if (cache == null) {
+            return null;
+        }
+        for (Entry e : cache.entries) {
+            if (e.key.equals(key) && e.isFor(stamp)) {
+                return e.toResult(signatures);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Saves a result, and drops results for old contents of the log
+     * and the oldest results beyond {@link #MAX_ENTRIES}.
+     *
+     * @param cacheFile the file to write
+     * @param stamp the state of the log before it was scanned
+     * @param key identifies the regular expressions and how the log is scanned
+     * @param result the result. Ignored if not completed.
+     */
+    static void put(@NonNull File cacheFile, @NonNull Stamp stamp, @NonNull String key, @NonNull ScanResult result) {
+        if (MAX_ENTRIES <= 0 || !result.isCompleted() || stamp.lastModified() == 0) {
+            // 0 for logs not found.
+            return;
+        }
+        synchronized (ScanCache.class) {
+            ScanCache cache = load(cacheFile);
+            if (cache == null) {
+                cache = new ScanCache();
+            }
+            cache.entries.removeIf(e -> !e.isFor(stamp) || e.key.equals(key));
+            cache.entries.add(new Entry(key, stamp, result));
+            while (cache.entries.size() > MAX_ENTRIES) {
+                cache.entries.remove(0);
+            }
+            try {
+                new XmlFile(cacheFile).write(cache);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to save the result of scanning the log to " + cacheFile, e);
+            }
+        }
+    }
+
+    @CheckForNull
+    private static ScanCache load(@NonNull File cacheFile) {
+        XmlFile file = new XmlFile(cacheFile);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            Object cache = file.read();
+            return (cache instanceof ScanCache scanCache) ? scanCache : null;
+        } catch (IOException e) {
+            // broken. Overwritten with the next result.
+            LOGGER.log(Level.FINE, "Failed to load " + cacheFile, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * When to give up scanning a log.
+ *
+ * Scans call {@link #check()} between blocks of the log
+ * and every {@link #CHECK_INTERVAL} characters the regular expression engine reads,
+ * rather than testing whether the thread is interrupted for every character.
+ */
+final class ScanDeadline {
+    /**
+     * Characters to read between checks.
+     */
+    static final int CHECK_INTERVAL = 4096;
+
+    /**
+     * Never gives up.
+     */
+    static final ScanDeadline NONE = new ScanDeadline(0, false, null, null);
+
+    private final long deadlineNanos;
+    private final boolean limited;
+    @CheckForNull
+    private final LogScanExecutor executor;
+    @CheckForNull
+    private final BooleanSupplier cancelled;
+
+    private ScanDeadline(long deadlineNanos, boolean limited, @CheckForNull LogScanExecutor executor, @CheckForNull BooleanSupplier cancelled) {
+        this.deadlineNanos = deadlineNanos;
+        this.limited = limited;
+        this.executor = executor;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * @param timeoutMs milliseconds from now to give up. 0 or less not to time out.
+     * @param executor the executor running the scan, to give up when it's aborting scans for shutdown.
+     * @return the deadline.
+     */
+    @NonNull
+    static ScanDeadline after(long timeoutMs, @CheckForNull LogScanExecutor executor) {
+        if (timeoutMs <= 0) {
+            return new ScanDeadline(0, false, executor, null);
+        }
+        return new ScanDeadline(System.nanoTime() + timeoutMs * 1000 * 1000, true, executor, null);
+    }
+
+    /**
+     * @param cancelled tells whether the result is no longer needed.
+     * @return the same deadline, also giving up when <code>cancelled</code> returns <code>true</code>.
+     */
+    @NonNull
+    ScanDeadline cancelledBy(@NonNull BooleanSupplier cancelled) {
+        return new ScanDeadline(deadlineNanos, limited, executor, cancelled);
+    }
+
+    /**
+     * @throws ExceededException the scan should give up.
+     */
+    void check() throws ExceededException {
+        if (this == NONE) {
+            return;
+        }
+        if (executor != null && executor.isAborting()) {
+            throw new ExceededException(ScanResult.Status.ShutDown);
+        }
+        if (cancelled != null && cancelled.getAsBoolean()) {
+            throw new ExceededException(ScanResult.Status.Cancelled);
+        }
+        if (limited && System.nanoTime() - deadlineNanos > 0) {
+            throw new ExceededException(ScanResult.Status.TimedOut);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ExceededException(ScanResult.Status.Interrupted);
+        }
+    }
+
+    /**
+     * Thrown through the regular expression engine to abort the scan.
+     */
+    static final class ExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final ScanResult.Status status;
+
+        ExceededException(@NonNull ScanResult.Status status) {
+            super(status.toString(), null, false, false);
+            this.status = status;
+        }
+
+        /**
+         * @return why the scan gave up.
+         */
+        @NonNull
+        ScanResult.Status getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of scanning a log for {@link SignatureSet}.
+ */
+final class ScanResult {
+    static final ScanResult NOT_MATCHED = new ScanResult(null, -1, -1, null, Status.Completed);
+
+    /**
+     * How the scan ended.
+     */
+    enum Status {
+        /**
+         * Read to the end of the log, or to the line deciding the result.
+         */
+        Completed("completed"),
+        /**
+         * Gave up as the scan took longer than the timeout.
+         */
+        TimedOut("timed out"),
+        /**
+         * Gave up as Jenkins is shutting down.
+         */
+        ShutDown("aborted for shutdown"),
+        /**
+         * Not started as too many scans are queued.
+         */
+        Rejected("rejected as too many scans are queued"),
+        /**
+         * Not started as too many scans were running for {@link ScanAdmission}.
+         */
+        NotAdmitted("not admitted in time as too many scans are running"),
+        /**
+         * The thread waiting for or running the scan was interrupted.
+         */
+        Interrupted("interrupted"),
+        /**
+         * Gave up as the result is no longer needed,
+         * e.g. another child of the matrix build already matched.
+         */
+        Cancelled("cancelled"),
+        /**
+         * Failed for an unexpected error.
+         */
+        Failed("failed"),
+        ;
+        private final String description;
+
+        Status(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    @CheckForNull
+    private final SignatureSet.Signature matched;
+    private final long matchOffset;
+    private final long matchLine;
+    /**
+     * The matched line truncated with {@link NaginatorMatch#truncate(CharSequence)}.
+     */
+    @CheckForNull
+    private final String excerpt;
+    @NonNull
+    private final Status status;
+    /**
+     * Results of sets tested together with {@link SignatureSet#union(List)}.
+     * <code>null</code> if a single set was tested.
+     */
+    @CheckForNull
+    private final List<ScanResult> groups;
+
+    private ScanResult(@CheckForNull SignatureSet.Signature matched, long matchOffset, long matchLine, @CheckForNull String excerpt, @NonNull Status status) {
+        this(matched, matchOffset, matchLine, excerpt, status, null);
+    }
+
+    private ScanResult(@CheckForNull SignatureSet.Signature matched, long matchOffset, long matchLine, @CheckForNull String excerpt, @NonNull Status status, @CheckForNull List<ScanResult> groups) {
+        this.matched = matched;
+        this.matchOffset = matchOffset;
+        this.matchLine = matchLine;
+        this.excerpt = excerpt;
+        this.status = status;
+        this.groups = groups;
+    }
+
+    /**
+     * @param matched the signature matched. <code>null</code> if none matched.
+     * @return the result of a completed scan
+     */
+    static ScanResult of(@CheckForNull SignatureSet.Signature matched) {
+        return of(matched, -1);
+    }
+
+    /**
+     * @param matched the signature matched. <code>null</code> if none matched.
+     * @param matchOffset the offset in bytes of the matched line in the log. -1 if unknown.
+     * @return the result of a completed scan
+     */
+    static ScanResult of(@CheckForNull SignatureSet.Signature matched, long matchOffset) {
+        return of(matched, matchOffset, -1, null);
+    }
+
+    /**
+     * @param matched the signature matched. <code>null</code> if none matched.
+     * @param matchOffset the offset in bytes of the matched line in the log. -1 if unknown.
+     * @param matchLine the line number (starting with 1) of the matched line. -1 if unknown.
+     * @param excerpt the matched line. <code>null</code> if unknown.
+     * @return the result of a completed scan
+     */
+    static ScanResult of(@CheckForNull SignatureSet.Signature matched, long matchOffset, long matchLine, @CheckForNull CharSequence excerpt) {
+        if (matched == null) {
+            return NOT_MATCHED;
+        }
+        return new ScanResult(matched, matchOffset, matchLine, NaginatorMatch.truncate(excerpt), Status.Completed);
+    }
+
+    /**
+     * @param groups results of sets tested together with {@link SignatureSet#union(List)}, in the order of the sets
+     * @return the result of a completed scan holding the result of each set
+     */
+    static ScanResult ofGroups(@NonNull List<ScanResult> groups) {
+        if (groups.size() == 1) {
+            return groups.get(0);
+        }
+        return new ScanResult(null, -1, -1, null, Status.Completed, Collections.unmodifiableList(new ArrayList<>(groups)));
+    }
+
+    /**
+     * @param status why the scan didn't complete. Must not be {@link Status#Completed}.
+     * @return the result of a scan given up
+     */
+    static ScanResult aborted(@NonNull Status status) {
+        if (status == Status.Completed) {
+            throw new IllegalArgumentException("not aborted");
+        }
+        return new ScanResult(null, -1, -1, null, status);
+    }
+
+    /**
+     * @param group the index of the set given to {@link SignatureSet#union(List)}
+     * @return the result for the set. This if a single set was tested or the scan didn't complete.
+     */
+    @NonNull
+    ScanResult getGroup(int group) {
+        return (groups != null) ? groups.get(group) : this;
+    }
+
+    /**
+     * @return the signature matched. A signature never to rerun if any matched.
+     *     <code>null</code> if none matched, the scan didn't complete, or sets were tested together.
+     */
+    @CheckForNull
+    SignatureSet.Signature getMatched() {
+        return matched;
+    }
+
+    /**
+     * @return the offset in bytes of the matched line in the log.
+     *     -1 if none matched or unknown, e.g. for logs in charsets not compatible with ASCII.
+     */
+    long getMatchOffset() {
+        return (matched != null) ? matchOffset : -1;
+    }
+
+    /**
+     * @return the line number (starting with 1) of the matched line in the log.
+     *     -1 if none matched or unknown, e.g. for lines found by reading the log backwards.
+     */
+    long getMatchLine() {
+        return (matched != null && matchLine > 0) ? matchLine : -1;
+    }
+
+    /**
+     * @return the matched line, truncated to {@link NaginatorMatch#MAX_EXCERPT_LENGTH} characters.
+     *     <code>null</code> if none matched or unknown.
+     */
+    @CheckForNull
+    String getExcerpt() {
+        return excerpt;
+    }
+
+    /**
+     * @param run the name of the child build whose log was scanned. <code>null</code> for the build itself.
+     * @return the match to record in the build rescheduled.
+     *     <code>null</code> if none matched or the signature matched is one never to rerun.
+     */
+    @CheckForNull
+    NaginatorMatch toMatch(@CheckForNull String run) {
+        if (matched == null || matched.negative()) {
+            return null;
+        }
+        return new NaginatorMatch(matched.regexp(), getMatchLine(), getMatchOffset(), excerpt, run);
+    }
+
+    /**
+     * @return whether any signature matched.
+     */
+    boolean isMatched() {
+        return matched != null;
+    }
+
+    /**
+     * @return how the scan ended.
+     */
+    @NonNull
+    Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return whether the scan completed and the result can be trusted.
+     */
+    boolean isCompleted() {
+        return status == Status.Completed;
+    }
+
+    @Override
+    public String toString() {
+        if (!isCompleted()) {
+            return status.toString();
+        }
+        if (groups != null) {
+            return groups.toString();
+        }
+        return (matched != null) ? "matched '" + matched.regexp() + "'" : "not matched";
+    }
+}
@@ -0,0 +1,147 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.matrix.Combination;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Whether and how {@link NaginatorListener} should reschedule a build,
+ * as decided by {@link NaginatorScheduleAction#shouldScheduleAsync(Run, TaskListener, int)}.
+ *
+ * Immutable. Start with {@link #schedule()} or {@link #skip(String)},
+ * and override how the build is rescheduled with <code>with*</code> methods.
+ */
+public final class ScheduleDecision {
+    private static final ScheduleDecision SCHEDULE = new ScheduleDecision(true, null, null, null, null);
+    private static final ScheduleDecision SKIP = new ScheduleDecision(false, null, null, null, null);
+
+    private final boolean schedule;
+    private final String reason;
+    private final ScheduleDelay delay;
+    private final List<Combination> combinations;
+    private final NaginatorMatch match;
+
+    private ScheduleDecision(
+            boolean schedule,
+            @CheckForNull String reason,
+            @CheckForNull ScheduleDelay delay,
+            @CheckForNull List<Combination> combinations,
+            @CheckForNull NaginatorMatch match
+    ) {
+        this.schedule = schedule;
+        this.reason = reason;
+        this.delay = delay;
+        this.combinations = (combinations != null) ? Collections.unmodifiableList(new ArrayList<>(combinations)) : null;
+        this.match = match;
+    }
+
+    /**
+     * @return the decision to reschedule the build as configured in the action.
+     */
+    @NonNull
+    public static ScheduleDecision schedule() {
+        return SCHEDULE;
+    }
+
+    /**
+     * @param reason why not to reschedule the build. <code>null</code> if not told.
+     * @return the decision not to reschedule the build.
+     */
+    @NonNull
+    public static ScheduleDecision skip(@CheckForNull String reason) {
+        return (reason == null) ? SKIP : SKIP.withReason(reason);
+    }
+
+    /**
+     * @param reason why to reschedule the build or not. <code>null</code> if not told.
+     * @return the decision with the reason.
+     */
+    @NonNull
+    public ScheduleDecision withReason(@CheckForNull String reason) {
+        return new ScheduleDecision(schedule, reason, delay, combinations, match);
+    }
+
+    /**
+     * @param delay how long to wait to reschedule the build.
+     *     <code>null</code> for {@link NaginatorScheduleAction#getDelay()}.
+     * @return the decision with the delay.
+     */
+    @NonNull
+    public ScheduleDecision withDelay(@CheckForNull ScheduleDelay delay) {
+        return new ScheduleDecision(schedule, reason, delay, combinations, match);
+    }
+
+    /**
+     * @param combinations children of the multi-configuration build to reschedule.
+     *     <code>null</code> to test children with {@link NaginatorScheduleAction#getMatrixRunsToSchedule}.
+     * @return the decision with the children.
+     */
+    @NonNull
+    public ScheduleDecision withCombinations(@CheckForNull List<Combination> combinations) {
+        return new ScheduleDecision(schedule, reason, delay, combinations, match);
+    }
+
+    /**
+     * @param match the line of the log which made the build rescheduled.
+     *     <code>null</code> for {@link NaginatorScheduleAction#getMatch()}.
+     * @return the decision with the match.
+     */
+    @NonNull
+    public ScheduleDecision withMatch(@CheckForNull NaginatorMatch match) {
+        return new ScheduleDecision(schedule, reason, delay, combinations, match);
+    }
+
+    /**
+     * @return whether to reschedule the build.
+     */
+    public boolean isSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @return why to reschedule the build or not. <code>null</code> if not told.
+     */
+    @CheckForNull
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return how long to wait to reschedule the build. <code>null</code> for {@link NaginatorScheduleAction#getDelay()}.
+     */
+    @CheckForNull
+    public ScheduleDelay getDelay() {
+        return delay;
+    }
+
+    /**
+     * Used only for multi-configuration builds with {@link NaginatorScheduleAction#isRerunMatrixPart()}.
+     *
+     * @return children of the multi-configuration build to reschedule.
+     *     <code>null</code> to test children with {@link NaginatorScheduleAction#getMatrixRunsToSchedule}.
+     */
+    @CheckForNull
+    public List<Combination> getCombinations() {
+        return combinations;
+    }
+
+    /**
+     * @return the line of the log which made the build rescheduled.
+     *     <code>null</code> for {@link NaginatorScheduleAction#getMatch()}.
+     */
+    @CheckForNull
+    public NaginatorMatch getMatch() {
+        return match;
+    }
+
+    @Override
+    public String toString() {
+        return (schedule ? "schedule" : "skip") + ((reason != null) ? ": " + reason : "");
+    }
+}
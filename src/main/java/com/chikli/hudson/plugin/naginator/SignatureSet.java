@@ -0,0 +1,753 @@
+package com.chikli.hudson.plugin.naginator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Regular expressions to search for in a log:
+ * signatures to rerun the build, and signatures never to rerun the build.
+ *
+ * All signatures are tested in a single pass over the log.
+ * A match of a signature never to rerun decides the result and stops the scan.
+ * A match of a signature to rerun stops the scan only when there are no signatures never to rerun.
+ *
+ * Signatures of several sets can be tested in the same pass with {@link #union(List)}.
+ * Each set is then a group decided on its own as above,
+ * and the scan stops when all groups are decided.
+ */
+final class SignatureSet {
+    /**
+     * A regular expression to search for.
+     *
+     * @param regexp the regular expression
+     * @param pattern the compiled regular expression
+     * @param negative <code>true</code> if the build should not be rerun when matched
+     * @param literal the literal any match must contain. <code>null</code> if unknown.
+     * @param linear the regular expression to match in linear time instead of {@link #pattern()}.
+     *     <code>null</code> to match with {@link java.util.regex}.
+     */
+    record Signature(
+            @NonNull String regexp,
+            @NonNull Pattern pattern,
+            boolean negative,
+            @CheckForNull RequiredLiteral literal,
+            @CheckForNull LinearRegexp linear
+    ) {
+        Signature(@NonNull String regexp, @NonNull Pattern pattern, boolean negative) {
+            this(regexp, pattern, negative, RequiredLiteral.of(pattern), null);
+        }
+    }
+
+    /**
+     * Signatures never to rerun come first.
+     */
+    private final List<Signature> signatures;
+    /**
+     * The groups each signature belongs to, in the order of {@link #signatures}.
+     */
+    private final int[][] groupsOf;
+    private final boolean[] groupHasNegatives;
+    private final boolean hasPositives;
+    private final boolean hasNegatives;
+
+    private SignatureSet(@NonNull List<Signature> signatures) {
+        this(signatures, Collections.nCopies(signatures.size(), new int[]{0}), 1);
+    }
+
+    private SignatureSet(@NonNull List<Signature> signatures, @NonNull List<int[]> groups, int groupCount) {
+        List<Integer> order = new ArrayList<>(signatures.size());
+        for (int i = 0; i < signatures.size(); ++i) {
+            order.add(i);
+        }
+        // stable, and keeps the order in each kind.
+        order.sort((a, b) -> Boolean.compare(signatures.get(b).negative(), signatures.get(a).negative()));
+        List<Signature> sorted = new ArrayList<>(signatures.size());
+        this.groupsOf = new int[signatures.size()][];
+        this.groupHasNegatives = new boolean[groupCount];
+        for (int i = 0; i < order.size(); ++i) {
+            Signature s = signatures.get(order.get(i));
+            sorted.add(s);
+            groupsOf[i] = groups.get(order.get(i));
+            if (s.negative()) {
+                for (int g : groupsOf[i]) {
+                    groupHasNegatives[g] = true;
+                }
+            }
+        }
+        this.signatures = Collections.unmodifiableList(sorted);
+        this.hasPositives = sorted.stream().anyMatch(s -> !s.negative());
+        this.hasNegatives = sorted.stream().anyMatch(Signature::negative);
+    }
+
+    /**
+     * @param regexpForRerun a regular expression to rerun the build. Can be empty.
+     * @param additionalRegexpsForRerun regular expressions to rerun the build, one for each line.
+     * @param regexpsForNoRerun regular expressions never to rerun the build, one for each line.
+     * @return signatures
+     * @throws PatternSyntaxException any of regular expressions is invalid.
+     */
+    @NonNull
+    static SignatureSet compile(
+            @CheckForNull String regexpForRerun,
+            @CheckForNull String additionalRegexpsForRerun,
+            @CheckForNull String regexpsForNoRerun
+    ) throws PatternSyntaxException {
+        return compile(regexpForRerun, additionalRegexpsForRerun, regexpsForNoRerun, RegexpEngine.JavaUtilRegex);
+    }
+
+    /**
+     * @param regexpForRerun a regular expression to rerun the build. Can be empty.
+     * @param additionalRegexpsForRerun regular expressions to rerun the build, one for each line.
+     * @param regexpsForNoRerun regular expressions never to rerun the build, one for each line.
+     * @param engine the engine to match regular expressions with.
+     * @return signatures
+     * @throws PatternSyntaxException any of regular expressions is invalid.
+     */
+    @NonNull
+    static SignatureSet compile(
+            @CheckForNull String regexpForRerun,
+            @CheckForNull String additionalRegexpsForRerun,
+            @CheckForNull String regexpsForNoRerun,
+            @NonNull RegexpEngine engine
+    ) throws PatternSyntaxException {
+        return compile(regexpForRerun, additionalRegexpsForRerun, regexpsForNoRerun, engine, false);
+    }
+
+    /**
+     * @param regexpForRerun a regular expression to rerun the build. Can be empty.
+     * @param additionalRegexpsForRerun regular expressions to rerun the build, one for each line.
+     * @param regexpsForNoRerun regular expressions never to rerun the build, one for each line.
+     * @param engine the engine to match regular expressions with.
+     * @param multiline whether to match against a {@link LineWindow} with {@link Scan#test(LineWindow)}.
+     *     Regular expressions are compiled with {@link Pattern#MULTILINE}
+     *     so that <code>^</code> and <code>$</code> match at each line as they do when testing lines one by one.
+     * @return signatures
+     * @throws PatternSyntaxException any of regular expressions is invalid.
+     */
+    @NonNull
+    static SignatureSet compile(
+            @CheckForNull String regexpForRerun,
+            @CheckForNull String additionalRegexpsForRerun,
+            @CheckForNull String regexpsForNoRerun,
+            @NonNull RegexpEngine engine,
+            boolean multiline
+    ) throws PatternSyntaxException {
+        int flags = multiline ? Pattern.MULTILINE : 0;
+        List<Signature> signatures = new ArrayList<>();
+        if (regexpForRerun != null && !regexpForRerun.isEmpty()) {
+            signatures.add(compile(regexpForRerun, false, engine, flags));
+        }
+        for (String regexp : splitLines(additionalRegexpsForRerun)) {
+            signatures.add(compile(regexp, false, engine, flags));
+        }
+        for (String regexp : splitLines(regexpsForNoRerun)) {
+            signatures.add(compile(regexp, true, engine, flags));
+        }
+        return new SignatureSet(signatures);
+    }
+
+    @NonNull
+    private static Signature compile(@NonNull String regexp, boolean negative, @NonNull RegexpEngine engine, int flags) {
+        Pattern pattern = PatternCache.compile(regexp, flags);
+        LinearRegexp linear = (engine == RegexpEngine.Linear) ? LinearRegexp.compile(regexp, flags) : null;
+        return new Signature(regexp, pattern, negative, RequiredLiteral.of(pattern), linear);
+    }
+
+    /**
+     * @param pattern a regular expression to search for
+     * @return signatures with only the pattern to rerun.
+     */
+    @NonNull
+    static SignatureSet of(@NonNull Pattern pattern) {
+        return new SignatureSet(Collections.singletonList(new Signature(pattern.pattern(), pattern, false)));
+    }
+
+    /**
+     * Tests signatures of all sets in a single pass,
+     * each set as a group with the result of its own.
+     * Signatures with the same regular expression in several sets are tested only once.
+     * When several signatures of a set match the same line,
+     * which of them is reported can differ from testing the set alone.
+     *
+     * All sets should be compiled for the same way to scan the log, e.g. multiline or not.
+     *
+     * @param sets signatures to test. Each is a group, in this order.
+     * @return signatures of all sets
+     * @see Scan#getResult(int)
+     */
+    @NonNull
+    static SignatureSet union(@NonNull List<SignatureSet> sets) {
+        List<Signature> signatures = new ArrayList<>();
+        List<List<Integer>> groups = new ArrayList<>();
+        Map<String, Integer> indices = new HashMap<>();
+        for (int g = 0; g < sets.size(); ++g) {
+            for (Signature s : sets.get(g).getSignatures()) {
+                String key = String.format(
+                        "%s%d %s %s",
+                        s.negative() ? '-' : '+',
+                        s.pattern().flags(),
+                        (s.linear() != null) ? "linear" : "java",
+                        s.regexp()
+                );
+                Integer i = indices.get(key);
+                if (i == null) {
+                    i = signatures.size();
+                    indices.put(key, i);
+                    signatures.add(s);
+                    groups.add(new ArrayList<>());
+                }
+                if (!groups.get(i).contains(g)) {
+                    groups.get(i).add(g);
+                }
+            }
+        }
+        List<int[]> groupsOf = new ArrayList<>(groups.size());
+        for (List<Integer> l : groups) {
+            groupsOf.add(l.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return new SignatureSet(signatures, groupsOf, sets.size());
+    }
+
+    /**
+     * Splits regular expressions written one for each line.
+     * Blank lines are ignored.
+     *
+     * @param regexps regular expressions separated with newlines
+     * @return regular expressions
+     */
+    @NonNull
+    static List<String> splitLines(@CheckForNull String regexps) {
+        if (regexps == null) {
+            return Collections.emptyList();
+        }
+        List<String> ret = new ArrayList<>();
+        for (String line : regexps.split("\n")) {
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (!line.trim().isEmpty()) {
+                ret.add(line);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return all signatures. Signatures never to rerun come first.
+     */
+    @NonNull
+    List<Signature> getSignatures() {
+        return signatures;
+    }
+
+    boolean isEmpty() {
+        return signatures.isEmpty();
+    }
+
+    /**
+     * @return whether there are signatures to rerun the build.
+     *     If not, builds are rerun unless signatures never to rerun match.
+     */
+    boolean hasPositives() {
+        return hasPositives;
+    }
+
+    /**
+     * @return whether there are signatures never to rerun the build.
+     */
+    boolean hasNegatives() {
+        return hasNegatives;
+    }
+
+    /**
+     * @return the number of sets tested together. 1 unless created with {@link #union(List)}.
+     */
+    int getGroupCount() {
+        return groupHasNegatives.length;
+    }
+
+    /**
+     * @return a new state to test lines of a log.
+     */
+    @NonNull
+    Scan newScan() {
+        return new Scan(null);
+    }
+
+    /**
+     * @param charset the charset of the log. Should be compatible with ASCII.
+     * @return a new state to test lines of a log in bytes,
+     *     which skips lines not containing the required literals without decoding them.
+     */
+    @NonNull
+    Scan newScan(@NonNull Charset charset) {
+        return new Scan(charset);
+    }
+
+    /**
+     * Identifies the signatures, e.g. to compare the signatures tested in a previous scan.
+     *
+     * @return the key
+     */
+    @NonNull
+    String getKey() {
+        StringBuilder sb = new StringBuilder();
+        for (Signature s : signatures) {
+            sb.append(s.negative() ? '-' : '+').append(s.regexp()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        List<String> regexps = new ArrayList<>(signatures.size());
+        for (Signature s : signatures) {
+            regexps.add(s.regexp());
+        }
+        return String.join("', '", regexps);
+    }
+
+    /**
+     * Tests lines of a log against all signatures.
+     * Matchers are reused for each line.
+     *
+     * Signatures with a {@link RequiredLiteral} are tested with the regular expression
+     * only for lines containing the literal,
+     * and pure literals are tested without the regular expression engine.
+     * Signatures with a {@link LinearRegexp} are matched with it instead of {@link java.util.regex}.
+     *
+     * Not thread safe.
+     */
+    final class Scan {
+        private final Matcher[] matchers;
+        /**
+         * Matchers in linear time. <code>null</code> for each signature matched with {@link java.util.regex}.
+         */
+        private final LinearRegexp.Matcher[] linearMatchers;
+        /**
+         * Searches for the required literals in bytes. <code>null</code> for each signature without them.
+         */
+        @CheckForNull
+        private final LiteralSearch[] searches;
+        /**
+         * Whether every signature has a literal to search for,
+         * so that lines without any of them can be skipped without splitting lines.
+         */
+        private final boolean skippable;
+        /**
+         * The index of the next occurrence of each literal found by {@link #nextCandidate(ByteBuffer, int, int)},
+         * or -1 if not found until {@link #searchedTo}.
+         */
+        private final int[] nextHits;
+        private final int[] searchedTo;
+        /**
+         * The number of the last line containing the required literal of each signature,
+         * counted with {@link LineWindow#getAppended()}. 0 if not found yet.
+         */
+        private final long[] lastFoundLines;
+        /**
+         * Whether {@link ConsoleMarkup} is removed from lines.
+         * Lines containing markup are then candidates,
+         * as literals may be split by the markup in bytes.
+         */
+        private final boolean stripMarkup;
+        private int nextEscape;
+        private int escapeSearchedTo;
+
+        /**
+         * The signature matched for each group.
+         */
+        private final Signature[] matched;
+        private final long[] matchedOffsets;
+        private final long[] matchedLines;
+        private final String[] matchedExcerpts;
+        /**
+         * The number of groups not decided yet.
+         */
+        private int undecided;
+        private long lineOffset = -1;
+        private long lineNumber = -1;
+        private byte[] wrappedArray;
+        private ByteBuffer wrappedBuffer;
+
+        private Scan(@CheckForNull Charset charset) {
+            matchers = new Matcher[signatures.size()];
+            linearMatchers = new LinearRegexp.Matcher[signatures.size()];
+            boolean skippable = charset != null && !signatures.isEmpty();
+            LiteralSearch[] searches = (charset != null) ? new LiteralSearch[signatures.size()] : null;
+            for (int i = 0; i < matchers.length; ++i) {
+                Signature s = signatures.get(i);
+                matchers[i] = s.pattern().matcher("");
+                if (s.linear() != null) {
+                    linearMatchers[i] = s.linear().matcher();
+                }
+                if (searches != null && s.literal() != null) {
+                    byte[] bytes = s.literal().encode(charset);
+                    if (bytes != null && bytes.length > 0) {
+                        searches[i] = new LiteralSearch(bytes);
+                    }
+                }
+                if (searches == null || searches[i] == null) {
+                    skippable = false;
+                }
+            }
+            this.searches = searches;
+            this.skippable = skippable;
+            this.nextHits = new int[signatures.size()];
+            this.searchedTo = new int[signatures.size()];
+            this.lastFoundLines = new long[signatures.size()];
+            this.stripMarkup = ConsoleMarkup.isStripped();
+            this.matched = new Signature[getGroupCount()];
+            this.matchedOffsets = new long[getGroupCount()];
+            this.matchedLines = new long[getGroupCount()];
+            this.matchedExcerpts = new String[getGroupCount()];
+            resetCandidates();
+            clearMatched();
+        }
+
+        /**
+         * @param i the index of a signature
+         * @return whether a match of the signature can change the result of any group.
+         */
+        private boolean isNeeded(int i) {
+            boolean negative = signatures.get(i).negative();
+            for (int g : groupsOf[i]) {
+                // once a signature to rerun is found, only signatures never to rerun can change the result.
+                if (matched[g] == null || (negative && !matched[g].negative())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param line a line to test
+         * @return <code>true</code> if the result is decided and no more lines need to be tested.
+         */
+        boolean test(@NonNull CharSequence line) {
+            for (int i = 0; i < matchers.length; ++i) {
+                if (!isNeeded(i)) {
+                    continue;
+                }
+                Signature s = signatures.get(i);
+                RequiredLiteral literal = s.literal();
+                if (literal != null) {
+                    if (!literal.isFoundIn(line)) {
+                        continue;
+                    }
+                    if (literal.isPure()) {
+                        if (onMatch(i, line)) {
+                            return true;
+                        }
+                        continue;
+                    }
+                }
+                if (find(i, line) && onMatch(i, line)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Tests <code>buf[from, to)</code>.
+         * The line is decoded only when any signature needs the regular expression engine.
+         * Requires {@link SignatureSet#newScan(Charset)}.
+         *
+         * @param buf bytes of the log
+         * @param from the index of the first byte of the line
+         * @param to the index after the last byte of the line
+         * @param line the buffer to decode the line into
+         * @return <code>true</code> if the result is decided and no more lines need to be tested.
+         */
+        boolean test(@NonNull ByteBuffer buf, int from, int to, @NonNull DecodedLine line) {
+            if (stripMarkup && ConsoleMarkup.indexOfEscape(buf, from, to) >= 0) {
+                // literals may be split by the markup, or found only in it.
+                return test(line.decode(buf, from, to));
+            }
+            boolean decoded = false;
+            for (int i = 0; i < matchers.length; ++i) {
+                if (!isNeeded(i)) {
+                    continue;
+                }
+                Signature s = signatures.get(i);
+                LiteralSearch search = (searches != null) ? searches[i] : null;
+                if (search != null) {
+                    if (search.indexOf(buf, from, to) < 0) {
+                        continue;
+                    }
+                    RequiredLiteral literal = s.literal();
+                    if (literal != null && literal.isPure()) {
+                        if (!decoded) {
+                            // only for the excerpt.
+                            line.decode(buf, from, to);
+                            decoded = true;
+                        }
+                        if (onMatch(i, line)) {
+                            return true;
+                        }
+                        continue;
+                    }
+                }
+                if (!decoded) {
+                    line.decode(buf, from, to);
+                    decoded = true;
+                }
+                if (find(i, line) && onMatch(i, line)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Tests <code>b[from, to)</code>.
+         *
+         * @see #test(ByteBuffer, int, int, DecodedLine)
+         */
+        boolean test(@NonNull byte[] b, int from, int to, @NonNull DecodedLine line) {
+            if (wrappedArray != b) {
+                wrappedArray = b;
+                wrappedBuffer = ByteBuffer.wrap(b);
+            }
+            return test(wrappedBuffer, from, to, line);
+        }
+
+        /**
+         * Tests the lines in a window after a line is appended to it,
+         * so that regular expressions can match across lines, e.g. with <code>(?s)</code>.
+         * Requires {@link SignatureSet#compile(String, String, String, RegexpEngine, boolean)} for multiline.
+         *
+         * Required literals not containing LF are searched for only in the line appended,
+         * and the window is matched only while a line containing the literal is in it.
+         * So a match is found when the last line of it is appended.
+         *
+         * @param window the last lines of the log
+         * @return <code>true</code> if the result is decided and no more lines need to be tested.
+         */
+        boolean test(@NonNull LineWindow window) {
+            long firstLine = window.getAppended() - window.getLines() + 1;
+            for (int i = 0; i < matchers.length; ++i) {
+                if (!isNeeded(i)) {
+                    continue;
+                }
+                Signature s = signatures.get(i);
+                RequiredLiteral literal = s.literal();
+                if (literal != null) {
+                    if (literal.getLiteral().indexOf('\n') < 0) {
+                        if (literal.isFoundIn(window.getLastLine())) {
+                            lastFoundLines[i] = window.getAppended();
+                        }
+                        if (lastFoundLines[i] < firstLine) {
+                            continue;
+                        }
+                    } else if (!literal.isFoundIn(window)) {
+                        continue;
+                    }
+                    if (literal.isPure()) {
+                        if (onMatch(i, window.getLastLine())) {
+                            return true;
+                        }
+                        continue;
+                    }
+                }
+                if (find(i, window) && onMatch(i, window.getLastLine())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean find(int i, @NonNull CharSequence line) {
+            LinearRegexp.Matcher linear = linearMatchers[i];
+            return (linear != null) ? linear.find(line) : matchers[i].reset(line).find();
+        }
+
+        /**
+         * Records the match for groups whose result it changes.
+         *
+         * @param i the index of the signature matched
+         * @return whether all groups are decided.
+         */
+        private boolean onMatch(int i, @NonNull CharSequence line) {
+            Signature s = signatures.get(i);
+            String excerpt = null;
+            for (int g : groupsOf[i]) {
+                if (matched[g] != null && (!s.negative() || matched[g].negative())) {
+                    continue;
+                }
+                if (excerpt == null) {
+                    excerpt = NaginatorMatch.truncate(line);
+                }
+                matched[g] = s;
+                matchedOffsets[g] = lineOffset;
+                matchedLines[g] = lineNumber;
+                matchedExcerpts[g] = excerpt;
+                if (isDecided(g)) {
+                    --undecided;
+                }
+            }
+            return isDecided();
+        }
+
+        /**
+         * Tells the offset of the line to test next, to record it when the line matches.
+         *
+         * @param lineOffset the offset in bytes of the line in the log. -1 if unknown.
+         */
+        void setLineOffset(long lineOffset) {
+            this.lineOffset = lineOffset;
+        }
+
+        /**
+         * Tells the number of the line to test next, to record it when the line matches.
+         *
+         * @param lineNumber the line number (starting with 1) of the line in the log. -1 if unknown.
+         */
+        void setLineNumber(long lineNumber) {
+            this.lineNumber = lineNumber;
+        }
+
+        /**
+         * @return whether lines can be skipped with {@link #nextCandidate(ByteBuffer, int, int)}.
+         */
+        boolean isSkippable() {
+            return skippable;
+        }
+
+        /**
+         * Finds the first occurrence of any required literal in <code>buf[from, to)</code>,
+         * or of ESC starting {@link ConsoleMarkup} if removed.
+         * Lines before it never match any signature.
+         *
+         * Remembers occurrences already found,
+         * so call {@link #resetCandidates()} when the contents of the buffer are moved.
+         *
+         * @param buf bytes of the log
+         * @param from the index to start searching. Must not decrease until {@link #resetCandidates()}.
+         * @param to the index to stop searching. Must not decrease until {@link #resetCandidates()}.
+         * @return the index of the first occurrence. -1 if not found.
+         * @see #isSkippable()
+         */
+        int nextCandidate(@NonNull ByteBuffer buf, int from, int to) {
+            int candidate = -1;
+            for (int i = 0; i < nextHits.length; ++i) {
+                if (!isNeeded(i)) {
+                    // only signatures never to rerun can change the result.
+                    continue;
+                }
+                int hit = nextHits[i];
+                if (hit < from) {
+                    LiteralSearch search = searches[i];
+                    int start = (hit < 0) ? Math.max(from, searchedTo[i] - search.length() + 1) : from;
+                    hit = search.indexOf(buf, start, to);
+                    nextHits[i] = hit;
+                    searchedTo[i] = to;
+                }
+                if (hit >= 0 && (candidate < 0 || hit < candidate)) {
+                    candidate = hit;
+                }
+            }
+            if (stripMarkup) {
+                if (nextEscape < from) {
+                    int start = (nextEscape < 0) ? Math.max(from, escapeSearchedTo) : from;
+                    nextEscape = ConsoleMarkup.indexOfEscape(buf, start, to);
+                    escapeSearchedTo = to;
+                }
+                if (nextEscape >= 0 && (candidate < 0 || nextEscape < candidate)) {
+                    candidate = nextEscape;
+                }
+            }
+            return candidate;
+        }
+
+        /**
+         * Forgets occurrences found by {@link #nextCandidate(ByteBuffer, int, int)}.
+         */
+        void resetCandidates() {
+            Arrays.fill(nextHits, -1);
+            Arrays.fill(searchedTo, 0);
+            nextEscape = -1;
+            escapeSearchedTo = 0;
+        }
+
+        /**
+         * Forgets the signature matched to find the next match,
+         * e.g. to find the last match in a log that can be read only forward.
+         */
+        void clearMatched() {
+            Arrays.fill(matched, null);
+            Arrays.fill(matchedOffsets, -1);
+            Arrays.fill(matchedLines, -1);
+            Arrays.fill(matchedExcerpts, null);
+            undecided = matched.length;
+        }
+
+        /**
+         * @return whether the results of all groups are decided and no more lines need to be tested.
+         */
+        boolean isDecided() {
+            return undecided == 0;
+        }
+
+        private boolean isDecided(int group) {
+            return matched[group] != null && (matched[group].negative() || !groupHasNegatives[group]);
+        }
+
+        /**
+         * @return the signature matched. A signature never to rerun if any matched.
+         *     <code>null</code> if none matched.
+         */
+        @CheckForNull
+        Signature getMatched() {
+            return getMatched(0);
+        }
+
+        /**
+         * @param group the index of the set given to {@link #union(List)}
+         * @return the signature matched for the group.
+         * @see #getMatched()
+         */
+        @CheckForNull
+        Signature getMatched(int group) {
+            return matched[group];
+        }
+
+        /**
+         * @return the result of lines tested so far, with the offset of the matched line.
+         *     Holds the result of each group with {@link ScanResult#getGroup(int)}.
+         */
+        @NonNull
+        ScanResult getResult() {
+            if (matched.length == 1) {
+                return getResult(0);
+            }
+            List<ScanResult> results = new ArrayList<>(matched.length);
+            for (int g = 0; g < matched.length; ++g) {
+                results.add(getResult(g));
+            }
+            return ScanResult.ofGroups(results);
+        }
+
+        /**
+         * @param group the index of the set given to {@link #union(List)}
+         * @return the result of lines tested so far for the group.
+         */
+        @NonNull
+        ScanResult getResult(int group) {
+            return ScanResult.of(matched[group], matchedOffsets[group], matchedLines[group], matchedExcerpts[group]);
+        }
+    }
+}
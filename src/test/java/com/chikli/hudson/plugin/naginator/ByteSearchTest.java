@@ -0,0 +1,120 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link ByteSearch}.
+ */
+class ByteSearchTest {
+
+    private final boolean scalar = ByteSearch.SCALAR;
+
+    @AfterEach
+    void restore() {
+        ByteSearch.SCALAR = scalar;
+    }
+
+    private static int naiveIndexOf(byte[] a, byte b, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (a[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int naiveLastIndexOf(byte[] a, byte b, int from, int to) {
+        for (int i = to - 1; i >= from; --i) {
+            if (a[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int naiveCount(byte[] a, byte b, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; ++i) {
+            if (a[i] == b) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static ByteBuffer[] buffers(byte[] a) {
+        ByteBuffer direct = ByteBuffer.allocateDirect(a.length);
+        direct.put(a);
+        return new ByteBuffer[]{
+                ByteBuffer.wrap(a),
+                ByteBuffer.wrap(a).order(ByteOrder.LITTLE_ENDIAN),
+                direct.duplicate().order(ByteOrder.BIG_ENDIAN),
+                direct.duplicate().order(ByteOrder.LITTLE_ENDIAN),
+        };
+    }
+
+    private static void assertSearch(byte[] a, byte b, int from, int to) {
+        int expected = naiveIndexOf(a, b, from, to);
+        int expectedLast = naiveLastIndexOf(a, b, from, to);
+        String message = String.format("%02x in [%d, %d)", b, from, to);
+        assertEquals(expected, ByteSearch.indexOf(a, b, from, to), message);
+        assertEquals(expectedLast, ByteSearch.lastIndexOf(a, b, from, to), message);
+        for (ByteBuffer buf : buffers(a)) {
+            assertEquals(expected, ByteSearch.indexOf(buf, b, from, to), message + " " + buf);
+            assertEquals(expectedLast, ByteSearch.lastIndexOf(buf, b, from, to), message + " " + buf);
+            assertEquals(naiveCount(a, b, from, to), ByteSearch.count(buf, b, from, to), message + " " + buf);
+        }
+    }
+
+    @Test
+    void testSearch() {
+        byte[] a = "line1\nline2\r\nsome build output\n\u001B[8mha:\n".getBytes(StandardCharsets.ISO_8859_1);
+        for (boolean mode : new boolean[]{false, true}) {
+            ByteSearch.SCALAR = mode;
+            assertEquals(5, ByteSearch.indexOf(a, (byte)'\n', 0, a.length));
+            assertEquals(a.length - 1, ByteSearch.lastIndexOf(a, (byte)'\n', 0, a.length));
+            assertEquals(12, ByteSearch.indexOf(a, (byte)'\n', 6, a.length));
+            assertEquals(-1, ByteSearch.indexOf(a, (byte)'\n', 6, 11));
+            assertEquals(-1, ByteSearch.lastIndexOf(a, (byte)'\n', 6, 11));
+            assertEquals(-1, ByteSearch.indexOf(a, (byte)'\n', 3, 3));
+            for (int from = 0; from < a.length; ++from) {
+                for (int to = from; to <= a.length; ++to) {
+                    assertSearch(a, (byte)'\n', from, to);
+                    assertSearch(a, (byte)0x1B, from, to);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bytes with the highest bit set and bytes next to the byte searched for
+     * must not be taken for it, nor make it missed.
+     */
+    @Test
+    void testRandom() {
+        Random random = new Random(12345);
+        byte[] candidates = {'\n', '\n' - 1, '\n' + 1, (byte)('\n' | 0x80), 0, (byte)0x80, (byte)0xFF, 0x1B, (byte)0x9B};
+        for (boolean mode : new boolean[]{false, true}) {
+            ByteSearch.SCALAR = mode;
+            for (int n = 0; n < 500; ++n) {
+                byte[] a = new byte[random.nextInt(64)];
+                for (int i = 0; i < a.length; ++i) {
+                    a[i] = candidates[random.nextInt(candidates.length)];
+                }
+                int from = (a.length > 0) ? random.nextInt(a.length) : 0;
+                int to = from + random.nextInt(a.length - from + 1);
+                for (byte b : candidates) {
+                    assertSearch(a, b, from, to);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link ConsoleMarkup}.
+ */
+class ConsoleMarkupTest {
+    private static final String NOTE = "\u001B[8mha:AAAAWB+LCAAAAAAAAP9b85aBtbiIQTGjNKU4P08vOT+vOD8nVc83PyU1x6OyILUoJzMv2y+/JJUBAhiZGBgqihhk0NSjKDWzXb3RdlLBUSYGJk8GtpzUvPSSDB8G5tKinBIGIZ+sxLJE/ZzEvHT94JKizLx0a6BxUmjGOUNodHsLgAymEgZ+/dLi1CL9xNzEvMzkzLLUyvz8QjSBrHTJZ/7+AAg=\u001B[0m";
+
+    private static String strip(String line) {
+        char[] chars = line.toCharArray();
+        return new String(chars, 0, ConsoleMarkup.strip(chars, chars.length));
+    }
+
+    @Test
+    void testNotes() {
+        assertEquals("Started by user admin", strip("Started by user " + NOTE + "admin"));
+        assertEquals("admin", strip(NOTE + "admin"));
+        assertEquals("ab", strip("a" + NOTE + NOTE + "b"));
+        // not terminated: only the escape sequence is removed.
+        assertEquals("ha:AAAA", strip("\u001B[8mha:AAAA"));
+    }
+
+    @Test
+    void testAnsiEscapeSequences() {
+        assertEquals("ERROR: build failed", strip("\u001B[1;31mERROR\u001B[0m: build failed"));
+        assertEquals("ERROR", strip("\u001B[31mERR\u001B[mOR\u001B[K"));
+        // hyperlinks.
+        assertEquals("link", strip("\u001B]8;;https://example.com\u0007link\u001B]8;;\u001B\\"));
+        assertEquals("ab", strip("a\u001B=b"));
+        // broken sequences.
+        assertEquals("a", strip("a\u001B["));
+        assertEquals("a", strip("a\u001B"));
+        assertEquals("a\nb", strip("a\u001B\nb"));
+    }
+
+    @Test
+    void testPlain() {
+        assertEquals("", strip(""));
+        assertEquals("plain text [8mha: 0m", strip("plain text [8mha: 0m"));
+    }
+
+    @Test
+    void testIndexOfEscape() {
+        ByteBuffer buf = ByteBuffer.wrap(("abc" + NOTE + "def").getBytes(StandardCharsets.UTF_8));
+        assertEquals(3, ConsoleMarkup.indexOfEscape(buf, 0, buf.limit()));
+        assertEquals(-1, ConsoleMarkup.indexOfEscape(buf, 0, 3));
+    }
+
+    @Test
+    void testDecodedLine() {
+        DecodedLine line = new DecodedLine(StandardCharsets.UTF_8);
+        byte[] b = ("\u001B[31m\u00fcber\u001B[0m " + NOTE + "caf\u00e9").getBytes(StandardCharsets.UTF_8);
+        assertEquals("\u00fcber caf\u00e9", line.decode(b, 0, b.length).toString());
+        b = ("\u001B[31mERROR\u001B[0m" + NOTE).getBytes(StandardCharsets.US_ASCII);
+        assertEquals("ERROR", line.decode(b, 0, b.length).toString());
+        assertEquals("ERROR", line.set("\u001B[31mERROR\u001B[0m").toString());
+    }
+}
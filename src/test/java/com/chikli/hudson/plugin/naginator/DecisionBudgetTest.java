@@ -0,0 +1,85 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link DecisionBudget}.
+ */
+class DecisionBudgetTest {
+
+    @Test
+    void testNoBudget() throws Exception {
+        assertSame(DecisionBudget.NONE, DecisionBudget.start(0));
+        assertSame(DecisionBudget.NONE, DecisionBudget.start(-1));
+
+        DecisionBudget budget = DecisionBudget.NONE;
+        assertFalse(budget.isLimited());
+        assertEquals(Long.MAX_VALUE, budget.getRemainingMs());
+        assertEquals(1000, budget.limit(1000));
+        assertEquals(0, budget.limit(0));
+
+        // NONE is shared and never exhausted.
+        assertFalse(budget.exhaust("test"));
+        assertFalse(budget.check("test"));
+        assertNull(budget.getExhaustedBy());
+        assertTrue(budget.beginSchedule());
+        assertFalse(budget.isScheduled());
+    }
+
+    @Test
+    void testLimit() throws Exception {
+        DecisionBudget budget = DecisionBudget.start(60000);
+        assertTrue(budget.isLimited());
+        assertEquals(60000, budget.getBudgetMs());
+        assertEquals(1000, budget.limit(1000));
+        assertTrue(budget.limit(0) > 1000);
+        assertTrue(budget.limit(0) <= 60000);
+        assertTrue(budget.limit(120000) <= 60000);
+        assertFalse(budget.check("test"));
+    }
+
+    @Test
+    void testExhausted() throws Exception {
+        DecisionBudget budget = DecisionBudget.start(1);
+        Thread.sleep(10);
+        assertEquals(0, budget.getRemainingMs());
+        // never taken for no timeout.
+        assertEquals(1, budget.limit(0));
+
+        assertTrue(budget.check("first step"));
+        assertTrue(budget.check("second step"));
+        assertFalse(budget.exhaust("third step"));
+        // the first step finding the budget over is told.
+        assertEquals("first step", budget.getExhaustedBy());
+
+        assertFalse(budget.beginSchedule());
+        assertFalse(budget.isScheduled());
+    }
+
+    @Test
+    void testScheduledBeforeExhausted() throws Exception {
+        DecisionBudget budget = DecisionBudget.start(60000);
+        assertTrue(budget.beginSchedule());
+        assertTrue(budget.exhaust("test"));
+        assertTrue(budget.isScheduled());
+        assertFalse(budget.beginSchedule());
+    }
+
+    @Test
+    void testCurrent() throws Exception {
+        DecisionBudget outer = DecisionBudget.start(60000);
+        DecisionBudget inner = DecisionBudget.start(30000);
+        assertSame(DecisionBudget.NONE, DecisionBudget.current());
+        assertSame(inner, outer.call(() -> {
+            assertSame(outer, DecisionBudget.current());
+            return inner.call(DecisionBudget::current);
+        }));
+        assertSame(DecisionBudget.NONE, DecisionBudget.current());
+    }
+}
@@ -0,0 +1,83 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LineReader}.
+ */
+class LineReaderTest {
+
+    @Test
+    void testLines() throws IOException {
+        try (LineReader reader = new LineReader(new StringReader("line1\nline2\r\n\rline4\n\nline6"), 100, 10)) {
+            assertEquals("line1", reader.readLine());
+            assertFalse(reader.isContinued());
+            assertEquals("line2", reader.readLine());
+            assertEquals("", reader.readLine());
+            assertEquals("line4", reader.readLine());
+            assertEquals("", reader.readLine());
+            assertEquals("line6", reader.readLine());
+            assertFalse(reader.isContinued());
+            assertNull(reader.readLine());
+            assertNull(reader.readLine());
+        }
+        try (LineReader reader = new LineReader(new StringReader(""), 100, 10)) {
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    void testSegments() throws IOException {
+        try (LineReader reader = new LineReader(new StringReader("0123456789abcdefghij\nnext"), 8, 3)) {
+            assertEquals("01234567", reader.readLine());
+            assertFalse(reader.isContinued());
+            assertEquals("56789abc", reader.readLine());
+            assertTrue(reader.isContinued());
+            assertEquals("abcdefgh", reader.readLine());
+            assertTrue(reader.isContinued());
+            assertEquals("fghij", reader.readLine());
+            assertTrue(reader.isContinued());
+            assertEquals("next", reader.readLine());
+            assertFalse(reader.isContinued());
+            assertNull(reader.readLine());
+        }
+
+        // cut at the end.
+        try (LineReader reader = new LineReader(new StringReader("01234567"), 8, 3)) {
+            assertEquals("01234567", reader.readLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    void testLargeLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 100000) {
+            sb.append("0123456789");
+        }
+        try (LineReader reader = new LineReader(new StringReader(sb + "\n"), 30000, 100)) {
+            int segments = 0;
+            String segment;
+            while ((segment = reader.readLine()) != null) {
+                assertTrue(segment.length() <= 30000);
+                ++segments;
+            }
+            assertEquals(4, segments);
+        }
+    }
+
+    @Test
+    void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new LineReader(new StringReader(""), 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new LineReader(new StringReader(""), 10, 10));
+    }
+}
@@ -0,0 +1,108 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LineWindow}.
+ */
+class LineWindowTest {
+
+    @Test
+    void testMaxLines() {
+        LineWindow window = new LineWindow(3, 1000);
+        assertEquals("", window.toString());
+        assertEquals(-1, window.getLastLineOffset());
+
+        window.append("line1", 0);
+        assertEquals("line1", window.toString());
+        window.append("line2", 6);
+        window.append("", 12);
+        assertEquals("line1\nline2\n", window.toString());
+        assertEquals(3, window.getLines());
+
+        window.append("line4", 13);
+        assertEquals("line2\n\nline4", window.toString());
+        assertEquals(3, window.getLines());
+        assertEquals(4, window.getAppended());
+        assertEquals("line4", window.getLastLine().toString());
+        assertEquals(13, window.getLastLineOffset());
+        assertEquals('2', window.charAt(4));
+        assertEquals("ne2\n", window.subSequence(2, 6).toString());
+    }
+
+    @Test
+    void testMaxChars() {
+        LineWindow window = new LineWindow(10, 10);
+        window.append("abcd", 0);
+        window.append("efgh", 5);
+        assertEquals("abcd\nefgh", window.toString());
+        window.append("ij", 10);
+        assertEquals("efgh\nij", window.toString());
+
+        // the last line is always kept.
+        window.append("0123456789abcdef", 13);
+        assertEquals("0123456789abcdef", window.toString());
+        assertEquals(1, window.getLines());
+        window.append("x", 30);
+        assertEquals("x", window.toString());
+    }
+
+    @Test
+    void testRingWraps() {
+        LineWindow window = new LineWindow(4, 100);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            String line = "line" + i;
+            window.append(line, i);
+            if (i >= 3) {
+                expected.setLength(0);
+                expected.append("line").append(i - 3).append("\nline").append(i - 2)
+                        .append("\nline").append(i - 1).append('\n').append(line);
+                assertEquals(expected.toString(), window.toString());
+                assertEquals(line, window.getLastLine().toString());
+            }
+        }
+        // grows for long lines, keeping the contents.
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 5000; ++i) {
+            longLine.append((char)('a' + i % 26));
+        }
+        window.append(longLine, 10000);
+        assertEquals(longLine.toString(), window.toString());
+        window.append("short", 15001);
+        assertEquals("short", window.toString());
+    }
+
+    @Test
+    void testMatch() {
+        LineWindow window = new LineWindow(3, 1000);
+        window.append("java.io.IOException: failed", 0);
+        window.append("\tat java.net.SocketInputStream.read", 28);
+        window.append("Caused by: java.net.SocketTimeoutException", 64);
+        assertTrue(Pattern.compile("(?s)^\tat java\\.net\\..*^Caused by:", Pattern.MULTILINE).matcher(window).find());
+        assertFalse(Pattern.compile("read.Caused", Pattern.MULTILINE).matcher(window).find());
+        assertTrue(Pattern.compile("SocketTimeoutException$").matcher(window).find());
+        LinearRegexp linear = LinearRegexp.compile("(?s)failed.*Caused", Pattern.MULTILINE);
+        assertTrue(linear.matcher().find(window));
+    }
+
+    @Test
+    void testDeadline() throws Exception {
+        LineWindow window = new LineWindow(3, 100000);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < ScanDeadline.CHECK_INTERVAL * 2; ++i) {
+            line.append('a');
+        }
+        window.append(line, 0);
+        window.setDeadline(ScanDeadline.after(1, null));
+        Thread.sleep(10);
+        assertThrows(ScanDeadline.ExceededException.class, () -> Pattern.compile("b").matcher(window).find());
+    }
+}
@@ -0,0 +1,296 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LinearRegexp}.
+ */
+class LinearRegexpTest {
+    private static final String[] INPUTS = {
+            "",
+            "a",
+            "abc",
+            "ABC",
+            "aaaaaaaaaaaaaaaa",
+            "java.lang.OutOfMemoryError: Java heap space",
+            "java.net.SocketException: Connection reset",
+            "ERROR: connection timed out after 1000ms",
+            "error: cannot find symbol",
+            "foo_bar baz-qux 123 4.56",
+            "tab\there",
+            "line1\nline2",
+            "line1\r\nline2\r\n",
+            "last line\n",
+            "last line\r\n",
+            "last line\r",
+            "\n",
+            "\r\n",
+            "line\u2028next\u0085",
+            "caf\u00E9 na\u00EFve",
+            "e\u0301t\u00E9",
+            "x\uD83D\uDE00y",
+            "[INFO] BUILD FAILURE",
+            "{}()[].*+?^$|\\",
+    };
+
+    private static final String[] PATTERNS = {
+            "",
+            "a",
+            "abc",
+            "OutOfMemoryError",
+            "java\\.lang\\.OutOfMemoryError: .*heap",
+            "Connection (reset|refused)",
+            "Connection reset|Broken pipe",
+            "^error: ",
+            "^line2",
+            "(?m)^line2",
+            "(?m)^line2$",
+            "(?m)line1$",
+            "line1$",
+            "line$",
+            "line2$",
+            "line\\Z",
+            "line\\z",
+            "\\Aline",
+            "^$",
+            "(?m)^$",
+            "$",
+            "^",
+            "(?m)$",
+            "\\d+ms",
+            "\\d{3,}",
+            "\\d{2}\\.\\d{2}",
+            "[0-9]+\\.[0-9]*",
+            "[A-Z]+ failed",
+            "[^a-z ]+",
+            "[]a]",
+            "[^]a]+",
+            "[a-]",
+            "[-a]",
+            "[\\d\\s]+",
+            "[\\W]+",
+            "[^\\w\\s]",
+            "\\w+",
+            "\\W",
+            "\\s+",
+            "\\S+",
+            "\\h",
+            "\\v",
+            "\\bline\\b",
+            "\\Bin\\B",
+            "\\bna\\w+",
+            "t\\b",
+            "\\b\u00E9",
+            "\u00E9\\b",
+            "e\\b",
+            "\\bt",
+            "a.c",
+            "line1.line2",
+            "(?s)line1.line2",
+            "line1(?s:.)line2",
+            "line.next",
+            "(?i)abc",
+            "(?i)error: CANNOT",
+            "a(?i)BC",
+            "(?i:A)bc",
+            "(?i)[a-c]+",
+            "(?i)[^a-c]+",
+            "(?i)CAF\u00C9",
+            "(?i)caf\u00E9",
+            "a*",
+            "a+",
+            "a?b",
+            "a{3}",
+            "a{2,4}b",
+            "a{0,2}c",
+            "a{3,}",
+            "(ab)+",
+            "(a|b)*c",
+            "(?:a|ab)(c|bcd)",
+            "(?<word>\\w+) \\d",
+            "a*?b",
+            "a+?c",
+            "(a*)*b",
+            "(a|)+c",
+            "()",
+            "x\\Qa+b\\E",
+            "\\Q{}()[].*+?^$|\\E",
+            "\\Qab\\E+c",
+            "\\t",
+            "\\x41",
+            "\\x{1F600}",
+            "\\u0041",
+            "\\uD83D\\uDE00",
+            "\\0101",
+            "\\cJ",
+            "\\.\\*\\+",
+            "\\\\",
+            "\uD83D\uDE00",
+            "x.y",
+            "[\uD83D\uDE00]",
+            "\\[INFO\\] BUILD (FAILURE|SUCCESS)",
+            "(?-i)abc",
+            "(?is)LINE1.line2",
+            "(?m:^line2)",
+    };
+
+    private static void assertSameAsJava(String regexp, int flags, String input) {
+        Pattern pattern = Pattern.compile(regexp, flags);
+        LinearRegexp linear = LinearRegexp.compile(regexp, flags);
+        assertNotNull(linear, regexp);
+        assertEquals(
+                pattern.matcher(input).find(),
+                linear.matcher().find(input),
+                () -> String.format("'%s' for '%s'", regexp, input)
+        );
+    }
+
+    @Test
+    void testSameAsJava() {
+        for (String regexp : PATTERNS) {
+            for (String input : INPUTS) {
+                assertSameAsJava(regexp, 0, input);
+            }
+        }
+    }
+
+    @Test
+    void testFlags() {
+        for (String input : INPUTS) {
+            assertSameAsJava("abc", Pattern.CASE_INSENSITIVE, input);
+            assertSameAsJava("^line2$", Pattern.MULTILINE, input);
+            assertSameAsJava("line1.line2", Pattern.DOTALL, input);
+            assertSameAsJava("a+b|c", Pattern.LITERAL, input);
+            assertSameAsJava("{}()[].*+?^$|\\", Pattern.LITERAL, input);
+            assertSameAsJava("abc", Pattern.LITERAL | Pattern.CASE_INSENSITIVE, input);
+        }
+    }
+
+    @Test
+    void testRandom() {
+        // patterns and inputs made of few characters to hit corner cases.
+        String[] atoms = {"a", "b", "\\n", ".", "[ab]", "[^a]", "\\w", "\\b", "^", "$", "(?m)", "(?s)", "(?i)", "A"};
+        String[] quantifiers = {"", "", "", "*", "+", "?", "{2}", "{1,3}", "*?"};
+        String chars = "abAB \n\r_";
+        Random random = new Random(12345);
+        for (int i = 0; i < 3000; ++i) {
+            StringBuilder regexp = new StringBuilder();
+            int n = 1 + random.nextInt(5);
+            for (int j = 0; j < n; ++j) {
+                int kind = random.nextInt(10);
+                if (kind == 0) {
+                    regexp.append('|');
+                }
+                String atom = atoms[random.nextInt(atoms.length)];
+                if (kind == 1) {
+                    atom = "(" + atom + atoms[random.nextInt(atoms.length)] + ")";
+                }
+                regexp.append(atom);
+                if (!atom.startsWith("(?") || atom.length() > 4) {
+                    regexp.append(quantifiers[random.nextInt(quantifiers.length)]);
+                }
+            }
+            StringBuilder input = new StringBuilder();
+            int m = random.nextInt(8);
+            for (int j = 0; j < m; ++j) {
+                input.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            try {
+                Pattern.compile(regexp.toString());
+            } catch (PatternSyntaxException e) {
+                continue;
+            }
+            assertSameAsJava(regexp.toString(), 0, input.toString());
+        }
+    }
+
+    @Test
+    void testNotSupported() {
+        String[] patterns = {
+                "(a)\\1",
+                "(?<x>a)\\k<x>",
+                "a(?=b)",
+                "a(?!b)",
+                "(?<=a)b",
+                "(?<!a)b",
+                "(?>a+)b",
+                "a++b",
+                "a*+b",
+                "\\p{Alpha}",
+                "\\pL",
+                "\\P{Digit}",
+                "\\Ga",
+                "\\R",
+                "\\X",
+                "[a-z&&[^d]]",
+                "[a[bc]]",
+                "(?x) a b",
+                "(?u)a",
+                "(?U)\\w",
+                "(?d)^a",
+                "a{10001}",
+                "(a{100}){101}",
+        };
+        for (String regexp : patterns) {
+            Pattern.compile(regexp);
+            assertNull(LinearRegexp.compile(regexp, 0), regexp);
+        }
+        assertNull(LinearRegexp.compile("a", Pattern.COMMENTS));
+        assertNull(LinearRegexp.compile("a", Pattern.UNIX_LINES));
+        assertNull(LinearRegexp.compile("a", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+    }
+
+    @Test
+    void testEmptyIterations() {
+        // documented to differ from java.util.regex.
+        assertFalse(Pattern.compile("(\\b|x){2}y").matcher("xy").find());
+        LinearRegexp linear = LinearRegexp.compile("(\\b|x){2}y", 0);
+        assertNotNull(linear);
+        assertTrue(linear.matcher().find("xy"));
+    }
+
+    @Test
+    void testLinearTime() {
+        // takes java.util.regex almost forever.
+        LinearRegexp linear = LinearRegexp.compile("(.*a){12}x", 0);
+        assertNotNull(linear);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            line.append('a');
+        }
+        long start = System.nanoTime();
+        LinearRegexp.Matcher matcher = linear.matcher();
+        assertFalse(matcher.find(line));
+        line.append('x');
+        assertTrue(matcher.find(line));
+        assertTrue(System.nanoTime() - start < 10L * 1000 * 1000 * 1000, "took too long");
+    }
+
+    @Test
+    void testDeadline() throws Exception {
+        LinearRegexp linear = LinearRegexp.compile("(.*a){12}x", 0);
+        byte[] bytes = new byte[ScanDeadline.CHECK_INTERVAL * 2];
+        Arrays.fill(bytes, (byte)'a');
+        DecodedLine line = new DecodedLine(StandardCharsets.US_ASCII).decode(bytes, 0, bytes.length);
+        line.setDeadline(ScanDeadline.after(1, null));
+        Thread.sleep(10);
+        ScanDeadline.ExceededException e = assertThrows(
+                ScanDeadline.ExceededException.class,
+                () -> linear.matcher().find(line)
+        );
+        assertEquals(ScanResult.Status.TimedOut, e.getStatus());
+    }
+}
@@ -0,0 +1,49 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link LiteralSearch}.
+ */
+class LiteralSearchTest {
+
+    private static int indexOf(String hay, String needle, int from, int to) {
+        LiteralSearch search = new LiteralSearch(needle.getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = hay.getBytes(StandardCharsets.UTF_8);
+        int inArray = search.indexOf(bytes, from, to);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        assertEquals(inArray, search.indexOf(direct, from, to), "direct buffer");
+
+        // a heap buffer with an offset.
+        byte[] padded = new byte[bytes.length + 3];
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        ByteBuffer sliced = ByteBuffer.wrap(padded, 3, bytes.length).slice();
+        assertEquals(inArray, search.indexOf(sliced, from, to), "heap buffer");
+        return inArray;
+    }
+
+    private static int indexOf(String hay, String needle) {
+        return indexOf(hay, needle, 0, hay.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void testIndexOf() {
+        assertEquals(0, indexOf("OutOfMemoryError", "OutOfMemoryError"));
+        assertEquals(10, indexOf("Exception OutOfMemoryError: heap", "OutOfMemoryError"));
+        assertEquals(-1, indexOf("Exception OutOfMemoryErro", "OutOfMemoryError"));
+        assertEquals(-1, indexOf("", "OutOfMemoryError"));
+        assertEquals(3, indexOf("aaabaab", "baab"));
+        assertEquals(2, indexOf("abcabc", "c"));
+        assertEquals(4, indexOf("abcdabcd", "abcd", 1, 8));
+        // not beyond the limit.
+        assertEquals(-1, indexOf("abcdabcd", "abcd", 1, 7));
+        assertEquals(6, indexOf("caf\u00E9 zur\u00FCck", "zur\u00FCck"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LogScanExecutor}.
+ */
+class LogScanExecutorTest {
+
+    @Test
+    void testBoundedQueue() throws Exception {
+        LogScanExecutor executor = new LogScanExecutor(1, 1, false);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<Boolean> running = executor.submit(() -> {
+                started.countDown();
+                return release.await(10, TimeUnit.SECONDS);
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<Boolean> queued = executor.submit(() -> true);
+
+            assertEquals(1, executor.getActiveCount());
+            assertEquals(1, executor.getQueuedCount());
+
+            // the queue is full.
+            assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> true));
+
+            release.countDown();
+            assertTrue(running.get(10, TimeUnit.SECONDS));
+            assertTrue(queued.get(10, TimeUnit.SECONDS));
+            assertEquals(0, executor.getQueuedCount());
+        } finally {
+            release.countDown();
+            executor.shutdown(1000);
+        }
+    }
+
+    @Test
+    void testNoThreads() throws Exception {
+        // misconfigured sizes still scan.
+        LogScanExecutor executor = new LogScanExecutor(0, 0, false);
+        try {
+            assertTrue(executor.submit(() -> true).get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown(1000);
+        }
+    }
+
+    @Test
+    void testShutdownInterruptsRunningScans() throws Exception {
+        LogScanExecutor executor = new LogScanExecutor(1, 1, false);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        executor.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(60 * 1000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        executor.shutdown(100);
+
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.isAborting());
+        assertEquals(ScanResult.Status.ShutDown, assertThrows(
+                ScanDeadline.ExceededException.class,
+                () -> ScanDeadline.after(60 * 1000, executor).check()
+        ).getStatus());
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> true));
+    }
+
+    @Test
+    void testSharedInstanceNotRecreatedAfterTermination() throws Exception {
+        LogScanExecutor first = LogScanExecutor.get();
+        assertSame(first, LogScanExecutor.get());
+
+        try {
+            LogScanExecutor.shutdownOnTermination();
+
+            assertTrue(first.isShutdown());
+            assertSame(first, LogScanExecutor.get());
+            assertThrows(RejectedExecutionException.class, () -> LogScanExecutor.get().submit(() -> true));
+        } finally {
+            LogScanExecutor.reset();
+        }
+        assertFalse(LogScanExecutor.get().isShutdown());
+    }
+}
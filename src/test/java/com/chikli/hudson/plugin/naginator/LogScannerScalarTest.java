@@ -0,0 +1,23 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+/**
+ * Runs {@link LogScannerTest} searching byte by byte with {@link ByteSearch#SCALAR},
+ * which must find the same matches.
+ */
+class LogScannerScalarTest extends LogScannerTest {
+
+    private final boolean scalar = ByteSearch.SCALAR;
+
+    @BeforeEach
+    void setScalar() {
+        ByteSearch.SCALAR = true;
+    }
+
+    @AfterEach
+    void restoreScalar() {
+        ByteSearch.SCALAR = scalar;
+    }
+}
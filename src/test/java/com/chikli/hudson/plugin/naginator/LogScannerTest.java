@@ -0,0 +1,805 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LogScanner}.
+ */
+class LogScannerTest {
+
+    @TempDir
+    File tmp;
+
+    private File createLog(String content, Charset charset) throws IOException {
+        File log = File.createTempFile("log", ".txt", tmp);
+        Files.write(log.toPath(), content.getBytes(charset));
+        return log;
+    }
+
+    private File createLog(String content) throws IOException {
+        return createLog(content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @see LogScanner#scanForward(LogSource, Charset, SignatureSet, ScanDeadline)
+     */
+    static ScanResult scanForward(File logFile, Charset charset, SignatureSet signatures, ScanDeadline deadline) throws IOException {
+        try (LogSource source = LogSource.of(logFile)) {
+            return LogScanner.scanForward(source, charset, signatures, deadline);
+        }
+    }
+
+    static ScanResult scanForward(File logFile, Charset charset, SignatureSet signatures) throws IOException {
+        return scanForward(logFile, charset, signatures, ScanDeadline.NONE);
+    }
+
+    static boolean scanForward(File logFile, Charset charset, Pattern pattern) throws IOException {
+        return scanForward(logFile, charset, SignatureSet.of(pattern)).isMatched();
+    }
+
+    /**
+     * @see LogScanner#scanMultiline(LogSource, Charset, SignatureSet, int, ScanDeadline)
+     */
+    static ScanResult scanMultiline(File logFile, Charset charset, SignatureSet signatures, int windowLines, ScanDeadline deadline) throws IOException {
+        try (LogSource source = LogSource.of(logFile)) {
+            return LogScanner.scanMultiline(source, charset, signatures, windowLines, deadline);
+        }
+    }
+
+    static ScanResult scanMultiline(File logFile, Charset charset, SignatureSet signatures, int windowLines) throws IOException {
+        return scanMultiline(logFile, charset, signatures, windowLines, ScanDeadline.NONE);
+    }
+
+    /**
+     * @see LogScanner#scanTailFirst(LogSource, Charset, SignatureSet, long, ScanDeadline)
+     */
+    static ScanResult scanTailFirst(File logFile, Charset charset, SignatureSet signatures, long maxBytes, ScanDeadline deadline) throws IOException {
+        try (LogSource source = LogSource.of(logFile)) {
+            return LogScanner.scanTailFirst(source, charset, signatures, maxBytes, deadline);
+        }
+    }
+
+    static ScanResult scanTailFirst(File logFile, Charset charset, SignatureSet signatures, long maxBytes) throws IOException {
+        return scanTailFirst(logFile, charset, signatures, maxBytes, ScanDeadline.NONE);
+    }
+
+    static boolean scanTailFirst(File logFile, Charset charset, Pattern pattern, long maxBytes) throws IOException {
+        return scanTailFirst(logFile, charset, SignatureSet.of(pattern), maxBytes).isMatched();
+    }
+
+    static boolean isGzip(File logFile) throws IOException {
+        try (LogSource source = LogSource.of(logFile)) {
+            return source.isGzip();
+        }
+    }
+
+    private static String filler(int bytes) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < bytes) {
+            sb.append("some build output\n");
+        }
+        return sb.toString();
+    }
+
+    private static boolean tail(File log, String regexp, long maxBytes) throws IOException {
+        return scanTailFirst(log, StandardCharsets.UTF_8, Pattern.compile(regexp), maxBytes);
+    }
+
+    @Test
+    void testForward() throws Exception {
+        File log = createLog("line1\nConnection reset\nline3\n");
+        assertTrue(scanForward(log, StandardCharsets.UTF_8, Pattern.compile("Connection reset")));
+        assertFalse(scanForward(log, StandardCharsets.UTF_8, Pattern.compile("No space left")));
+    }
+
+    @Test
+    void testForwardAcrossBlocks() throws Exception {
+        String head = filler(LogScanner.BLOCK_SIZE * 3);
+        File log = createLog(head + "Connection reset by peer\n" + filler(LogScanner.BLOCK_SIZE - 10));
+        assertTrue(forward(log, "^Connection reset by peer$"));
+        assertFalse(forward(log, "No space left"));
+
+        // a line longer than a block.
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < LogScanner.BLOCK_SIZE * 3) {
+            longLine.append("0123456789");
+        }
+        log = createLog("first\n" + longLine + "No space left on device\nlast");
+        assertTrue(forward(log, "^0123456789.*No space left on device$"));
+        assertTrue(forward(log, "^last$"));
+    }
+
+    @Test
+    void testForwardLineSeparators() throws Exception {
+        File log = createLog("line1\r\n\r\nline3");
+        assertTrue(forward(log, "^line1$"));
+        assertTrue(forward(log, "^$"));
+        assertTrue(forward(log, "^line3$"));
+        assertFalse(forward(createLog("line1\nline2\n"), "^$"));
+        assertFalse(forward(createLog(""), "^$"));
+    }
+
+    @Test
+    void testForwardCharsets() throws Exception {
+        assertForwardCharset(StandardCharsets.UTF_8, "caf\u00e9 \u3042");
+        assertForwardCharset(StandardCharsets.ISO_8859_1, "caf\u00e9");
+        assertForwardCharset(StandardCharsets.UTF_16, "caf\u00e9 \u3042");
+        assertForwardCharset(Charset.forName("Shift_JIS"), "\u3042\u30bd");
+        assertTrue(LogScanner.isAsciiCompatible(Charset.forName("Shift_JIS")));
+        assertFalse(LogScanner.isAsciiCompatible(Charset.forName("ISO-2022-JP")));
+    }
+
+    private void assertForwardCharset(Charset charset, String word) throws IOException {
+        File log = createLog(word + "\nConnection reset\n", charset);
+        assertTrue(scanForward(log, charset, Pattern.compile("^" + word + "$")), charset.name());
+        assertTrue(scanForward(log, charset, Pattern.compile("^Connection reset$")), charset.name());
+        assertFalse(scanForward(log, charset, Pattern.compile("No space left")), charset.name());
+    }
+
+    @Test
+    void testForwardMalformedInput() throws Exception {
+        File log = File.createTempFile("log", ".txt", tmp);
+        Files.write(log.toPath(), new byte[]{'a', (byte)0xFF, 'b', '\n'});
+        assertTrue(forward(log, "^a\uFFFDb$"));
+    }
+
+    private static boolean forward(File log, String regexp) throws IOException {
+        return scanForward(log, StandardCharsets.UTF_8, Pattern.compile(regexp));
+    }
+
+    @Test
+    void testTailFirst() throws Exception {
+        File log = createLog("line1\nConnection reset\nline3\n");
+        assertTrue(tail(log, "Connection reset", 0));
+        assertTrue(tail(log, "^line1$", 0));
+        assertTrue(tail(log, "^line3$", 0));
+        assertFalse(tail(log, "No space left", 0));
+    }
+
+    @Test
+    void testTailFirstWithoutTrailingNewline() throws Exception {
+        File log = createLog("line1\nline2");
+        assertTrue(tail(log, "^line2$", 0));
+        assertTrue(tail(log, "^line1$", 0));
+    }
+
+    @Test
+    void testTailFirstEmptyLines() throws Exception {
+        assertFalse(tail(createLog(""), "^$", 0));
+        assertTrue(tail(createLog("\n"), "^$", 0));
+        assertTrue(tail(createLog("line1\n\nline3\n"), "^$", 0));
+        assertFalse(tail(createLog("line1\nline2\n"), "^$", 0));
+    }
+
+    @Test
+    void testTailFirstCrLf() throws Exception {
+        File log = createLog("line1\r\nline2\r\n");
+        assertTrue(tail(log, "^line1$", 0));
+        assertTrue(tail(log, "^line2$", 0));
+    }
+
+    @Test
+    void testTailFirstAcrossBlocks() throws Exception {
+        // a line crossing the boundary of blocks.
+        String head = filler(LogScanner.BLOCK_SIZE * 3);
+        File log = createLog(head + "Connection reset by peer\n" + filler(LogScanner.BLOCK_SIZE - 10));
+        assertTrue(tail(log, "^Connection reset by peer$", 0));
+        assertTrue(tail(log, "^some build output$", 0));
+
+        // a line longer than a block.
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < LogScanner.BLOCK_SIZE * 2) {
+            longLine.append("0123456789");
+        }
+        log = createLog("first\n" + longLine + "No space left on device\nlast\n");
+        assertTrue(tail(log, "^0123456789.*No space left on device$", 0));
+        assertTrue(tail(log, "^first$", 0));
+    }
+
+    @Test
+    void testTailFirstWithMaxBytes() throws Exception {
+        String last = "Connection reset\n";
+        File log = createLog("No space left on device\n" + filler(1000) + last);
+
+        assertTrue(tail(log, "Connection reset", last.length()));
+        assertFalse(tail(log, "No space left on device", 500));
+        assertTrue(tail(log, "No space left on device", 0));
+
+        // the line crossing the limit is not tested.
+        assertFalse(tail(log, "Connection reset", last.length() - 1));
+        assertFalse(tail(log, "reset", last.length() - 1));
+    }
+
+    @Test
+    void testTailFirstNonAsciiCompatibleCharset() throws Exception {
+        File log = createLog("line1\nConnection reset\nline3\n", StandardCharsets.UTF_16);
+        assertFalse(LogScanner.isAsciiCompatible(StandardCharsets.UTF_16));
+        assertTrue(scanTailFirst(log, StandardCharsets.UTF_16, Pattern.compile("Connection reset"), 0));
+        assertFalse(scanTailFirst(log, StandardCharsets.UTF_16, Pattern.compile("No space left"), 0));
+    }
+
+    @Test
+    void testTailFirstMultibyteCharacters() throws Exception {
+        File log = createLog("caf\u00e9\n\u00fcber: Verbindung zur\u00fcckgesetzt\n");
+        assertTrue(LogScanner.isAsciiCompatible(StandardCharsets.UTF_8));
+        assertTrue(tail(log, "^\u00fcber: Verbindung zur\u00fcckgesetzt$", 0));
+        assertTrue(tail(log, "^caf\u00e9$", 0));
+    }
+
+    @Test
+    void testSignatures() throws Exception {
+        File log = createLog("Connection reset\nline2\nerror: cannot find symbol\nline4\n");
+        SignatureSet signatures = SignatureSet.compile("Connection reset", null, "^error: ");
+
+        ScanResult result = scanForward(log, StandardCharsets.UTF_8, signatures);
+        assertEquals("^error: ", result.getMatched().regexp());
+        result = scanTailFirst(log, StandardCharsets.UTF_8, signatures, 0);
+        assertEquals("^error: ", result.getMatched().regexp());
+
+        signatures = SignatureSet.compile("Connection reset", "line4", "^warning: ");
+        result = scanForward(log, StandardCharsets.UTF_8, signatures);
+        assertEquals("Connection reset", result.getMatched().regexp());
+        // the first match from the end.
+        result = scanTailFirst(log, StandardCharsets.UTF_8, signatures, 0);
+        assertEquals("line4", result.getMatched().regexp());
+
+        signatures = SignatureSet.compile(null, null, "^warning: ");
+        assertFalse(scanForward(log, StandardCharsets.UTF_8, signatures).isMatched());
+        assertFalse(scanTailFirst(log, StandardCharsets.UTF_8, signatures, 0).isMatched());
+    }
+
+    @Test
+    void testForwardSkippingLines() throws Exception {
+        // literals crossing the boundary of blocks.
+        StringBuilder sb = new StringBuilder(filler(LogScanner.BLOCK_SIZE - 5));
+        sb.append("java.lang.OutOfMemoryError: Java heap space\n");
+        sb.append(filler(LogScanner.BLOCK_SIZE * 2));
+        File log = createLog(sb.toString());
+        assertTrue(forward(log, "OutOfMemoryError"));
+        assertTrue(forward(log, "^java\\.lang\\.OutOfMemoryError: .* space$"));
+        assertFalse(forward(log, "OutOfMemoryError: PermGen"));
+        assertFalse(forward(log, "^OutOfMemoryError"));
+
+        // a literal found in a line not matching, and then in a line matching.
+        log = createLog("Error: disk full\n" + filler(1000) + "Fatal Error: disk full\nlast");
+        assertTrue(forward(log, "^Fatal Error: disk"));
+        assertTrue(forward(log, "^last$"));
+        assertFalse(forward(log, "^Fatal Error: disk full!"));
+
+        // a literal in a line longer than a block.
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < LogScanner.BLOCK_SIZE * 3) {
+            longLine.append("0123456789");
+        }
+        log = createLog(filler(100) + longLine + " No space left on device\n" + filler(100));
+        assertTrue(forward(log, "^0123.* No space left on device$"));
+        assertTrue(forward(log, "No space left"));
+    }
+
+    @Test
+    void testSignaturesSkippingLines() throws Exception {
+        File log = createLog(filler(LogScanner.BLOCK_SIZE * 2) + "Connection reset\n"
+                + filler(LogScanner.BLOCK_SIZE) + "error: cannot find symbol\n" + filler(100));
+        SignatureSet signatures = SignatureSet.compile("Connection reset", "Broken pipe", "^error: ");
+        assertEquals("^error: ", scanForward(log, StandardCharsets.UTF_8, signatures).getMatched().regexp());
+        assertEquals("^error: ", scanTailFirst(log, StandardCharsets.UTF_8, signatures, 0).getMatched().regexp());
+
+        signatures = SignatureSet.compile("Connection reset", "Broken pipe", "^warning: ");
+        assertEquals("Connection reset", scanForward(log, StandardCharsets.UTF_8, signatures).getMatched().regexp());
+
+        // a signature without literals disables skipping.
+        signatures = SignatureSet.compile("Connection reset", "^e.*r: c", null);
+        assertEquals("Connection reset", scanForward(log, StandardCharsets.UTF_8, signatures).getMatched().regexp());
+    }
+
+    @Test
+    void testConsoleMarkup() throws Exception {
+        String note = "\u001B[8mha:AAAAWB+LCAAAAAAAAP9b85aBtbiIQTGjNKU4P08vOT+vOD8nVc83PyU1x6OyILUoJzMv2y+/\u001B[0m";
+        String content = filler(LogScanner.BLOCK_SIZE * 2)
+                + "Started by user " + note + "admin\n"
+                + "\u001B[1;31mERROR\u001B[0m: Connection reset\n"
+                + filler(100);
+        File log = createLog(content);
+        SignatureSet signatures = SignatureSet.compile("^ERROR: Connection reset$", null, null);
+        assertTrue(scanForward(log, StandardCharsets.UTF_8, signatures).isMatched());
+        assertTrue(scanTailFirst(log, StandardCharsets.UTF_8, signatures, 0).isMatched());
+        assertTrue(scanMultiline(log, StandardCharsets.UTF_8, multiline("^Started by user admin\nERROR: ", null), 2).isMatched());
+        assertTrue(forward(log, "^Started by user admin$"));
+        // literals split by the markup.
+        assertTrue(forward(log, "ERROR: Connection"));
+        // found only in the markup.
+        assertFalse(forward(log, "LCAAAAAAAAP9b85a"));
+        assertFalse(forward(log, "\\[0m"));
+
+        // not compatible with ASCII.
+        log = createLog(content, StandardCharsets.UTF_16);
+        assertTrue(scanForward(log, StandardCharsets.UTF_16, signatures).isMatched());
+        assertFalse(scanForward(log, StandardCharsets.UTF_16, Pattern.compile("LCAAAAAAAAP9b85a")));
+
+        ConsoleMarkup.DISABLED = true;
+        try {
+            log = createLog(content);
+            assertFalse(forward(log, "ERROR: Connection"));
+            assertTrue(forward(log, "LCAAAAAAAAP9b85a"));
+        } finally {
+            ConsoleMarkup.DISABLED = false;
+        }
+    }
+
+    @Test
+    void testMatchOffset() throws Exception {
+        String head = filler(LogScanner.BLOCK_SIZE * 2);
+        String content = head + "Connection reset\r\n" + filler(100) + "error: cannot find symbol\n" + filler(100);
+        long connectionReset = head.length();
+        long error = content.indexOf("error: ");
+        File log = createLog(content);
+        SignatureSet signatures = SignatureSet.compile("Connection reset", null, "^error: ");
+        assertEquals(error, scanForward(log, StandardCharsets.UTF_8, signatures).getMatchOffset());
+        assertEquals(error, scanTailFirst(log, StandardCharsets.UTF_8, signatures, 0).getMatchOffset());
+
+        signatures = SignatureSet.compile("Connection reset", null, null);
+        assertEquals(connectionReset, scanForward(log, StandardCharsets.UTF_8, signatures).getMatchOffset());
+        assertEquals(connectionReset, scanTailFirst(log, StandardCharsets.UTF_8, signatures, 0).getMatchOffset());
+
+        long threshold = LogScanner.PARALLEL_THRESHOLD;
+        long minChunkSize = LogScanner.MIN_CHUNK_SIZE;
+        LogScanner.PARALLEL_THRESHOLD = 1;
+        LogScanner.MIN_CHUNK_SIZE = LogScanner.BLOCK_SIZE;
+        try {
+            assertEquals(connectionReset, scanForward(log, StandardCharsets.UTF_8, signatures).getMatchOffset());
+        } finally {
+            LogScanner.PARALLEL_THRESHOLD = threshold;
+            LogScanner.MIN_CHUNK_SIZE = minChunkSize;
+        }
+
+        File gzip = createGzipLog(content, StandardCharsets.UTF_8);
+        assertEquals(connectionReset, scanForward(gzip, StandardCharsets.UTF_8, signatures).getMatchOffset());
+        assertEquals(connectionReset, scanTailFirst(gzip, StandardCharsets.UTF_8, signatures, content.length()).getMatchOffset());
+
+        // unknown for charsets not compatible with ASCII.
+        log = createLog(content, StandardCharsets.UTF_16);
+        ScanResult result = scanForward(log, StandardCharsets.UTF_16, signatures);
+        assertTrue(result.isMatched());
+        assertEquals(-1, result.getMatchOffset());
+    }
+
+    @Test
+    void testMatchLineAcrossBlocks() throws Exception {
+        String head = filler(LogScanner.BLOCK_SIZE * 3);
+        long lines = head.chars().filter(c -> c == '\n').count();
+        File log = createLog(head + "error: Connection reset by peer\n" + filler(100));
+        // lines skipped in blocks already dropped are counted.
+        ScanResult result = scanForward(log, StandardCharsets.UTF_8, SignatureSet.compile("Connection reset", null, null));
+        assertEquals(lines + 1, result.getMatchLine());
+        result = scanForward(log, StandardCharsets.UTF_8, SignatureSet.compile("^[a-z]+:.[A-Z]", null, null));
+        assertEquals(lines + 1, result.getMatchLine());
+    }
+
+    @Test
+    void testMatchLineAndExcerpt() throws Exception {
+        String content = "line1\nline2\r\nerror: Connection reset by peer\nline4\n";
+        File log = createLog(content);
+        // every line is split when any signature has no literal.
+        ScanResult result = scanForward(log, StandardCharsets.UTF_8, SignatureSet.compile("^[a-z]+:.[A-Z]", null, null));
+        assertEquals(3, result.getMatchLine());
+        assertEquals("error: Connection reset by peer", result.getExcerpt());
+        assertEquals("error: Connection reset by peer", result.toMatch(null).getExcerpt());
+        assertEquals(3, result.toMatch(null).getLineNumber());
+
+        // counted even when lines are skipped without splitting them.
+        result = scanForward(log, StandardCharsets.UTF_8, SignatureSet.compile("Connection reset", null, null));
+        assertEquals(3, result.getMatchLine());
+        assertEquals("error: Connection reset by peer", result.getExcerpt());
+        // unknown when read from the end.
+        result = scanTailFirst(log, StandardCharsets.UTF_8, SignatureSet.compile("Connection reset", null, null), 0);
+        assertEquals(-1, result.getMatchLine());
+        assertEquals("error: Connection reset by peer", result.getExcerpt());
+
+        result = scanMultiline(log, StandardCharsets.UTF_8, multiline("line2\nerror:", null), 2);
+        assertEquals(3, result.getMatchLine());
+        assertEquals("error: Connection reset by peer", result.getExcerpt());
+
+        log = createLog(content, StandardCharsets.UTF_16);
+        result = scanForward(log, StandardCharsets.UTF_16, SignatureSet.compile("Connection reset", null, null));
+        assertEquals(3, result.getMatchLine());
+        assertEquals("error: Connection reset by peer", result.getExcerpt());
+
+        // bounded.
+        StringBuilder longLine = new StringBuilder("error: ");
+        while (longLine.length() < 10000) {
+            longLine.append("0123456789");
+        }
+        log = createLog(longLine + "\n");
+        result = scanForward(log, StandardCharsets.UTF_8, SignatureSet.compile("^error: ", null, null));
+        assertEquals(NaginatorMatch.MAX_EXCERPT_LENGTH, result.getExcerpt().length());
+        assertTrue(result.getExcerpt().startsWith("error: 0123456789"));
+        assertTrue(result.getExcerpt().endsWith("..."));
+
+        // signatures never to rerun are not recorded.
+        result = scanForward(log, StandardCharsets.UTF_8, SignatureSet.compile(null, null, "^error: "));
+        assertTrue(result.isMatched());
+        assertEquals(null, result.toMatch(null));
+    }
+
+    /**
+     * @return a line of <code>length</code> digits with <code>literal</code> at <code>index</code>.
+     */
+    private static String longLine(int length, String literal, int index) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.append("0123456789");
+        }
+        sb.setLength(length);
+        sb.replace(index, index + literal.length(), literal);
+        return sb.toString();
+    }
+
+    @Test
+    void testLongLines() throws Exception {
+        int maxLineLength = LogScanner.MAX_LINE_LENGTH;
+        int segmentOverlap = LogScanner.SEGMENT_OVERLAP;
+        LogScanner.MAX_LINE_LENGTH = LogScanner.BLOCK_SIZE * 2;
+        LogScanner.SEGMENT_OVERLAP = 64;
+        try {
+            int max = LogScanner.getMaxLineLength();
+            int length = max * 5;
+            SignatureSet literal = SignatureSet.compile("Connection reset", null, null);
+            SignatureSet noLiteral = SignatureSet.compile("C[a-z]+ion r[a-z]+t", null, null);
+            // across the end of the first segment from the beginning, and of the first segment from the end.
+            for (int index : new int[]{max - 8, length - max - 8, 100}) {
+                String content = "first\n" + longLine(length, "Connection reset", index) + "\nlast line\n";
+                File log = createLog(content);
+                for (SignatureSet signatures : new SignatureSet[]{literal, noLiteral}) {
+                    assertTrue(scanForward(log, StandardCharsets.UTF_8, signatures).isMatched(), "forward at " + index);
+                    assertTrue(scanTailFirst(log, StandardCharsets.UTF_8, signatures, 0).isMatched(), "tail at " + index);
+                    assertTrue(scanMultiline(log, StandardCharsets.UTF_8, multiline(signatures == literal ? "Connection reset" : "C[a-z]+ion r[a-z]+t", null), 2).isMatched(), "multiline at " + index);
+                }
+                File utf16 = createLog(content, StandardCharsets.UTF_16);
+                assertTrue(scanForward(utf16, StandardCharsets.UTF_16, literal).isMatched(), "reader at " + index);
+            }
+
+            // lines are counted across segments.
+            File log = createLog("first\n" + longLine(length, "", 0) + "\nlast line\n");
+            SignatureSet lastLine = SignatureSet.compile("^[a-z]+ [a-z]+$", null, null);
+            assertEquals(3, scanForward(log, StandardCharsets.UTF_8, lastLine).getMatchLine());
+            assertEquals(3, scanForward(createLog("first\n" + longLine(length, "", 0) + "\nlast line\n", StandardCharsets.UTF_16), StandardCharsets.UTF_16, lastLine).getMatchLine());
+            ScanResult result = scanTailFirst(log, StandardCharsets.UTF_8, lastLine, 0);
+            assertEquals(log.length() - "last line\n".length(), result.getMatchOffset());
+
+            // the offset of the segment.
+            log = createLog("first\n" + longLine(length, "Connection reset", max * 2));
+            result = scanForward(log, StandardCharsets.UTF_8, literal);
+            assertTrue(result.getMatchOffset() > "first\n".length() + max);
+            assertTrue(result.getMatchOffset() <= "first\n".length() + max * 2);
+        } finally {
+            LogScanner.MAX_LINE_LENGTH = maxLineLength;
+            LogScanner.SEGMENT_OVERLAP = segmentOverlap;
+        }
+    }
+
+    private static String scanInChunks(File log, long chunkSize, SignatureSet signatures) throws IOException {
+        long threshold = LogScanner.PARALLEL_THRESHOLD;
+        long minChunkSize = LogScanner.MIN_CHUNK_SIZE;
+        LogScanner.PARALLEL_THRESHOLD = 1;
+        LogScanner.MIN_CHUNK_SIZE = chunkSize;
+        try {
+            SignatureSet.Signature matched = scanForward(log, StandardCharsets.UTF_8, signatures).getMatched();
+            return (matched != null) ? matched.regexp() : null;
+        } finally {
+            LogScanner.PARALLEL_THRESHOLD = threshold;
+            LogScanner.MIN_CHUNK_SIZE = minChunkSize;
+        }
+    }
+
+    private static String scanAtOnce(File log, SignatureSet signatures) throws IOException {
+        long threshold = LogScanner.PARALLEL_THRESHOLD;
+        LogScanner.PARALLEL_THRESHOLD = 0;
+        try {
+            SignatureSet.Signature matched = scanForward(log, StandardCharsets.UTF_8, signatures).getMatched();
+            return (matched != null) ? matched.regexp() : null;
+        } finally {
+            LogScanner.PARALLEL_THRESHOLD = threshold;
+        }
+    }
+
+    @Test
+    void testParallel() throws Exception {
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < LogScanner.BLOCK_SIZE * 2) {
+            longLine.append("0123456789");
+        }
+        File log = createLog(filler(100000) + "Connection reset\n"
+                + filler(50000) + longLine + " No space left on device\n"
+                + filler(100000) + "error: cannot find symbol\n"
+                + filler(1000) + "last");
+        String[][] signatures = {
+                {"^Connection reset$", null, null},
+                {"No space left", null, null},
+                {"^0123.* No space left on device$", null, null},
+                {"^last$", null, null},
+                {"^error: ", "No space left\nConnection reset", null},
+                {"No space left", "Connection reset", "^error: "},
+                {"Connection reset", null, "^last"},
+                {"Connection reset", null, "^Build failed"},
+                {"^.*Build failed", null, null},
+                {"OutOfMemoryError", null, null},
+                {null, null, "OutOfMemoryError"},
+        };
+        for (String[] s : signatures) {
+            SignatureSet set = SignatureSet.compile(s[0], s[1], s[2]);
+            String expected = scanAtOnce(log, set);
+            for (long chunkSize : new long[]{1, 100, 4096, 50000, 1000000}) {
+                assertEquals(expected, scanInChunks(log, chunkSize, set), set + " in chunks of " + chunkSize);
+            }
+        }
+        assertEquals("Connection reset", scanAtOnce(log, SignatureSet.compile("Connection reset", "^last", null)));
+        assertEquals("^last", scanAtOnce(log, SignatureSet.compile("Connection reset", null, "^last")));
+    }
+
+    @Test
+    void testParallelLineSeparators() throws Exception {
+        File log = createLog("line1\r\n\r\nline3\n" + filler(1000) + "\nline4");
+        for (String regexp : new String[]{"^line1$", "^$", "^line3$", "^line4$", "^line5$"}) {
+            SignatureSet set = SignatureSet.compile(regexp, null, null);
+            String expected = scanAtOnce(log, set);
+            for (long chunkSize : new long[]{1, 2, 3, 7, 100}) {
+                assertEquals(expected, scanInChunks(log, chunkSize, set), regexp + " in chunks of " + chunkSize);
+            }
+        }
+        assertEquals(null, scanInChunks(createLog(""), 1, SignatureSet.compile("^$", null, null)));
+    }
+
+    private File createGzipLog(String content, Charset charset) throws IOException {
+        File log = File.createTempFile("log", ".gz", tmp);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(log.toPath()))) {
+            out.write(content.getBytes(charset));
+        }
+        return log;
+    }
+
+    private static String matched(ScanResult result) {
+        SignatureSet.Signature matched = result.getMatched();
+        return (matched != null) ? matched.regexp() : null;
+    }
+
+    @Test
+    void testGzip() throws Exception {
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < LogScanner.BLOCK_SIZE * 2) {
+            longLine.append("0123456789");
+        }
+        String content = filler(LogScanner.BLOCK_SIZE * 2) + "Connection reset\r\n"
+                + filler(5000) + longLine + " No space left on device\n"
+                + filler(LogScanner.BLOCK_SIZE) + "error: cannot find symbol\n"
+                + filler(1000) + "last";
+        File plain = createLog(content);
+        File gzip = createGzipLog(content, StandardCharsets.UTF_8);
+        assertFalse(isGzip(plain));
+        assertTrue(isGzip(gzip));
+
+        String[][] signatures = {
+                {"^Connection reset$", null, null},
+                {"^0123.* No space left on device$", null, null},
+                {"^last$", null, null},
+                {"Connection reset", "^error: \nNo space left", null},
+                {"No space left", "Connection reset", "^error: "},
+                {"Connection reset", null, "^last"},
+                {"OutOfMemoryError", null, null},
+        };
+        for (String[] s : signatures) {
+            SignatureSet set = SignatureSet.compile(s[0], s[1], s[2]);
+            assertEquals(
+                    matched(scanForward(plain, StandardCharsets.UTF_8, set)),
+                    matched(scanForward(gzip, StandardCharsets.UTF_8, set)),
+                    set.toString()
+            );
+            for (long maxBytes : new long[]{1, 4, 1000, LogScanner.BLOCK_SIZE + 1000, content.length() - 5000, content.length() * 2L}) {
+                assertEquals(
+                        matched(scanTailFirst(plain, StandardCharsets.UTF_8, set, maxBytes)),
+                        matched(scanTailFirst(gzip, StandardCharsets.UTF_8, set, maxBytes)),
+                        set + " in the last " + maxBytes + " bytes"
+                );
+            }
+            assertEquals(
+                    scanTailFirst(plain, StandardCharsets.UTF_8, set, 0).isMatched(),
+                    scanTailFirst(gzip, StandardCharsets.UTF_8, set, 0).isMatched(),
+                    set.toString()
+            );
+        }
+    }
+
+    private static List<String> matchedGroups(ScanResult result, int groups) {
+        List<String> ret = new ArrayList<>();
+        for (int g = 0; g < groups; ++g) {
+            ret.add(matched(result.getGroup(g)));
+        }
+        return ret;
+    }
+
+    @Test
+    void testUnion() throws Exception {
+        String content = filler(LogScanner.BLOCK_SIZE * 2) + "Connection reset\r\n"
+                + filler(5000) + "write: No space left on device\n"
+                + filler(LogScanner.BLOCK_SIZE) + "error: cannot find symbol\n"
+                + filler(1000) + "last";
+        File plain = createLog(content);
+        File gzip = createGzipLog(content, StandardCharsets.UTF_8);
+
+        List<SignatureSet> sets = new ArrayList<>();
+        for (String[] s : new String[][]{
+                {"^Connection reset$", null, null},
+                {"No space left", null, null},
+                {"^last$", null, null},
+                {"Connection reset", "^error: \nNo space left", null},
+                {"No space left", "Connection reset", "^error: "},
+                {"Connection reset", null, "^last"},
+                {"OutOfMemoryError", null, null},
+                {null, null, "OutOfMemoryError"},
+        }) {
+            sets.add(SignatureSet.compile(s[0], s[1], s[2]));
+        }
+        SignatureSet union = SignatureSet.union(sets);
+
+        for (File log : new File[]{plain, gzip}) {
+            List<String> expected = new ArrayList<>();
+            for (SignatureSet set : sets) {
+                expected.add(matched(scanForward(log, StandardCharsets.UTF_8, set)));
+            }
+            assertEquals(expected, matchedGroups(scanForward(log, StandardCharsets.UTF_8, union), sets.size()), log.getName());
+
+            for (long maxBytes : new long[]{4, LogScanner.BLOCK_SIZE + 1000, content.length() * 2L}) {
+                expected.clear();
+                for (SignatureSet set : sets) {
+                    expected.add(matched(scanTailFirst(log, StandardCharsets.UTF_8, set, maxBytes)));
+                }
+                assertEquals(
+                        expected,
+                        matchedGroups(scanTailFirst(log, StandardCharsets.UTF_8, union, maxBytes), sets.size()),
+                        log.getName() + " in the last " + maxBytes + " bytes"
+                );
+            }
+        }
+
+        long threshold = LogScanner.PARALLEL_THRESHOLD;
+        long minChunkSize = LogScanner.MIN_CHUNK_SIZE;
+        LogScanner.PARALLEL_THRESHOLD = 1;
+        try {
+            List<String> expected = new ArrayList<>();
+            for (SignatureSet set : sets) {
+                expected.add(scanAtOnce(plain, set));
+            }
+            for (long chunkSize : new long[]{100, 4096, 1000000}) {
+                LogScanner.MIN_CHUNK_SIZE = chunkSize;
+                assertEquals(
+                        expected,
+                        matchedGroups(scanForward(plain, StandardCharsets.UTF_8, union), sets.size()),
+                        "in chunks of " + chunkSize
+                );
+            }
+        } finally {
+            LogScanner.PARALLEL_THRESHOLD = threshold;
+            LogScanner.MIN_CHUNK_SIZE = minChunkSize;
+        }
+    }
+
+    @Test
+    void testGzipNotAsciiCompatible() throws Exception {
+        File gzip = createGzipLog("line1\nConnection reset\nline3\n", StandardCharsets.UTF_16);
+        assertTrue(scanForward(gzip, StandardCharsets.UTF_16, Pattern.compile("^Connection reset$")));
+        assertFalse(scanForward(gzip, StandardCharsets.UTF_16, Pattern.compile("No space left")));
+        assertTrue(scanTailFirst(gzip, StandardCharsets.UTF_16, Pattern.compile("^line1$"), 10));
+    }
+
+    private static SignatureSet multiline(String regexpForRerun, String regexpsForNoRerun) {
+        return SignatureSet.compile(regexpForRerun, null, regexpsForNoRerun, RegexpEngine.JavaUtilRegex, true);
+    }
+
+    @Test
+    void testMultiline() throws Exception {
+        String trace = "java.io.IOException: failed\n"
+                + "\tat java.net.SocketInputStream.read(SocketInputStream.java:150)\n"
+                + "\tat hudson.remoting.Channel.call(Channel.java:100)\n"
+                + "Caused by: java.net.SocketTimeoutException: Read timed out\n";
+        String content = filler(LogScanner.BLOCK_SIZE * 2) + trace + filler(1000);
+        File log = createLog(content);
+        File gzip = createGzipLog(content, StandardCharsets.UTF_8);
+        File utf16 = createLog(content, StandardCharsets.UTF_16);
+        String regexp = "(?s)^\\tat java\\.net\\..*^Caused by: java\\.net\\.SocketTimeoutException";
+        for (File f : new File[]{log, gzip, utf16}) {
+            Charset charset = (f == utf16) ? StandardCharsets.UTF_16 : StandardCharsets.UTF_8;
+            assertTrue(scanMultiline(f, charset, multiline(regexp, null), 5).isMatched());
+            // the stack frame is out of the window.
+            assertFalse(scanMultiline(f, charset, multiline(regexp, null), 2).isMatched());
+            // . doesn't match newlines without (?s).
+            assertFalse(scanMultiline(f, charset, multiline("failed.*Caused by", null), 5).isMatched());
+            assertTrue(scanMultiline(f, charset, multiline("failed\\n\\tat", null), 5).isMatched());
+            // ^ and $ match at each line.
+            assertTrue(scanMultiline(f, charset, multiline("^some build output$", null), 5).isMatched());
+            assertTrue(scanMultiline(f, charset, multiline("Read timed out$\nsome", null), 5).isMatched());
+        }
+        long traceOffset = content.indexOf(trace);
+        ScanResult result = scanMultiline(log, StandardCharsets.UTF_8, multiline(regexp, null), 5);
+        // the line the match ends in.
+        assertEquals(content.indexOf("Caused by:"), result.getMatchOffset());
+        assertTrue(result.getMatchOffset() > traceOffset);
+
+        // a signature never to rerun across lines wins.
+        result = scanMultiline(log, StandardCharsets.UTF_8, multiline("Read timed out", "(?s)IOException: failed\n.*Channel\\.call"), 5);
+        assertTrue(result.getMatched().negative());
+    }
+
+    @Test
+    void testMultilineDeadline() throws Exception {
+        File log = createLog(filler(LogScanner.BLOCK_SIZE * 3) + "Connection reset\n");
+        ScanDeadline passed = ScanDeadline.after(1, null);
+        Thread.sleep(10);
+        assertEquals(
+                ScanResult.Status.TimedOut,
+                scanMultiline(log, StandardCharsets.UTF_8, multiline("(?s)output.*reset", null), 10, passed).getStatus()
+        );
+    }
+
+    @Test
+    void testDeadline() throws Exception {
+        File log = createLog(filler(LogScanner.BLOCK_SIZE * 3) + "Connection reset\n");
+        SignatureSet signatures = SignatureSet.compile("Connection reset", null, null);
+        ScanDeadline passed = ScanDeadline.after(1, null);
+        Thread.sleep(10);
+
+        ScanResult result = scanForward(log, StandardCharsets.UTF_8, signatures, passed);
+        assertFalse(result.isCompleted());
+        assertEquals(ScanResult.Status.TimedOut, result.getStatus());
+        assertFalse(result.isMatched());
+        assertEquals(ScanResult.Status.TimedOut, scanTailFirst(log, StandardCharsets.UTF_8, signatures, 0, passed).getStatus());
+        assertEquals(ScanResult.Status.TimedOut, scanForward(log, StandardCharsets.UTF_16, signatures, passed).getStatus());
+
+        ScanDeadline later = ScanDeadline.after(60 * 1000, null);
+        result = scanForward(log, StandardCharsets.UTF_8, signatures, later);
+        assertTrue(result.isCompleted());
+        assertTrue(result.isMatched());
+        assertTrue(scanForward(log, StandardCharsets.UTF_8, signatures, ScanDeadline.after(0, null)).isMatched());
+    }
+
+    @Test
+    void testDeadlineInLine() throws Exception {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 30; ++i) {
+            line.append('a');
+        }
+        // catastrophic backtracking.
+        File log = createLog("first\n" + line + "\n");
+        SignatureSet signatures = SignatureSet.compile("(.*a){12}x", null, null);
+        long start = System.nanoTime();
+        ScanResult result = scanForward(log, StandardCharsets.UTF_8, signatures, ScanDeadline.after(200, null));
+        assertEquals(ScanResult.Status.TimedOut, result.getStatus());
+        assertTrue(System.nanoTime() - start < 30L * 1000 * 1000 * 1000, "gave up in time");
+    }
+
+    @Test
+    void testInterrupted() throws Exception {
+        File log = createLog(filler(LogScanner.BLOCK_SIZE * 3));
+        Thread.currentThread().interrupt();
+        try {
+            ScanResult result = scanForward(log, StandardCharsets.UTF_8, SignatureSet.compile("Connection reset", null, null), ScanDeadline.after(60 * 1000, null));
+            assertEquals(ScanResult.Status.Interrupted, result.getStatus());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LogSource}.
+ */
+class LogSourceTest {
+
+    @TempDir
+    File tmp;
+
+    /**
+     * Stands in for an external log storage, reading a local file in pages
+     * and counting the bytes fetched.
+     */
+    private static final class LocalStorage extends LogSource.RangedSource {
+        private static final int PAGE_SIZE = 4096;
+
+        private final File file;
+        private final AtomicLong fetched = new AtomicLong();
+
+        LocalStorage(File file) {
+            this.file = file;
+        }
+
+        @Override
+        long length() {
+            return file.length();
+        }
+
+        @Override
+        protected void writeTo(long start, OutputStream out) throws IOException {
+            try (RandomAccessFile f = new RandomAccessFile(file, "r")) {
+                f.seek(start);
+                byte[] page = new byte[PAGE_SIZE];
+                int read;
+                while ((read = f.read(page)) > 0) {
+                    fetched.addAndGet(read);
+                    out.write(page, 0, read);
+                }
+            }
+        }
+    }
+
+    private File createLog(String content, Charset charset) throws IOException {
+        File log = File.createTempFile("log", ".txt", tmp);
+        Files.write(log.toPath(), content.getBytes(charset));
+        return log;
+    }
+
+    private static String filler(int bytes) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < bytes) {
+            sb.append("some build output\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void testRead() throws Exception {
+        File log = createLog("0123456789", StandardCharsets.US_ASCII);
+        LocalStorage storage = new LocalStorage(log);
+
+        ByteBuffer buf = ByteBuffer.allocate(4);
+        assertEquals(4, storage.read(buf, 3));
+        assertEquals("3456", new String(buf.array(), StandardCharsets.US_ASCII));
+        buf.clear();
+        assertEquals(2, storage.read(buf, 8));
+        buf.clear();
+        assertEquals(-1, storage.read(buf, 10));
+
+        try (InputStream in = storage.open()) {
+            assertEquals("0123456789", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void testTailFetchesOnlyTail() throws Exception {
+        File log = createLog(
+                "Connection reset\n" + filler(LogScanner.BLOCK_SIZE * 16) + "No space left on device\n",
+                StandardCharsets.UTF_8
+        );
+        SignatureSet signatures = SignatureSet.compile("Connection reset|No space left", null, null);
+        long maxBytes = LogScanner.BLOCK_SIZE;
+
+        LocalStorage storage = new LocalStorage(log);
+        ScanResult result = LogScanner.scanTailFirst(storage, StandardCharsets.UTF_8, signatures, maxBytes, ScanDeadline.NONE);
+        assertTrue(result.isMatched());
+        // each read can fetch a page more than it needs.
+        assertTrue(storage.fetched.get() <= maxBytes + 3 * LocalStorage.PAGE_SIZE, "fetched " + storage.fetched.get());
+
+        // stops at the last line without the limit.
+        storage = new LocalStorage(log);
+        result = LogScanner.scanTailFirst(storage, StandardCharsets.UTF_8, signatures, 0, ScanDeadline.NONE);
+        assertEquals(log.length() - "No space left on device\n".length(), result.getMatchOffset());
+        assertTrue(storage.fetched.get() <= LogScanner.BLOCK_SIZE + LocalStorage.PAGE_SIZE, "fetched " + storage.fetched.get());
+    }
+
+    @Test
+    void testForwardStopsAtMatch() throws Exception {
+        File log = createLog(
+                "line1\nConnection reset\n" + filler(LogScanner.BLOCK_SIZE * 16),
+                StandardCharsets.UTF_8
+        );
+        LocalStorage storage = new LocalStorage(log);
+        ScanResult result = LogScanner.scanForward(storage, StandardCharsets.UTF_8, SignatureSet.compile("Connection reset", null, null), ScanDeadline.NONE);
+        assertEquals("Connection reset", result.getMatched().regexp());
+        assertEquals(6, result.getMatchOffset());
+        assertTrue(storage.fetched.get() <= LogScanner.BLOCK_SIZE + LocalStorage.PAGE_SIZE, "fetched " + storage.fetched.get());
+    }
+
+    @Test
+    void testSameAsFile() throws Exception {
+        String content = filler(LogScanner.BLOCK_SIZE * 3) + "error: connection reset\r\n" + filler(LogScanner.BLOCK_SIZE) + "last";
+        SignatureSet signatures = SignatureSet.compile("connection reset", null, "^last$");
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16}) {
+            File log = createLog(content, charset);
+            ScanResult expected = LogScannerTest.scanForward(log, charset, signatures);
+            assertEquals(
+                    expected.getMatchOffset(),
+                    LogScanner.scanForward(new LocalStorage(log), charset, signatures, ScanDeadline.NONE).getMatchOffset()
+            );
+            expected = LogScannerTest.scanTailFirst(log, charset, signatures, LogScanner.BLOCK_SIZE * 2L);
+            assertEquals(
+                    expected.getMatched(),
+                    LogScanner.scanTailFirst(new LocalStorage(log), charset, signatures, LogScanner.BLOCK_SIZE * 2L, ScanDeadline.NONE).getMatched()
+            );
+        }
+    }
+
+    @Test
+    void testParallel() throws Exception {
+        File log = createLog(filler(LogScanner.BLOCK_SIZE * 8) + "Connection reset\n" + filler(LogScanner.BLOCK_SIZE * 8), StandardCharsets.UTF_8);
+        SignatureSet signatures = SignatureSet.compile("Connection reset", null, null);
+
+        long threshold = LogScanner.PARALLEL_THRESHOLD;
+        long minChunkSize = LogScanner.MIN_CHUNK_SIZE;
+        try {
+            LogScanner.PARALLEL_THRESHOLD = 1;
+            LogScanner.MIN_CHUNK_SIZE = LogScanner.BLOCK_SIZE;
+            ScanResult result = LogScanner.scanForward(new LocalStorage(log), StandardCharsets.UTF_8, signatures, ScanDeadline.NONE);
+            assertEquals(LogScannerTest.scanForward(log, StandardCharsets.UTF_8, signatures).getMatchOffset(), result.getMatchOffset());
+        } finally {
+            LogScanner.PARALLEL_THRESHOLD = threshold;
+            LogScanner.MIN_CHUNK_SIZE = minChunkSize;
+        }
+    }
+
+    @Test
+    void testFile() throws Exception {
+        File log = createLog("line1\n", StandardCharsets.UTF_8);
+        try (LogSource source = LogSource.of(log)) {
+            assertFalse(source.isGzip());
+            assertEquals(6, source.length());
+            assertEquals(ScanCache.Stamp.of(log), source.getStamp());
+        }
+    }
+}
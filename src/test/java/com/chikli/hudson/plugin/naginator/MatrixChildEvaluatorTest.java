@@ -0,0 +1,137 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link MatrixChildEvaluator}.
+ */
+class MatrixChildEvaluatorTest {
+    private ThreadPoolExecutor pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static List<Integer> range(int n) {
+        List<Integer> children = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            children.add(i);
+        }
+        return children;
+    }
+
+    @Test
+    void testMatchAll() {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        MatrixChildEvaluator<Integer> evaluator = new MatrixChildEvaluator<>(pool, (child, cancelled) -> {
+            threads.add(Thread.currentThread().getName());
+            try {
+                // finish in the reverse order.
+                Thread.sleep(100 - child);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            return child % 3 == 0;
+        });
+        assertEquals(Arrays.asList(0, 3, 6, 9, 12, 15, 18), evaluator.matchAll(range(20)));
+        assertTrue(threads.size() > 1, "tested in parallel");
+        assertEquals(Collections.emptyList(), evaluator.matchAll(Collections.emptyList()));
+        assertEquals(Collections.singletonList(0), evaluator.matchAll(Collections.singletonList(0)));
+    }
+
+    @Test
+    void testMatchAnyCancelsTheRest() throws Exception {
+        CountDownLatch matching = new CountDownLatch(1);
+        AtomicInteger cancelledChildren = new AtomicInteger();
+        AtomicInteger tested = new AtomicInteger();
+        MatrixChildEvaluator<Integer> evaluator = new MatrixChildEvaluator<>(pool, (child, cancelled) -> {
+            tested.incrementAndGet();
+            if (child == 1) {
+                matching.countDown();
+                return true;
+            }
+            // a long scan giving up when cancelled.
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (System.nanoTime() < deadline) {
+                if (cancelled.getAsBoolean()) {
+                    cancelledChildren.incrementAndGet();
+                    return false;
+                }
+                Thread.yield();
+            }
+            return false;
+        });
+        long start = System.nanoTime();
+        assertTrue(evaluator.matchAny(range(100)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(20), "not waited for the rest");
+        assertTrue(matching.await(1, TimeUnit.SECONDS));
+        assertTrue(tested.get() < 100, "children not started yet are skipped");
+
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(tested.get() - 1, cancelledChildren.get());
+    }
+
+    @Test
+    void testMatchAnyNotMatched() {
+        MatrixChildEvaluator<Integer> evaluator = new MatrixChildEvaluator<>(pool, (child, cancelled) -> false);
+        assertFalse(evaluator.matchAny(range(10)));
+        assertFalse(evaluator.matchAny(Collections.emptyList()));
+    }
+
+    @Test
+    void testCallerRunsWhenPoolBusy() throws Exception {
+        pool.shutdown();
+        // a shut down pool rejects all children.
+        MatrixChildEvaluator<Integer> evaluator = new MatrixChildEvaluator<>(pool, (child, cancelled) -> child > 5);
+        assertEquals(Arrays.asList(6, 7), evaluator.matchAll(range(8)));
+        assertTrue(evaluator.matchAny(range(8)));
+    }
+
+    @Test
+    void testFailure() {
+        MatrixChildEvaluator<Integer> evaluator = new MatrixChildEvaluator<>(pool, (child, cancelled) -> {
+            if (child == 3) {
+                throw new IllegalStateException("broken");
+            }
+            return false;
+        });
+        assertEquals("broken", assertThrows(IllegalStateException.class, () -> evaluator.matchAll(range(8))).getMessage());
+    }
+
+    @Test
+    void testCancelledDeadline() {
+        AtomicInteger calls = new AtomicInteger();
+        ScanDeadline deadline = ScanDeadline.after(0, null).cancelledBy(() -> calls.incrementAndGet() > 1);
+        deadline.check();
+        assertEquals(ScanResult.Status.Cancelled, assertThrows(
+                ScanDeadline.ExceededException.class,
+                deadline::check
+        ).getStatus());
+    }
+}
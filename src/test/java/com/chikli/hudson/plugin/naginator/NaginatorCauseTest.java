@@ -26,6 +26,7 @@ package com.chikli.hudson.plugin.naginator;
 
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.Result;
 import org.htmlunit.html.DomElement;
 import org.htmlunit.html.HtmlAnchor;
 import org.htmlunit.html.HtmlPage;
@@ -37,6 +38,8 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.JenkinsRule.WebClient;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
+import com.chikli.hudson.plugin.naginator.testutils.MyBuilder;
+
 import static com.chikli.hudson.plugin.naginator.testutils.TestSupport.lastBuildNumber;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -204,4 +207,39 @@ class NaginatorCauseTest {
             assertNull(unescaped);
         }
     }
+
+    @Test
+    void testMatch() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new MyBuilder("Connecting\n<div id=\"unescaped-excerpt\">Connection reset</div>", Result.FAILURE));
+        p.getPublishersList().add(new NaginatorPublisher(
+            "Connection reset", // regexForRerun
+            false,      // rerunIfUnstable
+            false,      // rerunMatrixPart
+            true,       // checkRegexp
+            1,          // maxSchedule
+            new FixedDelay(0)   // delay
+        ));
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+
+        assertEquals(2, lastBuildNumber(p));
+
+        NaginatorCause cause = p.getBuildByNumber(2).getCause(NaginatorCause.class);
+        assertNotNull(cause);
+        NaginatorMatch match = cause.getMatch();
+        assertNotNull(match);
+        assertEquals("Connection reset", match.getRegexp());
+        assertEquals("<div id=\"unescaped-excerpt\">Connection reset</div>", match.getExcerpt());
+        assertNull(match.getRun());
+
+        try (WebClient wc = j.createWebClient()) {
+            HtmlPage page = wc.getPage(p.getBuildByNumber(2));
+            assertNotNull(page.getFirstByXPath("//div[contains(@class,'naginator-match')]"));
+            assertNull(page.getElementById("unescaped-excerpt"));
+        }
+
+        // not rescheduled by regular expressions.
+        assertNull(new NaginatorCause(p.getBuildByNumber(1)).getMatch());
+    }
 }
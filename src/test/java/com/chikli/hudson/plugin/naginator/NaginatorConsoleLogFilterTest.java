@@ -0,0 +1,205 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link NaginatorConsoleLogFilter}.
+ */
+class NaginatorConsoleLogFilterTest {
+
+    private static NaginatorLogScanAction watch(ByteArrayOutputStream out, SignatureSet signatures, Charset charset, String... writes) throws IOException {
+        NaginatorLogScanAction action = new NaginatorLogScanAction(signatures);
+        NaginatorConsoleLogFilter.MatchingOutputStream stream = new NaginatorConsoleLogFilter.MatchingOutputStream(
+                out,
+                signatures,
+                charset,
+                action
+        );
+        action.setStream(stream);
+        for (String s : writes) {
+            byte[] b = s.getBytes(charset);
+            if (b.length == 1) {
+                stream.write(b[0]);
+            } else {
+                stream.write(b, 0, b.length);
+            }
+        }
+        return action;
+    }
+
+    private static NaginatorLogScanAction watch(ByteArrayOutputStream out, String regexp, Charset charset, String... writes) throws IOException {
+        return watch(out, signatures(regexp), charset, writes);
+    }
+
+    private static NaginatorLogScanAction watch(String regexp, String... writes) throws IOException {
+        return watch(new ByteArrayOutputStream(), regexp, StandardCharsets.UTF_8, writes);
+    }
+
+    private static SignatureSet signatures(String regexp) {
+        return SignatureSet.compile(regexp, null, null);
+    }
+
+    private static Boolean result(NaginatorLogScanAction action, String regexp) {
+        ScanResult result = action.getResult(signatures(regexp));
+        return (result != null) ? result.isMatched() : null;
+    }
+
+    @Test
+    void testPassThrough() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        watch(out, "Connection reset", StandardCharsets.UTF_8, "line1\n", "Connection reset\n", "l", "ine3\n");
+        assertEquals("line1\nConnection reset\nline3\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testMatch() throws Exception {
+        NaginatorLogScanAction action = watch("^Connection reset$", "line1\r\n", "Connection reset\r\n", "line3\n");
+        assertEquals(Boolean.TRUE, result(action, "^Connection reset$"));
+        assertTrue(action.isMatched());
+        assertEquals(2, action.getMatchLine());
+        assertEquals("line1\r\n".length(), action.getMatchOffset());
+    }
+
+    @Test
+    void testNotMatched() throws Exception {
+        NaginatorLogScanAction action = watch("No space left", "line1\n", "Connection reset\n");
+        assertEquals(Boolean.FALSE, result(action, "No space left"));
+        assertFalse(action.isMatched());
+        assertEquals(-1, action.getMatchLine());
+        assertEquals(-1, action.getMatchOffset());
+    }
+
+    @Test
+    void testLineSplitAcrossWrites() throws Exception {
+        NaginatorLogScanAction action = watch("^Connection reset$", "line1\nConn", "ection", " ", "\n");
+        assertEquals(Boolean.FALSE, result(action, "^Connection reset$"));
+
+        action = watch("^Connection reset$", "line1\nlin", "e2\nConn", "ection", " reset", "\n");
+        assertEquals(Boolean.TRUE, result(action, "^Connection reset$"));
+        assertEquals(3, action.getMatchLine());
+        assertEquals("line1\nline2\n".length(), action.getMatchOffset());
+    }
+
+    @Test
+    void testLastLineNotTerminated() throws Exception {
+        NaginatorLogScanAction action = watch("^Connection reset$", "line1\n", "Connection reset");
+        assertEquals(Boolean.TRUE, result(action, "^Connection reset$"));
+        assertEquals(2, action.getMatchLine());
+
+        action = watch("^Connection reset$", "line1\n", "Connection");
+        assertEquals(Boolean.FALSE, result(action, "^Connection reset$"));
+    }
+
+    @Test
+    void testOtherRegexp() throws Exception {
+        NaginatorLogScanAction action = watch("Connection reset", "Connection reset\n");
+        assertNull(result(action, "No space left"));
+    }
+
+    @Test
+    void testNotWatched() throws Exception {
+        // e.g. Jenkins restarted during the build.
+        SignatureSet signatures = signatures("Connection reset");
+        NaginatorLogScanAction action = new NaginatorLogScanAction(signatures);
+        assertNull(action.getResult(signatures));
+        action.recordMatch(signatures.getSignatures().get(0), 0, 1, "Connection reset");
+        assertEquals(Boolean.TRUE, result(action, "Connection reset"));
+        assertEquals(1, action.getResult(signatures).getMatchLine());
+        assertEquals("Connection reset", action.getResult(signatures).getExcerpt());
+
+        // not decided as signatures never to rerun may match later.
+        signatures = SignatureSet.compile("Connection reset", null, "error:");
+        action = new NaginatorLogScanAction(signatures);
+        action.recordMatch(signatures.getSignatures().get(1), 0, 1, "Connection reset");
+        assertNull(action.getResult(signatures));
+        action.recordMatch(signatures.getSignatures().get(0), 10, 2, "error: cannot find symbol");
+        assertTrue(action.getResult(signatures).getMatched().negative());
+    }
+
+    @Test
+    void testTooLongLine() throws Exception {
+        int maxLineLength = NaginatorConsoleLogFilter.MAX_LINE_LENGTH;
+        NaginatorConsoleLogFilter.MAX_LINE_LENGTH = 16;
+        try {
+            NaginatorLogScanAction action = watch("Connection reset", "0123456789", "0123456789\n", "Connection reset\n");
+            assertNull(result(action, "Connection reset"));
+
+            // still tested when the whole line is written at once.
+            action = watch("Connection reset", "01234567890123456789 Connection reset\n");
+            assertEquals(Boolean.TRUE, result(action, "Connection reset"));
+        } finally {
+            NaginatorConsoleLogFilter.MAX_LINE_LENGTH = maxLineLength;
+        }
+    }
+
+    @Test
+    void testCatastrophicBacktracking() throws Exception {
+        String regexp = "(.*a){12}x";
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 30; ++i) {
+            line.append('a');
+        }
+        line.append('\n');
+        NaginatorLogScanAction action = watch(regexp, line.toString(), "line2\n");
+        assertNull(result(action, regexp));
+    }
+
+    @Test
+    void testMultibyteCharacters() throws Exception {
+        NaginatorLogScanAction action = watch(
+                new ByteArrayOutputStream(),
+                "^\u00fcber: Verbindung zur\u00fcckgesetzt$",
+                StandardCharsets.UTF_8,
+                "caf\u00e9\n",
+                "\u00fcber: Verbindung zur\u00fcckgesetzt\n"
+        );
+        assertTrue(action.isMatched());
+        assertEquals("caf\u00e9\n".getBytes(StandardCharsets.UTF_8).length, action.getMatchOffset());
+    }
+
+    @Test
+    void testSignaturesForNoRerun() throws Exception {
+        SignatureSet signatures = SignatureSet.compile("Connection reset", "Broken pipe", "^error: ");
+        NaginatorLogScanAction action = watch(
+                new ByteArrayOutputStream(),
+                signatures,
+                StandardCharsets.UTF_8,
+                "Connection reset\n",
+                "line2\n",
+                "error: cannot find symbol\n",
+                "Broken pipe\n"
+        );
+        ScanResult result = action.getResult(signatures);
+        assertTrue(result.isMatched());
+        assertEquals("^error: ", result.getMatched().regexp());
+        assertTrue(result.getMatched().negative());
+        assertTrue(action.isMatchedNegative());
+        assertEquals(3, action.getMatchLine());
+
+        action = watch(
+                new ByteArrayOutputStream(),
+                signatures,
+                StandardCharsets.UTF_8,
+                "line1\n",
+                "Broken pipe\n"
+        );
+        result = action.getResult(signatures);
+        assertEquals("Broken pipe", result.getMatched().regexp());
+        assertFalse(action.isMatchedNegative());
+        assertEquals(2, action.getMatchLine());
+
+        // the result for other signatures is not known.
+        assertNull(action.getResult(signatures("Broken pipe")));
+    }
+}
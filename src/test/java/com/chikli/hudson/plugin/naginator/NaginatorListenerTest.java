@@ -49,6 +49,9 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 import static com.chikli.hudson.plugin.naginator.testutils.TestSupport.lastBuildNumber;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -490,6 +493,85 @@ class NaginatorListenerTest {
         j.assertBuildStatusSuccess(p.getRootModule().scheduleBuild2(0));
     }
 
+    /**
+     * Builds should be rescheduled when evaluated asynchronously,
+     * and builds not decided in time should be given up and not rescheduled.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testAsyncEvaluation() throws Exception {
+        boolean async = RetryEvaluator.ASYNC;
+        long decisionTimeoutMs = RetryEvaluator.DECISION_TIMEOUT_MS;
+        RetryEvaluator.ASYNC = true;
+        RetryEvaluator.DECISION_TIMEOUT_MS = 100;
+        // recreated with the timeout.
+        RetryEvaluator.shutdownOnTermination();
+        try {
+            FreeStyleProject undecided = j.createFreeStyleProject();
+            undecided.getBuildersList().add(new NaginatorScheduleActionTest.ScheduleActionBuilder(
+                    new NaginatorScheduleActionTest.UndecidedScheduleAction(1)
+            ));
+            undecided.getBuildersList().add(new MyBuilder("foo", Result.FAILURE));
+            j.assertBuildStatus(Result.FAILURE, undecided.scheduleBuild2(0).get());
+            awaitEvaluated();
+            assertEquals(1, lastBuildNumber(undecided));
+
+            FreeStyleProject late = j.createFreeStyleProject();
+            late.getBuildersList().add(new NaginatorScheduleActionTest.ScheduleActionBuilder(
+                    new LateScheduleAction()
+            ));
+            late.getBuildersList().add(new MyBuilder("foo", Result.FAILURE));
+            j.assertBuildStatus(Result.FAILURE, late.scheduleBuild2(0).get());
+            awaitEvaluated();
+            // decided after given up.
+            Thread.sleep(LateScheduleAction.DELAY_MS * 2);
+            j.waitUntilNoActivity();
+            assertEquals(1, lastBuildNumber(late));
+
+            FreeStyleProject p = j.createFreeStyleProject();
+            p.getBuildersList().add(new MyBuilder("foo", Result.FAILURE));
+            p.getPublishersList().add(new NaginatorPublisher("foo", false, false, false, 1, new FixedDelay(0)));
+            j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+            awaitEvaluated();
+            j.waitUntilNoActivity();
+            awaitEvaluated();
+            assertEquals(2, lastBuildNumber(p));
+        } finally {
+            RetryEvaluator.ASYNC = async;
+            RetryEvaluator.DECISION_TIMEOUT_MS = decisionTimeoutMs;
+            RetryEvaluator.shutdownOnTermination();
+        }
+    }
+
+    /**
+     * Decides to reschedule after the decision timeout of {@link #testAsyncEvaluation()}.
+     */
+    private static class LateScheduleAction extends NaginatorScheduleAction {
+        static final long DELAY_MS = 500;
+
+        LateScheduleAction() {
+            super(1, new FixedDelay(0), false);
+        }
+
+        @NonNull
+        @Override
+        public CompletionStage<ScheduleDecision> shouldScheduleAsync(@NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
+            return CompletableFuture.supplyAsync(
+                    ScheduleDecision::schedule,
+                    CompletableFuture.delayedExecutor(DELAY_MS, TimeUnit.MILLISECONDS)
+            );
+        }
+    }
+
+    private static void awaitEvaluated() throws InterruptedException {
+        long until = System.currentTimeMillis() + 10000;
+        while (RetryEvaluator.get().getPendingCount() > 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, RetryEvaluator.get().getPendingCount());
+    }
+
     private static String createUniqueProjectName() {
         return "test" + System.currentTimeMillis();
     }
@@ -48,8 +48,10 @@ import java.lang.reflect.Field;
 
 import static com.chikli.hudson.plugin.naginator.testutils.TestSupport.lastBuildNumber;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Tests for {@link NaginatorPublisher}.
@@ -499,6 +501,206 @@ class NaginatorPublisherTest {
         j.assertEqualDataBoundBeans(expected, p.getPublishersList().get(NaginatorPublisher.class));
     }
 
+    /**
+     * Test the configuration to read logs is preserved.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testConfigurationForLogScanMode() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        NaginatorPublisher naginator = new NaginatorPublisher(
+                "Some regular expression",
+                false,  // rerunIfUnstable
+                false,  // retunMatrixPart
+                true,   // checkRegexp
+                1,      // maxSchedule
+                new FixedDelay(0)
+        );
+        naginator.setLogScanMode(LogScanMode.TailFirst);
+        naginator.setTailScanBytes(512 * 1024);
+        p.getPublishersList().add(naginator);
+
+        j.configRoundtrip(p);
+
+        NaginatorPublisher actual = p.getPublishersList().get(NaginatorPublisher.class);
+        assertEquals(LogScanMode.TailFirst, actual.getLogScanMode());
+        assertEquals(512 * 1024, actual.getTailScanBytes());
+    }
+
+    @Test
+    void testConfigurationForSignatures() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        NaginatorPublisher naginator = new NaginatorPublisher(
+                "Some regular expression",
+                false,  // rerunIfUnstable
+                false,  // retunMatrixPart
+                true,   // checkRegexp
+                1,      // maxSchedule
+                new FixedDelay(0)
+        );
+        naginator.setAdditionalRegexpsForRerun("Connection reset\nBroken pipe");
+        naginator.setRegexpsForNoRerun("^error: ");
+        p.getPublishersList().add(naginator);
+
+        j.configRoundtrip(p);
+
+        NaginatorPublisher actual = p.getPublishersList().get(NaginatorPublisher.class);
+        assertEquals("Connection reset\nBroken pipe", actual.getAdditionalRegexpsForRerun());
+        assertEquals("^error: ", actual.getRegexpsForNoRerun());
+    }
+
+    @Test
+    void testSignatures() throws Exception {
+        testSignatures(false);
+    }
+
+    @Test
+    void testSignaturesWithoutStreaming() throws Exception {
+        boolean disabled = NaginatorConsoleLogFilter.DISABLED;
+        NaginatorConsoleLogFilter.DISABLED = true;
+        try {
+            testSignatures(true);
+        } finally {
+            NaginatorConsoleLogFilter.DISABLED = disabled;
+        }
+    }
+
+    private void testSignatures(boolean scanned) throws Exception {
+        // an additional regular expression to rerun.
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new MyBuilder("Broken pipe", Result.FAILURE));
+        NaginatorPublisher naginator = new NaginatorPublisher(
+                "Connection reset",
+                false,  // rerunIfUnstable
+                false,  // retunMatrixPart
+                true,   // checkRegexp
+                1,      // maxSchedule
+                new FixedDelay(0)
+        );
+        naginator.setAdditionalRegexpsForRerun("Broken pipe");
+        naginator.setRegexpsForNoRerun("^error: ");
+        p.getPublishersList().add(naginator);
+
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+        assertEquals(2, lastBuildNumber(p));
+        assertEquals(scanned, p.getBuildByNumber(1).getAction(NaginatorLogScanAction.class) == null);
+
+        // a regular expression never to rerun wins.
+        p = j.createFreeStyleProject();
+        p.getBuildersList().add(new MyBuilder("Connection reset\nerror: cannot find symbol", Result.FAILURE));
+        p.getPublishersList().add(naginator);
+
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+        assertEquals(1, lastBuildNumber(p));
+        j.assertLogContains("[Naginator] Not rerun as the log matched '^error: '", p.getBuildByNumber(1));
+
+        // rerun unless regular expressions never to rerun match.
+        p = j.createFreeStyleProject();
+        p.getBuildersList().add(new MyBuilder("Some failure", Result.FAILURE));
+        naginator = new NaginatorPublisher(
+                "",
+                false,  // rerunIfUnstable
+                false,  // retunMatrixPart
+                true,   // checkRegexp
+                1,      // maxSchedule
+                new FixedDelay(0)
+        );
+        naginator.setRegexpsForNoRerun("^error: ");
+        p.getPublishersList().add(naginator);
+
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+        assertEquals(2, lastBuildNumber(p));
+    }
+
+    /**
+     * {@link LogScanMode#TailFirst} should find the regular expression
+     * in the last bytes of the log.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testTailFirstScan() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new MyBuilder("Connection reset", Result.FAILURE));
+        NaginatorPublisher naginator = new NaginatorPublisher(
+                "Connection reset",
+                false,  // rerunIfUnstable
+                false,  // retunMatrixPart
+                true,   // checkRegexp
+                1,      // maxSchedule
+                new FixedDelay(0)
+        );
+        naginator.setLogScanMode(LogScanMode.TailFirst);
+        naginator.setTailScanBytes(64 * 1024);
+        p.getPublishersList().add(naginator);
+
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+
+        assertEquals(2, lastBuildNumber(p));
+    }
+
+    @Test
+    void testStreamingScan() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new MyBuilder("Connection reset", Result.FAILURE));
+        NaginatorPublisher naginator = new NaginatorPublisher(
+                "Connection reset",
+                false,  // rerunIfUnstable
+                false,  // retunMatrixPart
+                true,   // checkRegexp
+                1,      // maxSchedule
+                new FixedDelay(0)
+        );
+        p.getPublishersList().add(naginator);
+
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+
+        assertEquals(2, lastBuildNumber(p));
+        NaginatorLogScanAction action = p.getBuildByNumber(1).getAction(NaginatorLogScanAction.class);
+        assertNotNull(action);
+        assertEquals("Connection reset", action.getMatchedRegexp());
+        assertTrue(action.isMatched());
+        assertTrue(action.getMatchLine() > 0);
+        assertTrue(action.getMatchOffset() >= 0);
+
+        // not recorded when only the tail is scanned.
+        naginator.setLogScanMode(LogScanMode.TailFirst);
+        naginator.setTailScanBytes(64 * 1024);
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+        assertNull(p.getBuildByNumber(3).getAction(NaginatorLogScanAction.class));
+    }
+
+    @Test
+    void testStreamingScanNotMatched() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new MyBuilder("Connection reset", Result.FAILURE));
+        NaginatorPublisher naginator = new NaginatorPublisher(
+                "No space left on device",
+                false,  // rerunIfUnstable
+                false,  // retunMatrixPart
+                true,   // checkRegexp
+                1,      // maxSchedule
+                new FixedDelay(0)
+        );
+        p.getPublishersList().add(naginator);
+
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+
+        assertEquals(1, lastBuildNumber(p));
+        NaginatorLogScanAction action = p.getBuildByNumber(1).getAction(NaginatorLogScanAction.class);
+        assertNotNull(action);
+        assertFalse(action.isMatched());
+        assertEquals(-1, action.getMatchLine());
+    }
+
     @Test
     void testRegexpTimeoutMsInSystemConfiguration() throws Exception {
         NaginatorPublisher.DescriptorImpl d = (NaginatorPublisher.DescriptorImpl)j.jenkins.getDescriptor(NaginatorPublisher.class);
@@ -24,6 +24,7 @@
 
 package com.chikli.hudson.plugin.naginator;
 
+import com.chikli.hudson.plugin.naginator.testutils.MyBuilder;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Launcher;
 import hudson.matrix.Axis;
@@ -36,6 +37,7 @@ import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.Builder;
@@ -45,6 +47,10 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static com.chikli.hudson.plugin.naginator.testutils.TestSupport.lastBuildNumber;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -132,6 +138,82 @@ class NaginatorScheduleActionTest {
         }
     }
 
+    /**
+     * Decides on another thread, with a delay overriding the one of the action
+     * and children selected by a filter.
+     */
+    private static class AsyncScheduleAction extends NaginatorScheduleAction {
+        private final String combinationFilter;
+
+        public AsyncScheduleAction(int maxSchedule, String combinationFilter) {
+            // rescheduled in 5 minutes without the delay of the decision.
+            super(maxSchedule, null, combinationFilter != null);
+            this.combinationFilter = combinationFilter;
+        }
+
+        @NonNull
+        @Override
+        public CompletionStage<ScheduleDecision> shouldScheduleAsync(@NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
+            if (retryCount >= getMaxSchedule()) {
+                return CompletableFuture.completedFuture(ScheduleDecision.skip("retried enough"));
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                ScheduleDecision decision = ScheduleDecision.schedule()
+                        .withReason("looked up")
+                        .withDelay(new FixedDelay(0));
+                if (combinationFilter == null) {
+                    return decision;
+                }
+                MatrixBuild b = (MatrixBuild) run;
+                List<Combination> combinations = new ArrayList<Combination>();
+                for (MatrixRun r : b.getExactRuns()) {
+                    Combination c = r.getParent().getCombination();
+                    if (c.evalGroovyExpression(b.getParent().getAxes(), combinationFilter)) {
+                        combinations.add(c);
+                    }
+                }
+                return decision.withCombinations(combinations);
+            });
+        }
+    }
+
+    /**
+     * Never decides.
+     */
+    static class UndecidedScheduleAction extends NaginatorScheduleAction {
+        public UndecidedScheduleAction(int maxSchedule) {
+            super(maxSchedule, new FixedDelay(0), false);
+        }
+
+        @NonNull
+        @Override
+        public CompletionStage<ScheduleDecision> shouldScheduleAsync(@NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
+            return new CompletableFuture<ScheduleDecision>();
+        }
+    }
+
+    /**
+     * Never decides, but can be tested with results.
+     */
+    private static class UndecidedPublisherScheduleAction extends NaginatorPublisherScheduleAction {
+        public UndecidedPublisherScheduleAction(int maxSchedule) {
+            super(new NaginatorPublisher(
+                    "",
+                    false,  // rerunIfUnstable
+                    false,  // rerunMatrixPart
+                    false,  // checkRegexp
+                    maxSchedule,
+                    new FixedDelay(0)
+            ));
+        }
+
+        @NonNull
+        @Override
+        public CompletionStage<ScheduleDecision> shouldScheduleAsync(@NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
+            return new CompletableFuture<ScheduleDecision>();
+        }
+    }
+
     /**
      * {@link NaginatorScheduleAction#shouldSchedule(Run, TaskListener, int)}
      * should be true only while <code>retryCount</code> is
@@ -509,4 +591,205 @@ class NaginatorScheduleActionTest {
         assertNotNull(b.getExactRun(new Combination(axes, "2", "1")));
         assertNull(b.getExactRun(new Combination(axes, "2", "2")));
     }
+
+    /**
+     * {@link NaginatorScheduleAction#shouldScheduleAsync(Run, TaskListener, int)}
+     * should be called by default with {@link NaginatorScheduleAction#shouldSchedule(Run, TaskListener, int)}.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testShouldScheduleAsyncAdapter() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        FreeStyleBuild b = p.scheduleBuild2(0).get();
+
+        NaginatorScheduleAction target = new NaginatorScheduleAction(2);
+        ScheduleDecision decision = target.shouldScheduleAsync(b, TaskListener.NULL, 1).toCompletableFuture().get();
+        assertTrue(decision.isSchedule());
+        assertNull(decision.getDelay());
+        assertNull(decision.getCombinations());
+        assertFalse(target.shouldScheduleAsync(b, TaskListener.NULL, 2).toCompletableFuture().get().isSchedule());
+
+        target = new AlwaysFalseScheduleAction(2, new FixedDelay(0), false);
+        assertFalse(target.shouldScheduleAsync(b, TaskListener.NULL, 0).toCompletableFuture().get().isSchedule());
+    }
+
+    /**
+     * {@link NaginatorScheduleAction#shouldScheduleAsync(Run, TaskListener, int)}
+     * completing on another thread should reschedule the build
+     * with the delay of the decision.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testAsyncDecision() throws Exception {
+        final int maxSchedule = 2;
+
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new ScheduleActionBuilder(
+                new AsyncScheduleAction(maxSchedule, null)
+        ));
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+
+        assertEquals(maxSchedule + 1, lastBuildNumber(p));
+    }
+
+    /**
+     * Children in the decision of {@link NaginatorScheduleAction#shouldScheduleAsync(Run, TaskListener, int)}
+     * should be rescheduled.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testAsyncDecisionWithCombinations() throws Exception {
+        final int maxSchedule = 1;
+
+        MatrixProject p = j.createProject(MatrixProject.class);
+        AxisList axes = new AxisList(
+                new Axis("axis1", "1", "2"),
+                new Axis("axis2", "1", "2")
+        );
+        p.setAxes(axes);
+        p.getBuildersList().add(new ScheduleActionBuilder(
+                new AsyncScheduleAction(maxSchedule, "axis1=='1'")
+        ));
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+
+        assertEquals(maxSchedule + 1, lastBuildNumber(p));
+
+        MatrixBuild b = p.getLastBuild();
+        assertNotNull(b);
+        assertNotNull(b.getExactRun(new Combination(axes, "1", "1")));
+        assertNotNull(b.getExactRun(new Combination(axes, "1", "2")));
+        assertNull(b.getExactRun(new Combination(axes, "2", "1")));
+        assertNull(b.getExactRun(new Combination(axes, "2", "2")));
+    }
+
+    /**
+     * Builds not decided in the decision budget should not be rescheduled
+     * with {@link DecisionBudgetPolicy#Skip}.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testDecisionBudgetSkip() throws Exception {
+        NaginatorPublisher.DescriptorImpl d = j.jenkins.getDescriptorByType(NaginatorPublisher.DescriptorImpl.class);
+        d.setDecisionBudgetMs(100);
+        d.setDecisionBudgetPolicy(DecisionBudgetPolicy.Skip);
+        try {
+            FreeStyleProject p = j.createFreeStyleProject();
+            p.getBuildersList().add(new ScheduleActionBuilder(
+                    new UndecidedScheduleAction(1)
+            ));
+            FreeStyleBuild b = p.scheduleBuild2(0).get();
+            j.waitUntilNoActivity();
+
+            assertEquals(1, lastBuildNumber(p));
+            j.assertLogContains("The decision budget of 100 ms was exhausted while waiting for schedule actions to decide.", b);
+            j.assertLogContains("Not rescheduled.", b);
+        } finally {
+            d.setDecisionBudgetMs(0);
+            d.setDecisionBudgetPolicy(null);
+        }
+    }
+
+    /**
+     * Failed builds not decided in the decision budget should be rescheduled
+     * within the maximum times with {@link DecisionBudgetPolicy#Retry}.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testDecisionBudgetRetry() throws Exception {
+        final int maxSchedule = 1;
+        NaginatorPublisher.DescriptorImpl d = j.jenkins.getDescriptorByType(NaginatorPublisher.DescriptorImpl.class);
+        d.setDecisionBudgetMs(100);
+        d.setDecisionBudgetPolicy(DecisionBudgetPolicy.Retry);
+        try {
+            FreeStyleProject p = j.createFreeStyleProject();
+            p.getBuildersList().add(new ScheduleActionBuilder(
+                    new UndecidedPublisherScheduleAction(maxSchedule)
+            ));
+            p.getBuildersList().add(new MyBuilder("failure", Result.FAILURE));
+            p.scheduleBuild2(0);
+            j.waitUntilNoActivity();
+
+            assertEquals(maxSchedule + 1, lastBuildNumber(p));
+            j.assertLogContains("Rescheduling the build without testing the log.", p.getBuildByNumber(1));
+            j.assertLogContains("Not rescheduled as the build cannot be rescheduled without deciding.", p.getLastBuild());
+        } finally {
+            d.setDecisionBudgetMs(0);
+            d.setDecisionBudgetPolicy(null);
+        }
+    }
+
+    /**
+     * Successful builds not decided in the decision budget should not be rescheduled
+     * even with {@link DecisionBudgetPolicy#Retry}.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testDecisionBudgetRetrySuccess() throws Exception {
+        NaginatorPublisher.DescriptorImpl d = j.jenkins.getDescriptorByType(NaginatorPublisher.DescriptorImpl.class);
+        d.setDecisionBudgetMs(100);
+        d.setDecisionBudgetPolicy(DecisionBudgetPolicy.Retry);
+        try {
+            FreeStyleProject p = j.createFreeStyleProject();
+            p.getBuildersList().add(new ScheduleActionBuilder(
+                    new UndecidedPublisherScheduleAction(1)
+            ));
+            FreeStyleBuild b = p.scheduleBuild2(0).get();
+            j.waitUntilNoActivity();
+
+            assertEquals(1, lastBuildNumber(p));
+            j.assertLogContains("Not rescheduled as the build cannot be rescheduled without deciding.", b);
+        } finally {
+            d.setDecisionBudgetMs(0);
+            d.setDecisionBudgetPolicy(null);
+        }
+    }
+
+    /**
+     * Regular expressions of all actions should be tested in a single pass over the log,
+     * and each action should be decided with its own.
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFusedLogScan() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new ScheduleActionBuilder(
+                new NaginatorPublisherScheduleAction(new NaginatorPublisher(
+                        "No space left",
+                        false,  // rerunIfUnstable
+                        false,  // rerunMatrixPart
+                        true,   // checkRegexp
+                        1,      // maxSchedule
+                        new FixedDelay(0)
+                )),
+                new NaginatorPublisherScheduleAction(new NaginatorPublisher(
+                        "Connection reset",
+                        false,  // rerunIfUnstable
+                        false,  // rerunMatrixPart
+                        true,   // checkRegexp
+                        1,      // maxSchedule
+                        new FixedDelay(0)
+                ))
+        ));
+        p.getBuildersList().add(new MyBuilder("Connection reset", Result.FAILURE));
+
+        long admitted = ScanAdmission.get().getAdmittedCount();
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+
+        assertEquals(2, lastBuildNumber(p));
+        NaginatorCause cause = p.getBuildByNumber(2).getCause(NaginatorCause.class);
+        assertNotNull(cause);
+        assertEquals("Connection reset", cause.getMatch().getRegexp());
+        // the second build isn't scanned as rescheduled enough times.
+        assertEquals(admitted + 1, ScanAdmission.get().getAdmittedCount());
+    }
 }
@@ -0,0 +1,56 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link PatternCache}.
+ */
+class PatternCacheTest {
+
+    @Test
+    void testSharedPattern() {
+        PatternCache cache = new PatternCache(10);
+        Pattern p = cache.get("Connection reset", 0);
+        assertSame(p, cache.get("Connection reset", 0));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testFlagsArePartOfKey() {
+        PatternCache cache = new PatternCache(10);
+        Pattern p1 = cache.get("Connection reset", 0);
+        Pattern p2 = cache.get("Connection reset", Pattern.CASE_INSENSITIVE);
+        assertNotSame(p1, p2);
+        assertEquals(Pattern.CASE_INSENSITIVE, p2.flags());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        PatternCache cache = new PatternCache(2);
+        Pattern a = cache.get("a", 0);
+        Pattern b = cache.get("b", 0);
+        // "a" is now used more recently than "b".
+        assertSame(a, cache.get("a", 0));
+        cache.get("c", 0);
+
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a", 0));
+        assertNotSame(b, cache.get("b", 0));
+    }
+
+    @Test
+    void testInvalidPattern() {
+        PatternCache cache = new PatternCache(10);
+        assertThrows(PatternSyntaxException.class, () -> cache.get("(unclosed", 0));
+        assertEquals(0, cache.size());
+    }
+}
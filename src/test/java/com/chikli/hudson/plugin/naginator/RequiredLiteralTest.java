@@ -0,0 +1,104 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link RequiredLiteral}.
+ */
+class RequiredLiteralTest {
+
+    private static void assertLiteral(String expected, boolean pure, String regexp) {
+        RequiredLiteral literal = RequiredLiteral.of(Pattern.compile(regexp));
+        assertEquals(expected, (literal != null) ? literal.getLiteral() : null, regexp);
+        if (literal != null) {
+            assertEquals(pure, literal.isPure(), regexp);
+        }
+    }
+
+    @Test
+    void testPureLiterals() {
+        assertLiteral("OutOfMemoryError", true, "OutOfMemoryError");
+        assertLiteral("Connection timed out", true, "Connection timed out");
+        assertLiteral("java.lang.OutOfMemoryError", true, "java\\.lang\\.OutOfMemoryError");
+        assertLiteral("a+b", true, "\\Qa+b\\E");
+        assertLiteral("xa+b", true, "x\\Qa+b\\E");
+        assertLiteral("tab\there", true, "tab\\there");
+        assertLiteral("x", true, "x");
+        assertLiteral("!", true, "\\!");
+    }
+
+    @Test
+    void testRequiredLiterals() {
+        assertLiteral("java.lang.OutOfMemoryError: ", false, "java\\.lang\\.OutOfMemoryError: .*heap");
+        assertLiteral("Connection timed out", false, "^Connection timed out$");
+        assertLiteral("Connection ", false, "Connection (reset|refused)");
+        assertLiteral(" failed", false, "[A-Z]+ failed");
+        assertLiteral("ms timed out", false, "\\d+ms timed out");
+        // characters made optional by quantifiers.
+        assertLiteral("Connection", false, "Connections?");
+        assertLiteral("rror: ", false, "E?rror: ");
+        assertLiteral("def", false, "abc*def");
+        assertLiteral("abc", false, "abcd{0,2}ef");
+        assertLiteral("abc", false, "abc+def");
+        assertLiteral("abc", false, "abc{2}def");
+        assertLiteral("def", false, "ab??def");
+        assertLiteral("no match", false, "(?<name>x)no match\\k<name>");
+        assertLiteral("some", false, "\\p{Alpha}some\\pL");
+    }
+
+    @Test
+    void testNoLiterals() {
+        assertLiteral(null, false, "Connection reset|Broken pipe");
+        assertLiteral(null, false, ".*");
+        assertLiteral(null, false, "a.b.c");
+        assertLiteral(null, false, "(?i)OutOfMemoryError");
+        assertLiteral(null, false, "Out(?i:OfMemoryError)");
+        assertLiteral(null, false, "(?x) Out Of Memory");
+        assertLiteral(null, false, "\\x41BCDEF");
+        assertLiteral(null, false, "\\u0041BCDEF");
+        assertLiteral(null, false, "");
+        assertNull(RequiredLiteral.of(Pattern.compile("OutOfMemoryError", Pattern.CASE_INSENSITIVE)));
+    }
+
+    @Test
+    void testLiteralFlag() {
+        RequiredLiteral literal = RequiredLiteral.of(Pattern.compile("a+b|c", Pattern.LITERAL));
+        assertEquals("a+b|c", literal.getLiteral());
+        assertTrue(literal.isPure());
+    }
+
+    @Test
+    void testIsFoundIn() {
+        RequiredLiteral literal = RequiredLiteral.of(Pattern.compile("timed out"));
+        assertTrue(literal.isFoundIn("Connection timed out"));
+        assertTrue(literal.isFoundIn("timed out"));
+        assertFalse(literal.isFoundIn("timed ou"));
+        assertFalse(literal.isFoundIn("timed  out"));
+        assertFalse(literal.isFoundIn(""));
+    }
+
+    @Test
+    void testEncode() {
+        RequiredLiteral ascii = RequiredLiteral.of(Pattern.compile("timed out"));
+        assertArrayEquals("timed out".getBytes(StandardCharsets.US_ASCII), ascii.encode(StandardCharsets.UTF_8));
+        assertArrayEquals("timed out".getBytes(StandardCharsets.US_ASCII), ascii.encode(Charset.forName("Shift_JIS")));
+
+        RequiredLiteral nonAscii = RequiredLiteral.of(Pattern.compile("zur\u00FCckgesetzt"));
+        assertArrayEquals("zur\u00FCckgesetzt".getBytes(StandardCharsets.UTF_8), nonAscii.encode(StandardCharsets.UTF_8));
+        assertArrayEquals("zur\u00FCckgesetzt".getBytes(StandardCharsets.ISO_8859_1), nonAscii.encode(StandardCharsets.ISO_8859_1));
+        // bytes of the literal may appear across characters.
+        assertNull(nonAscii.encode(Charset.forName("Shift_JIS")));
+
+        assertNull(RequiredLiteral.of(Pattern.compile("a\uFFFDb")).encode(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,234 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link RetryEvaluator}.
+ */
+class RetryEvaluatorTest {
+
+    @TempDir
+    File tmp;
+
+    /**
+     * Records evaluated builds, and blocks evaluating {@link #blocked} until released.
+     */
+    private static final class Recorder implements RetryEvaluator.Evaluation {
+        final List<String> evaluated = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done;
+        final String blocked;
+
+        Recorder(String blocked, int expected) {
+            this.blocked = blocked;
+            this.done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public CompletionStage<?> evaluate(String buildId, int retryCount, DecisionBudget budget) throws Exception {
+            if (buildId.equals(blocked)) {
+                started.countDown();
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+            }
+            evaluated.add(buildId + ":" + retryCount);
+            threads.add(Thread.currentThread());
+            done.countDown();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static void awaitNoPending(RetryEvaluator evaluator) throws InterruptedException {
+        long until = System.currentTimeMillis() + 10000;
+        while (evaluator.getPendingCount() > 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, evaluator.getPendingCount());
+    }
+
+    @Test
+    void testEvaluate() throws Exception {
+        File file = new File(tmp, "pending.xml");
+        Recorder recorder = new Recorder(null, 2);
+        RetryEvaluator evaluator = new RetryEvaluator(file, 1, 10, 10000, recorder);
+        try {
+            evaluator.submit("job#1", 0);
+            evaluator.submit("job#2", 1);
+            assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+            assertEquals(List.of("job#1:0", "job#2:1"), recorder.evaluated);
+            assertFalse(recorder.threads.contains(Thread.currentThread()));
+        } finally {
+            evaluator.shutdown(1000);
+        }
+        assertEquals(0, evaluator.getPendingCount());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void testFailure() throws Exception {
+        File file = new File(tmp, "pending.xml");
+        CountDownLatch done = new CountDownLatch(2);
+        RetryEvaluator evaluator = new RetryEvaluator(file, 1, 10, 10000, (buildId, retryCount, budget) -> {
+            done.countDown();
+            throw new IllegalStateException("failed");
+        });
+        try {
+            evaluator.submit("job#1", 0);
+            // the pool still works.
+            evaluator.submit("job#2", 0);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            evaluator.shutdown(1000);
+        }
+        // not evaluated again.
+        assertEquals(0, evaluator.getPendingCount());
+    }
+
+    @Test
+    void testAsyncDecision() throws Exception {
+        File file = new File(tmp, "pending.xml");
+        CompletableFuture<Void> decision = new CompletableFuture<>();
+        CountDownLatch evaluated = new CountDownLatch(1);
+        RetryEvaluator evaluator = new RetryEvaluator(file, 1, 1, 10000, (buildId, retryCount, budget) -> {
+            if (buildId.equals("job#1")) {
+                return decision;
+            }
+            evaluated.countDown();
+            return CompletableFuture.completedFuture(null);
+        });
+        try {
+            evaluator.submit("job#1", 0);
+            // the only thread isn't blocked while job#1 is being decided.
+            evaluator.submit("job#2", 0);
+            assertTrue(evaluated.await(10, TimeUnit.SECONDS));
+            assertTrue(file.exists());
+
+            decision.complete(null);
+            awaitNoPending(evaluator);
+            assertFalse(file.exists());
+        } finally {
+            evaluator.shutdown(1000);
+        }
+    }
+
+    @Test
+    void testDecisionTimeout() throws Exception {
+        File file = new File(tmp, "pending.xml");
+        CountDownLatch evaluated = new CountDownLatch(1);
+        RetryEvaluator evaluator = new RetryEvaluator(file, 1, 1, 100, (buildId, retryCount, budget) -> {
+            if (buildId.equals("job#3")) {
+                evaluated.countDown();
+                return CompletableFuture.completedFuture(null);
+            }
+            // never decided.
+            return new CompletableFuture<Void>();
+        });
+        try {
+            evaluator.submit("job#1", 0);
+            evaluator.submit("job#2", 0);
+            // evaluated once builds not decided are given up.
+            evaluator.submit("job#3", 0);
+            assertTrue(evaluated.await(10, TimeUnit.SECONDS));
+            awaitNoPending(evaluator);
+            assertFalse(file.exists());
+        } finally {
+            evaluator.shutdown(1000);
+        }
+    }
+
+    /**
+     * Decisions completing after the decision timeout should not reschedule the build,
+     * as {@link NaginatorListener} refuses to schedule with the exhausted budget.
+     */
+    @Test
+    void testLateDecision() throws Exception {
+        File file = new File(tmp, "pending.xml");
+        CompletableFuture<ScheduleDecision> decision = new CompletableFuture<>();
+        CompletableFuture<Boolean> scheduled = new CompletableFuture<>();
+        RetryEvaluator evaluator = new RetryEvaluator(file, 1, 1, 100, (buildId, retryCount, budget) ->
+                decision.thenAccept(d -> scheduled.complete(d.isSchedule() && budget.beginSchedule()))
+        );
+        try {
+            evaluator.submit("job#1", 0);
+            awaitNoPending(evaluator);
+            assertFalse(file.exists());
+
+            decision.complete(ScheduleDecision.schedule());
+            assertFalse(scheduled.get(10, TimeUnit.SECONDS));
+        } finally {
+            evaluator.shutdown(1000);
+        }
+    }
+
+    @Test
+    void testCallerRunsWhenFull() throws Exception {
+        File file = new File(tmp, "pending.xml");
+        Recorder recorder = new Recorder("job#1", 3);
+        RetryEvaluator evaluator = new RetryEvaluator(file, 1, 1, 10000, recorder);
+        try {
+            evaluator.submit("job#1", 0);
+            assertTrue(recorder.started.await(10, TimeUnit.SECONDS));
+            evaluator.submit("job#2", 0);
+            assertEquals(1, evaluator.getQueuedCount());
+
+            // the queue is full.
+            evaluator.submit("job#3", 0);
+            assertEquals(List.of("job#3:0"), recorder.evaluated);
+            assertSame(Thread.currentThread(), recorder.threads.get(0));
+
+            recorder.release.countDown();
+            assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+        } finally {
+            recorder.release.countDown();
+            evaluator.shutdown(1000);
+        }
+    }
+
+    @Test
+    void testRecover() throws Exception {
+        File file = new File(tmp, "pending.xml");
+        Recorder blocking = new Recorder("job#1", 2);
+        RetryEvaluator stopped = new RetryEvaluator(file, 1, 10, 10000, blocking);
+        try {
+            stopped.submit("job#1", 0);
+            assertTrue(blocking.started.await(10, TimeUnit.SECONDS));
+            stopped.submit("job#2", 3);
+            // evaluated only once.
+            stopped.submit("job#2", 3);
+            assertEquals(2, stopped.getPendingCount());
+            assertTrue(file.exists());
+            stopped.shutdown(0);
+
+            // Jenkins restarted before evaluating them.
+            Recorder recorder = new Recorder(null, 2);
+            RetryEvaluator restarted = new RetryEvaluator(file, 1, 10, 10000, recorder);
+            try {
+                restarted.recover();
+                assertTrue(recorder.done.await(10, TimeUnit.SECONDS));
+                assertEquals(List.of("job#1:0", "job#2:3"), recorder.evaluated);
+            } finally {
+                restarted.shutdown(1000);
+            }
+        } finally {
+            blocking.release.countDown();
+            stopped.shutdown(1000);
+        }
+        assertEquals(List.of("job#1:0"), blocking.evaluated);
+    }
+}
@@ -0,0 +1,119 @@
+package com.chikli.hudson.plugin.naginator;
+
+import com.chikli.hudson.plugin.naginator.testutils.MyBuilder;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.chikli.hudson.plugin.naginator.testutils.TestSupport.lastBuildNumber;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link RetryPredicate}.
+ */
+@WithJenkins
+class RetryPredicateTest {
+
+    private static JenkinsRule j;
+
+    @BeforeAll
+    static void setUp(JenkinsRule rule) {
+        j = rule;
+    }
+
+    private static class Recorder extends RetryPredicate {
+        private final Cost cost;
+        private final boolean result;
+        final AtomicInteger tested = new AtomicInteger();
+
+        Recorder(Cost cost, boolean result) {
+            this.cost = cost;
+            this.result = result;
+        }
+
+        @NonNull
+        @Override
+        public Cost getCost() {
+            return cost;
+        }
+
+        @Override
+        public boolean test(@NonNull NaginatorPublisherScheduleAction action, @NonNull Run<?, ?> run, @NonNull TaskListener listener, int retryCount) {
+            tested.incrementAndGet();
+            return result;
+        }
+    }
+
+    @Test
+    void testSort() {
+        Recorder scan = new Recorder(RetryPredicate.Cost.LogScan, true);
+        Recorder metadata = new Recorder(RetryPredicate.Cost.Metadata, true);
+        Recorder result1 = new Recorder(RetryPredicate.Cost.Result, true);
+        Recorder result2 = new Recorder(RetryPredicate.Cost.Result, true);
+        assertEquals(
+                List.of(result1, result2, metadata, scan),
+                RetryPredicate.sort(List.of(scan, result1, metadata, result2))
+        );
+    }
+
+    @Test
+    void testBuiltinOrder() {
+        List<RetryPredicate> predicates = RetryPredicate.all();
+        assertTrue(predicates.get(0) instanceof RetryPredicate.ResultPredicate);
+        assertTrue(predicates.get(1) instanceof RetryPredicate.RetryCountPredicate);
+        assertTrue(predicates.get(predicates.size() - 1) instanceof RetryPredicate.RegexpPredicate);
+    }
+
+    /**
+     * Vetoes all builds before the log is scanned.
+     */
+    @TestExtension("testShortCircuit")
+    public static class Veto extends Recorder {
+        public Veto() {
+            super(Cost.Metadata, false);
+        }
+    }
+
+    /**
+     * Should never be tested as {@link Veto} is cheaper.
+     */
+    @TestExtension("testShortCircuit")
+    public static class ExpensiveLookup extends Recorder {
+        public ExpensiveLookup() {
+            super(Cost.LogScan, true);
+        }
+    }
+
+    @Test
+    void testShortCircuit() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.getBuildersList().add(new MyBuilder("Connection reset", Result.FAILURE));
+        p.getPublishersList().add(new NaginatorPublisher(
+                "Connection reset",
+                false,  // rerunIfUnstable
+                false,  // rerunMatrixPart
+                true,   // checkRegexp
+                1,      // maxSchedule
+                new FixedDelay(0)
+        ));
+
+        p.scheduleBuild2(0);
+        j.waitUntilNoActivity();
+
+        // vetoed though the log matches.
+        assertEquals(1, lastBuildNumber(p));
+        assertEquals(1, j.jenkins.getExtensionList(RetryPredicate.class).get(Veto.class).tested.get());
+        assertEquals(0, j.jenkins.getExtensionList(RetryPredicate.class).get(ExpensiveLookup.class).tested.get());
+    }
+}
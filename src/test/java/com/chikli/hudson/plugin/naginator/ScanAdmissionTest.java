@@ -0,0 +1,182 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link ScanAdmission}.
+ */
+class ScanAdmissionTest {
+
+    @Test
+    void testNoLimit() throws Exception {
+        ScanAdmission admission = new ScanAdmission();
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(admission.acquire(null));
+        }
+        assertEquals(100, admission.getRunningCount());
+        assertEquals(100, admission.getAdmittedCount());
+        for (int i = 0; i < 100; ++i) {
+            admission.release();
+        }
+        assertEquals(0, admission.getRunningCount());
+    }
+
+    @Test
+    void testWaitForRelease() throws Exception {
+        ScanAdmission admission = new ScanAdmission();
+        admission.setLimits(2, 0, 30000);
+        assertTrue(admission.acquire(null));
+        assertTrue(admission.acquire(null));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiting = executor.submit(() -> admission.acquire(null));
+            while (admission.getWaitingCount() == 0) {
+                Thread.sleep(10);
+            }
+            assertFalse(waiting.isDone());
+
+            admission.release();
+            assertTrue(waiting.get(10, TimeUnit.SECONDS));
+            assertEquals(2, admission.getRunningCount());
+            assertEquals(0, admission.getWaitingCount());
+            assertEquals(3, admission.getAdmittedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTimeout() throws Exception {
+        ScanAdmission admission = new ScanAdmission();
+        admission.setLimits(1, 0, 200);
+        assertTrue(admission.acquire(null));
+
+        long start = System.nanoTime();
+        assertFalse(admission.acquire(null));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(1, admission.getTimedOutCount());
+        assertEquals(1, admission.getRunningCount());
+        assertEquals(0, admission.getWaitingCount());
+        assertTrue(admission.getAdmissionWaitMs() >= 200);
+
+        // not waiting at all.
+        admission.setLimits(1, 0, 0);
+        assertFalse(admission.acquire(null));
+        assertEquals(2, admission.getTimedOutCount());
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        ScanAdmission admission = new ScanAdmission();
+        admission.setLimits(1, 0, 30000);
+        assertTrue(admission.acquire(null));
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiting = executor.submit(() -> admission.acquire(cancelled::get));
+            while (admission.getWaitingCount() == 0) {
+                Thread.sleep(10);
+            }
+            cancelled.set(true);
+            assertFalse(waiting.get(10, TimeUnit.SECONDS));
+            // not counted as timed out.
+            assertEquals(0, admission.getTimedOutCount());
+            assertEquals(1, admission.getRunningCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testRaiseLimit() throws Exception {
+        ScanAdmission admission = new ScanAdmission();
+        admission.setLimits(1, 0, 30000);
+        assertTrue(admission.acquire(null));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiting = executor.submit(() -> admission.acquire(null));
+            while (admission.getWaitingCount() == 0) {
+                Thread.sleep(10);
+            }
+            admission.setLimits(0, 0, 30000);
+            assertTrue(waiting.get(10, TimeUnit.SECONDS));
+            assertEquals(2, admission.getRunningCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testInterrupt() throws Exception {
+        ScanAdmission admission = new ScanAdmission();
+        admission.setLimits(1, 0, 30000);
+        assertTrue(admission.acquire(null));
+
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            try {
+                admission.acquire(null);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        t.start();
+        while (admission.getWaitingCount() == 0) {
+            Thread.sleep(10);
+        }
+        t.interrupt();
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        t.join();
+        assertEquals(0, admission.getWaitingCount());
+        assertEquals(1, admission.getRunningCount());
+    }
+
+    @Test
+    void testThrottle() {
+        ScanAdmission admission = new ScanAdmission();
+        admission.throttle(1000, ScanDeadline.NONE);
+        assertEquals(1000, admission.getBytesRead());
+        assertEquals(0, admission.getThrottledMs());
+
+        // 10 KB per second.
+        admission.setLimits(0, 10000, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; ++i) {
+            admission.throttle(1000, ScanDeadline.NONE);
+        }
+        // the first read doesn't wait.
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(400));
+        assertTrue(admission.getThrottledMs() >= 350);
+        assertEquals(6000, admission.getBytesRead());
+    }
+
+    @Test
+    void testThrottleDeadline() {
+        ScanAdmission admission = new ScanAdmission();
+        // 1 KB per second.
+        admission.setLimits(0, 1000, 0);
+        admission.throttle(60000, ScanDeadline.NONE);
+
+        long start = System.nanoTime();
+        assertEquals(ScanResult.Status.TimedOut, assertThrows(
+                ScanDeadline.ExceededException.class,
+                () -> admission.throttle(1000, ScanDeadline.after(200, null))
+        ).getStatus());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+    }
+}
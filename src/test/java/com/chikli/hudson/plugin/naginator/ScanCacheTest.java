@@ -0,0 +1,112 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link ScanCache}.
+ */
+class ScanCacheTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    void testGetAndPut() throws Exception {
+        File cacheFile = new File(tmp, ScanCache.FILE_NAME);
+        SignatureSet signatures = SignatureSet.compile("Connection reset", null, "^error: ");
+        ScanCache.Stamp stamp = new ScanCache.Stamp(100, 12345);
+
+        assertNull(ScanCache.get(cacheFile, stamp, "key", signatures));
+
+        ScanCache.put(cacheFile, stamp, "key", ScanResult.of(signatures.getSignatures().get(0), 42, 3, "error: Connection reset"));
+        ScanResult result = ScanCache.get(cacheFile, stamp, "key", signatures);
+        assertSame(signatures.getSignatures().get(0), result.getMatched());
+        assertTrue(result.getMatched().negative());
+        assertEquals(42, result.getMatchOffset());
+        assertEquals(3, result.getMatchLine());
+        assertEquals("error: Connection reset", result.getExcerpt());
+
+        // not scanned in the same way.
+        assertNull(ScanCache.get(cacheFile, stamp, "other", signatures));
+
+        ScanCache.put(cacheFile, stamp, "other", ScanResult.NOT_MATCHED);
+        result = ScanCache.get(cacheFile, stamp, "other", signatures);
+        assertTrue(result.isCompleted());
+        assertFalse(result.isMatched());
+        assertTrue(ScanCache.get(cacheFile, stamp, "key", signatures).isMatched());
+
+        // the signature matched is no longer tested.
+        assertNull(ScanCache.get(cacheFile, stamp, "key", SignatureSet.compile("Connection reset", null, null)));
+    }
+
+    @Test
+    void testLogModified() throws Exception {
+        File cacheFile = new File(tmp, ScanCache.FILE_NAME);
+        File log = new File(tmp, "log");
+        Files.write(log.toPath(), "Connection reset\n".getBytes(StandardCharsets.UTF_8));
+        SignatureSet signatures = SignatureSet.compile("Connection reset", null, null);
+
+        ScanCache.Stamp stamp = ScanCache.Stamp.of(log);
+        ScanCache.put(cacheFile, stamp, "key", ScanResult.of(signatures.getSignatures().get(0), 0));
+        assertTrue(ScanCache.get(cacheFile, ScanCache.Stamp.of(log), "key", signatures).isMatched());
+
+        Files.write(log.toPath(), "line1\nline2\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(ScanCache.get(cacheFile, ScanCache.Stamp.of(log), "key", signatures));
+
+        // results for the old contents are dropped.
+        ScanCache.put(cacheFile, ScanCache.Stamp.of(log), "other", ScanResult.NOT_MATCHED);
+        assertNull(ScanCache.get(cacheFile, stamp, "key", signatures));
+    }
+
+    @Test
+    void testNotCompleted() {
+        File cacheFile = new File(tmp, ScanCache.FILE_NAME);
+        SignatureSet signatures = SignatureSet.compile("Connection reset", null, null);
+        ScanCache.Stamp stamp = new ScanCache.Stamp(100, 12345);
+        ScanCache.put(cacheFile, stamp, "key", ScanResult.aborted(ScanResult.Status.TimedOut));
+        assertFalse(cacheFile.exists());
+        assertNull(ScanCache.get(cacheFile, stamp, "key", signatures));
+
+        // logs not found.
+        ScanCache.put(cacheFile, new ScanCache.Stamp(0, 0), "key", ScanResult.NOT_MATCHED);
+        assertFalse(cacheFile.exists());
+    }
+
+    @Test
+    void testBounded() {
+        File cacheFile = new File(tmp, ScanCache.FILE_NAME);
+        SignatureSet signatures = SignatureSet.compile("Connection reset", null, null);
+        ScanCache.Stamp stamp = new ScanCache.Stamp(100, 12345);
+        for (int i = 0; i < ScanCache.MAX_ENTRIES + 1; ++i) {
+            ScanCache.put(cacheFile, stamp, "key" + i, ScanResult.NOT_MATCHED);
+        }
+        // the oldest is dropped.
+        assertNull(ScanCache.get(cacheFile, stamp, "key0", signatures));
+        assertTrue(ScanCache.get(cacheFile, stamp, "key1", signatures).isCompleted());
+        assertTrue(ScanCache.get(cacheFile, stamp, "key" + ScanCache.MAX_ENTRIES, signatures).isCompleted());
+    }
+
+    @Test
+    void testBrokenFile() throws Exception {
+        File cacheFile = new File(tmp, ScanCache.FILE_NAME);
+        Files.write(cacheFile.toPath(), "<broken".getBytes(StandardCharsets.UTF_8));
+        SignatureSet signatures = SignatureSet.compile("Connection reset", null, null);
+        ScanCache.Stamp stamp = new ScanCache.Stamp(100, 12345);
+        assertNull(ScanCache.get(cacheFile, stamp, "key", signatures));
+
+        // overwritten.
+        ScanCache.put(cacheFile, stamp, "key", ScanResult.NOT_MATCHED);
+        assertTrue(ScanCache.get(cacheFile, stamp, "key", signatures).isCompleted());
+    }
+}
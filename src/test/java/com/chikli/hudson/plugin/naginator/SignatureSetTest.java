@@ -0,0 +1,147 @@
+package com.chikli.hudson.plugin.naginator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link SignatureSet}.
+ */
+class SignatureSetTest {
+
+    @Test
+    void testSplitLines() {
+        assertEquals(Collections.emptyList(), SignatureSet.splitLines(null));
+        assertEquals(Collections.emptyList(), SignatureSet.splitLines(""));
+        assertEquals(
+                Arrays.asList("Connection reset", " Broken pipe ", "error:"),
+                SignatureSet.splitLines("Connection reset\r\n Broken pipe \n\n  \nerror:\n")
+        );
+    }
+
+    @Test
+    void testCompile() {
+        SignatureSet signatures = SignatureSet.compile("Connection reset", "Broken pipe\nTimed out", "^error: \nFAILURE: Build failed");
+        assertEquals(5, signatures.getSignatures().size());
+        assertTrue(signatures.hasPositives());
+        assertTrue(signatures.hasNegatives());
+        // signatures never to rerun come first.
+        assertEquals("^error: ", signatures.getSignatures().get(0).regexp());
+        assertTrue(signatures.getSignatures().get(0).negative());
+        assertEquals("FAILURE: Build failed", signatures.getSignatures().get(1).regexp());
+        assertEquals("Connection reset", signatures.getSignatures().get(2).regexp());
+        assertFalse(signatures.getSignatures().get(2).negative());
+        assertEquals("Timed out", signatures.getSignatures().get(4).regexp());
+
+        assertTrue(SignatureSet.compile("", null, null).isEmpty());
+        assertFalse(SignatureSet.compile(null, null, "error:").hasPositives());
+
+        assertThrows(PatternSyntaxException.class, () -> SignatureSet.compile("Connection reset", null, "error:("));
+    }
+
+    @Test
+    void testKey() {
+        assertEquals(
+                SignatureSet.compile("Connection reset", null, "error:").getKey(),
+                SignatureSet.compile("Connection reset", "", "error:\n").getKey()
+        );
+        assertNotEquals(
+                SignatureSet.compile("Connection reset", null, "error:").getKey(),
+                SignatureSet.compile("Connection reset", "error:", null).getKey()
+        );
+    }
+
+    @Test
+    void testScanPositives() {
+        SignatureSet.Scan scan = SignatureSet.compile("Connection reset", "Broken pipe", null).newScan();
+        assertFalse(scan.test("line1"));
+        assertNull(scan.getMatched());
+        assertTrue(scan.test("write: Broken pipe"));
+        assertEquals("Broken pipe", scan.getMatched().regexp());
+    }
+
+    @Test
+    void testScanNegatives() {
+        SignatureSet.Scan scan = SignatureSet.compile("Connection reset", null, "^error: ").newScan();
+        // continues as a signature never to rerun may match later.
+        assertFalse(scan.test("Connection reset"));
+        assertEquals("Connection reset", scan.getMatched().regexp());
+        assertFalse(scan.isDecided());
+        scan.setLineNumber(3);
+        assertTrue(scan.test("error: cannot find symbol"));
+        assertTrue(scan.getMatched().negative());
+        assertTrue(scan.isDecided());
+
+        // a line matching both.
+        scan = SignatureSet.compile("Connection reset", null, "^error: ").newScan();
+        assertTrue(scan.test("error: Connection reset"));
+        assertTrue(scan.getMatched().negative());
+    }
+
+    @Test
+    void testLinearEngine() {
+        SignatureSet signatures = SignatureSet.compile("(.*a){12}x", null, "(a)\\1x", RegexpEngine.Linear);
+        assertNotNull(signatures.getSignatures().get(1).linear());
+        // back references are matched with java.util.regex.
+        assertNull(signatures.getSignatures().get(0).linear());
+        assertNull(SignatureSet.compile("(.*a){12}x", null, null).getSignatures().get(0).linear());
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            line.append('a');
+        }
+        SignatureSet.Scan scan = signatures.newScan();
+        assertFalse(scan.test(line));
+        assertTrue(scan.test(line.append('x')));
+        assertTrue(scan.getMatched().negative());
+    }
+
+    @Test
+    void testUnion() {
+        SignatureSet union = SignatureSet.union(Arrays.asList(
+                SignatureSet.compile("Connection reset", null, null),
+                SignatureSet.compile("Connection reset", "Broken pipe", "^error: "),
+                SignatureSet.compile(null, null, "^error: ")
+        ));
+        assertEquals(3, union.getGroupCount());
+        // tested only once for all sets.
+        assertEquals(3, union.getSignatures().size());
+        assertTrue(union.getSignatures().get(0).negative());
+        assertEquals(1, SignatureSet.compile("Connection reset", null, null).getGroupCount());
+
+        SignatureSet.Scan scan = union.newScan();
+        scan.setLineNumber(1);
+        assertFalse(scan.test("line1"));
+        scan.setLineNumber(2);
+        assertFalse(scan.test("Connection reset"));
+        // decided only for the first set.
+        assertEquals("Connection reset", scan.getMatched(0).regexp());
+        assertEquals("Connection reset", scan.getMatched(1).regexp());
+        assertNull(scan.getMatched(2));
+        assertFalse(scan.isDecided());
+
+        scan.setLineNumber(3);
+        assertTrue(scan.test("error: cannot find symbol"));
+        assertTrue(scan.isDecided());
+        assertEquals("Connection reset", scan.getResult(0).getMatched().regexp());
+        assertEquals(2, scan.getResult(0).getMatchLine());
+        assertEquals(3, scan.getResult(1).getMatchLine());
+        assertEquals("^error: ", scan.getResult(1).getMatched().regexp());
+        assertEquals("^error: ", scan.getResult(2).getMatched().regexp());
+
+        ScanResult result = scan.getResult();
+        assertNull(result.getMatched());
+        assertEquals("^error: ", result.getGroup(1).getMatched().regexp());
+        assertEquals("Connection reset", result.getGroup(0).getMatched().regexp());
+    }
+}